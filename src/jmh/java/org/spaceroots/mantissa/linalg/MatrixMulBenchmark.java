@@ -0,0 +1,133 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark comparing the tiled matrix product with the former
+ * element by element loop.
+
+ * <p>The former loop is reproduced here as {@link #referenceMul}: it
+ * builds two {@link NonNullRange} instances for each element of the
+ * result and walks the right operand column-wise.</p>
+
+ * @author L. Maisonobe
+
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixMulBenchmark {
+
+  /** Order of the matrices. */
+  @Param({"16", "64", "256", "1024"})
+  public int order;
+
+  /** Left operand. */
+  private GeneralSquareMatrix a;
+
+  /** Right operand. */
+  private GeneralSquareMatrix b;
+
+  /** Lower triangular operand. */
+  private LowerTriangularMatrix l;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0x5e5226a9f3c1d0b7l);
+    a = new GeneralSquareMatrix(order);
+    b = new GeneralSquareMatrix(order);
+    l = new LowerTriangularMatrix(order);
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j < order; ++j) {
+        a.setElement(i, j, random.nextDouble());
+        b.setElement(i, j, random.nextDouble());
+        if (j <= i) {
+          l.setElement(i, j, random.nextDouble());
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public Matrix tiledGeneral() {
+    return a.mul(b);
+  }
+
+  @Benchmark
+  public Matrix referenceGeneral() {
+    return referenceMul(a, b);
+  }
+
+  @Benchmark
+  public Matrix tiledTriangular() {
+    return l.mul(b);
+  }
+
+  @Benchmark
+  public Matrix referenceTriangular() {
+    return referenceMul(l, b);
+  }
+
+  /** Former implementation of {@link Matrix#mul(Matrix)}.
+   * @param a left operand
+   * @param m right operand
+   * @return a.m
+   */
+  private static Matrix referenceMul(Matrix a, Matrix m) {
+
+    double[] resultData = new double[a.rows * m.columns];
+    int resultIndex     = 0;
+    int lowerElements   = 0;
+    int upperElements   = 0;
+
+    for (int i = 0; i < a.rows; ++i) {
+      for (int j = 0; j < m.columns; ++j) {
+        double value = 0.0;
+
+        NonNullRange r = NonNullRange.intersection(a.getRangeForRow(i),
+                                                   m.getRangeForColumn(j));
+
+        if (r.begin < r.end) {
+          int k    = r.begin;
+          int idx  = i * a.columns + k;
+          int midx = k * m.columns + j;
+          while (k++ < r.end) {
+            value += a.data[idx++] * m.data[midx];
+            midx  += m.columns;
+          }
+
+          if (j < i) {
+            ++lowerElements;
+          } else if (i < j) {
+            ++upperElements;
+          }
+
+        }
+
+        resultData[resultIndex++] = value;
+
+      }
+    }
+
+    return MatrixFactory.buildMatrix(a.rows, m.columns, resultData,
+                                     lowerElements, upperElements);
+
+  }
+
+}
@@ -0,0 +1,204 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of the basic operations of the square matrices.
+
+ * <p>All operations (product, transposition, solve, inverse,
+ * determinant and factorization) are measured for each square matrix
+ * type and several orders. The solve operations of the triangular
+ * and diagonal types are the triangular substitutions themselves.
+ * The general and symetrical types cache their factorization, so
+ * their solve, inverse and determinant operations only measure the
+ * use of the cached factors, the {@link #luDecomposition} benchmark
+ * measures the factorization itself.</p>
+
+ * <p>The <code>benchmarks</code> profile runs the benchmarks with
+ * the GC profiler, so the <code>gc.alloc.rate.norm</code> secondary
+ * result gives the number of bytes allocated by each operation. The
+ * into-destination and factorization reuse variants should not
+ * allocate anything beyond their result.</p>
+
+ * @author L. Maisonobe
+
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SquareMatrixBenchmark {
+
+  /** Type of the square matrix. */
+  @Param({"general", "symetrical", "lower", "upper", "diagonal"})
+  public String type;
+
+  /** Order of the matrices. */
+  @Param({"8", "64", "256"})
+  public int order;
+
+  /** Benchmarked matrix. */
+  private SquareMatrix m;
+
+  /** General right operand. */
+  private GeneralSquareMatrix b;
+
+  /** Destination for the into-destination operations. */
+  private GeneralSquareMatrix dest;
+
+  /** Factorization of the benchmarked matrix. */
+  private Factorization factorization;
+
+  /** Single right hand side. */
+  private double[] rhs;
+
+  /** Solution for the single right hand side. */
+  private double[] x;
+
+  /** Threshold for the singularity checks. */
+  private static final double epsilon = 1.0e-10;
+
+  @Setup
+  public void setUp()
+    throws SingularMatrixException {
+
+    Random random = new Random(0x3b1e7f06c45a92d8l);
+    m    = buildMatrix(type, order, random);
+    b    = new GeneralSquareMatrix(order);
+    dest = new GeneralSquareMatrix(order);
+    rhs  = new double[order];
+    x    = new double[order];
+    for (int i = 0; i < order; ++i) {
+      rhs[i] = random.nextDouble();
+      for (int j = 0; j < order; ++j) {
+        b.setElement(i, j, random.nextDouble());
+      }
+    }
+
+    factorization = m.factorize(epsilon);
+
+  }
+
+  /** Build a well conditioned matrix of the specified type.
+   * @param type type of the matrix
+   * @param order order of the matrix
+   * @param random random generator for the elements
+   * @return a new matrix, diagonally dominant (and positive
+   * definite for the symetrical type)
+   */
+  private static SquareMatrix buildMatrix(String type, int order,
+                                          Random random) {
+
+    SquareMatrix s;
+    if ("general".equals(type)) {
+      s = new GeneralSquareMatrix(order);
+    } else if ("symetrical".equals(type)) {
+      s = new SymetricalMatrix(order);
+    } else if ("lower".equals(type)) {
+      s = new LowerTriangularMatrix(order);
+    } else if ("upper".equals(type)) {
+      s = new UpperTriangularMatrix(order);
+    } else if ("diagonal".equals(type)) {
+      s = new DiagonalMatrix(order);
+    } else {
+      throw new IllegalArgumentException("unknown matrix type " + type);
+    }
+
+    for (int i = 0; i < order; ++i) {
+      NonNullRange range = s.getRangeForRow(i);
+      for (int j = range.begin; j < range.end; ++j) {
+        if (j == i) {
+          s.setElement(i, i, order + random.nextDouble());
+        } else if (s instanceof SymetricalMatrix) {
+          if (j < i) {
+            ((SymetricalMatrix) s).setElementAndSymetricalElement(i, j,
+                                                                  random.nextDouble());
+          }
+        } else {
+          s.setElement(i, j, random.nextDouble());
+        }
+      }
+    }
+
+    return s;
+
+  }
+
+  @Benchmark
+  public Matrix mul() {
+    return m.mul(b);
+  }
+
+  @Benchmark
+  public Matrix mulInto() {
+    m.mulInto(b, dest);
+    return dest;
+  }
+
+  @Benchmark
+  public Matrix transpose() {
+    return m.getTranspose();
+  }
+
+  @Benchmark
+  public Matrix transposeInto() {
+    m.transposeInto(dest);
+    return dest;
+  }
+
+  @Benchmark
+  public Matrix solve()
+    throws SingularMatrixException {
+    return m.solve(b, epsilon);
+  }
+
+  @Benchmark
+  public Matrix inverse()
+    throws SingularMatrixException {
+    return m.getInverse(epsilon);
+  }
+
+  @Benchmark
+  public double determinant() {
+    return m.getDeterminant(epsilon);
+  }
+
+  @Benchmark
+  public Factorization factorize()
+    throws SingularMatrixException {
+    return m.factorize(epsilon);
+  }
+
+  @Benchmark
+  public Factorization luDecomposition()
+    throws SingularMatrixException {
+    return new LUDecomposition(m, epsilon);
+  }
+
+  @Benchmark
+  public double[] factorizationSolve() {
+    factorization.solve(rhs, x);
+    return x;
+  }
+
+  @Benchmark
+  public Matrix factorizationSolveMatrix() {
+    return factorization.solve(b);
+  }
+
+}
@@ -0,0 +1,75 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of the accumulation methods of symetrical matrices.
+
+ * <p>These methods are used in the inner loops of the least squares
+ * estimators to build normal equations, they should never allocate
+ * anything.</p>
+
+ * @author L. Maisonobe
+
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymetricalMatrixBenchmark {
+
+  /** Order of the matrices. */
+  @Param({"6", "64", "256"})
+  public int order;
+
+  /** Accumulated matrix. */
+  private SymetricalMatrix s;
+
+  /** Other symetrical matrix. */
+  private SymetricalMatrix t;
+
+  /** Rank one update vector. */
+  private double[] a;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0x6d02c9b4e8a1f357l);
+    s = new SymetricalMatrix(order);
+    t = new SymetricalMatrix(order);
+    a = new double[order];
+    for (int i = 0; i < order; ++i) {
+      a[i] = random.nextDouble();
+      for (int j = 0; j <= i; ++j) {
+        t.setElementAndSymetricalElement(i, j, random.nextDouble());
+      }
+    }
+  }
+
+  @Benchmark
+  public Matrix selfAddWAAt() {
+    s.selfAddWAAt(1.0e-3, a);
+    return s;
+  }
+
+  @Benchmark
+  public Matrix selfAdd() {
+    s.selfAdd(t);
+    return s;
+  }
+
+}
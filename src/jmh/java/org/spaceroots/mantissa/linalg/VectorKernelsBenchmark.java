@@ -0,0 +1,115 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark comparing the vector kernels with plain scalar loops.
+
+ * <p>The scalar loops are the former inner loops of {@link
+ * Matrix#apply}, {@link LowerTriangularMatrix#solve} and of the
+ * stages combination of the Runge-Kutta integrators. Running the
+ * benchmark with <code>-jvmArgs -XX:UseAVX=0</code> (or 2, or 3)
+ * shows the effect of the SIMD instruction set of the host.</p>
+
+ * @author L. Maisonobe
+
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorKernelsBenchmark {
+
+  /** Dimension of the vectors. */
+  @Param({"6", "64", "1024", "16384"})
+  public int n;
+
+  /** First vector. */
+  private double[] x;
+
+  /** Second vector. */
+  private double[] y;
+
+  /** Vectors to combine (Runge-Kutta stages). */
+  private double[][] stages;
+
+  /** Coefficients of the combination. */
+  private double[] coefficients;
+
+  /** Result of the combination. */
+  private double[] result;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0x1c9e2a4b7d3f5e61l);
+    x            = new double[n];
+    y            = new double[n];
+    result       = new double[n];
+    stages       = new double[7][n];
+    coefficients = new double[7];
+    for (int i = 0; i < n; ++i) {
+      x[i] = random.nextDouble();
+      y[i] = random.nextDouble();
+      for (int l = 0; l < stages.length; ++l) {
+        stages[l][i] = random.nextDouble();
+      }
+    }
+    for (int l = 0; l < coefficients.length; ++l) {
+      coefficients[l] = random.nextDouble();
+    }
+  }
+
+  @Benchmark
+  public double kernelDot() {
+    return VectorKernels.dot(x, 0, y, 0, n);
+  }
+
+  @Benchmark
+  public double scalarDot() {
+    double sum = 0;
+    for (int i = 0; i < n; ++i) {
+      sum += x[i] * y[i];
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double[] kernelAxpy() {
+    VectorKernels.axpy(1.0e-3, x, 0, y, 0, n);
+    return y;
+  }
+
+  @Benchmark
+  public double[] kernelCombine() {
+    VectorKernels.combine(x, 1.0e-3, coefficients, stages, stages.length, result);
+    return result;
+  }
+
+  @Benchmark
+  public double[] scalarCombine() {
+    for (int j = 0; j < n; ++j) {
+      double sum = coefficients[0] * stages[0][j];
+      for (int l = 1; l < stages.length; ++l) {
+        sum += coefficients[l] * stages[l][j];
+      }
+      result[j] = x[j] + 1.0e-3 * sum;
+    }
+    return result;
+  }
+
+}
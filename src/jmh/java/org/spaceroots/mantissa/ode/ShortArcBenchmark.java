@@ -0,0 +1,88 @@
+package org.spaceroots.mantissa.ode;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of repeated short arc integrations.
+
+ * <p>The integrators keep their working arrays and step
+ * interpolators across calls, so once warmed up the
+ * <code>gc.alloc.rate.norm</code> result of the GC profiler should be
+ * zero when no step handler is set and remain independent of the
+ * number of calls when a handler without dense output is set.</p>
+
+ * @author L. Maisonobe
+
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortArcBenchmark {
+
+  /** Harmonic oscillators. */
+  private static class Oscillators
+    implements FirstOrderDifferentialEquations {
+    public int getDimension() {
+      return 6;
+    }
+    public void computeDerivatives(double t, double[] y, double[] yDot) {
+      for (int i = 0; i < 6; i += 2) {
+        yDot[i]     = y[i + 1];
+        yDot[i + 1] = -(i + 1) * y[i];
+      }
+    }
+  }
+
+  /** Differential equations. */
+  private Oscillators equations;
+
+  /** Initial state. */
+  private double[] y0;
+
+  /** Final state. */
+  private double[] y;
+
+  /** Fixed step integrator. */
+  private ClassicalRungeKuttaIntegrator fixed;
+
+  /** Adaptive step integrator. */
+  private DormandPrince853Integrator adaptive;
+
+  @Setup
+  public void setUp() {
+    equations = new Oscillators();
+    y0        = new double[] { 1.0, 0.0, 0.5, 0.1, 0.0, 1.0 };
+    y         = new double[6];
+    fixed     = new ClassicalRungeKuttaIntegrator(1.0e-2);
+    adaptive  = new DormandPrince853Integrator(0.0, 1.0, 1.0e-10, 1.0e-10);
+  }
+
+  @Benchmark
+  public double[] fixedStep()
+    throws DerivativeException, IntegratorException {
+    fixed.integrate(equations, 0.0, y0, 0.1, y);
+    return y;
+  }
+
+  @Benchmark
+  public double[] adaptiveStep()
+    throws DerivativeException, IntegratorException {
+    adaptive.integrate(equations, 0.0, y0, 0.1, y);
+    return y;
+  }
+
+}
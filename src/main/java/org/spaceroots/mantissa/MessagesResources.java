@@ -22,6 +22,7 @@ public class MessagesResources
   static final Object[][] contents = {
 
     // org.spaceroots.mantissa.estimation.GaussNewtonEstimator
+    // org.spaceroots.mantissa.linalg.ConvergenceException
     { "unable to converge in {0} iterations",
       "unable to converge in {0} iterations" },
 
@@ -87,6 +88,7 @@ public class MessagesResources
     { "dimension mismatch {0} != {1}",
       "dimension mismatch {0} != {1}" },
 
+    // org.spaceroots.mantissa.linalg.NotPositiveDefiniteMatrixException
     // org.spaceroots.mantissa.random.NotPositiveDefiniteMatrixException
     { "not positive definite matrix",
       "not positive definite matrix" }
@@ -21,6 +21,7 @@ public class MessagesResources_fr
   static final Object[][] contents = {
 
     // org.spaceroots.mantissa.estimation.GaussNewtonEstimator
+    // org.spaceroots.mantissa.linalg.ConvergenceException
     { "unable to converge in {0} iterations",
       "pas de convergence apr\u00e8s {0} it\u00e9rations" },
 
@@ -86,6 +87,7 @@ public class MessagesResources_fr
     { "dimension mismatch {0} != {1}",
       "dimensions incompatibles {0} != {1}" },
 
+    // org.spaceroots.mantissa.linalg.NotPositiveDefiniteMatrixException
     // org.spaceroots.mantissa.random.NotPositiveDefiniteMatrixException
     { "not positive definite matrix",
       "matrice non d\u00e9finie positive" }
@@ -0,0 +1,261 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class implements LU decompositions of band matrices.
+
+ * <p>The decomposition is computed using Gaussian elimination with
+ * partial pivoting, like {@link LUDecomposition}, but it only handles
+ * the elements inside the band. The pivot for column k is searched
+ * among the <code>kl</code> rows below the diagonal only (as the
+ * elements further below are zero), so exchanging rows widens the
+ * upper band of the U factor from <code>ku</code> to <code>kl +
+ * ku</code> but never beyond. For a matrix of order n, the
+ * decomposition needs O(n.kl.(kl+ku)) operations and O(n.(2kl+ku))
+ * memory, and each solve needs O(n.(2kl+ku)) operations per right
+ * hand side.</p>
+
+ * <p>As in the LAPACK <code>dgbtrf</code> routine, the L factor is
+ * not stored as a triangular matrix, the multipliers of each
+ * elimination step are rather kept together with the row exchange
+ * of the step, and they are applied in sequence to the right hand
+ * sides.</p>
+
+ * <p>Once built, a decomposition is never modified: it can be used to
+ * solve as many linear systems as needed without recomputing
+ * anything.</p>
+
+ * @see BandMatrix#getLUDecomposition
+ * @see Factorization
+ * @see LUDecomposition
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class BandLUDecomposition
+  implements Factorization {
+
+  /** Simple constructor.
+   * Build the decomposition of a band matrix.
+   * @param m band matrix to decompose
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  public BandLUDecomposition(BandMatrix m, double epsilon)
+    throws SingularMatrixException {
+
+    order = m.getRows();
+    kl    = m.getLowerBandwidth();
+    ku    = m.getUpperBandwidth();
+    int n  = order;
+    int uw = kl + ku + 1;
+    int w  = kl + uw;
+
+    // working array: row i holds columns i - kl to i + kl + ku
+    double[] a = new double[n * w];
+    for (int i = 0; i < n; ++i) {
+      int jStart = Math.max(0, i - kl);
+      int jEnd   = Math.min(n, i + ku + 1);
+      for (int j = jStart; j < jEnd; ++j) {
+        a[i * w + j - i + kl] = m.getBandElement(i, j);
+      }
+    }
+
+    multipliers = new double[n * kl];
+    u           = new double[n * uw];
+    swaps       = new int[n];
+
+    boolean even = true;
+    for (int k = 0; k < n; ++k) {
+
+      int iEnd = Math.min(n, k + kl + 1);
+      int jEnd = Math.min(n, k + uw);
+
+      // find the maximal element in the column, inside the band
+      double maxElt = Math.abs(a[k * w + kl]);
+      int    iMax   = k;
+      for (int i = k + 1; i < iEnd; ++i) {
+        double curElt = Math.abs(a[i * w + k - i + kl]);
+        if (curElt > maxElt) {
+          maxElt = curElt;
+          iMax   = i;
+        }
+      }
+
+      if (maxElt < epsilon) {
+        throw new SingularMatrixException();
+      }
+
+      // exchange the rows to have a large enough diagonal element
+      swaps[k] = iMax;
+      if (iMax != k) {
+        for (int j = k; j < jEnd; ++j) {
+          int indexK   = k * w + j - k + kl;
+          int indexMax = iMax * w + j - iMax + kl;
+          double tmp   = a[indexK];
+          a[indexK]    = a[indexMax];
+          a[indexMax]  = tmp;
+        }
+        even = ! even;
+      }
+
+      // eliminate the elements below the diagonal
+      double inv = 1.0 / a[k * w + kl];
+      for (int i = k + 1; i < iEnd; ++i) {
+        int    index1 = i * w + k - i + kl;
+        double factor = inv * a[index1];
+        multipliers[k * kl + i - k - 1] = factor;
+        if (factor != 0.0) {
+          for (int index2 = k * w + kl + 1, j = k + 1; j < jEnd; ++j) {
+            a[++index1] -= factor * a[index2++];
+          }
+        }
+      }
+
+      // store the row of the upper triangular factor
+      System.arraycopy(a, k * w + kl, u, k * uw, jEnd - k);
+
+    }
+
+    evenPermutations = even;
+
+  }
+
+  /** Get the order of the decomposed matrix.
+   * @return order of the decomposed matrix
+   */
+  public int getOrder() {
+    return order;
+  }
+
+  /** Get the upper triangular factor U.
+   * @return a new band matrix containing U (its upper bandwidth is
+   * the sum of the lower and upper bandwidths of the decomposed matrix)
+   */
+  public BandMatrix getU() {
+    return new BandMatrix(order, 0, kl + ku, u);
+  }
+
+  /** Get the determinant of the decomposed matrix.
+   * @return determinant of the decomposed matrix
+   */
+  public double getDeterminant() {
+    double determinant = evenPermutations ? 1.0 : -1.0;
+    for (int index = 0; index < u.length; index += kl + ku + 1) {
+      determinant *= u[index];
+    }
+    return determinant;
+  }
+
+  /** Solve the <tt>A.x = b</tt> equation for one right hand side.
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, double[] x) {
+    solve(b, 1, x);
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation for several right hand sides.
+   * <p>The B and X matrices are n rows by <code>nRhs</code> columns
+   * matrices stored row after row in one dimensional arrays, like
+   * the elements of {@link Matrix} instances.</p>
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param nRhs number of right hand sides (i.e. columns of B)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, int nRhs, double[] x) {
+
+    // validity check
+    if (nRhs <= 0 || b.length < order * nRhs || x.length < order * nRhs) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    if (x != b) {
+      System.arraycopy(b, 0, x, 0, order * nRhs);
+    }
+
+    // apply the rows exchanges and the elimination steps in sequence
+    for (int k = 0; k < order; ++k) {
+      int xK = k * nRhs;
+      if (swaps[k] != k) {
+        for (int indexS = swaps[k] * nRhs, j = 0; j < nRhs; ++j) {
+          double tmp     = x[xK + j];
+          x[xK + j]      = x[indexS + j];
+          x[indexS + j]  = tmp;
+        }
+      }
+      int iEnd = Math.min(order, k + kl + 1);
+      for (int i = k + 1; i < iEnd; ++i) {
+        double lik = multipliers[k * kl + i - k - 1];
+        if (lik != 0.0) {
+          int xI = i * nRhs;
+          for (int j = 0; j < nRhs; ++j) {
+            x[xI + j] -= lik * x[xK + j];
+          }
+        }
+      }
+    }
+
+    // backward substitution with the upper triangular factor
+    int uw = kl + ku + 1;
+    for (int i = order - 1; i >= 0; --i) {
+      int xI   = i * nRhs;
+      int kEnd = Math.min(order, i + uw);
+      for (int k = i + 1; k < kEnd; ++k) {
+        double uik = u[i * uw + k - i];
+        int xK = k * nRhs;
+        for (int j = 0; j < nRhs; ++j) {
+          x[xI + j] -= uik * x[xK + j];
+        }
+      }
+      double inv = 1.0 / u[i * uw];
+      for (int j = 0; j < nRhs; ++j) {
+        x[xI + j] *= inv;
+      }
+    }
+
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation.
+   * @param b second term of the equation
+   * @return a new matrix X such that <tt>A.X = B</tt>
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix solve(Matrix b) {
+    if (b.getRows() != order) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    double[] bData = b.getDenseData();
+    double[] x = new double[bData.length];
+    solve(bData, b.getColumns(), x);
+    return MatrixFactory.buildMatrix(order, b.getColumns(), x);
+  }
+
+  /** Order of the decomposed matrix. */
+  private final int order;
+
+  /** Lower bandwidth of the decomposed matrix. */
+  private final int kl;
+
+  /** Upper bandwidth of the decomposed matrix. */
+  private final int ku;
+
+  /** Multipliers of the elimination steps (kl per step). */
+  private final double[] multipliers;
+
+  /** Upper triangular factor (row i holds columns i to i + kl + ku). */
+  private final double[] u;
+
+  /** Row exchanged with row k at step k of the elimination. */
+  private final int[] swaps;
+
+  /** Parity of the permutation. */
+  private final boolean evenPermutations;
+
+  private static final long serialVersionUID = 4607851023359137460L;
+
+}
@@ -0,0 +1,437 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class represents square band matrices.
+
+ * <p>A band matrix with lower bandwidth kl and upper bandwidth ku
+ * has null elements everywhere except for the elements (i, j) such
+ * that i - kl &lt;= j &lt;= i + ku. Tridiagonal matrices for example
+ * have kl = ku = 1. Only the elements of the band are stored, row
+ * after row: element (i, j) is stored at index i.(kl + ku + 1) + j -
+ * i + kl of the band array (the positions corresponding to elements
+ * outside of the matrix in the first and last rows are unused). The
+ * memory needed is therefore O(n.(kl + ku)) instead of
+ * O(n<sup>2</sup>).</p>
+
+ * <p>The {@link #getRangeForRow} and {@link #getRangeForColumn}
+ * methods are directly derived from the bandwidths, so the general
+ * algorithms of the base class only consider the elements of the
+ * band. Products, sums and transposition of band matrices are band
+ * matrices. Linear systems are solved using a {@link
+ * BandLUDecomposition band LU decomposition} which preserves the band
+ * structure.</p>
+
+ * @see BandLUDecomposition
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class BandMatrix
+  extends SquareMatrix {
+
+  /** Simple constructor.
+   * Build a matrix with null elements.
+   * @param order order of the matrix
+   * @param lower lower bandwidth (number of diagonals below the main one)
+   * @param upper upper bandwidth (number of diagonals above the main one)
+   * @exception IllegalArgumentException if a bandwidth is negative
+   */
+  public BandMatrix(int order, int lower, int upper) {
+    super(order, null);
+    if (lower < 0 || upper < 0) {
+      throw new IllegalArgumentException("cannot build a band matrix"
+                                         + " with negative bandwidth");
+    }
+    this.lower = lower;
+    this.upper = upper;
+    band       = new double[order * (lower + upper + 1)];
+    lu         = null;
+  }
+
+  /** Simple constructor.
+   * Build a matrix with specified elements.
+   * @param order order of the matrix
+   * @param lower lower bandwidth (number of diagonals below the main one)
+   * @param upper upper bandwidth (number of diagonals above the main one)
+   * @param band table of the band elements (see the class
+   * documentation for the storage layout)
+   * @exception IllegalArgumentException if a bandwidth is negative
+   * or if the band array does not have the right size
+   */
+  public BandMatrix(int order, int lower, int upper, double[] band) {
+    this(order, lower, upper);
+    if (band.length != this.band.length) {
+      throw new IllegalArgumentException("wrong band array size "
+                                         + band.length + ", expected "
+                                         + this.band.length);
+    }
+    System.arraycopy(band, 0, this.band, 0, band.length);
+  }
+
+  /** Copy constructor.
+   * @param b band matrix to copy
+   */
+  public BandMatrix(BandMatrix b) {
+    super(b.rows, null);
+    lower = b.lower;
+    upper = b.upper;
+    band  = (double[]) b.band.clone();
+    lu    = b.lu;
+  }
+
+  public Matrix duplicate() {
+    return new BandMatrix(this);
+  }
+
+  /** Get the lower bandwidth.
+   * @return number of diagonals below the main one
+   */
+  public int getLowerBandwidth() {
+    return lower;
+  }
+
+  /** Get the upper bandwidth.
+   * @return number of diagonals above the main one
+   */
+  public int getUpperBandwidth() {
+    return upper;
+  }
+
+  public double getElement(int i, int j) {
+    if (i < 0 || i >= rows || j < 0 || j >= columns) {
+      throw new IllegalArgumentException("cannot get element ("
+                                         + i + ", " + j + ") from a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+    return (j < i - lower || j > i + upper) ? 0.0 : getBandElement(i, j);
+  }
+
+  public void setElement(int i, int j, double value) {
+    if (i < 0 || i >= rows || j < 0 || j >= columns) {
+      throw new IllegalArgumentException("cannot set element ("
+                                         + i + ", " + j + ") in a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+    if (j < i - lower || j > i + upper) {
+      throw new ArrayIndexOutOfBoundsException("cannot set elements"
+                                               + " outside of the band of a"
+                                               + " band matrix");
+    }
+    band[bandIndex(i, j)] = value;
+    resetFactorizations();
+  }
+
+  /** Get an element known to be inside the band.
+   * @param i row index
+   * @param j column index
+   * @return value of the element
+   */
+  double getBandElement(int i, int j) {
+    return band[bandIndex(i, j)];
+  }
+
+  public Matrix add(Matrix m) {
+
+    // validity check
+    if ((rows != m.rows) || (columns != m.columns)) {
+      throw new IllegalArgumentException("cannot add a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix to a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    return combine(m, 1.0);
+
+  }
+
+  public Matrix sub(Matrix m) {
+
+    // validity check
+    if ((rows != m.rows) || (columns != m.columns)) {
+      throw new IllegalArgumentException("cannot substract a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix from a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    return combine(m, -1.0);
+
+  }
+
+  /** Add a multiple of a matrix to the instance.
+   * @param m matrix to add
+   * @param factor multiplicative factor for m (1 or -1)
+   * @return a new matrix containing the result, which is a band
+   * matrix if m is also a band matrix
+   */
+  private Matrix combine(Matrix m, double factor) {
+
+    if (m instanceof BandMatrix) {
+      BandMatrix b = (BandMatrix) m;
+      BandMatrix result = new BandMatrix(rows,
+                                         Math.max(lower, b.lower),
+                                         Math.max(upper, b.upper));
+      for (int i = 0; i < rows; ++i) {
+        for (int j = Math.max(0, i - lower); j < Math.min(rows, i + upper + 1); ++j) {
+          result.band[result.bandIndex(i, j)] = getBandElement(i, j);
+        }
+        for (int j = Math.max(0, i - b.lower); j < Math.min(rows, i + b.upper + 1); ++j) {
+          result.band[result.bandIndex(i, j)] += factor * b.getBandElement(i, j);
+        }
+      }
+      return result;
+    }
+
+    double[] mData      = m.getDenseData();
+    double[] resultData = new double[rows * columns];
+    for (int index = 0; index < resultData.length; ++index) {
+      resultData[index] = factor * mData[index];
+    }
+    for (int i = 0; i < rows; ++i) {
+      for (int j = Math.max(0, i - lower); j < Math.min(rows, i + upper + 1); ++j) {
+        resultData[i * columns + j] += getBandElement(i, j);
+      }
+    }
+
+    // compute the structure of the result
+    int[] bounds  = getRowBounds();
+    int[] mBounds = m.getRowBounds();
+    for (int i = 0; i < rows; ++i) {
+      bounds[2 * i]     = Math.min(bounds[2 * i],     mBounds[2 * i]);
+      bounds[2 * i + 1] = Math.max(bounds[2 * i + 1], mBounds[2 * i + 1]);
+    }
+
+    return MatrixFactory.buildMatrix(rows, columns, resultData,
+                                     countLowerElements(bounds),
+                                     countUpperElements(bounds));
+
+  }
+
+  public Matrix mul(Matrix m) {
+
+    // validity check
+    if (columns != m.rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix");
+    }
+
+    if (m instanceof BandMatrix) {
+      // the product of band matrices is a band matrix
+      BandMatrix b = (BandMatrix) m;
+      BandMatrix result = new BandMatrix(rows, lower + b.lower, upper + b.upper);
+      for (int i = 0; i < rows; ++i) {
+        for (int k = Math.max(0, i - lower); k < Math.min(rows, i + upper + 1); ++k) {
+          double aik = getBandElement(i, k);
+          for (int j = Math.max(0, k - b.lower); j < Math.min(rows, k + b.upper + 1); ++j) {
+            result.band[result.bandIndex(i, j)] += aik * b.getBandElement(k, j);
+          }
+        }
+      }
+      return result;
+    }
+
+    final int      p          = m.columns;
+    final double[] mData      = m.getDenseData();
+    final int[]    mRowBounds = m.getRowBounds();
+    final double[] resultData = new double[rows * p];
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            int c0 = i * p;
+            for (int k = Math.max(0, i - lower); k < Math.min(rows, i + upper + 1); ++k) {
+              double aik  = getBandElement(i, k);
+              int    jEnd = mRowBounds[2 * k + 1];
+              for (int j = mRowBounds[2 * k], bIndex = k * p + j; j < jEnd; ++j) {
+                resultData[c0 + j] += aik * mData[bIndex++];
+              }
+            }
+          }
+        }
+      }, rows, ((long) band.length) * p);
+
+    return MatrixFactory.buildMatrix(rows, p, resultData);
+
+  }
+
+  Matrix preMultiply(Matrix a) {
+
+    final int      n          = rows;
+    final double[] aData      = a.getDenseData();
+    final int[]    aRowBounds = a.getRowBounds();
+    final double[] resultData = new double[a.rows * n];
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            int c0 = i * n;
+            for (int k = aRowBounds[2 * i]; k < aRowBounds[2 * i + 1]; ++k) {
+              double aik = aData[i * n + k];
+              if (aik != 0.0) {
+                for (int j = Math.max(0, k - lower); j < Math.min(n, k + upper + 1); ++j) {
+                  resultData[c0 + j] += aik * getBandElement(k, j);
+                }
+              }
+            }
+          }
+        }
+      }, a.rows, ((long) a.rows) * band.length);
+
+    return MatrixFactory.buildMatrix(a.rows, n, resultData);
+
+  }
+
+  public void apply(final double[] x, final double[] y) {
+
+    // validity check
+    if (x.length != columns || y.length != rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + x.length + " elements vector");
+    }
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            double sum = 0;
+            for (int j = Math.max(0, i - lower); j < Math.min(rows, i + upper + 1); ++j) {
+              sum += getBandElement(i, j) * x[j];
+            }
+            y[i] = sum;
+          }
+        }
+      }, rows, band.length);
+
+  }
+
+  public void selfMul(double a) {
+    for (int index = 0; index < band.length; ++index) {
+      band[index] *= a;
+    }
+    resetFactorizations();
+  }
+
+  /** Compute the transpose of the instance.
+   * This method transposes the instance. It returns a new band
+   * matrix (with exchanged bandwidths) and does not modify the instance.
+   * @return a new band matrix containing the result
+   */
+  public Matrix getTranspose() {
+    BandMatrix result = new BandMatrix(rows, upper, lower);
+    for (int i = 0; i < rows; ++i) {
+      for (int j = Math.max(0, i - lower); j < Math.min(rows, i + upper + 1); ++j) {
+        result.band[result.bandIndex(j, i)] = getBandElement(i, j);
+      }
+    }
+    return result;
+  }
+
+  public double getDeterminant(double epsilon) {
+    try {
+      return getLUDecomposition(epsilon).getDeterminant();
+    } catch (SingularMatrixException e) {
+      return 0.0;
+    }
+  }
+
+  public Matrix solve(Matrix b, double epsilon)
+    throws SingularMatrixException {
+    // validity check
+    if (b.getRows() != rows) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    return getLUDecomposition(epsilon).solve(b);
+  }
+
+  /** Factorize the instance.
+   * <p>This method returns the cached band LU decomposition of the
+   * instance, which is immutable and can be shared between
+   * threads.</p>
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular (only used if the decomposition is not
+   * already available)
+   * @return band LU decomposition of the instance
+   * @exception SingularMatrixException if the matrix is singular
+   * @see #getLUDecomposition
+   */
+  public Factorization factorize(double epsilon)
+    throws SingularMatrixException {
+    return getLUDecomposition(epsilon);
+  }
+
+  /** Get the LU decomposition of the instance.
+   * <p>The decomposition is computed only once and cached until the
+   * instance is modified.</p>
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular (only used if the decomposition is not
+   * already available)
+   * @return band LU decomposition of the instance
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  public BandLUDecomposition getLUDecomposition(double epsilon)
+    throws SingularMatrixException {
+    BandLUDecomposition decomposition = lu;
+    if (decomposition == null) {
+      decomposition = new BandLUDecomposition(this, epsilon);
+      lu = decomposition;
+    }
+    return decomposition;
+  }
+
+  /** Reset the cached factorizations.
+   * This method must be called each time the matrix elements are modified.
+   */
+  protected void resetFactorizations() {
+    lu = null;
+  }
+
+  /** Get the index of an element in the band array.
+   * @param i row index
+   * @param j column index (must be inside the band)
+   * @return index of the element in the band array
+   */
+  private int bandIndex(int i, int j) {
+    return i * (lower + upper + 1) + j - i + lower;
+  }
+
+  double[] getDenseData() {
+    double[] dense = new double[rows * columns];
+    for (int i = 0; i < rows; ++i) {
+      for (int j = Math.max(0, i - lower); j < Math.min(rows, i + upper + 1); ++j) {
+        dense[i * columns + j] = getBandElement(i, j);
+      }
+    }
+    return dense;
+  }
+
+  protected NonNullRange getRangeForRow(int i) {
+    return new NonNullRange(Math.max(0, i - lower), Math.min(columns, i + upper + 1));
+  }
+
+  protected NonNullRange getRangeForColumn(int j) {
+    return new NonNullRange(Math.max(0, j - upper), Math.min(rows, j + lower + 1));
+  }
+
+  /** Lower bandwidth. */
+  private final int lower;
+
+  /** Upper bandwidth. */
+  private final int upper;
+
+  /** Band elements, row after row. */
+  private final double[] band;
+
+  /** Cached LU decomposition (null if not computed yet). */
+  private volatile BandLUDecomposition lu;
+
+  private static final long serialVersionUID = -1893576028374491262L;
+
+}
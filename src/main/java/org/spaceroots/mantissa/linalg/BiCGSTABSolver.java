@@ -0,0 +1,117 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class implements the preconditioned BiCGSTAB method.
+
+ * <p>The BiConjugate Gradient STABilized method of H. A. van der Vorst
+ * solves general non-symetrical systems with short recurrences, using
+ * two operator applications and two preconditioner applications per
+ * iteration. It may break down (for example when the operator is
+ * singular), in which case a {@link SingularMatrixException} is
+ * thrown.</p>
+
+ * @see ConjugateGradientSolver
+ * @see GMRESSolver
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class BiCGSTABSolver
+  extends IterativeSolver {
+
+  /** Simple constructor.
+   * @param maxIterations maximal number of iterations allowed
+   * @param relativeTolerance convergence threshold on the residual
+   * norm, relative to the norm of the right hand side
+   * @param absoluteTolerance convergence threshold on the residual norm
+   */
+  public BiCGSTABSolver(int maxIterations,
+                        double relativeTolerance,
+                        double absoluteTolerance) {
+    super(maxIterations, relativeTolerance, absoluteTolerance);
+  }
+
+  protected void iterate(LinearOperator a, LinearOperator m,
+                         double[] b, double[] x, double threshold)
+    throws SingularMatrixException, ConvergenceException {
+
+    int n = b.length;
+    double[] r     = new double[n];
+    double[] rHat  = new double[n];
+    double[] p     = new double[n];
+    double[] v     = new double[n];
+    double[] pHat  = new double[n];
+    double[] s     = new double[n];
+    double[] sHat  = new double[n];
+    double[] t     = new double[n];
+
+    residual(a, b, x, r);
+    residualNorm = norm(r);
+    if (residualNorm <= threshold) {
+      return;
+    }
+    System.arraycopy(r, 0, rHat, 0, n);
+
+    double rho   = 1.0;
+    double alpha = 1.0;
+    double omega = 1.0;
+    while (true) {
+
+      startIteration();
+
+      double rhoNew = dot(rHat, r);
+      if (rhoNew == 0) {
+        throw new SingularMatrixException();
+      }
+      double beta = (rhoNew / rho) * (alpha / omega);
+      for (int i = 0; i < n; ++i) {
+        p[i] = r[i] + beta * (p[i] - omega * v[i]);
+      }
+      m.apply(p, pHat);
+      a.apply(pHat, v);
+      double rHatV = dot(rHat, v);
+      if (rHatV == 0) {
+        throw new SingularMatrixException();
+      }
+      alpha = rhoNew / rHatV;
+      for (int i = 0; i < n; ++i) {
+        s[i] = r[i] - alpha * v[i];
+      }
+
+      residualNorm = norm(s);
+      if (residualNorm <= threshold) {
+        // early exit with half a step
+        for (int i = 0; i < n; ++i) {
+          x[i] += alpha * pHat[i];
+        }
+        return;
+      }
+
+      m.apply(s, sHat);
+      a.apply(sHat, t);
+      double tt = dot(t, t);
+      if (tt == 0) {
+        throw new SingularMatrixException();
+      }
+      omega = dot(t, s) / tt;
+      for (int i = 0; i < n; ++i) {
+        x[i] += alpha * pHat[i] + omega * sHat[i];
+        r[i]  = s[i] - omega * t[i];
+      }
+
+      residualNorm = norm(r);
+      if (residualNorm <= threshold) {
+        return;
+      }
+      if (omega == 0) {
+        throw new SingularMatrixException();
+      }
+      rho = rhoNew;
+
+    }
+
+  }
+
+  private static final long serialVersionUID = -6158312240695132587L;
+
+}
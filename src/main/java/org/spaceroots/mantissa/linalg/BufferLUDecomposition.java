@@ -0,0 +1,228 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.nio.DoubleBuffer;
+
+/** This class implements LU decompositions of square buffer matrices.
+
+ * <p>The decomposition is computed using Gaussian elimination with
+ * partial pivoting, exactly like {@link LUDecomposition}, but the
+ * packed factors are stored in a {@link BufferMatrix} and are
+ * processed row by row, so only a few rows need to be in the heap at
+ * any time. The elimination of the rows below the pivot at each step
+ * is split between several threads when the {@link
+ * Matrix#setParallelMode parallel mode} of the package is enabled.</p>
+
+ * <p>The factors can either be stored in a new buffer matrix or
+ * overwrite the decomposed matrix itself, which avoids doubling the
+ * memory (or disk) footprint for very large mapped matrices.</p>
+
+ * <p>Once built, a decomposition is never modified: it can be used to
+ * solve as many linear systems as needed without recomputing
+ * anything, and shared between threads like any other {@link
+ * Factorization} (when the factors overwrite the decomposed matrix,
+ * this matrix must not be used anymore).</p>
+
+ * @see BufferMatrix
+ * @see Factorization
+ * @see LUDecomposition
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class BufferLUDecomposition
+  implements Factorization {
+
+  /** Simple constructor.
+   * Build the decomposition of a matrix, without modifying it.
+   * @param m matrix to decompose
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular
+   * @exception SingularMatrixException if the matrix is singular
+   * @exception IllegalArgumentException if the matrix is not square
+   */
+  public BufferLUDecomposition(BufferMatrix m, double epsilon)
+    throws SingularMatrixException {
+    this(m, epsilon, false);
+  }
+
+  /** Simple constructor.
+   * Build the decomposition of a matrix.
+   * @param m matrix to decompose
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular
+   * @param inPlace if true, the factors overwrite the elements of m,
+   * which must not be used as a matrix afterwards (it is garbage if
+   * the matrix is singular)
+   * @exception SingularMatrixException if the matrix is singular
+   * @exception IllegalArgumentException if the matrix is not square
+   */
+  public BufferLUDecomposition(BufferMatrix m, double epsilon, boolean inPlace)
+    throws SingularMatrixException {
+
+    if (m.getRows() != m.getColumns()) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    order = m.getRows();
+    lu    = inPlace ? m : new BufferMatrix(m, m.getResultStorage());
+    swaps = new int[order];
+
+    final int            n     = order;
+    final DoubleBuffer[] views = lu.getViews();
+    final double[]       rowK  = new double[n];
+    final double[]       tmp   = new double[n];
+
+    boolean even = true;
+    for (int k = 0; k < n; ++k) {
+
+      // find the maximal element in the column
+      int iMax = lu.findColumnPivot(views, k, k);
+      lu.getRow(views, iMax, 0, n, rowK, 0);
+      if (Math.abs(rowK[k]) < epsilon) {
+        throw new SingularMatrixException();
+      }
+
+      // exchange the rows to have a large enough diagonal element
+      swaps[k] = iMax;
+      if (iMax != k) {
+        lu.getRow(views, k, 0, n, tmp, 0);
+        lu.setRow(views, iMax, 0, n, tmp, 0);
+        lu.setRow(views, k, 0, n, rowK, 0);
+        even = ! even;
+      }
+
+      // compute the contribution of the row to the triangular factors
+      final int    kk  = k;
+      final double inv = 1.0 / rowK[k];
+      RowsTask.run(new RowsTask.Kernel() {
+          public void compute(int iStart, int iEnd) {
+            DoubleBuffer[] rowsViews = lu.getViews();
+            double[]       rowI      = new double[n - kk];
+            for (int i = kk + 1 + iStart; i < kk + 1 + iEnd; ++i) {
+              lu.getRow(rowsViews, i, kk, n - kk, rowI, 0);
+              double factor = inv * rowI[0];
+
+              // lower triangular factor
+              rowI[0] = factor;
+
+              // upper triangular factor
+              for (int j = 1; j < n - kk; ++j) {
+                rowI[j] -= factor * rowK[kk + j];
+              }
+
+              lu.setRow(rowsViews, i, kk, n - kk, rowI, 0);
+            }
+          }
+        }, n - k - 1, ((long) (n - k - 1)) * (n - k));
+
+    }
+
+    evenPermutations = even;
+
+  }
+
+  /** Get the order of the decomposed matrix.
+   * @return order of the decomposed matrix
+   */
+  public int getOrder() {
+    return order;
+  }
+
+  /** Get the determinant of the decomposed matrix.
+   * @return determinant of the decomposed matrix
+   */
+  public double getDeterminant() {
+    double determinant = evenPermutations ? 1.0 : -1.0;
+    for (int i = 0; i < order; ++i) {
+      determinant *= lu.getElement(i, i);
+    }
+    return determinant;
+  }
+
+  /** Solve the <tt>A.x = b</tt> equation for one right hand side.
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, double[] x) {
+    solve(b, 1, x);
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation for several right hand sides.
+   * <p>The B and X matrices are n rows by <code>nRhs</code> columns
+   * matrices stored row after row in one dimensional arrays, like
+   * the elements of {@link Matrix} instances. The factors are read
+   * twice (once for each triangular solve) regardless of the number
+   * of right hand sides.</p>
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param nRhs number of right hand sides (i.e. columns of B)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, int nRhs, double[] x) {
+
+    // validity check
+    if (nRhs <= 0 || b.length < order * nRhs || x.length < order * nRhs) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    if (x != b) {
+      System.arraycopy(b, 0, x, 0, order * nRhs);
+    }
+
+    // apply the rows exchanges to the second member
+    for (int k = 0; k < order; ++k) {
+      if (swaps[k] != k) {
+        for (int indexK = k * nRhs, indexS = swaps[k] * nRhs, j = 0;
+             j < nRhs;
+             ++j, ++indexK, ++indexS) {
+          double tmp = x[indexK];
+          x[indexK]  = x[indexS];
+          x[indexS]  = tmp;
+        }
+      }
+    }
+
+    try {
+      // the pivots have already been checked, no exception can occur
+      lu.substitute(x, nRhs, x, true, true, 0.0);
+      lu.substitute(x, nRhs, x, false, false, 0.0);
+    } catch (SingularMatrixException e) {
+      throw new RuntimeException("internal error");
+    }
+
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation.
+   * @param b second term of the equation
+   * @return a new matrix X such that <tt>A.X = B</tt>
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix solve(Matrix b) {
+    if (b.getRows() != order) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    double[] bData = b.getDenseData();
+    double[] x = new double[bData.length];
+    solve(bData, b.getColumns(), x);
+    return MatrixFactory.buildMatrix(order, b.getColumns(), x);
+  }
+
+  /** Order of the decomposed matrix. */
+  private final int order;
+
+  /** Packed L and U factors (row after row, with permuted rows). */
+  private final BufferMatrix lu;
+
+  /** Row exchanged with row k at step k of the elimination. */
+  private final int[] swaps;
+
+  /** Parity of the permutation. */
+  private final boolean evenPermutations;
+
+  private static final long serialVersionUID = -2245883025190722918L;
+
+}
@@ -0,0 +1,723 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/** This class represents matrices stored in NIO buffers.
+
+ * <p>The other matrix classes store their elements in a single
+ * <code>double</code> array, which limits them to 2<sup>31</sup>
+ * elements and puts all elements under the control of the garbage
+ * collector. This class stores the elements row after row in {@link
+ * DoubleBuffer} instances instead, each buffer holding a whole number
+ * of rows. The buffers can be allocated in the heap ({@link #HEAP}),
+ * outside of the heap ({@link #DIRECT}) or be mapped from a file
+ * ({@link #MAPPED}). Mapped matrices can be larger than the physical
+ * memory, they are loaded on demand by the operating system and they
+ * can be shared between several processes without copying. Mapped
+ * files contain the elements row after row in little endian byte
+ * order, without any header.</p>
+
+ * <p>Elements are processed by whole rows, so all operations (addition,
+ * multiplication, transposition, {@link BufferLUDecomposition LU
+ * decomposition}, triangular solves) need only a few rows in the heap
+ * at any time. Their results are stored in new buffer matrices, using
+ * the heap if the instance uses the heap and direct buffers
+ * otherwise. The parallel mode of the package (see {@link
+ * Matrix#setParallelMode}) is supported. Mixing buffer matrices with
+ * other matrices is possible, the other operands are then converted
+ * to dense arrays.</p>
+
+ * <p>Mapped matrices are serialized as direct matrices, i.e. the
+ * elements are serialized, not the file.</p>
+
+ * @see MatrixFactory#buildBufferMatrix
+ * @see MatrixFactory#mapMatrix
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class BufferMatrix
+  extends Matrix {
+
+  /** Storage identifier for heap buffers. */
+  public static final int HEAP = 0;
+
+  /** Storage identifier for direct buffers. */
+  public static final int DIRECT = 1;
+
+  /** Storage identifier for buffers mapped from a file. */
+  public static final int MAPPED = 2;
+
+  /** Simple constructor.
+   * Build a matrix with null elements.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   * @param storage storage to use, must be either {@link #HEAP} or
+   * {@link #DIRECT}
+   * @exception IllegalArgumentException if the storage is not
+   * supported or if the dimensions are invalid
+   */
+  public BufferMatrix(int rows, int columns, int storage) {
+    this(rows, columns, storage, CHUNK_ELEMENTS);
+  }
+
+  /** Simple constructor.
+   * Build a matrix with null elements and buffers of specified size.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   * @param storage storage to use, must be either {@link #HEAP} or
+   * {@link #DIRECT}
+   * @param chunkElements maximal number of elements per buffer
+   * @exception IllegalArgumentException if the storage is not
+   * supported or if the dimensions are invalid
+   */
+  BufferMatrix(int rows, int columns, int storage, int chunkElements) {
+    super(rows, columns, null);
+    if (storage != HEAP && storage != DIRECT) {
+      throw new IllegalArgumentException("unsupported storage " + storage);
+    }
+    this.storage      = storage;
+    this.rowsPerChunk = computeRowsPerChunk(columns, chunkElements);
+    allocate();
+  }
+
+  /** Simple constructor.
+   * Build a matrix mapped from a file. If the file is mapped in read
+   * write mode, it is extended as needed and the changes of the matrix
+   * elements are written to the file.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   * @param channel channel of the file (it may be closed once the
+   * matrix has been built)
+   * @param position position of the first element in the file (in bytes)
+   * @param readOnly if true, the file is mapped in read only mode and
+   * any attempt to modify the matrix triggers a {@link
+   * java.nio.ReadOnlyBufferException}
+   * @exception IOException if the file cannot be mapped
+   * @exception IllegalArgumentException if the dimensions are invalid
+   */
+  public BufferMatrix(int rows, int columns, FileChannel channel,
+                      long position, boolean readOnly)
+    throws IOException {
+    this(rows, columns, channel, position, readOnly, CHUNK_ELEMENTS);
+  }
+
+  /** Simple constructor.
+   * Build a matrix mapped from a file with buffers of specified size.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   * @param channel channel of the file
+   * @param position position of the first element in the file (in bytes)
+   * @param readOnly if true, the file is mapped in read only mode
+   * @param chunkElements maximal number of elements per buffer
+   * @exception IOException if the file cannot be mapped
+   * @exception IllegalArgumentException if the dimensions are invalid
+   */
+  BufferMatrix(int rows, int columns, FileChannel channel,
+               long position, boolean readOnly, int chunkElements)
+    throws IOException {
+
+    super(rows, columns, null);
+    storage      = MAPPED;
+    rowsPerChunk = computeRowsPerChunk(columns, chunkElements);
+
+    FileChannel.MapMode mode = readOnly
+                             ? FileChannel.MapMode.READ_ONLY
+                             : FileChannel.MapMode.READ_WRITE;
+    chunks = new DoubleBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+    for (int c = 0; c < chunks.length; ++c) {
+      int  chunkRows = Math.min(rowsPerChunk, rows - c * rowsPerChunk);
+      long offset    = position + 8l * c * rowsPerChunk * columns;
+      ByteBuffer bytes = channel.map(mode, offset, 8l * chunkRows * columns);
+      chunks[c] = bytes.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+  }
+
+  /** Copy constructor.
+   * @param m matrix to copy
+   * @param storage storage to use, must be either {@link #HEAP} or
+   * {@link #DIRECT}
+   * @exception IllegalArgumentException if the storage is not supported
+   */
+  public BufferMatrix(Matrix m, int storage) {
+    this(m.rows, m.columns, storage);
+    DoubleBuffer[] views  = getViews();
+    DoubleBuffer[] mViews = getViews(m);
+    double[]       mDense = (mViews == null) ? m.getDenseData() : null;
+    double[]       row    = new double[columns];
+    for (int i = 0; i < rows; ++i) {
+      readRow(m, mViews, mDense, i, row, 0);
+      setRow(views, i, 0, columns, row, 0);
+    }
+  }
+
+  public Matrix duplicate() {
+    return new BufferMatrix(this, getResultStorage());
+  }
+
+  /** Get the storage used by the matrix.
+   * @return storage used, one of {@link #HEAP}, {@link #DIRECT} or
+   * {@link #MAPPED}
+   */
+  public int getStorage() {
+    return storage;
+  }
+
+  public double getElement(int i, int j) {
+    if (i < 0 || i >= rows || j < 0 || j >= columns) {
+      throw new IllegalArgumentException("cannot get element ("
+                                         + i + ", " + j + ") from a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+    return chunks[i / rowsPerChunk].get((i % rowsPerChunk) * columns + j);
+  }
+
+  public void setElement(int i, int j, double value) {
+    if (i < 0 || i >= rows || j < 0 || j >= columns) {
+      throw new IllegalArgumentException("cannot set element ("
+                                         + i + ", " + j + ") in a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+    chunks[i / rowsPerChunk].put((i % rowsPerChunk) * columns + j, value);
+  }
+
+  public Matrix add(Matrix m) {
+
+    // validity check
+    if ((rows != m.rows) || (columns != m.columns)) {
+      throw new IllegalArgumentException("cannot add a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix to a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    return combine(m, 1.0);
+
+  }
+
+  public Matrix sub(Matrix m) {
+
+    // validity check
+    if ((rows != m.rows) || (columns != m.columns)) {
+      throw new IllegalArgumentException("cannot substract a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix from a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    return combine(m, -1.0);
+
+  }
+
+  /** Add or substract a matrix to the instance.
+   * @param m matrix to add or substract
+   * @param factor factor of m (1.0 for addition, -1.0 for substraction)
+   * @return a new matrix containing the result
+   */
+  private Matrix combine(final Matrix m, final double factor) {
+
+    final BufferMatrix result = new BufferMatrix(rows, columns, getResultStorage());
+    final double[]     mDense = (m instanceof BufferMatrix) ? null : m.getDenseData();
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          DoubleBuffer[] views  = getViews();
+          DoubleBuffer[] mViews = getViews(m);
+          DoubleBuffer[] rViews = result.getViews();
+          double[] row  = new double[columns];
+          double[] mRow = new double[columns];
+          for (int i = iStart; i < iEnd; ++i) {
+            getRow(views, i, 0, columns, row, 0);
+            readRow(m, mViews, mDense, i, mRow, 0);
+            for (int j = 0; j < columns; ++j) {
+              row[j] += factor * mRow[j];
+            }
+            result.setRow(rViews, i, 0, columns, row, 0);
+          }
+        }
+      }, rows, ((long) rows) * columns);
+
+    return result;
+
+  }
+
+  public Matrix mul(Matrix m) {
+
+    // validity check
+    if (columns != m.rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix");
+    }
+
+    return multiply(this, m, getResultStorage());
+
+  }
+
+  Matrix preMultiply(Matrix a) {
+    return multiply(a, this, getResultStorage());
+  }
+
+  /** Multiply two matrices, one of them at least being a buffer matrix.
+   * <p>The rows of the result are computed by blocks small enough to
+   * stay in the heap. When the right operand is not a buffer matrix,
+   * the blocks are computed by the tiled kernel of the base class.</p>
+   * @param a left operand
+   * @param b right operand
+   * @param storage storage to use for the result
+   * @return a new matrix containing a.b
+   */
+  private static BufferMatrix multiply(final Matrix a, final Matrix b,
+                                       int storage) {
+
+    final int          n      = a.columns;
+    final int          p      = b.columns;
+    final BufferMatrix result = new BufferMatrix(a.rows, p, storage);
+    final double[]     aDense = (a instanceof BufferMatrix) ? null : a.getDenseData();
+    final double[]     bDense = (b instanceof BufferMatrix) ? null : b.getDenseData();
+    final int          block  = Math.max(1, Math.min(a.rows,
+                                                     BLOCK_ELEMENTS / Math.max(n, p)));
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int blockStart, int blockEnd) {
+          DoubleBuffer[] aViews = getViews(a);
+          DoubleBuffer[] bViews = getViews(b);
+          DoubleBuffer[] rViews = result.getViews();
+          double[] aRows = new double[block * n];
+          double[] cRows = new double[block * p];
+          double[] bRow  = (bDense == null) ? new double[p] : null;
+          for (int blk = blockStart; blk < blockEnd; ++blk) {
+
+            int iStart = blk * block;
+            int count  = Math.min(block, a.rows - iStart);
+            for (int i = 0; i < count; ++i) {
+              readRow(a, aViews, aDense, iStart + i, aRows, i * n);
+            }
+            for (int index = 0; index < count * p; ++index) {
+              cRows[index] = 0.0;
+            }
+
+            if (bDense != null) {
+              multiplyFull(1.0, aRows, bDense, cRows, n, p, 0, count);
+            } else {
+              // the rows of b are read only once per block
+              for (int k = 0; k < n; ++k) {
+                readRow(b, bViews, null, k, bRow, 0);
+                for (int i = 0; i < count; ++i) {
+                  double aik = aRows[i * n + k];
+                  for (int c0 = i * p, j = 0; j < p; ++j) {
+                    cRows[c0 + j] += aik * bRow[j];
+                  }
+                }
+              }
+            }
+
+            for (int i = 0; i < count; ++i) {
+              result.setRow(rViews, iStart + i, 0, p, cRows, i * p);
+            }
+
+          }
+        }
+      }, (a.rows + block - 1) / block, ((long) a.rows) * n * p);
+
+    return result;
+
+  }
+
+  public void apply(final double[] x, final double[] y) {
+
+    // validity check
+    if (x.length != columns || y.length != rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + x.length + " elements vector");
+    }
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          DoubleBuffer[] views = getViews();
+          double[]       row   = new double[columns];
+          for (int i = iStart; i < iEnd; ++i) {
+            getRow(views, i, 0, columns, row, 0);
+            double sum = 0;
+            for (int j = 0; j < columns; ++j) {
+              sum += row[j] * x[j];
+            }
+            y[i] = sum;
+          }
+        }
+      }, rows, ((long) rows) * columns);
+
+  }
+
+  public void selfMul(double a) {
+    DoubleBuffer[] views = getViews();
+    double[]       row   = new double[columns];
+    for (int i = 0; i < rows; ++i) {
+      getRow(views, i, 0, columns, row, 0);
+      for (int j = 0; j < columns; ++j) {
+        row[j] *= a;
+      }
+      setRow(views, i, 0, columns, row, 0);
+    }
+  }
+
+  public Matrix getTranspose() {
+
+    final BufferMatrix result = new BufferMatrix(columns, rows, getResultStorage());
+    final int          block  = Math.max(1, Math.min(columns, BLOCK_ELEMENTS / rows));
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int blockStart, int blockEnd) {
+          DoubleBuffer[] views  = getViews();
+          DoubleBuffer[] rViews = result.getViews();
+          double[] tRows = new double[block * rows];
+          for (int blk = blockStart; blk < blockEnd; ++blk) {
+            // the rows of the result are the columns of the instance
+            int jStart = blk * block;
+            int count  = Math.min(block, columns - jStart);
+            for (int i = 0; i < rows; ++i) {
+              getRow(views, i, jStart, count, tRows, i * count);
+            }
+            for (int j = 0; j < count; ++j) {
+              for (int i = 0; i < rows; ++i) {
+                result.put(rViews, jStart + j, i, tRows[i * count + j]);
+              }
+            }
+          }
+        }
+      }, (columns + block - 1) / block, ((long) rows) * columns);
+
+    return result;
+
+  }
+
+  /** Solve the <tt>L.X = B</tt> equation, the instance being lower triangular.
+   * <p>Only the lower triangular part of the instance (including the
+   * diagonal) is used, the elements above the diagonal are ignored.
+   * The B and X matrices are stored row after row in one dimensional
+   * arrays, like in {@link LUDecomposition#solve(double[], int, double[])}.</p>
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param nRhs number of right hand sides (i.e. columns of B)
+   * @param x array where to store the solution (may be b itself)
+   * @param epsilon threshold on diagonal elements below which the
+   * matrix is considered singular
+   * @exception SingularMatrixException if the matrix is singular
+   * @exception IllegalArgumentException if the matrix is not square
+   * or if the arrays are too small
+   */
+  public void solveLowerTriangular(double[] b, int nRhs, double[] x,
+                                   double epsilon)
+    throws SingularMatrixException {
+    substitute(b, nRhs, x, true, false, epsilon);
+  }
+
+  /** Solve the <tt>U.X = B</tt> equation, the instance being upper triangular.
+   * <p>Only the upper triangular part of the instance (including the
+   * diagonal) is used, the elements below the diagonal are ignored.
+   * The B and X matrices are stored row after row in one dimensional
+   * arrays, like in {@link LUDecomposition#solve(double[], int, double[])}.</p>
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param nRhs number of right hand sides (i.e. columns of B)
+   * @param x array where to store the solution (may be b itself)
+   * @param epsilon threshold on diagonal elements below which the
+   * matrix is considered singular
+   * @exception SingularMatrixException if the matrix is singular
+   * @exception IllegalArgumentException if the matrix is not square
+   * or if the arrays are too small
+   */
+  public void solveUpperTriangular(double[] b, int nRhs, double[] x,
+                                   double epsilon)
+    throws SingularMatrixException {
+    substitute(b, nRhs, x, false, false, epsilon);
+  }
+
+  /** Perform a forward or backward substitution.
+   * @param b second term of the equation
+   * @param nRhs number of right hand sides (i.e. columns of B)
+   * @param x array where to store the solution (may be b itself)
+   * @param lower if true, the lower triangular part of the instance
+   * is used, otherwise the upper triangular part is used
+   * @param unit if true, the diagonal elements are considered to be
+   * 1.0 regardless of their stored values
+   * @param epsilon threshold on diagonal elements below which the
+   * matrix is considered singular
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  void substitute(double[] b, int nRhs, double[] x,
+                  boolean lower, boolean unit, double epsilon)
+    throws SingularMatrixException {
+
+    // validity check
+    if (rows != columns || nRhs <= 0
+        || b.length < rows * nRhs || x.length < rows * nRhs) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    if (x != b) {
+      System.arraycopy(b, 0, x, 0, rows * nRhs);
+    }
+
+    DoubleBuffer[] views = getViews();
+    double[]       row   = new double[columns];
+    for (int l = 0; l < rows; ++l) {
+      int i      = lower ? l : (rows - 1 - l);
+      int kStart = lower ? 0 : (i + 1);
+      int kEnd   = lower ? i : columns;
+      getRow(views, i, 0, columns, row, 0);
+      int xI = i * nRhs;
+      for (int k = kStart; k < kEnd; ++k) {
+        double tik = row[k];
+        int xK = k * nRhs;
+        for (int j = 0; j < nRhs; ++j) {
+          x[xI + j] -= tik * x[xK + j];
+        }
+      }
+      if (! unit) {
+        if (Math.abs(row[i]) < epsilon) {
+          throw new SingularMatrixException();
+        }
+        double inv = 1.0 / row[i];
+        for (int j = 0; j < nRhs; ++j) {
+          x[xI + j] *= inv;
+        }
+      }
+    }
+
+  }
+
+  double[] getDenseData() {
+    if (((long) rows) * columns > Integer.MAX_VALUE) {
+      throw new IllegalStateException("cannot build a dense array for a "
+                                      + rows + 'x' + columns + " matrix");
+    }
+    double[] dense = new double[rows * columns];
+    DoubleBuffer[] views = getViews();
+    for (int i = 0; i < rows; ++i) {
+      getRow(views, i, 0, columns, dense, i * columns);
+    }
+    return dense;
+  }
+
+  protected NonNullRange getRangeForRow(int i) {
+    return new NonNullRange(0, columns);
+  }
+
+  protected NonNullRange getRangeForColumn(int j) {
+    return new NonNullRange(0, rows);
+  }
+
+  /** Get the storage to use for the results of operations.
+   * @return {@link #HEAP} if the instance uses heap buffers,
+   * {@link #DIRECT} otherwise
+   */
+  int getResultStorage() {
+    return (storage == HEAP) ? HEAP : DIRECT;
+  }
+
+  /** Get private views of the buffers.
+   * <p>Bulk transfers change the position of the buffers, so each
+   * thread must use its own views.</p>
+   * @return new views sharing the elements of the buffers
+   */
+  DoubleBuffer[] getViews() {
+    DoubleBuffer[] views = new DoubleBuffer[chunks.length];
+    for (int c = 0; c < chunks.length; ++c) {
+      views[c] = chunks[c].duplicate();
+    }
+    return views;
+  }
+
+  /** Get private views of the buffers of any matrix.
+   * @param m matrix to consider
+   * @return new views if m is a buffer matrix, null otherwise
+   */
+  static DoubleBuffer[] getViews(Matrix m) {
+    return (m instanceof BufferMatrix) ? ((BufferMatrix) m).getViews() : null;
+  }
+
+  /** Read a part of a row.
+   * @param views private views of the buffers
+   * @param i index of the row
+   * @param jStart index of the first column to read
+   * @param length number of elements to read
+   * @param dst array where to put the elements
+   * @param offset index of the first element in dst
+   */
+  void getRow(DoubleBuffer[] views, int i, int jStart, int length,
+              double[] dst, int offset) {
+    DoubleBuffer chunk = views[i / rowsPerChunk];
+    chunk.position((i % rowsPerChunk) * columns + jStart);
+    chunk.get(dst, offset, length);
+  }
+
+  /** Write a part of a row.
+   * @param views private views of the buffers
+   * @param i index of the row
+   * @param jStart index of the first column to write
+   * @param length number of elements to write
+   * @param src array containing the elements
+   * @param offset index of the first element in src
+   */
+  void setRow(DoubleBuffer[] views, int i, int jStart, int length,
+              double[] src, int offset) {
+    DoubleBuffer chunk = views[i / rowsPerChunk];
+    chunk.position((i % rowsPerChunk) * columns + jStart);
+    chunk.put(src, offset, length);
+  }
+
+  /** Find the element with the largest absolute value in a part of a column.
+   * <p>The column is scanned directly in the buffers, without
+   * checking the indices of each element.</p>
+   * @param views private views of the buffers
+   * @param j index of the column
+   * @param iStart index of the first row to consider
+   * @return index of the row holding the largest element in absolute
+   * value between rows iStart (included) and the last row (included)
+   */
+  int findColumnPivot(DoubleBuffer[] views, int j, int iStart) {
+    int    iMax   = iStart;
+    double maxElt = -1.0;
+    for (int c = iStart / rowsPerChunk, r = iStart % rowsPerChunk;
+         c < views.length;
+         ++c, r = 0) {
+      DoubleBuffer chunk = views[c];
+      int          end   = chunk.capacity();
+      for (int index = r * columns + j; index < end; index += columns) {
+        double curElt = Math.abs(chunk.get(index));
+        if (curElt > maxElt) {
+          maxElt = curElt;
+          iMax   = c * rowsPerChunk + index / columns;
+        }
+      }
+    }
+    return iMax;
+  }
+
+  /** Write one element without checking the indices.
+   * @param views private views of the buffers
+   * @param i row index
+   * @param j column index
+   * @param value value of the element
+   */
+  private void put(DoubleBuffer[] views, int i, int j, double value) {
+    views[i / rowsPerChunk].put((i % rowsPerChunk) * columns + j, value);
+  }
+
+  /** Read a complete row of any matrix.
+   * @param m matrix to read
+   * @param views private views of m buffers (null if m is not a
+   * buffer matrix)
+   * @param dense dense data of m (null if m is a buffer matrix)
+   * @param i index of the row
+   * @param dst array where to put the elements
+   * @param offset index of the first element in dst
+   */
+  static void readRow(Matrix m, DoubleBuffer[] views, double[] dense,
+                      int i, double[] dst, int offset) {
+    if (views != null) {
+      ((BufferMatrix) m).getRow(views, i, 0, m.columns, dst, offset);
+    } else {
+      System.arraycopy(dense, i * m.columns, dst, offset, m.columns);
+    }
+  }
+
+  /** Compute the number of rows stored in each buffer.
+   * @param columns number of columns of the matrix
+   * @param chunkElements maximal number of elements per buffer
+   * @return number of rows per buffer
+   * @exception IllegalArgumentException if one row does not fit in a buffer
+   */
+  private static int computeRowsPerChunk(int columns, int chunkElements) {
+    if (columns > chunkElements) {
+      throw new IllegalArgumentException("cannot store rows of " + columns
+                                         + " elements in a buffer");
+    }
+    return chunkElements / columns;
+  }
+
+  /** Allocate the buffers. */
+  private void allocate() {
+    chunks = new DoubleBuffer[(rows + rowsPerChunk - 1) / rowsPerChunk];
+    for (int c = 0; c < chunks.length; ++c) {
+      int size = Math.min(rowsPerChunk, rows - c * rowsPerChunk) * columns;
+      if (storage == HEAP) {
+        chunks[c] = DoubleBuffer.allocate(size);
+      } else {
+        chunks[c] = ByteBuffer.allocateDirect(8 * size).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+      }
+    }
+  }
+
+  /** Serialize the matrix.
+   * @param out stream where to write the matrix
+   * @exception IOException if the matrix cannot be written
+   */
+  private void writeObject(ObjectOutputStream out)
+    throws IOException {
+    out.defaultWriteObject();
+    DoubleBuffer[] views = getViews();
+    double[]       row   = new double[columns];
+    for (int i = 0; i < rows; ++i) {
+      getRow(views, i, 0, columns, row, 0);
+      for (int j = 0; j < columns; ++j) {
+        out.writeDouble(row[j]);
+      }
+    }
+  }
+
+  /** Deserialize the matrix.
+   * @param in stream from which to read the matrix
+   * @exception IOException if the matrix cannot be read
+   * @exception ClassNotFoundException if a class cannot be found
+   */
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    storage = getResultStorage();
+    allocate();
+    DoubleBuffer[] views = getViews();
+    double[]       row   = new double[columns];
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < columns; ++j) {
+        row[j] = in.readDouble();
+      }
+      setRow(views, i, 0, columns, row, 0);
+    }
+  }
+
+  /** Maximal number of elements per buffer (1 GiB buffers). */
+  private static final int CHUNK_ELEMENTS = 1 << 27;
+
+  /** Number of elements of the rows blocks processed in the heap. */
+  private static final int BLOCK_ELEMENTS = 1 << 16;
+
+  /** Storage used. */
+  private int storage;
+
+  /** Number of rows stored in each buffer. */
+  private int rowsPerChunk;
+
+  /** Buffers holding the elements, row after row. */
+  private transient DoubleBuffer[] chunks;
+
+  private static final long serialVersionUID = 2709814336210783954L;
+
+}
@@ -0,0 +1,364 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class implements Cholesky decompositions of symetrical
+ * positive definite matrices.
+
+ * <p>The decomposition of a symetrical positive definite matrix A is
+ * A = L.L<sup>T</sup> where L is a lower triangular matrix with
+ * positive diagonal elements. It needs about half the operations of
+ * an LU decomposition and no pivoting.</p>
+
+ * <p>Only the lower triangle of L is stored, packed row after row in
+ * a one dimensional array of n(n+1)/2 elements (element (i, j) with
+ * j &lt;= i is at index i(i+1)/2 + j). The decomposition can be built
+ * either from a {@link SymetricalMatrix} or directly from the lower
+ * triangle of a symetrical matrix stored in the same packed way,
+ * which allows to handle large matrices without ever storing them
+ * in full form.</p>
+
+ * <p>Once built, a decomposition is never modified. Like {@link
+ * LUDecomposition}, the solve methods write their results into
+ * caller-supplied arrays, so repeated solves do not allocate
+ * memory.</p>
+
+ * @see SymetricalMatrix#getCholeskyDecomposition
+ * @see Factorization
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class CholeskyDecomposition
+  implements Factorization {
+
+  /** Simple constructor.
+   * Build the decomposition of a symetrical matrix.
+   * @param m symetrical matrix to decompose (only its lower
+   * triangle is used)
+   * @param epsilon threshold on the pivots (i.e. the squares of the
+   * diagonal elements of L) below which the matrix is considered not
+   * positive definite
+   * @exception NotPositiveDefiniteMatrixException if the matrix is
+   * not positive definite
+   */
+  public CholeskyDecomposition(SymetricalMatrix m, double epsilon)
+    throws NotPositiveDefiniteMatrixException {
+    this(m.getRows(), packLowerTriangle(m), epsilon);
+  }
+
+  /** Simple constructor.
+   * Build the decomposition of a symetrical matrix given by its
+   * packed lower triangle.
+   * @param order order of the matrix
+   * @param packedLower lower triangle of the matrix, stored row
+   * after row (element (i, j) with j &lt;= i at index i(i+1)/2 + j),
+   * this array is not modified
+   * @param epsilon threshold on the pivots (i.e. the squares of the
+   * diagonal elements of L) below which the matrix is considered not
+   * positive definite
+   * @exception NotPositiveDefiniteMatrixException if the matrix is
+   * not positive definite
+   * @exception IllegalArgumentException if the array size does not
+   * match the order
+   */
+  public CholeskyDecomposition(int order, double[] packedLower,
+                               double epsilon)
+    throws NotPositiveDefiniteMatrixException {
+
+    // validity check
+    if (order <= 0 || packedLower.length != order * (order + 1) / 2) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    this.order = order;
+    l = (double[]) packedLower.clone();
+
+    for (int i = 0; i < order; ++i) {
+      int rowI = i * (i + 1) / 2;
+      for (int j = 0; j <= i; ++j) {
+        int rowJ = j * (j + 1) / 2;
+
+        // remove the contribution of the already computed columns
+        double value = l[rowI + j];
+        for (int k = 0; k < j; ++k) {
+          value -= l[rowI + k] * l[rowJ + k];
+        }
+
+        if (j < i) {
+          l[rowI + j] = value / l[rowJ + j];
+        } else {
+          if (! (value > 0) || value < epsilon) {
+            throw new NotPositiveDefiniteMatrixException();
+          }
+          l[rowI + i] = Math.sqrt(value);
+        }
+
+      }
+    }
+
+  }
+
+  /** Simple constructor.
+   * Build a decomposition from an already computed factor.
+   * @param l packed lower triangular factor (it is not copied)
+   * @param order order of the matrix
+   */
+  private CholeskyDecomposition(double[] l, int order) {
+    this.order = order;
+    this.l     = l;
+  }
+
+  /** Pack the lower triangle of a symetrical matrix.
+   * @param m symetrical matrix
+   * @return lower triangle of the matrix, stored row after row
+   */
+  private static double[] packLowerTriangle(SymetricalMatrix m) {
+    int n = m.getRows();
+    double[] packed = new double[n * (n + 1) / 2];
+    for (int i = 0, index = 0; i < n; index += i + 1, ++i) {
+      System.arraycopy(m.data, i * n, packed, index, i + 1);
+    }
+    return packed;
+  }
+
+  /** Get the order of the decomposed matrix.
+   * @return order of the decomposed matrix
+   */
+  public int getOrder() {
+    return order;
+  }
+
+  /** Get the lower triangular factor L.
+   * @return a new matrix containing L
+   */
+  public LowerTriangularMatrix getL() {
+    LowerTriangularMatrix lower = new LowerTriangularMatrix(order);
+    for (int i = 0, index = 0; i < order; index += i + 1, ++i) {
+      System.arraycopy(l, index, lower.data, i * order, i + 1);
+    }
+    return lower;
+  }
+
+  /** Get the packed lower triangular factor L.
+   * @return a new array containing the lower triangle of L, stored
+   * row after row (element (i, j) with j &lt;= i at index i(i+1)/2 + j)
+   */
+  public double[] getPackedL() {
+    return (double[]) l.clone();
+  }
+
+  /** Get the determinant of the decomposed matrix.
+   * @return determinant of the decomposed matrix
+   */
+  public double getDeterminant() {
+    double determinant = 1.0;
+    for (int i = 0, index = 0; i < order; ++i, index += i + 1) {
+      determinant *= l[index] * l[index];
+    }
+    return determinant;
+  }
+
+  /** Get the inverse of the decomposed matrix.
+   * <p>The inverse is computed as L<sup>-T</sup>.L<sup>-1</sup>, taking
+   * advantage of the triangular and symetrical structures.</p>
+   * @return a new symetrical matrix containing the inverse
+   */
+  public SymetricalMatrix getInverse() {
+
+    // invert L in place (in a packed copy)
+    double[] m = (double[]) l.clone();
+    for (int j = 0; j < order; ++j) {
+      int rowJ = j * (j + 1) / 2;
+      m[rowJ + j] = 1.0 / l[rowJ + j];
+      for (int i = j + 1; i < order; ++i) {
+        int rowI = i * (i + 1) / 2;
+        double value = 0.0;
+        for (int k = j, rowK = rowJ; k < i; rowK += ++k) {
+          value -= l[rowI + k] * m[rowK + j];
+        }
+        m[rowI + j] = value / l[rowI + i];
+      }
+    }
+
+    // compute L^-T.L^-1, using only the lower triangle of L^-1
+    SymetricalMatrix inverse = new SymetricalMatrix(order);
+    double[] data = inverse.data;
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        double value = 0.0;
+        for (int k = i, rowK = i * (i + 1) / 2; k < order; rowK += ++k) {
+          value += m[rowK + i] * m[rowK + j];
+        }
+        data[i * order + j] = value;
+        data[j * order + i] = value;
+      }
+    }
+
+    return inverse;
+
+  }
+
+  /** Compute the decomposition of a rank one modification of the matrix.
+   * <p>This method computes the Cholesky decomposition of the matrix
+   * <tt>A + w.a.a<sup>T</sup></tt> (which is the matrix {@link
+   * SymetricalMatrix#selfAddWAAt selfAddWAAt} would build) directly
+   * from the factor of A, using a sequence of rotations. This needs
+   * O(n<sup>2</sup>) operations instead of the O(n<sup>3</sup>) of a
+   * new decomposition, so sequential estimators can add (w &gt; 0,
+   * update) or remove (w &lt; 0, downdate) one measurement at a
+   * time. The instance is not modified, a new decomposition is
+   * returned.</p>
+   * <p>Updates are always numerically stable. Downdates are stable as
+   * long as the resulting matrix is reasonably well conditioned, if
+   * it is not positive definite anymore an exception is thrown.</p>
+   * @param w multiplicative factor (weight)
+   * @param a base vector of the modification
+   * @param epsilon threshold on the pivots (i.e. the squares of the
+   * diagonal elements of the new factor) below which the matrix is
+   * considered not positive definite
+   * @return decomposition of <tt>A + w.a.a<sup>T</sup></tt>
+   * @exception NotPositiveDefiniteMatrixException if the modified
+   * matrix is not positive definite (this can only happen for
+   * downdates)
+   * @exception IllegalArgumentException if the vector size does not
+   * match the order
+   */
+  public CholeskyDecomposition update(double w, double[] a, double epsilon)
+    throws NotPositiveDefiniteMatrixException {
+
+    // validity check
+    if (a.length != order) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    double[] updated = (double[]) l.clone();
+    double   sign    = (w < 0) ? -1.0 : 1.0;
+    double[] x       = new double[order];
+    VectorKernels.scale(Math.sqrt(Math.abs(w)), a, 0, x, 0, order);
+
+    for (int k = 0, rowK = 0; k < order; rowK += ++k) {
+
+      // rotate the diagonal element
+      double lkk = updated[rowK + k];
+      double xk  = x[k];
+      double r2  = lkk * lkk + sign * xk * xk;
+      if (! (r2 > 0) || r2 < epsilon) {
+        throw new NotPositiveDefiniteMatrixException();
+      }
+      double r = Math.sqrt(r2);
+      double c = r / lkk;
+      double s = xk / lkk;
+      updated[rowK + k] = r;
+
+      // apply the rotation to the rest of the column
+      for (int i = k + 1, rowI = rowK + k + 1; i < order; rowI += ++i) {
+        double lik = (updated[rowI + k] + sign * s * x[i]) / c;
+        updated[rowI + k] = lik;
+        x[i] = c * x[i] - s * lik;
+      }
+
+    }
+
+    return new CholeskyDecomposition(updated, order);
+
+  }
+
+  /** Solve the <tt>A.x = b</tt> equation for one right hand side.
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, double[] x) {
+    solve(b, 1, x);
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation for several right hand sides.
+   * <p>The B and X matrices are n rows by <code>nRhs</code> columns
+   * matrices stored row after row in one dimensional arrays, like
+   * the elements of {@link Matrix} instances.</p>
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param nRhs number of right hand sides (i.e. columns of B)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, int nRhs, double[] x) {
+
+    // validity check
+    if (nRhs <= 0 || b.length < order * nRhs || x.length < order * nRhs) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    if (x != b) {
+      System.arraycopy(b, 0, x, 0, order * nRhs);
+    }
+
+    for (int jBlock = 0; jBlock < nRhs; jBlock += BLOCK_SIZE) {
+      int jEnd = Math.min(jBlock + BLOCK_SIZE, nRhs);
+
+      // forward substitution: L.Y = B
+      for (int i = 0, rowI = 0; i < order; rowI += ++i) {
+        int xI = i * nRhs;
+        for (int k = 0; k < i; ++k) {
+          double lik = l[rowI + k];
+          int xK = k * nRhs;
+          for (int j = jBlock; j < jEnd; ++j) {
+            x[xI + j] -= lik * x[xK + j];
+          }
+        }
+        double inv = 1.0 / l[rowI + i];
+        for (int j = jBlock; j < jEnd; ++j) {
+          x[xI + j] *= inv;
+        }
+      }
+
+      // backward substitution: L^T.X = Y, using the rows of L
+      // (i.e. the columns of L^T) to keep contiguous accesses
+      for (int k = order - 1; k >= 0; --k) {
+        int rowK = k * (k + 1) / 2;
+        int xK   = k * nRhs;
+        double inv = 1.0 / l[rowK + k];
+        for (int j = jBlock; j < jEnd; ++j) {
+          x[xK + j] *= inv;
+        }
+        for (int i = 0; i < k; ++i) {
+          double lki = l[rowK + i];
+          int xI = i * nRhs;
+          for (int j = jBlock; j < jEnd; ++j) {
+            x[xI + j] -= lki * x[xK + j];
+          }
+        }
+      }
+
+    }
+
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation.
+   * @param b second term of the equation
+   * @return a new matrix X such that <tt>A.X = B</tt>
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix solve(Matrix b) {
+    if (b.getRows() != order) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    double[] bData = b.getDenseData();
+    double[] x = new double[bData.length];
+    solve(bData, b.getColumns(), x);
+    return MatrixFactory.buildMatrix(order, b.getColumns(), x);
+  }
+
+  /** Number of right hand sides columns processed together. */
+  private static final int BLOCK_SIZE = 256;
+
+  /** Order of the decomposed matrix. */
+  private final int order;
+
+  /** Packed lower triangular factor. */
+  private final double[] l;
+
+  private static final long serialVersionUID = 8537062215730619282L;
+
+}
@@ -0,0 +1,89 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class implements the preconditioned conjugate gradient method.
+
+ * <p>The conjugate gradient method solves systems whose operator is
+ * symetrical and positive definite, using one operator application
+ * and one preconditioner application per iteration. The
+ * preconditioner must also be symetrical and positive definite. If
+ * the operator is found not to be positive definite during the
+ * iterations, the method breaks down and a {@link
+ * SingularMatrixException} is thrown.</p>
+
+ * @see BiCGSTABSolver
+ * @see GMRESSolver
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class ConjugateGradientSolver
+  extends IterativeSolver {
+
+  /** Simple constructor.
+   * @param maxIterations maximal number of iterations allowed
+   * @param relativeTolerance convergence threshold on the residual
+   * norm, relative to the norm of the right hand side
+   * @param absoluteTolerance convergence threshold on the residual norm
+   */
+  public ConjugateGradientSolver(int maxIterations,
+                                 double relativeTolerance,
+                                 double absoluteTolerance) {
+    super(maxIterations, relativeTolerance, absoluteTolerance);
+  }
+
+  protected void iterate(LinearOperator a, LinearOperator m,
+                         double[] b, double[] x, double threshold)
+    throws SingularMatrixException, ConvergenceException {
+
+    int n = b.length;
+    double[] r = new double[n];
+    double[] z = new double[n];
+    double[] p = new double[n];
+    double[] q = new double[n];
+
+    residual(a, b, x, r);
+    residualNorm = norm(r);
+    if (residualNorm <= threshold) {
+      return;
+    }
+    m.apply(r, z);
+    System.arraycopy(z, 0, p, 0, n);
+    double rz = dot(r, z);
+
+    while (true) {
+
+      startIteration();
+
+      a.apply(p, q);
+      double pq = dot(p, q);
+      if (!(pq > 0) || !(rz > 0)) {
+        // the operator or the preconditioner is not positive definite
+        throw new SingularMatrixException();
+      }
+
+      double alpha = rz / pq;
+      for (int i = 0; i < n; ++i) {
+        x[i] += alpha * p[i];
+        r[i] -= alpha * q[i];
+      }
+      residualNorm = norm(r);
+      if (residualNorm <= threshold) {
+        return;
+      }
+
+      m.apply(r, z);
+      double rzNew = dot(r, z);
+      double beta  = rzNew / rz;
+      for (int i = 0; i < n; ++i) {
+        p[i] = z[i] + beta * p[i];
+      }
+      rz = rzNew;
+
+    }
+
+  }
+
+  private static final long serialVersionUID = 3845302715961822394L;
+
+}
@@ -0,0 +1,30 @@
+package org.spaceroots.mantissa.linalg;
+
+import org.spaceroots.mantissa.MantissaException;
+
+/** This class represent exceptions thrown by iterative solvers
+ * and iterative decompositions when they do not converge.
+
+ * @see IterativeSolver
+ * @see JacobiEigenDecomposition
+ * @see SingularValueDecomposition
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class ConvergenceException
+  extends MantissaException {
+
+  /** Simple constructor.
+   * Build an exception with a default message
+   * @param maxIterations maximal number of iterations allowed
+   */
+  public ConvergenceException(int maxIterations) {
+    super("unable to converge in {0} iterations",
+          new String[] { Integer.toString(maxIterations) });
+  }
+
+  private static final long serialVersionUID = -3285114719720383957L;
+
+}
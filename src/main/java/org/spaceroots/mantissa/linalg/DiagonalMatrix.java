@@ -85,10 +85,20 @@ public class DiagonalMatrix
 
   }
 
+  public SquareMatrix getExponential(double t) {
+    DiagonalMatrix exp = new DiagonalMatrix(columns);
+    for (int index = 0; index < columns * columns; index += columns + 1) {
+      exp.data[index] = Math.exp(t * data[index]);
+    }
+    return exp;
+  }
+
   public Matrix solve(Matrix b, double epsilon)
     throws SingularMatrixException {
 
-    Matrix result = b.duplicate();
+    // b may not store its elements densely
+    double[]      bData  = b.getDenseData();
+    GeneralMatrix result = new GeneralMatrix(b.rows, b.columns);
 
     for (int i = 0; i < columns; ++i) {
       double diag = data[i * (columns + 1)];
@@ -97,11 +107,11 @@ public class DiagonalMatrix
       }
       double inv = 1.0 / diag;
 
-      NonNullRange range = result.getRangeForRow(i);
+      NonNullRange range = b.getRangeForRow(i);
       for (int index = i * b.columns + range.begin;
            index < i * b.columns + range.end;
            ++index) {
-        result.data[index] = inv * b.data[index];
+        result.data[index] = inv * bData[index];
       }
     }
 
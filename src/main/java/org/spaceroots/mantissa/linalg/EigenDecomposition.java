@@ -0,0 +1,415 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+
+/** This class implements eigen decompositions of symetrical matrices.
+
+ * <p>The decomposition of a symetrical matrix A is A = V.D.V<sup>T</sup>
+ * where D is a diagonal matrix containing the real eigenvalues of A
+ * and V is an orthogonal matrix whose columns are the corresponding
+ * eigenvectors. The eigenvalues are sorted in increasing order.</p>
+
+ * <p>This class reduces the matrix to tridiagonal form using
+ * Householder transformations, then computes the eigenvalues of the
+ * tridiagonal matrix using the implicit QL algorithm (this is the
+ * approach of the EISPACK tred2 and tql2 routines). When only the
+ * eigenvalues are needed, the transformations are not accumulated,
+ * which saves most of the computation. The {@link
+ * JacobiEigenDecomposition} class provides another algorithm which
+ * can take advantage of several processors for large matrices.</p>
+
+ * <p>A typical use is the principal axes analysis of covariance
+ * matrices, as provided for example by {@link
+ * org.spaceroots.mantissa.random.VectorialSampleStatistics#getCovarianceMatrix
+ * VectorialSampleStatistics.getCovarianceMatrix}.</p>
+
+ * @see JacobiEigenDecomposition
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class EigenDecomposition
+  implements Serializable {
+
+  /** Simple constructor.
+   * Build the decomposition of a symetrical matrix.
+   * @param m symetrical matrix to decompose
+   * @param computeVectors if true, eigenvectors are computed in
+   * addition to the eigenvalues
+   */
+  public EigenDecomposition(SymetricalMatrix m, boolean computeVectors) {
+
+    this(m.getRows(), computeVectors);
+
+    double[][] v = new double[order][order];
+    for (int i = 0; i < order; ++i) {
+      System.arraycopy(m.data, i * order, v[i], 0, order);
+    }
+    double[] e = new double[order];
+
+    tridiagonalize(v, e);
+    if (computeVectors) {
+      // transpose the transformation so that the rotations
+      // of the QL iterations are applied on contiguous rows
+      for (int i = 0; i < order; ++i) {
+        for (int j = 0; j < order; ++j) {
+          vectors[i * order + j] = v[j][i];
+        }
+      }
+    }
+    diagonalize(e);
+    sort();
+
+  }
+
+  /** Build an empty decomposition.
+   * This constructor is used by derived classes that use another
+   * algorithm to fill up the eigenvalues and eigenvectors arrays.
+   * @param order order of the decomposed matrix
+   * @param computeVectors if true, the eigenvectors array is allocated
+   */
+  protected EigenDecomposition(int order, boolean computeVectors) {
+    this.order = order;
+    values     = new double[order];
+    vectors    = computeVectors ? new double[order * order] : null;
+  }
+
+  /** Reduce the matrix to tridiagonal form.
+   * <p>On exit, the diagonal of the tridiagonal matrix is stored
+   * in {@link #values}, the subdiagonal is stored in e (from index 1)
+   * and the orthogonal transformation is stored in v, if the
+   * eigenvectors are needed.</p>
+   * @param v matrix to reduce (row after row), replaced by the
+   * orthogonal transformation
+   * @param e array where to store the subdiagonal
+   */
+  private void tridiagonalize(double[][] v, double[] e) {
+
+    double[] d = values;
+    for (int j = 0; j < order; ++j) {
+      d[j] = v[order - 1][j];
+    }
+
+    // Householder reduction, from the last row to the first one
+    for (int i = order - 1; i > 0; --i) {
+
+      // scale to avoid under/overflow
+      double scale = 0.0;
+      double h     = 0.0;
+      for (int k = 0; k < i; ++k) {
+        scale += Math.abs(d[k]);
+      }
+
+      if (scale == 0.0) {
+        e[i] = d[i - 1];
+        for (int j = 0; j < i; ++j) {
+          d[j]    = v[i - 1][j];
+          v[i][j] = 0.0;
+          v[j][i] = 0.0;
+        }
+      } else {
+
+        // generate the Householder vector
+        for (int k = 0; k < i; ++k) {
+          d[k] /= scale;
+          h    += d[k] * d[k];
+        }
+        double f = d[i - 1];
+        double g = Math.sqrt(h);
+        if (f > 0) {
+          g = -g;
+        }
+        e[i]     = scale * g;
+        h        = h - f * g;
+        d[i - 1] = f - g;
+        for (int j = 0; j < i; ++j) {
+          e[j] = 0.0;
+        }
+
+        // apply the similarity transformation to the remaining columns
+        for (int j = 0; j < i; ++j) {
+          f       = d[j];
+          v[j][i] = f;
+          g       = e[j] + v[j][j] * f;
+          for (int k = j + 1; k <= i - 1; ++k) {
+            g    += v[k][j] * d[k];
+            e[k] += v[k][j] * f;
+          }
+          e[j] = g;
+        }
+        f = 0.0;
+        for (int j = 0; j < i; ++j) {
+          e[j] /= h;
+          f    += e[j] * d[j];
+        }
+        double hh = f / (h + h);
+        for (int j = 0; j < i; ++j) {
+          e[j] -= hh * d[j];
+        }
+        for (int j = 0; j < i; ++j) {
+          f = d[j];
+          g = e[j];
+          for (int k = j; k <= i - 1; ++k) {
+            v[k][j] -= f * e[k] + g * d[k];
+          }
+          d[j]    = v[i - 1][j];
+          v[i][j] = 0.0;
+        }
+
+      }
+      d[i] = h;
+    }
+
+    if (vectors == null) {
+      // the diagonal of the tridiagonal matrix is left in v
+      for (int j = 0; j < order; ++j) {
+        d[j] = v[j][j];
+      }
+      e[0] = 0.0;
+      return;
+    }
+
+    // accumulate the transformations
+    for (int i = 0; i < order - 1; ++i) {
+      v[order - 1][i] = v[i][i];
+      v[i][i] = 1.0;
+      double h = d[i + 1];
+      if (h != 0.0) {
+        for (int k = 0; k <= i; ++k) {
+          d[k] = v[k][i + 1] / h;
+        }
+        for (int j = 0; j <= i; ++j) {
+          double g = 0.0;
+          for (int k = 0; k <= i; ++k) {
+            g += v[k][i + 1] * v[k][j];
+          }
+          for (int k = 0; k <= i; ++k) {
+            v[k][j] -= g * d[k];
+          }
+        }
+      }
+      for (int k = 0; k <= i; ++k) {
+        v[k][i + 1] = 0.0;
+      }
+    }
+    for (int j = 0; j < order; ++j) {
+      d[j] = v[order - 1][j];
+      v[order - 1][j] = 0.0;
+    }
+    v[order - 1][order - 1] = 1.0;
+    e[0] = 0.0;
+
+  }
+
+  /** Diagonalize the tridiagonal matrix using the implicit QL algorithm.
+   * <p>On entry, the diagonal is in {@link #values} and the
+   * subdiagonal in e (from index 1). If eigenvectors are needed, the
+   * transpose of the tridiagonalizing transformation is in {@link
+   * #vectors} and its rows are replaced by the eigenvectors.</p>
+   * @param e subdiagonal of the tridiagonal matrix (destroyed)
+   */
+  private void diagonalize(double[] e) {
+
+    double[] d = values;
+    for (int i = 1; i < order; ++i) {
+      e[i - 1] = e[i];
+    }
+    e[order - 1] = 0.0;
+
+    double f    = 0.0;
+    double tst1 = 0.0;
+    for (int l = 0; l < order; ++l) {
+
+      // find a small subdiagonal element
+      tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+      int m = l;
+      while (m < order - 1 && Math.abs(e[m]) > EPSILON * tst1) {
+        ++m;
+      }
+
+      // if m == l, d[l] is already an eigenvalue, otherwise iterate
+      if (m > l) {
+        do {
+
+          // compute the implicit shift
+          double g = d[l];
+          double p = (d[l + 1] - g) / (2.0 * e[l]);
+          double r = Math.hypot(p, 1.0);
+          if (p < 0) {
+            r = -r;
+          }
+          d[l]       = e[l] / (p + r);
+          d[l + 1]   = e[l] * (p + r);
+          double dl1 = d[l + 1];
+          double h   = g - d[l];
+          for (int i = l + 2; i < order; ++i) {
+            d[i] -= h;
+          }
+          f += h;
+
+          // implicit QL transformation
+          p = d[m];
+          double c   = 1.0;
+          double c2  = c;
+          double c3  = c;
+          double el1 = e[l + 1];
+          double s   = 0.0;
+          double s2  = 0.0;
+          for (int i = m - 1; i >= l; --i) {
+            c3 = c2;
+            c2 = c;
+            s2 = s;
+            g  = c * e[i];
+            h  = c * p;
+            r  = Math.hypot(p, e[i]);
+            e[i + 1] = s * r;
+            s = e[i] / r;
+            c = p / r;
+            p = c * d[i] - s * g;
+            d[i + 1] = h + s * (c * g + s * d[i]);
+
+            // accumulate the transformation
+            if (vectors != null) {
+              int rowI  = i * order;
+              int rowI1 = rowI + order;
+              for (int k = 0; k < order; ++k) {
+                h = vectors[rowI1 + k];
+                vectors[rowI1 + k] = s * vectors[rowI + k] + c * h;
+                vectors[rowI + k]  = c * vectors[rowI + k] - s * h;
+              }
+            }
+          }
+          p    = -s * s2 * c3 * el1 * e[l] / dl1;
+          e[l] = s * p;
+          d[l] = c * p;
+
+        } while (Math.abs(e[l]) > EPSILON * tst1);
+      }
+      d[l] += f;
+      e[l]  = 0.0;
+
+    }
+
+  }
+
+  /** Sort the eigenvalues and eigenvectors in increasing order. */
+  protected void sort() {
+    for (int i = 0; i < order - 1; ++i) {
+      int    k = i;
+      double p = values[i];
+      for (int j = i + 1; j < order; ++j) {
+        if (values[j] < p) {
+          k = j;
+          p = values[j];
+        }
+      }
+      if (k != i) {
+        values[k] = values[i];
+        values[i] = p;
+        if (vectors != null) {
+          for (int j = 0, iI = i * order, iK = k * order; j < order; ++j, ++iI, ++iK) {
+            double tmp  = vectors[iI];
+            vectors[iI] = vectors[iK];
+            vectors[iK] = tmp;
+          }
+        }
+      }
+    }
+  }
+
+  /** Get the order of the decomposed matrix.
+   * @return order of the decomposed matrix
+   */
+  public int getOrder() {
+    return order;
+  }
+
+  /** Check if the eigenvectors are available.
+   * @return true if the eigenvectors have been computed
+   */
+  public boolean hasEigenvectors() {
+    return vectors != null;
+  }
+
+  /** Get the eigenvalues.
+   * @return a new array containing the eigenvalues in increasing order
+   */
+  public double[] getEigenvalues() {
+    return (double[]) values.clone();
+  }
+
+  /** Get one eigenvalue.
+   * @param i index of the eigenvalue (in increasing order)
+   * @return eigenvalue
+   */
+  public double getEigenvalue(int i) {
+    return values[i];
+  }
+
+  /** Get one eigenvector.
+   * @param i index of the eigenvector (corresponding to the eigenvalue
+   * with the same index)
+   * @return a new array containing the normalized eigenvector
+   * @exception IllegalStateException if the eigenvectors have not
+   * been computed
+   */
+  public double[] getEigenvector(int i) {
+    checkVectors();
+    double[] vector = new double[order];
+    System.arraycopy(vectors, i * order, vector, 0, order);
+    return vector;
+  }
+
+  /** Get the diagonal matrix D of the eigenvalues.
+   * @return a new diagonal matrix containing the eigenvalues
+   */
+  public DiagonalMatrix getD() {
+    DiagonalMatrix d = new DiagonalMatrix(order);
+    for (int i = 0; i < order; ++i) {
+      d.data[i * (order + 1)] = values[i];
+    }
+    return d;
+  }
+
+  /** Get the orthogonal matrix V of the eigenvectors.
+   * @return a new matrix whose columns are the eigenvectors
+   * @exception IllegalStateException if the eigenvectors have not
+   * been computed
+   */
+  public GeneralSquareMatrix getV() {
+    checkVectors();
+    GeneralSquareMatrix v = new GeneralSquareMatrix(order);
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j < order; ++j) {
+        v.data[i * order + j] = vectors[j * order + i];
+      }
+    }
+    return v;
+  }
+
+  /** Check the eigenvectors are available.
+   * @exception IllegalStateException if the eigenvectors have not
+   * been computed
+   */
+  private void checkVectors() {
+    if (vectors == null) {
+      throw new IllegalStateException("eigenvectors have not been computed");
+    }
+  }
+
+  /** Relative accuracy of double numbers. */
+  private static final double EPSILON = 0x1.0p-52;
+
+  /** Order of the decomposed matrix. */
+  protected final int order;
+
+  /** Eigenvalues. */
+  protected final double[] values;
+
+  /** Eigenvectors (row i contains eigenvector i), null if not computed. */
+  protected final double[] vectors;
+
+  private static final long serialVersionUID = -6240117213358614233L;
+
+}
@@ -0,0 +1,68 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+
+/** This interface represents immutable factorizations of square matrices.
+
+ * <p>A factorization is a snapshot of a matrix taken when it is
+ * built: it holds its own copy of the factors and is never modified
+ * afterwards, even if the matrix it comes from is changed later. All
+ * its methods only read the factors and write their results into
+ * caller-supplied arrays or new matrices, so a single factorization
+ * can be shared between as many threads as needed without any
+ * synchronization, for example to solve many independent systems
+ * with the same matrix in a worker pool.</p>
+
+ * <p>Factorizations are obtained from {@link
+ * SquareMatrix#factorize}, which selects the best algorithm for the
+ * matrix structure ({@link CholeskyDecomposition} for positive
+ * definite symetrical matrices, {@link BandLUDecomposition} for band
+ * matrices and {@link LUDecomposition} otherwise).</p>
+
+ * @see SquareMatrix#factorize
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public interface Factorization
+  extends Serializable {
+
+  /** Get the order of the factored matrix.
+   * @return order of the factored matrix
+   */
+  public int getOrder();
+
+  /** Get the determinant of the factored matrix.
+   * @return determinant of the factored matrix
+   */
+  public double getDeterminant();
+
+  /** Solve the <tt>A.x = b</tt> equation for one right hand side.
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, double[] x);
+
+  /** Solve the <tt>A.X = B</tt> equation for several right hand sides.
+   * <p>The B and X matrices are n rows by <code>nRhs</code> columns
+   * matrices stored row after row in one dimensional arrays, like
+   * the elements of {@link Matrix} instances.</p>
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param nRhs number of right hand sides (i.e. columns of B)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, int nRhs, double[] x);
+
+  /** Solve the <tt>A.X = B</tt> equation.
+   * @param b second term of the equation
+   * @return a new matrix X such that <tt>A.X = B</tt>
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix solve(Matrix b);
+
+}
@@ -0,0 +1,191 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+
+/** This class implements LU decompositions in single precision.
+
+ * <p>The decomposition is computed exactly like in {@link
+ * LUDecomposition} (Gaussian elimination with partial pivoting), but
+ * both the factors and the arithmetic are in single precision. The
+ * factorization is therefore about twice as fast for large matrices
+ * (it is limited by memory bandwidth), but the solutions are only
+ * accurate to about 7 digits. This decomposition is intended to be
+ * used by {@link MixedPrecisionSolver} which recovers double
+ * precision accuracy by iterative refinement.</p>
+
+ * <p>Once built, a decomposition is never modified: it can be used to
+ * solve as many linear systems as needed without recomputing
+ * anything.</p>
+
+ * @see LUDecomposition
+ * @see MixedPrecisionSolver
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class FloatLUDecomposition
+  implements Serializable {
+
+  /** Simple constructor.
+   * Build the decomposition of a matrix.
+   * @param m matrix to decompose (its elements are rounded to single
+   * precision if needed)
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular
+   * @exception SingularMatrixException if the matrix is singular (or
+   * if its single precision elimination overflows)
+   * @exception IllegalArgumentException if the matrix is not square
+   */
+  public FloatLUDecomposition(Matrix m, double epsilon)
+    throws SingularMatrixException {
+
+    if (m.getRows() != m.getColumns()) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    order = m.getRows();
+    swaps = new int[order];
+    lu    = new FloatMatrix(m).values;
+
+    boolean even = true;
+    for (int k = 0; k < order; ++k) {
+
+      // find the maximal element in the column
+      float maxElt = Math.abs(lu[k * order + k]);
+      int   iMax   = k;
+      for (int i = k + 1; i < order; ++i) {
+        float curElt = Math.abs(lu[i * order + k]);
+        if (curElt > maxElt) {
+          maxElt = curElt;
+          iMax   = i;
+        }
+      }
+
+      if (! (maxElt >= epsilon) || Float.isInfinite(maxElt)) {
+        throw new SingularMatrixException();
+      }
+
+      // exchange the rows to have a large enough diagonal element
+      swaps[k] = iMax;
+      if (iMax != k) {
+        for (int indexK = k * order, indexMax = iMax * order, j = 0;
+             j < order;
+             ++j, ++indexK, ++indexMax) {
+          float tmp    = lu[indexK];
+          lu[indexK]   = lu[indexMax];
+          lu[indexMax] = tmp;
+        }
+        even = ! even;
+      }
+
+      float inv = 1.0f / lu[k * order + k];
+
+      // compute the contribution of the row to the triangular factors
+      for (int i = k + 1; i < order; ++i) {
+        int   index1 = i * order + k;
+        int   index2 = k * order + k;
+        float factor = inv * lu[index1];
+
+        // lower triangular factor
+        lu[index1] = factor;
+
+        // upper triangular factor
+        for (int j = k + 1; j < order; ++j) {
+          lu[++index1] -= factor * lu[++index2];
+        }
+      }
+
+    }
+
+    evenPermutations = even;
+
+  }
+
+  /** Get the order of the decomposed matrix.
+   * @return order of the decomposed matrix
+   */
+  public int getOrder() {
+    return order;
+  }
+
+  /** Get the determinant of the decomposed matrix.
+   * @return determinant of the decomposed matrix (computed in double
+   * precision from the single precision factors)
+   */
+  public double getDeterminant() {
+    double determinant = evenPermutations ? 1.0 : -1.0;
+    for (int index = 0; index < lu.length; index += order + 1) {
+      determinant *= lu[index];
+    }
+    return determinant;
+  }
+
+  /** Solve the <tt>A.x = b</tt> equation.
+   * <p>The second member is rounded to single precision and the
+   * substitutions are performed in single precision.</p>
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, double[] x) {
+
+    // validity check
+    if (b.length < order || x.length < order) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    float[] y = new float[order];
+    for (int i = 0; i < order; ++i) {
+      y[i] = (float) b[i];
+    }
+
+    // apply the rows exchanges to the second member
+    for (int k = 0; k < order; ++k) {
+      if (swaps[k] != k) {
+        float tmp   = y[k];
+        y[k]        = y[swaps[k]];
+        y[swaps[k]] = tmp;
+      }
+    }
+
+    // forward substitution with the unit lower triangular factor
+    for (int i = 1; i < order; ++i) {
+      float sum = y[i];
+      for (int index = i * order, k = 0; k < i; ++k) {
+        sum -= lu[index++] * y[k];
+      }
+      y[i] = sum;
+    }
+
+    // backward substitution with the upper triangular factor
+    for (int i = order - 1; i >= 0; --i) {
+      float sum = y[i];
+      for (int index = i * (order + 1) + 1, k = i + 1; k < order; ++k) {
+        sum -= lu[index++] * y[k];
+      }
+      y[i] = sum / lu[i * (order + 1)];
+    }
+
+    for (int i = 0; i < order; ++i) {
+      x[i] = y[i];
+    }
+
+  }
+
+  /** Order of the decomposed matrix. */
+  private final int order;
+
+  /** Packed L and U factors (row after row, with permuted rows). */
+  private final float[] lu;
+
+  /** Row exchanged with row k at step k of the elimination. */
+  private final int[] swaps;
+
+  /** Parity of the permutation. */
+  private final boolean evenPermutations;
+
+  private static final long serialVersionUID = 6650916285263540818L;
+
+}
@@ -0,0 +1,200 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class represents general matrices stored in single precision.
+
+ * <p>The elements are stored as <code>float</code> numbers, which
+ * halves both the memory footprint and the memory bandwidth needed to
+ * read them, at the expense of accuracy: any value set into the
+ * matrix is rounded to the nearest single precision number. All
+ * computations are performed in double precision, the elements being
+ * converted on the fly.</p>
+
+ * <p>These matrices are mainly intended to hold large dense systems
+ * solved by a {@link MixedPrecisionSolver}, which factors them in
+ * single precision and recovers double precision accuracy by
+ * iterative refinement.</p>
+
+ * @see MixedPrecisionSolver
+ * @see FloatLUDecomposition
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class FloatMatrix
+  extends Matrix {
+
+  /** Simple constructor.
+   * Build a matrix with null elements.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   */
+  public FloatMatrix(int rows, int columns) {
+    super(rows, columns, null);
+    values = new float[rows * columns];
+  }
+
+  /** Simple constructor.
+   * Build a matrix with specified elements.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   * @param values table of the matrix elements (stored row after row)
+   * @exception IllegalArgumentException if the table size does not
+   * match the dimensions
+   */
+  public FloatMatrix(int rows, int columns, float[] values) {
+    super(rows, columns, null);
+    if (values.length != rows * columns) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    this.values = (float[]) values.clone();
+  }
+
+  /** Simple constructor.
+   * Build a single precision copy of a matrix.
+   * @param m matrix to copy (its elements are rounded to single precision)
+   */
+  public FloatMatrix(Matrix m) {
+    super(m.rows, m.columns, null);
+    if (m instanceof FloatMatrix) {
+      values = (float[]) ((FloatMatrix) m).values.clone();
+    } else {
+      double[] mData = m.getDenseData();
+      values = new float[mData.length];
+      for (int index = 0; index < mData.length; ++index) {
+        values[index] = (float) mData[index];
+      }
+    }
+  }
+
+  public Matrix duplicate() {
+    return new FloatMatrix(this);
+  }
+
+  public double getElement(int i, int j) {
+    if (i < 0 || i >= rows || j < 0 || j >= columns) {
+      throw new IllegalArgumentException("cannot get element ("
+                                         + i + ", " + j + ") from a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+    return values[i * columns + j];
+  }
+
+  public void setElement(int i, int j, double value) {
+    if (i < 0 || i >= rows || j < 0 || j >= columns) {
+      throw new IllegalArgumentException("cannot set element ("
+                                         + i + ", " + j + ") in a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+    values[i * columns + j] = (float) value;
+  }
+
+  /** Add a matrix to the instance.
+   * @param m matrix to add
+   * @return a new double precision matrix containing the result
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix add(Matrix m) {
+    GeneralMatrix result = widen();
+    result.selfAdd(m);
+    return result;
+  }
+
+  /** Substract a matrix from the instance.
+   * @param m matrix to substract
+   * @return a new double precision matrix containing the result
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix sub(Matrix m) {
+    GeneralMatrix result = widen();
+    result.selfSub(m);
+    return result;
+  }
+
+  /** Multiply the instance by a matrix.
+   * @param m matrix by which to multiply
+   * @return a new double precision matrix containing the result
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix mul(Matrix m) {
+    return widen().mul(m);
+  }
+
+  /** Build a double precision copy of the instance.
+   * <p>The elements are widened directly into the array of the new
+   * matrix, which is allocated only once.</p>
+   * @return a new double precision matrix with the same elements
+   */
+  private GeneralMatrix widen() {
+    GeneralMatrix widened = new GeneralMatrix(rows, columns);
+    double[]      dense   = widened.data;
+    for (int index = 0; index < values.length; ++index) {
+      dense[index] = values[index];
+    }
+    return widened;
+  }
+
+  public void apply(final double[] x, final double[] y) {
+
+    // validity check
+    if (x.length != columns || y.length != rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + x.length + " elements vector");
+    }
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            double sum   = 0;
+            int    index = i * columns;
+            for (int j = 0; j < columns; ++j) {
+              sum += values[index++] * x[j];
+            }
+            y[i] = sum;
+          }
+        }
+      }, rows, ((long) rows) * columns);
+
+  }
+
+  public void selfMul(double a) {
+    for (int index = 0; index < values.length; ++index) {
+      values[index] = (float) (a * values[index]);
+    }
+  }
+
+  /** Compute the transpose of the instance.
+   * @return a new single precision matrix containing the result
+   */
+  public Matrix getTranspose() {
+    float[] transposed = new float[values.length];
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0, index = i; j < columns; ++j, index += rows) {
+        transposed[index] = values[i * columns + j];
+      }
+    }
+    return new FloatMatrix(columns, rows, transposed);
+  }
+
+  double[] getDenseData() {
+    return widen().data;
+  }
+
+  protected NonNullRange getRangeForRow(int i) {
+    return new NonNullRange(0, columns);
+  }
+
+  protected NonNullRange getRangeForColumn(int j) {
+    return new NonNullRange(0, rows);
+  }
+
+  /** Elements of the matrix (stored row after row). */
+  final float[] values;
+
+  private static final long serialVersionUID = 4187240592287714052L;
+
+}
@@ -0,0 +1,167 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.Arrays;
+
+/** This class implements the restarted GMRES method.
+
+ * <p>The Generalized Minimal RESidual method of Y. Saad and
+ * M. H. Schultz solves general non-symetrical systems by minimizing
+ * the residual norm over a Krylov subspace built using modified
+ * Gram-Schmidt orthogonalization. As the memory needed grows with the
+ * subspace dimension, the method is restarted from the current
+ * estimate after a fixed number of iterations. The preconditioner is
+ * applied on the right, so the residual norm monitored is the one of
+ * the original system. Each iteration uses one operator application
+ * and one preconditioner application.</p>
+
+ * @see ConjugateGradientSolver
+ * @see BiCGSTABSolver
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class GMRESSolver
+  extends IterativeSolver {
+
+  /** Simple constructor.
+   * @param maxIterations maximal number of iterations allowed
+   * @param relativeTolerance convergence threshold on the residual
+   * norm, relative to the norm of the right hand side
+   * @param absoluteTolerance convergence threshold on the residual norm
+   * @param restart number of iterations after which the method is
+   * restarted (i.e. maximal dimension of the Krylov subspace)
+   * @exception IllegalArgumentException if restart is not strictly
+   * positive
+   */
+  public GMRESSolver(int maxIterations,
+                     double relativeTolerance,
+                     double absoluteTolerance,
+                     int restart) {
+    super(maxIterations, relativeTolerance, absoluteTolerance);
+    if (restart <= 0) {
+      throw new IllegalArgumentException("invalid restart value " + restart);
+    }
+    this.restart = restart;
+  }
+
+  protected void iterate(LinearOperator a, LinearOperator m,
+                         double[] b, double[] x, double threshold)
+    throws SingularMatrixException, ConvergenceException {
+
+    int n = b.length;
+    int k = Math.min(restart, n);
+    double[][] v = new double[k + 1][n];
+    double[][] h = new double[k + 1][k];
+    double[]   g = new double[k + 1];
+    double[]   c = new double[k];
+    double[]   s = new double[k];
+    double[]   z = new double[n];
+    double[]   y = new double[k];
+
+    while (true) {
+
+      // start (or restart) from the current estimate
+      residual(a, b, x, v[0]);
+      double beta = norm(v[0]);
+      residualNorm = beta;
+      if (beta <= threshold) {
+        return;
+      }
+      for (int i = 0; i < n; ++i) {
+        v[0][i] /= beta;
+      }
+      Arrays.fill(g, 0.0);
+      g[0] = beta;
+
+      // build the Krylov subspace
+      int dimension = 0;
+      boolean done  = false;
+      while (!done && dimension < k) {
+
+        startIteration();
+        int j = dimension++;
+
+        m.apply(v[j], z);
+        a.apply(z, v[j + 1]);
+        double[] w = v[j + 1];
+
+        // modified Gram-Schmidt orthogonalization
+        for (int i = 0; i <= j; ++i) {
+          double hij = dot(w, v[i]);
+          h[i][j] = hij;
+          double[] vi = v[i];
+          for (int l = 0; l < n; ++l) {
+            w[l] -= hij * vi[l];
+          }
+        }
+        double hNext = norm(w);
+
+        // apply the previous rotations to the new column
+        for (int i = 0; i < j; ++i) {
+          double tmp  = c[i] * h[i][j] + s[i] * h[i + 1][j];
+          h[i + 1][j] = c[i] * h[i + 1][j] - s[i] * h[i][j];
+          h[i][j]     = tmp;
+        }
+
+        // compute a new rotation to annihilate the subdiagonal element
+        double r = Math.hypot(h[j][j], hNext);
+        if (r == 0) {
+          throw new SingularMatrixException();
+        }
+        c[j]     = h[j][j] / r;
+        s[j]     = hNext / r;
+        h[j][j]  = r;
+        g[j + 1] = -s[j] * g[j];
+        g[j]     =  c[j] * g[j];
+
+        residualNorm = Math.abs(g[j + 1]);
+        if (residualNorm <= threshold || hNext == 0) {
+          // convergence or exact solution in the subspace
+          done = true;
+        } else {
+          for (int l = 0; l < n; ++l) {
+            w[l] /= hNext;
+          }
+        }
+
+      }
+
+      // solve the triangular least squares problem
+      for (int i = dimension - 1; i >= 0; --i) {
+        double sum = g[i];
+        for (int l = i + 1; l < dimension; ++l) {
+          sum -= h[i][l] * y[l];
+        }
+        y[i] = sum / h[i][i];
+      }
+
+      // update the estimate
+      Arrays.fill(z, 0.0);
+      for (int i = 0; i < dimension; ++i) {
+        double yi = y[i];
+        double[] vi = v[i];
+        for (int l = 0; l < n; ++l) {
+          z[l] += yi * vi[l];
+        }
+      }
+      double[] correction = v[k];
+      m.apply(z, correction);
+      for (int l = 0; l < n; ++l) {
+        x[l] += correction[l];
+      }
+
+      if (done) {
+        return;
+      }
+
+    }
+
+  }
+
+  /** Number of iterations between restarts. */
+  private final int restart;
+
+  private static final long serialVersionUID = -2408113670935625012L;
+
+}
@@ -60,8 +60,9 @@ public class GeneralMatrix
     }
 
     // addition loop
+    double[] mData = m.getDenseData();
     for (int index = 0; index < rows * columns; ++index) {
-      data[index] += m.data[index];
+      data[index] += mData[index];
     }
 
   }
@@ -83,12 +84,48 @@ public class GeneralMatrix
     }
 
     // substraction loop
+    double[] mData = m.getDenseData();
     for (int index = 0; index < rows * columns; ++index) {
-      data[index] -= m.data[index];
+      data[index] -= mData[index];
     }
 
   }
 
+  /** Compute the QR decomposition of the instance.
+   * @param columnPivoting if true, columns are permuted to reveal
+   * the rank of the matrix
+   * @return a new QR decomposition of the instance
+   */
+  public QRDecomposition getQRDecomposition(boolean columnPivoting) {
+    return new QRDecomposition(this, columnPivoting);
+  }
+
+  /** Solve the linear least squares problem min ||A.X - B||.
+   * <p>The problem is solved using a QR decomposition of the
+   * instance with column pivoting, so rank deficient matrices are
+   * handled by setting to zero the unknowns corresponding to the
+   * columns beyond the numerical rank.</p>
+   * @param b second term of the equation
+   * @param epsilon threshold on the diagonal elements of R below
+   * which the matrix is considered rank deficient
+   * @return a matrix X minimizing ||A.X - B||, where A is the instance
+   * @exception IllegalArgumentException if there is a dimension
+   * mismatch or if the instance has less rows than columns
+   * @see QRDecomposition#solveLeastSquares(Matrix, double)
+   */
+  public Matrix solveLeastSquares(Matrix b, double epsilon) {
+    try {
+      return getQRDecomposition(true).solveLeastSquares(b, epsilon);
+    } catch (SingularMatrixException e) {
+      // this cannot happen with column pivoting
+      throw new RuntimeException("internal error");
+    }
+  }
+
+  boolean isGeneral() {
+    return true;
+  }
+
   protected NonNullRange getRangeForRow(int i) {
     return new NonNullRange(0, columns);
   }
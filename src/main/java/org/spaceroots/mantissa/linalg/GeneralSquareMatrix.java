@@ -17,10 +17,7 @@ public class GeneralSquareMatrix
    */
   public GeneralSquareMatrix(int order) {
     super(order);
-    permutations     = null;
-    evenPermutations = true;
-    lower            = null;
-    upper            = null;
+    lu = null;
   }
 
   /** Simple constructor.
@@ -30,10 +27,7 @@ public class GeneralSquareMatrix
    */
   public GeneralSquareMatrix(int order, double[] data) {
     super(order, data);
-    permutations     = null;
-    evenPermutations = true;
-    lower            = null;
-    upper            = null;
+    lu = null;
   }
 
   /** Copy constructor.
@@ -42,17 +36,8 @@ public class GeneralSquareMatrix
   public GeneralSquareMatrix(GeneralSquareMatrix s) {
     super(s);
 
-    if (s.permutations != null) {
-      permutations     = (int[]) s.permutations.clone();
-      evenPermutations = s.evenPermutations;
-      lower            = new LowerTriangularMatrix(s.lower);
-      upper            = new UpperTriangularMatrix(s.upper);
-    } else {
-      permutations     = null;
-      evenPermutations = true;
-      lower            = null;
-      upper            = null;
-    }
+    // the decomposition is never modified, it can be shared
+    lu = s.lu;
 
   }
 
@@ -62,10 +47,7 @@ public class GeneralSquareMatrix
 
   public void setElement(int i, int j, double value) {
     super.setElement(i, j, value);
-    permutations     = null;
-    evenPermutations = true;
-    lower            = null;
-    upper            = null;
+    resetFactorizations();
   }
 
   /** Add a matrix to the instance.
@@ -85,9 +67,11 @@ public class GeneralSquareMatrix
     }
 
     // addition loop
+    double[] sData = s.getDenseData();
     for (int index = 0; index < rows * columns; ++index) {
-      data[index] += s.data[index];
+      data[index] += sData[index];
     }
+    resetFactorizations();
 
   }
 
@@ -108,18 +92,22 @@ public class GeneralSquareMatrix
     }
       
     // substraction loop
+    double[] sData = s.getDenseData();
     for (int index = 0; index < rows * columns; ++index) {
-      data[index] -= s.data[index];
+      data[index] -= sData[index];
     }
+    resetFactorizations();
+
+  }
 
+  public void selfMul(double a) {
+    super.selfMul(a);
+    resetFactorizations();
   }
 
   public double getDeterminant(double epsilon) {
     try {
-      if (permutations == null)
-        computeLUFactorization(epsilon);
-      double d = upper.getDeterminant(epsilon);
-      return evenPermutations ? d : -d;
+      return getLUDecomposition(epsilon).getDeterminant();
     } catch (SingularMatrixException e) {
       return 0.0;
     }
@@ -131,25 +119,62 @@ public class GeneralSquareMatrix
     if (b.getRows() != rows) {
       throw new IllegalArgumentException("dimension mismatch");
     }
+    return getLUDecomposition(epsilon).solve(b);
+  }
 
-    if (permutations == null) {
-      computeLUFactorization(epsilon);
-    }
+  /** Factorize the instance.
+   * <p>This method returns the cached LU decomposition of the
+   * instance, which is immutable and can therefore be shared between
+   * threads, instead of having each thread work on its own copy of
+   * the matrix.</p>
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular (only used if the decomposition is not
+   * already available)
+   * @return LU decomposition of the instance
+   * @exception SingularMatrixException if the matrix is singular
+   * @see #getLUDecomposition
+   */
+  public Factorization factorize(double epsilon)
+    throws SingularMatrixException {
+    return getLUDecomposition(epsilon);
+  }
 
-    // apply the permutations to the second member
-    double[] permData = new double[b.data.length];
-    int bCols = b.getColumns();
-    for (int i = 0; i < rows; ++i) {
-      NonNullRange range = b.getRangeForRow(permutations[i]);
-      for (int j = range.begin; j < range.end; ++j) {
-        permData[i * bCols + j] = b.data[permutations[i] * bCols + j];
-      }
+  /** Get the LU decomposition of the instance.
+   * <p>The decomposition is computed only once and cached until the
+   * instance is modified. It can be used directly to solve linear
+   * systems with many right hand sides or without allocating the
+   * result at each call. It is never modified, so it remains valid
+   * (as a snapshot of the matrix at the time it was computed) even
+   * if the instance is modified afterwards. If several threads
+   * request the decomposition at the same time before it has been
+   * cached, it may be computed more than once, but all threads get a
+   * complete and consistent decomposition.</p>
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular (only used if the decomposition is not
+   * already available)
+   * @return LU decomposition of the instance
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  public LUDecomposition getLUDecomposition(double epsilon)
+    throws SingularMatrixException {
+    LUDecomposition decomposition = lu;
+    if (decomposition == null) {
+      decomposition = new LUDecomposition(this, epsilon);
+      lu = decomposition;
     }
-    Matrix permB = MatrixFactory.buildMatrix(b.getRows(), bCols, permData);
+    return decomposition;
+  }
 
-    // solve the permuted system
-    return upper.solve(lower.solve(permB, epsilon), epsilon);
+  /** Reset the cached factorizations.
+   * This method must be called by derived classes each time they
+   * modify the matrix elements.
+   */
+  protected void resetFactorizations() {
+    lu = null;
+  }
 
+  boolean isGeneral() {
+    return true;
   }
 
   protected NonNullRange getRangeForRow(int i) {
@@ -160,99 +185,8 @@ public class GeneralSquareMatrix
     return new NonNullRange(0, rows);
   }
 
-  private void computeLUFactorization(double epsilon)
-    throws SingularMatrixException {
-    // build a working copy of the matrix data
-    double[] work = new double[rows * columns];
-    for (int index = 0; index < work.length; ++index) {
-      work[index] = data[index];
-    }
-
-    // initialize the permutations table to identity
-    permutations = new int[rows];
-    for (int i = 0; i < rows; ++i) {
-      permutations[i] = i;
-    }
-    evenPermutations = true;
-
-    for (int k = 0; k < rows; ++k) {
-
-      // find the maximal element in the column
-      double maxElt = Math.abs(work[permutations[k] * columns + k]);
-      int    jMax   = k;
-      for (int i = k + 1; i < rows; ++i) {
-        double curElt = Math.abs(work[permutations[i] * columns + k]);
-        if (curElt > maxElt) {
-          maxElt = curElt;
-          jMax   = i;
-        }
-      }
-
-      if (maxElt < epsilon) {
-        throw new SingularMatrixException();
-      }
-
-      if (k != jMax) {
-        // do the permutation to have a large enough diagonal element
-        int tmp            = permutations[k];
-        permutations[k]    = permutations[jMax];
-        permutations[jMax] = tmp;
-        evenPermutations   = ! evenPermutations;
-      }
-
-      double inv = 1.0 / work[permutations[k] * columns + k];
-
-      // compute the contribution of the row to the triangular matrices
-      for (int i = k + 1; i < rows; ++i) {
-        double factor = inv * work[permutations[i] * columns + k];
-
-        // lower triangular matrix
-        work[permutations[i] * columns + k] = factor;
-
-        // upper triangular matrix
-        int index1 = permutations[i] * columns + k;
-        int index2 = permutations[k] * columns + k;
-        for (int j = k + 1; j < columns; ++j) {
-          work[++index1] -= factor * work[++index2];
-        }
-      }
-    }
-
-    // build the matrices
-    double[] lowerData = new double[rows * columns];
-    double[] upperData = new double[rows * columns];
-
-    int index = 0;
-    for (int i = 0; i < rows; ++i) {
-      int workIndex = permutations[i] * columns;
-      int j         = 0;
-
-      // lower part
-      while (j++ < i) {
-        lowerData[index]   = work[workIndex++];
-        upperData[index++] = 0.0;
-      }
-
-      // diagonal
-      lowerData[index]   = 1.0;
-      upperData[index++] = work[workIndex++];
-
-      // upper part
-      while (j++ < columns) {
-        lowerData[index]   = 0.0;
-        upperData[index++] = work[workIndex++];
-      }
-    }
-
-    lower = new LowerTriangularMatrix(rows, lowerData);
-    upper = new UpperTriangularMatrix(rows, upperData);
-
-  }
-
-  private int[]                 permutations;
-  private boolean               evenPermutations;
-  private LowerTriangularMatrix lower;
-  private UpperTriangularMatrix upper;
+  /** Cached LU decomposition (null if not computed yet). */
+  private volatile LUDecomposition lu;
 
   private static final long serialVersionUID = -506293526695298279L;
 
@@ -0,0 +1,145 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** This class implements the incomplete LU factorization preconditioner.
+
+ * <p>This preconditioner computes an ILU(0) factorization of a matrix,
+ * i.e. an approximate factorization A &asymp; L.U where L is unit lower
+ * triangular and U is upper triangular and where both factors have
+ * the same sparsity pattern as the corresponding parts of A (no fill-in
+ * is allowed). Applying the preconditioner is done by forward and
+ * backward substitutions, with a cost proportional to the number of
+ * stored elements.</p>
+
+ * <p>Dense matrices are accepted and handled through their non null
+ * elements, but this preconditioner is mainly intended for {@link
+ * SparseMatrix sparse matrices}.</p>
+
+ * @see IterativeSolver
+ * @see JacobiPreconditioner
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class ILUPreconditioner
+  implements LinearOperator, Serializable {
+
+  /** Simple constructor.
+   * @param a square matrix to precondition (all its diagonal elements
+   * must be stored)
+   * @exception SingularMatrixException if a zero pivot is encountered
+   * @exception IllegalArgumentException if the matrix is not square
+   */
+  public ILUPreconditioner(Matrix a)
+    throws SingularMatrixException {
+
+    if (a.getRows() != a.getColumns()) {
+      throw new IllegalArgumentException("cannot precondition a "
+                                         + a.getRows() + 'x' + a.getColumns()
+                                         + " matrix");
+    }
+
+    // the factors are computed in place in a copy of the matrix
+    SparseMatrix lu = new SparseMatrix(a);
+    n           = lu.getRows();
+    rowStart    = lu.rowStart;
+    columnIndex = lu.columnIndex;
+    values      = lu.values;
+    diagonal    = new int[n];
+
+    // locate the diagonal elements
+    for (int i = 0; i < n; ++i) {
+      diagonal[i] = -1;
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        if (columnIndex[index] == i) {
+          diagonal[i] = index;
+        }
+      }
+      if (diagonal[i] < 0) {
+        throw new SingularMatrixException();
+      }
+    }
+
+    // IKJ variant of the elimination, restricted to the pattern
+    int[] position = new int[n];
+    Arrays.fill(position, -1);
+    for (int i = 0; i < n; ++i) {
+
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        position[columnIndex[index]] = index;
+      }
+
+      for (int index = rowStart[i]; index < diagonal[i]; ++index) {
+        int    k     = columnIndex[index];
+        double pivot = values[diagonal[k]];
+        if (pivot == 0) {
+          throw new SingularMatrixException();
+        }
+        double lik = values[index] / pivot;
+        values[index] = lik;
+        for (int kIndex = diagonal[k] + 1; kIndex < rowStart[k + 1]; ++kIndex) {
+          int target = position[columnIndex[kIndex]];
+          if (target >= 0) {
+            values[target] -= lik * values[kIndex];
+          }
+        }
+      }
+
+      if (values[diagonal[i]] == 0) {
+        throw new SingularMatrixException();
+      }
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        position[columnIndex[index]] = -1;
+      }
+
+    }
+
+  }
+
+  public void apply(double[] x, double[] y) {
+
+    if (x.length != n || y.length != n) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    // forward substitution with the unit lower triangular factor
+    for (int i = 0; i < n; ++i) {
+      double sum = x[i];
+      for (int index = rowStart[i]; index < diagonal[i]; ++index) {
+        sum -= values[index] * y[columnIndex[index]];
+      }
+      y[i] = sum;
+    }
+
+    // backward substitution with the upper triangular factor
+    for (int i = n - 1; i >= 0; --i) {
+      double sum = y[i];
+      for (int index = diagonal[i] + 1; index < rowStart[i + 1]; ++index) {
+        sum -= values[index] * y[columnIndex[index]];
+      }
+      y[i] = sum / values[diagonal[i]];
+    }
+
+  }
+
+  /** Order of the matrix. */
+  private final int n;
+
+  /** Index of the first element of each row. */
+  private final int[] rowStart;
+
+  /** Column of each stored element. */
+  private final int[] columnIndex;
+
+  /** Packed L (without its unit diagonal) and U factors. */
+  private final double[] values;
+
+  /** Index of the diagonal element of each row. */
+  private final int[] diagonal;
+
+  private static final long serialVersionUID = -7604823560718365289L;
+
+}
@@ -0,0 +1,210 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+
+/** This class is the base class for iterative linear solvers.
+
+ * <p>Iterative solvers compute the solution of A.x = b using only
+ * products of the {@link LinearOperator linear operator} A by vectors,
+ * so they can be used for large sparse systems and for systems whose
+ * matrix is not available explicitly. An optional preconditioner
+ * operator, approximating A<sup>-1</sup>, can be provided to speed up
+ * convergence (see {@link JacobiPreconditioner} and {@link
+ * ILUPreconditioner}).</p>
+
+ * <p>The iterations are stopped as soon as the norm of the residual
+ * b - A.x is below max(absoluteTolerance, relativeTolerance * |b|). If
+ * this does not happen before the maximal number of iterations is
+ * reached, a {@link ConvergenceException} is thrown. If the method
+ * breaks down (which typically happens with singular or, for methods
+ * requiring them, non positive definite operators), a {@link
+ * SingularMatrixException} is thrown.</p>
+
+ * <p>The number of iterations and the residual norm of the last
+ * solve are available after the solve, which implies instances
+ * should not be shared between threads solving simultaneously.</p>
+
+ * @see ConjugateGradientSolver
+ * @see BiCGSTABSolver
+ * @see GMRESSolver
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public abstract class IterativeSolver
+  implements Serializable {
+
+  /** Simple constructor.
+   * @param maxIterations maximal number of iterations allowed
+   * @param relativeTolerance convergence threshold on the residual
+   * norm, relative to the norm of the right hand side
+   * @param absoluteTolerance convergence threshold on the residual norm
+   */
+  protected IterativeSolver(int maxIterations,
+                            double relativeTolerance,
+                            double absoluteTolerance) {
+    this.maxIterations     = maxIterations;
+    this.relativeTolerance = relativeTolerance;
+    this.absoluteTolerance = absoluteTolerance;
+    iterations             = 0;
+    residualNorm           = Double.NaN;
+  }
+
+  /** Solve a linear system without preconditioning.
+   * @param a linear operator of the system
+   * @param b right hand side of the system
+   * @param x0 start point (null to start from zero)
+   * @return a new array containing the solution
+   * @exception SingularMatrixException if the method breaks down
+   * @exception ConvergenceException if the method does not converge
+   * in the allowed number of iterations
+   * @exception IllegalArgumentException if the start point does not
+   * have the same dimension as the right hand side
+   */
+  public double[] solve(LinearOperator a, double[] b, double[] x0)
+    throws SingularMatrixException, ConvergenceException {
+    return solve(a, null, b, x0);
+  }
+
+  /** Solve a linear system with preconditioning.
+   * @param a linear operator of the system
+   * @param preconditioner preconditioner operator approximating the
+   * inverse of a (null for no preconditioning)
+   * @param b right hand side of the system
+   * @param x0 start point (null to start from zero)
+   * @return a new array containing the solution
+   * @exception SingularMatrixException if the method breaks down
+   * @exception ConvergenceException if the method does not converge
+   * in the allowed number of iterations
+   * @exception IllegalArgumentException if the start point does not
+   * have the same dimension as the right hand side
+   */
+  public double[] solve(LinearOperator a, LinearOperator preconditioner,
+                        double[] b, double[] x0)
+    throws SingularMatrixException, ConvergenceException {
+
+    double[] x;
+    if (x0 == null) {
+      x = new double[b.length];
+    } else {
+      if (x0.length != b.length) {
+        throw new IllegalArgumentException("dimension mismatch");
+      }
+      x = (double[]) x0.clone();
+    }
+
+    iterations   = 0;
+    residualNorm = Double.NaN;
+    double threshold = Math.max(absoluteTolerance, relativeTolerance * norm(b));
+    iterate(a, (preconditioner == null) ? IDENTITY : preconditioner,
+            b, x, threshold);
+    return x;
+
+  }
+
+  /** Perform the iterations of the method.
+   * <p>Implementations must call {@link #startIteration} at the start
+   * of each iteration and update {@link #residualNorm}.</p>
+   * @param a linear operator of the system
+   * @param m preconditioner operator (never null)
+   * @param b right hand side of the system
+   * @param x start point on input, solution on output
+   * @param threshold convergence threshold on the residual norm
+   * @exception SingularMatrixException if the method breaks down
+   * @exception ConvergenceException if the method does not converge
+   * in the allowed number of iterations
+   */
+  protected abstract void iterate(LinearOperator a, LinearOperator m,
+                                  double[] b, double[] x, double threshold)
+    throws SingularMatrixException, ConvergenceException;
+
+  /** Count a new iteration.
+   * @exception ConvergenceException if the maximal number of
+   * iterations is exceeded
+   */
+  protected void startIteration()
+    throws ConvergenceException {
+    if (++iterations > maxIterations) {
+      iterations = maxIterations;
+      throw new ConvergenceException(maxIterations);
+    }
+  }
+
+  /** Get the number of iterations performed by the last solve.
+   * @return number of iterations performed by the last solve
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /** Get the residual norm at the end of the last solve.
+   * <p>The value returned is the one computed by the recurrences of
+   * the method, it may slightly differ from the norm of b - A.x
+   * computed explicitly.</p>
+   * @return residual norm at the end of the last solve
+   */
+  public double getResidualNorm() {
+    return residualNorm;
+  }
+
+  /** Compute the residual of a system.
+   * @param a linear operator of the system
+   * @param b right hand side of the system
+   * @param x current estimate of the solution
+   * @param r placeholder where to put the residual b - A.x
+   */
+  protected static void residual(LinearOperator a, double[] b, double[] x,
+                                 double[] r) {
+    a.apply(x, r);
+    for (int i = 0; i < r.length; ++i) {
+      r[i] = b[i] - r[i];
+    }
+  }
+
+  /** Compute the dot product of two vectors.
+   * @param u first vector
+   * @param v second vector
+   * @return dot product of u and v
+   */
+  protected static double dot(double[] u, double[] v) {
+    double sum = 0;
+    for (int i = 0; i < u.length; ++i) {
+      sum += u[i] * v[i];
+    }
+    return sum;
+  }
+
+  /** Compute the euclidian norm of a vector.
+   * @param u vector
+   * @return norm of u
+   */
+  protected static double norm(double[] u) {
+    return Math.sqrt(dot(u, u));
+  }
+
+  /** Identity operator used when no preconditioner is provided. */
+  private static final LinearOperator IDENTITY = new LinearOperator() {
+      public void apply(double[] x, double[] y) {
+        System.arraycopy(x, 0, y, 0, x.length);
+      }
+    };
+
+  /** Maximal number of iterations allowed. */
+  private final int maxIterations;
+
+  /** Convergence threshold relative to the right hand side norm. */
+  private final double relativeTolerance;
+
+  /** Absolute convergence threshold. */
+  private final double absoluteTolerance;
+
+  /** Number of iterations performed by the last solve. */
+  private int iterations;
+
+  /** Residual norm at the end of the last solve. */
+  protected double residualNorm;
+
+  private static final long serialVersionUID = 3216480497157125340L;
+
+}
@@ -0,0 +1,186 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class implements eigen decompositions of symetrical matrices
+ * using the cyclic Jacobi method.
+
+ * <p>The Jacobi method annihilates the off-diagonal elements of the
+ * matrix by successive plane rotations. Rotations are gathered in
+ * rounds using a round-robin ordering, so that the n/2 rotations of
+ * one round involve disjoint pairs of rows and columns and can be
+ * computed and applied independently. Each round is applied in two
+ * passes (rows then columns), both split between several threads
+ * when the {@link Matrix#setParallelMode parallel mode} of the
+ * package is enabled and the matrix is large enough.</p>
+
+ * <p>The Jacobi method needs more operations than the tridiagonal QL
+ * method implemented in the base class, but it is very accurate for
+ * the small eigenvalues and it scales with the number of processors,
+ * so it may be faster for large matrices on multi-core hosts.</p>
+
+ * @see EigenDecomposition
+ * @see Matrix#setParallelMode
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class JacobiEigenDecomposition
+  extends EigenDecomposition {
+
+  /** Simple constructor.
+   * Build the decomposition of a symetrical matrix.
+   * @param m symetrical matrix to decompose
+   * @param computeVectors if true, eigenvectors are computed in
+   * addition to the eigenvalues
+   * @exception ConvergenceException if the off-diagonal elements are
+   * still not negligible after the maximal number of sweeps (which
+   * happens for example if the matrix contains NaN elements)
+   */
+  public JacobiEigenDecomposition(SymetricalMatrix m, boolean computeVectors)
+    throws ConvergenceException {
+
+    super(m.getRows(), computeVectors);
+
+    final int      n = order;
+    final double[] a = (double[]) m.data.clone();
+    final double[] v = vectors;
+    if (v != null) {
+      for (int i = 0; i < n; ++i) {
+        v[i * (n + 1)] = 1.0;
+      }
+    }
+
+    // round-robin schedule: n' - 1 rounds of n' / 2 disjoint pairs
+    // (n' being n rounded up to an even number)
+    final int   players = n + (n % 2);
+    final int   nPairs  = players / 2;
+    final int[] p       = new int[nPairs];
+    final int[] q       = new int[nPairs];
+    final double[] c    = new double[nPairs];
+    final double[] s    = new double[nPairs];
+
+    // absolute threshold for off-diagonal elements
+    double norm = 0;
+    for (int i = 0; i < a.length; ++i) {
+      norm += a[i] * a[i];
+    }
+    double floor = EPSILON * EPSILON * Math.sqrt(norm);
+
+    long operations = ((long) n) * n;
+    boolean rotated = true;
+    for (int sweep = 0; rotated && sweep < MAX_SWEEPS; ++sweep) {
+      rotated = false;
+
+      for (int round = 0; round < players - 1; ++round) {
+
+        // compute the rotations of the round
+        int count = 0;
+        for (int k = 0; k < nPairs; ++k) {
+          int i = (k == 0) ? (players - 1) : (round + players - 1 - k) % (players - 1);
+          int j = (round + k) % (players - 1);
+          if (i >= n || j >= n) {
+            // dummy player for odd orders
+            continue;
+          }
+          int pk = Math.min(i, j);
+          int qk = Math.max(i, j);
+          double apq = a[pk * n + qk];
+          double app = a[pk * n + pk];
+          double aqq = a[qk * n + qk];
+          if (Math.abs(apq) <= Math.max(floor, EPSILON * Math.sqrt(Math.abs(app * aqq)))) {
+            // the element is already negligible
+            continue;
+          }
+          double theta = (aqq - app) / (2 * apq);
+          double t     = 1.0 / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+          if (theta < 0) {
+            t = -t;
+          }
+          p[count] = pk;
+          q[count] = qk;
+          c[count] = 1.0 / Math.sqrt(t * t + 1);
+          s[count] = t * c[count];
+          ++count;
+        }
+        final int nRotations = count;
+        if (nRotations == 0) {
+          continue;
+        }
+        rotated = true;
+
+        // apply the rotations to the rows (one task per pair)
+        RowsTask.run(new RowsTask.Kernel() {
+            public void compute(int kStart, int kEnd) {
+              for (int k = kStart; k < kEnd; ++k) {
+                rotate(a, p[k] * n, q[k] * n, n, c[k], s[k]);
+              }
+            }
+          }, nRotations, operations);
+
+        // apply the rotations to the columns (one task per row)
+        RowsTask.run(new RowsTask.Kernel() {
+            public void compute(int iStart, int iEnd) {
+              for (int i = iStart; i < iEnd; ++i) {
+                int row = i * n;
+                for (int k = 0; k < nRotations; ++k) {
+                  double aip = a[row + p[k]];
+                  double aiq = a[row + q[k]];
+                  a[row + p[k]] = c[k] * aip - s[k] * aiq;
+                  a[row + q[k]] = s[k] * aip + c[k] * aiq;
+                }
+              }
+            }
+          }, n, operations);
+
+        // accumulate the rotations in the eigenvectors rows
+        if (v != null) {
+          RowsTask.run(new RowsTask.Kernel() {
+              public void compute(int kStart, int kEnd) {
+                for (int k = kStart; k < kEnd; ++k) {
+                  rotate(v, p[k] * n, q[k] * n, n, c[k], s[k]);
+                }
+              }
+            }, nRotations, operations);
+        }
+
+      }
+    }
+
+    if (rotated) {
+      throw new ConvergenceException(MAX_SWEEPS);
+    }
+
+    for (int i = 0; i < n; ++i) {
+      values[i] = a[i * (n + 1)];
+    }
+    sort();
+
+  }
+
+  /** Apply a plane rotation to two rows stored in an array.
+   * @param x array containing the rows
+   * @param iP index of the first element of the first row
+   * @param iQ index of the first element of the second row
+   * @param length number of elements of the rows
+   * @param c cosine of the rotation
+   * @param s sine of the rotation
+   */
+  private static void rotate(double[] x, int iP, int iQ, int length,
+                             double c, double s) {
+    for (int l = 0; l < length; ++l, ++iP, ++iQ) {
+      double xp = x[iP];
+      double xq = x[iQ];
+      x[iP] = c * xp - s * xq;
+      x[iQ] = s * xp + c * xq;
+    }
+  }
+
+  /** Maximal number of sweeps. */
+  private static final int MAX_SWEEPS = 50;
+
+  /** Relative accuracy of double numbers. */
+  private static final double EPSILON = 0x1.0p-52;
+
+  private static final long serialVersionUID = 6048823108306102457L;
+
+}
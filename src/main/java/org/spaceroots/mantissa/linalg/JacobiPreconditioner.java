@@ -0,0 +1,58 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+
+/** This class implements the Jacobi (diagonal) preconditioner.
+
+ * <p>This preconditioner approximates the inverse of a matrix by the
+ * inverse of its diagonal. It is very cheap to build and to apply,
+ * and it is efficient for diagonally dominant matrices or matrices
+ * whose rows have very different scales.</p>
+
+ * @see IterativeSolver
+ * @see ILUPreconditioner
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class JacobiPreconditioner
+  implements LinearOperator, Serializable {
+
+  /** Simple constructor.
+   * @param a square matrix to precondition
+   * @exception SingularMatrixException if a diagonal element is zero
+   * @exception IllegalArgumentException if the matrix is not square
+   */
+  public JacobiPreconditioner(Matrix a)
+    throws SingularMatrixException {
+    if (a.getRows() != a.getColumns()) {
+      throw new IllegalArgumentException("cannot precondition a "
+                                         + a.getRows() + 'x' + a.getColumns()
+                                         + " matrix");
+    }
+    inverseDiagonal = new double[a.getRows()];
+    for (int i = 0; i < inverseDiagonal.length; ++i) {
+      double diag = a.getElement(i, i);
+      if (diag == 0) {
+        throw new SingularMatrixException();
+      }
+      inverseDiagonal[i] = 1.0 / diag;
+    }
+  }
+
+  public void apply(double[] x, double[] y) {
+    if (x.length != inverseDiagonal.length || y.length != inverseDiagonal.length) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    for (int i = 0; i < x.length; ++i) {
+      y[i] = inverseDiagonal[i] * x[i];
+    }
+  }
+
+  /** Inverse of the diagonal elements. */
+  private final double[] inverseDiagonal;
+
+  private static final long serialVersionUID = 1873526040198314632L;
+
+}
@@ -0,0 +1,291 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class implements LU decompositions of square matrices.
+
+ * <p>The decomposition of a square matrix A is P.A = L.U where P is
+ * a permutation matrix, L is a unit lower triangular matrix and U is
+ * an upper triangular matrix. It is computed using Gaussian
+ * elimination with partial pivoting.</p>
+
+ * <p>Both factors are stored packed in a single array, the unit
+ * diagonal of L being implicit. Once built, a decomposition is never
+ * modified: it can be used to solve as many linear systems as needed
+ * (either one by one or with many right hand sides at once) without
+ * recomputing anything. The solve methods write their results into
+ * caller-supplied arrays, which can be reused from one call to the
+ * other, so repeated solves do not allocate any memory.</p>
+
+ * @see GeneralSquareMatrix#getLUDecomposition
+ * @see Factorization
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class LUDecomposition
+  implements Factorization {
+
+  /** Simple constructor.
+   * Build the decomposition of a matrix.
+   * @param m matrix to decompose
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  public LUDecomposition(SquareMatrix m, double epsilon)
+    throws SingularMatrixException {
+
+    order = m.getRows();
+    lu    = new double[order * order];
+    swaps = new int[order];
+    System.arraycopy(m.getDenseData(), 0, lu, 0, lu.length);
+
+    boolean even = true;
+    for (int k = 0; k < order; ++k) {
+
+      // find the maximal element in the column
+      double maxElt = Math.abs(lu[k * order + k]);
+      int    iMax   = k;
+      for (int i = k + 1; i < order; ++i) {
+        double curElt = Math.abs(lu[i * order + k]);
+        if (curElt > maxElt) {
+          maxElt = curElt;
+          iMax   = i;
+        }
+      }
+
+      if (maxElt < epsilon) {
+        throw new SingularMatrixException();
+      }
+
+      // exchange the rows to have a large enough diagonal element
+      swaps[k] = iMax;
+      if (iMax != k) {
+        for (int indexK = k * order, indexMax = iMax * order, j = 0;
+             j < order;
+             ++j, ++indexK, ++indexMax) {
+          double tmp   = lu[indexK];
+          lu[indexK]   = lu[indexMax];
+          lu[indexMax] = tmp;
+        }
+        even = ! even;
+      }
+
+      double inv = 1.0 / lu[k * order + k];
+
+      // compute the contribution of the row to the triangular factors
+      for (int i = k + 1; i < order; ++i) {
+        int index1 = i * order + k;
+        int index2 = k * order + k;
+        double factor = inv * lu[index1];
+
+        // lower triangular factor
+        lu[index1] = factor;
+
+        // upper triangular factor
+        for (int j = k + 1; j < order; ++j) {
+          lu[++index1] -= factor * lu[++index2];
+        }
+      }
+
+    }
+
+    evenPermutations = even;
+
+  }
+
+  /** Get the order of the decomposed matrix.
+   * @return order of the decomposed matrix
+   */
+  public int getOrder() {
+    return order;
+  }
+
+  /** Get the rows permutation.
+   * @return an array p such that row i of L.U is row p[i] of the
+   * decomposed matrix
+   */
+  public int[] getPermutation() {
+    int[] p = new int[order];
+    for (int i = 0; i < order; ++i) {
+      p[i] = i;
+    }
+    for (int k = 0; k < order; ++k) {
+      int tmp     = p[k];
+      p[k]        = p[swaps[k]];
+      p[swaps[k]] = tmp;
+    }
+    return p;
+  }
+
+  /** Get the unit lower triangular factor L.
+   * @return a new matrix containing L
+   */
+  public LowerTriangularMatrix getL() {
+    LowerTriangularMatrix l = new LowerTriangularMatrix(order);
+    for (int i = 0; i < order; ++i) {
+      System.arraycopy(lu, i * order, l.data, i * order, i);
+      l.data[i * (order + 1)] = 1.0;
+    }
+    return l;
+  }
+
+  /** Get the upper triangular factor U.
+   * @return a new matrix containing U
+   */
+  public UpperTriangularMatrix getU() {
+    UpperTriangularMatrix u = new UpperTriangularMatrix(order);
+    for (int i = 0; i < order; ++i) {
+      int start = i * (order + 1);
+      System.arraycopy(lu, start, u.data, start, order - i);
+    }
+    return u;
+  }
+
+  /** Get the determinant of the decomposed matrix.
+   * @return determinant of the decomposed matrix
+   */
+  public double getDeterminant() {
+    double determinant = evenPermutations ? 1.0 : -1.0;
+    for (int index = 0; index < lu.length; index += order + 1) {
+      determinant *= lu[index];
+    }
+    return determinant;
+  }
+
+  /** Get a factorization of a rank one modification of the matrix.
+   * <p>Updating the L and U factors themselves while keeping a stable
+   * pivoting is not possible in O(n<sup>2</sup>) operations, so the
+   * returned factorization rather reuses the instance and applies the
+   * Sherman-Morrison formula to each solve. Setting it up needs one
+   * solve with the instance and each subsequent solve only needs O(n)
+   * more operations per right hand side. A downdate is simply an
+   * update with an opposite u vector.</p>
+   * @param u first vector of the modification
+   * @param v second vector of the modification
+   * @param epsilon threshold below which the modified matrix is
+   * considered singular
+   * @return a factorization of <tt>A + u.v<sup>T</sup></tt>
+   * @exception SingularMatrixException if the modified matrix is singular
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   * @see ShermanMorrisonWoodbury#update
+   */
+  public Factorization update(double[] u, double[] v, double epsilon)
+    throws SingularMatrixException {
+    return ShermanMorrisonWoodbury.update(this, u, v, epsilon);
+  }
+
+  /** Solve the <tt>A.x = b</tt> equation for one right hand side.
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, double[] x) {
+    solve(b, 1, x);
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation for several right hand sides.
+   * <p>The B and X matrices are n rows by <code>nRhs</code> columns
+   * matrices stored row after row in one dimensional arrays, like
+   * the elements of {@link Matrix} instances. All right hand sides
+   * are handled together, by blocks of columns, so the factors are
+   * traversed only once per block.</p>
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param nRhs number of right hand sides (i.e. columns of B)
+   * @param x array where to store the solution (may be b itself)
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, int nRhs, double[] x) {
+
+    // validity check
+    if (nRhs <= 0 || b.length < order * nRhs || x.length < order * nRhs) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    if (x != b) {
+      System.arraycopy(b, 0, x, 0, order * nRhs);
+    }
+
+    // apply the rows exchanges to the second member
+    for (int k = 0; k < order; ++k) {
+      if (swaps[k] != k) {
+        for (int indexK = k * nRhs, indexS = swaps[k] * nRhs, j = 0;
+             j < nRhs;
+             ++j, ++indexK, ++indexS) {
+          double tmp = x[indexK];
+          x[indexK]  = x[indexS];
+          x[indexS]  = tmp;
+        }
+      }
+    }
+
+    for (int jBlock = 0; jBlock < nRhs; jBlock += BLOCK_SIZE) {
+      int jEnd = Math.min(jBlock + BLOCK_SIZE, nRhs);
+
+      // forward substitution with the unit lower triangular factor
+      for (int i = 1; i < order; ++i) {
+        int xI = i * nRhs;
+        for (int k = 0; k < i; ++k) {
+          double lik = lu[i * order + k];
+          int xK = k * nRhs;
+          for (int j = jBlock; j < jEnd; ++j) {
+            x[xI + j] -= lik * x[xK + j];
+          }
+        }
+      }
+
+      // backward substitution with the upper triangular factor
+      for (int i = order - 1; i >= 0; --i) {
+        int xI = i * nRhs;
+        for (int k = i + 1; k < order; ++k) {
+          double uik = lu[i * order + k];
+          int xK = k * nRhs;
+          for (int j = jBlock; j < jEnd; ++j) {
+            x[xI + j] -= uik * x[xK + j];
+          }
+        }
+        double inv = 1.0 / lu[i * (order + 1)];
+        for (int j = jBlock; j < jEnd; ++j) {
+          x[xI + j] *= inv;
+        }
+      }
+
+    }
+
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation.
+   * @param b second term of the equation
+   * @return a new matrix X such that <tt>A.X = B</tt>
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix solve(Matrix b) {
+    if (b.getRows() != order) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    double[] bData = b.getDenseData();
+    double[] x = new double[bData.length];
+    solve(bData, b.getColumns(), x);
+    return MatrixFactory.buildMatrix(order, b.getColumns(), x);
+  }
+
+  /** Number of right hand sides columns processed together. */
+  private static final int BLOCK_SIZE = 256;
+
+  /** Order of the decomposed matrix. */
+  private final int order;
+
+  /** Packed L and U factors (row after row, with permuted rows). */
+  private final double[] lu;
+
+  /** Row exchanged with row k at step k of the elimination. */
+  private final int[] swaps;
+
+  /** Parity of the permutation. */
+  private final boolean evenPermutations;
+
+  private static final long serialVersionUID = -1623402958671029712L;
+
+}
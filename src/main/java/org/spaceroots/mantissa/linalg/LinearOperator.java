@@ -0,0 +1,38 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This interface represents linear operators.
+
+ * <p>A linear operator is anything that can compute the product of a
+ * matrix by a vector, without necessarily storing the matrix. It is
+ * the only view of the system the iterative solvers need, so they can
+ * be used with explicit matrices (all {@link Matrix} instances are
+ * linear operators), with preconditioners, or with operators defined
+ * implicitly by user code, for example as lambda expressions:</p>
+ * <pre>
+ *   LinearOperator laplacian = (x, y) -&gt; {
+ *     for (int i = 0; i &lt; x.length; ++i) {
+ *       y[i] = 2 * x[i]
+ *            - ((i &gt; 0) ? x[i - 1] : 0)
+ *            - ((i &lt; x.length - 1) ? x[i + 1] : 0);
+ *     }
+ *   };
+ * </pre>
+
+ * @see IterativeSolver
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public interface LinearOperator {
+
+  /** Apply the operator to a vector.
+   * @param x vector to which the operator should be applied
+   * @param y placeholder where to put the result (must be a different
+   * array than x)
+   * @exception IllegalArgumentException if the vectors dimensions do
+   * not match the operator dimensions
+   */
+  public void apply(double[] x, double[] y);
+
+}
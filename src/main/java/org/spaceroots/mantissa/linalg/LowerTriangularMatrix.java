@@ -117,14 +117,15 @@ public class LowerTriangularMatrix
     int bRows  = b.getRows();
     int bCols  = b.getColumns();
 
+    double[] bData      = b.getDenseData();
     double[] resultData = new double[bRows * bCols];
-    int resultIndex     = 0;
     int lowerElements   = 0;
     int upperElements   = 0;
     int minJ            = columns;
     int maxJ            = 0;
 
-    // solve the linear system
+    // solve the linear system, the possibly non null elements of
+    // each row of the result being updated by the previous rows
     for (int i = 0; i < rows; ++i) {
       double diag = data[i * (columns + 1)];
       if (Math.abs(diag) < epsilon) {
@@ -136,47 +137,21 @@ public class LowerTriangularMatrix
       minJ = Math.min(minJ, range.begin);
       maxJ = Math.max(maxJ, range.end);
 
-      int j = 0;
-      while (j < minJ) {
-        resultData[resultIndex] = 0.0;
-        ++resultIndex;
-        ++j;
-      }
-
-      // compute the possibly non null elements
-      int bIndex = i * bCols + minJ;
-      while (j < maxJ) {
-
-        // compute the current element
-        int index1 = i * columns;
-        int index2 = j;
-        double value = b.data[bIndex];
-        while (index1 < i * (columns + 1)) {
-          value -= data[index1] * resultData[index2];
-          ++index1;
-          index2 += bCols;
+      if (minJ < maxJ) {
+        int length  = maxJ - minJ;
+        int resultI = i * bCols + minJ;
+        System.arraycopy(bData, resultI, resultData, resultI, length);
+        for (int k = 0; k < i; ++k) {
+          VectorKernels.axpy(-data[i * columns + k],
+                             resultData, k * bCols + minJ,
+                             resultData, resultI, length);
         }
-        value *= inv;
-        resultData[resultIndex] = value;
+        VectorKernels.scale(inv, resultData, resultI, resultData, resultI, length);
 
         // count the affected upper and lower elements
         // (in order to deduce the shape of the resulting matrix)
-        if (j < i) {
-          ++lowerElements;
-        } else if (i < j) {
-          ++upperElements;
-        }
-
-        ++bIndex;
-        ++resultIndex;
-        ++j;
-
-      }
-
-      while (j < bCols) {
-        resultData[resultIndex] = 0.0;
-        ++resultIndex;
-        ++j;
+        lowerElements += Math.max(0, Math.min(maxJ, i) - minJ);
+        upperElements += Math.max(0, maxJ - Math.max(minJ, i + 1));
       }
 
     }
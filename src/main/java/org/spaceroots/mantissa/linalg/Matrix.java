@@ -1,6 +1,7 @@
 package org.spaceroots.mantissa.linalg;
 
 import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
 
 /** This class factor all services common to matrices.
 
@@ -24,7 +25,7 @@ import java.io.Serializable;
  */
 
 public abstract class Matrix
-  implements Serializable {
+  implements LinearOperator, Serializable {
   /** Simple constructor.
    * Build a matrix with null elements.
    * @param rows number of rows of the matrix
@@ -72,7 +73,7 @@ public abstract class Matrix
     rows    = m.rows;
     columns = m.columns;
     data    = new double[rows * columns];
-    System.arraycopy(m.data, 0, data, 0, m.data.length);
+    System.arraycopy(m.getDenseData(), 0, data, 0, rows * columns);
   }
 
   /** Polymorphic copy operator.
@@ -152,54 +153,7 @@ public abstract class Matrix
                                          + " matrix");
     }
 
-    double[] resultData    = new double[rows * columns];
-    int      resultIndex   = 0;
-    int      lowerElements = 0;
-    int      upperElements = 0;
-
-    // external loop through the rows
-    for (int i = 0; i < rows; ++i) {
-      // compute the indices of the internal loop
-      NonNullRange r = NonNullRange.reunion(getRangeForRow(i),
-                                            m.getRangeForRow(i));
-
-      // assign the zeros before the non null range
-      int j = 0;
-      while (j < r.begin) {
-        resultData[resultIndex] = 0.0;
-        ++resultIndex;
-        ++j;
-      }
-
-      // compute the possibly non null elements
-      while (j < r.end) {
-
-        // compute the current element
-        resultData[resultIndex] = data[resultIndex] + m.data[resultIndex];
-
-        // count the affected upper and lower elements
-        // (in order to deduce the shape of the resulting matrix)
-        if (j < i) {
-          ++lowerElements;
-        } else if (i < j) {
-          ++upperElements;
-        }
-
-        ++resultIndex;
-        ++j;
-
-      }
-
-      // assign the zeros after the non null range
-      while (j < columns) {
-        resultData[resultIndex++] = 0.0;
-        ++resultIndex;
-        ++j;
-      }
-    }
-
-    return MatrixFactory.buildMatrix(rows, columns, resultData,
-                                     lowerElements, upperElements);
+    return combine(m, true);
 
   }
 
@@ -221,54 +175,50 @@ public abstract class Matrix
                                          + " matrix");
     }
 
-    double[] resultData    = new double[rows * columns];
-    int      resultIndex   = 0;
-    int      lowerElements = 0;
-    int      upperElements = 0;
-
-    // external loop through the rows
-    for (int i = 0; i < rows; ++i) {
-      // compute the indices of the internal loop
-      NonNullRange r = NonNullRange.reunion(getRangeForRow(i),
-                                            m.getRangeForRow(i));
-
-      // assign the zeros before the non null range
-      int j = 0;
-      while (j < r.begin) {
-        resultData[resultIndex] = 0.0;
-        ++resultIndex;
-        ++j;
-      }
-
-      // compute the possibly non null elements
-      while (j < r.end) {
-
-        // compute the current element
-        resultData[resultIndex] = data[resultIndex] - m.data[resultIndex];
+    return combine(m, false);
 
-        // count the affected upper and lower elements
-        // (in order to deduce the shape of the resulting matrix)
-        if (j < i) {
-          ++lowerElements;
-        } else if (i < j) {
-          ++upperElements;
-        }
+  }
 
-        ++resultIndex;
-        ++j;
+  /** Add or substract a matrix to the instance.
+   * @param m matrix to add or substract
+   * @param addition if true, m is added, otherwise it is substracted
+   * @return a new matrix containing the result
+   */
+  private Matrix combine(final Matrix m, final boolean addition) {
 
-      }
+    final double[] resultData = new double[rows * columns];
+    final double[] mData      = m.getDenseData();
 
-      // assign the zeros after the non null range
-      while (j < columns) {
-        resultData[resultIndex++] = 0.0;
-        ++resultIndex;
-        ++j;
-      }
+    // compute the indices of the internal loops
+    final int[] rowBounds  = getRowBounds();
+    final int[] mRowBounds = m.getRowBounds();
+    for (int i = 0; i < rows; ++i) {
+      rowBounds[2 * i]     = Math.min(rowBounds[2 * i],     mRowBounds[2 * i]);
+      rowBounds[2 * i + 1] = Math.max(rowBounds[2 * i + 1], mRowBounds[2 * i + 1]);
     }
 
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            // compute the possibly non null elements
+            int index = i * columns + rowBounds[2 * i];
+            int end   = i * columns + rowBounds[2 * i + 1];
+            if (addition) {
+              for (; index < end; ++index) {
+                resultData[index] = data[index] + mData[index];
+              }
+            } else {
+              for (; index < end; ++index) {
+                resultData[index] = data[index] - mData[index];
+              }
+            }
+          }
+        }
+      }, rows, ((long) rows) * columns);
+
     return MatrixFactory.buildMatrix(rows, columns, resultData,
-                                     lowerElements, upperElements);
+                                     countLowerElements(rowBounds),
+                                     countUpperElements(rowBounds));
 
   }
 
@@ -290,46 +240,232 @@ public abstract class Matrix
                                          + " matrix");
     }
 
-    double[] resultData = new double[rows * m.columns];
-    int resultIndex     = 0;
-    int lowerElements   = 0;
-    int upperElements   = 0;
+    if (m.data == null) {
+      // the right operand uses a specific storage
+      return m.preMultiply(this);
+    }
 
-    for (int i = 0; i < rows; ++i) {
-      for (int j = 0; j < m.columns; ++j) {
-        double value = 0.0;
-
-        // compute the tighter possible indices of the internal loop
-        NonNullRange r = NonNullRange.intersection(getRangeForRow(i),
-                                                   m.getRangeForColumn(j));
-
-        if (r.begin < r.end) {
-          int k    = r.begin;
-          int idx  = i * columns + k;
-          int midx = k * m.columns + j;
-          while (k++ < r.end) {
-            value += data[idx++] * m.data[midx];
-            midx  += m.columns;
+    final double[] resultData = new double[rows * m.columns];
+
+    // gather the structure of both operands once and for all
+    final int[] rowBounds     = getRowBounds();
+    final int[] mRowBounds    = m.getRowBounds();
+    final int[] mColumnBounds = m.getColumnBounds();
+    final boolean full = isFull(rowBounds, columns)
+                      && isFull(mRowBounds, m.columns);
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          if (full) {
+            multiplyFull(1.0, data, m.data, resultData,
+                         columns, m.columns, iStart, iEnd);
+          } else {
+            multiplyStructured(1.0, data, rowBounds, m.data, mRowBounds,
+                               resultData, columns, m.columns, iStart, iEnd);
           }
+        }
+      }, rows, ((long) rows) * columns * m.columns);
 
-          // count the affected upper and lower elements
-          // (in order to deduce the shape of the resulting matrix)
+    // count the affected upper and lower elements
+    // (in order to deduce the shape of the resulting matrix)
+    int lowerElements = 0;
+    int upperElements = 0;
+    for (int i = 0; i < rows; ++i) {
+      int rBegin = rowBounds[2 * i];
+      int rEnd   = rowBounds[2 * i + 1];
+      for (int j = 0; j < m.columns; ++j) {
+        if (Math.max(rBegin, mColumnBounds[2 * j])
+            < Math.min(rEnd, mColumnBounds[2 * j + 1])) {
           if (j < i) {
             ++lowerElements;
           } else if (i < j) {
             ++upperElements;
           }
+        }
+      }
+    }
 
+    return MatrixFactory.buildMatrix(rows, m.columns, resultData,
+                                     lowerElements, upperElements);
+
+  }
+
+  /** Multiply a matrix by the instance.
+   * <p>This method is called by {@link #mul(Matrix)} when the right
+   * operand does not store its elements in the {@link #data} array,
+   * so it can use its own storage. This default implementation
+   * simply uses a dense copy of the instance.</p>
+   * @param a matrix to multiply (left operand)
+   * @return a new matrix containing a.this
+   */
+  Matrix preMultiply(Matrix a) {
+    return a.mul(new GeneralMatrix(rows, columns, getDenseData()));
+  }
+
+  /** Multiply rows of a full matrix by another full matrix.
+   * <p>This kernel computes rows <code>iStart</code> to
+   * <code>iEnd - 1</code> of the product <code>c += alpha.a.b</code>
+   * where <code>a</code> is a <code>n</code> columns matrix and
+   * <code>b</code> a <code>n</code> rows by <code>p</code> columns
+   * matrix, both stored row after row. The <code>c</code> array is
+   * expected to be filled with zeros in the computed rows when only
+   * the product is needed.</p>
+   * <p>The loops are tiled so that a block of <code>b</code> stays
+   * in cache while it is used by all rows of <code>a</code>, and
+   * four rows of the result are updated together so that each
+   * element of <code>b</code> is loaded only once per block of
+   * rows. All elements of <code>b</code> are accessed row-wise. For
+   * each element of the result, the products are accumulated in
+   * increasing <code>k</code> order, so the result is exactly the
+   * same as the one of the straightforward triple loop.</p>
+   * @param alpha scaling factor of the product (multiplying by 1.0 is
+   * exact, so the plain product is not affected by this factor)
+   * @param a left operand data
+   * @param b right operand data
+   * @param c result data
+   * @param n number of columns of <code>a</code> (and rows of <code>b</code>)
+   * @param p number of columns of <code>b</code> (and of <code>c</code>)
+   * @param iStart index of the first row to compute
+   * @param iEnd index after the last row to compute
+   */
+  static void multiplyFull(double alpha, double[] a, double[] b, double[] c,
+                           int n, int p, int iStart, int iEnd) {
+
+    for (int kBlock = 0; kBlock < n; kBlock += BLOCK_K) {
+      int kEnd = Math.min(kBlock + BLOCK_K, n);
+
+      for (int jBlock = 0; jBlock < p; jBlock += BLOCK_J) {
+        int jEnd = Math.min(jBlock + BLOCK_J, p);
+
+        // four rows at a time
+        int i = iStart;
+        for (; i + 3 < iEnd; i += 4) {
+          int c0 = i * p;
+          int c1 = c0 + p;
+          int c2 = c1 + p;
+          int c3 = c2 + p;
+          int a0 = i * n;
+          for (int k = kBlock; k < kEnd; ++k) {
+            double aik0 = alpha * a[a0 + k];
+            double aik1 = alpha * a[a0 + n + k];
+            double aik2 = alpha * a[a0 + 2 * n + k];
+            double aik3 = alpha * a[a0 + 3 * n + k];
+            int bIndex = k * p;
+            for (int j = jBlock; j < jEnd; ++j) {
+              double bkj = b[bIndex + j];
+              c[c0 + j] += aik0 * bkj;
+              c[c1 + j] += aik1 * bkj;
+              c[c2 + j] += aik2 * bkj;
+              c[c3 + j] += aik3 * bkj;
+            }
+          }
         }
 
-        // store the element value
-        resultData[resultIndex++] = value;
+        // remaining rows
+        for (; i < iEnd; ++i) {
+          int c0 = i * p;
+          int a0 = i * n;
+          for (int k = kBlock; k < kEnd; ++k) {
+            VectorKernels.axpy(alpha * a[a0 + k], b, k * p + jBlock,
+                               c, c0 + jBlock, jEnd - jBlock);
+          }
+        }
 
       }
     }
 
-    return MatrixFactory.buildMatrix(rows, m.columns, resultData,
-                                     lowerElements, upperElements);
+  }
+
+  /** Multiply rows of a structured matrix by another structured matrix.
+   * <p>This kernel computes rows <code>iStart</code> to
+   * <code>iEnd - 1</code> of the product <code>c += alpha.a.b</code>,
+   * using only the structurally non null elements of both operands as
+   * described by their rows bounds (see {@link #getRowBounds}). The
+   * <code>c</code> array is expected to be filled with zeros in the
+   * computed rows when only the product is needed.</p>
+   * <p>The loops are tiled the same way as in {@link #multiplyFull},
+   * and the products are also accumulated in increasing
+   * <code>k</code> order.</p>
+   * @param alpha scaling factor of the product
+   * @param a left operand data
+   * @param aRowBounds bounds of the non null ranges of the rows of <code>a</code>
+   * @param b right operand data
+   * @param bRowBounds bounds of the non null ranges of the rows of <code>b</code>
+   * @param c result data
+   * @param n number of columns of <code>a</code> (and rows of <code>b</code>)
+   * @param p number of columns of <code>b</code> (and of <code>c</code>)
+   * @param iStart index of the first row to compute
+   * @param iEnd index after the last row to compute
+   */
+  static void multiplyStructured(double alpha,
+                                 double[] a, int[] aRowBounds,
+                                 double[] b, int[] bRowBounds,
+                                 double[] c, int n, int p,
+                                 int iStart, int iEnd) {
+
+    for (int kBlock = 0; kBlock < n; kBlock += BLOCK_K) {
+      int kBlockEnd = Math.min(kBlock + BLOCK_K, n);
+
+      for (int jBlock = 0; jBlock < p; jBlock += BLOCK_J) {
+        int jBlockEnd = Math.min(jBlock + BLOCK_J, p);
+
+        for (int i = iStart; i < iEnd; ++i) {
+          int c0     = i * p;
+          int a0     = i * n;
+          int kBegin = Math.max(kBlock,    aRowBounds[2 * i]);
+          int kEnd   = Math.min(kBlockEnd, aRowBounds[2 * i + 1]);
+          for (int k = kBegin; k < kEnd; ++k) {
+            int jBegin = Math.max(jBlock,    bRowBounds[2 * k]);
+            int jEnd   = Math.min(jBlockEnd, bRowBounds[2 * k + 1]);
+            if (jBegin < jEnd) {
+              VectorKernels.axpy(alpha * a[a0 + k], b, k * p + jBegin,
+                                 c, c0 + jBegin, jEnd - jBegin);
+            }
+          }
+        }
+
+      }
+    }
+
+  }
+
+  /** Multiply the instance by a vector.
+   * This method computes y = A.x where A is the instance.
+   * @param x vector by which to multiply (its dimension must be the
+   * number of columns of the instance)
+   * @param y placeholder where to put the result (its dimension must
+   * be the number of rows of the instance, and it must be a different
+   * array than x)
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public void apply(final double[] x, final double[] y) {
+
+    // validity check
+    if (x.length != columns || y.length != rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + x.length + " elements vector");
+    }
+
+    // this method is called at each iteration of the iterative
+    // solvers, so the rows bounds are not built as an array here
+    final boolean full = isGeneral();
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            if (full) {
+              y[i] = VectorKernels.dot(data, i * columns, x, 0, columns);
+            } else {
+              NonNullRange r = getRangeForRow(i);
+              y[i] = (r.begin < r.end)
+                   ? VectorKernels.dot(data, i * columns + r.begin, x, r.begin,
+                                       r.end - r.begin)
+                   : 0.0;
+            }
+          }
+        }
+      }, rows, ((long) rows) * columns);
 
   }
 
@@ -369,55 +505,465 @@ public abstract class Matrix
    */
   public Matrix getTranspose() {
 
-    double[] resultData    = new double[columns * rows];
-    int      resultIndex   = 0;
-    int      upperElements = 0;
-    int      lowerElements = 0;
+    final double[] resultData   = new double[columns * rows];
+    final int[]    columnBounds = getColumnBounds();
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          // the rows of the result are the columns of the instance
+          for (int i = iStart; i < iEnd; ++i) {
+            int resultIndex = i * rows + columnBounds[2 * i];
+            int index       = columnBounds[2 * i] * columns + i;
+            for (int j = columnBounds[2 * i]; j < columnBounds[2 * i + 1]; ++j) {
+              resultData[resultIndex++] = data[index];
+              index += columns;
+            }
+          }
+        }
+      }, columns, ((long) rows) * columns);
 
-    for (int i = 0; i < columns; ++i) {
-      // compute the indices of the internal loop
-      NonNullRange range = getRangeForColumn(i);
+    return MatrixFactory.buildMatrix(columns, rows, resultData,
+                                     countLowerElements(columnBounds),
+                                     countUpperElements(columnBounds));
 
-      int j     = 0;
-      int index = i;
+  }
 
-      // assign the zeros before the non null range
-      while (j < range.begin) {
-        resultData[resultIndex++] = 0.0;
-        index += columns;
-        ++j;
+  /** Add a matrix to the instance and store the result in a destination matrix.
+   * <p>This method computes <tt>dest = this + m</tt> without
+   * allocating any new matrix: the destination keeps its type, the
+   * structure of the result is not inferred. The destination may be
+   * the instance itself or m.</p>
+   * @param m matrix to add
+   * @param dest destination matrix (see {@link #mulAddInto} for the
+   * constraints on the destination)
+   * @exception IllegalArgumentException if there is a dimension
+   * mismatch or if the destination cannot hold the result
+   * @see #add
+   */
+  public void addInto(Matrix m, Matrix dest) {
+
+    // validity check
+    if ((rows != m.rows) || (columns != m.columns)) {
+      throw new IllegalArgumentException("cannot add a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix to a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    combineInto(m, 1.0, dest);
+
+  }
+
+  /** Substract a matrix from the instance and store the result in a
+   * destination matrix.
+   * <p>This method computes <tt>dest = this - m</tt> without
+   * allocating any new matrix: the destination keeps its type, the
+   * structure of the result is not inferred. The destination may be
+   * the instance itself or m.</p>
+   * @param m matrix to substract
+   * @param dest destination matrix (see {@link #mulAddInto} for the
+   * constraints on the destination)
+   * @exception IllegalArgumentException if there is a dimension
+   * mismatch or if the destination cannot hold the result
+   * @see #sub
+   */
+  public void subInto(Matrix m, Matrix dest) {
+
+    // validity check
+    if ((rows != m.rows) || (columns != m.columns)) {
+      throw new IllegalArgumentException("cannot substract a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix from a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    combineInto(m, -1.0, dest);
+
+  }
+
+  /** Add or substract a matrix to the instance into a destination matrix.
+   * @param m matrix to add or substract
+   * @param factor factor of m (1.0 for addition, -1.0 for substraction)
+   * @param dest destination matrix
+   */
+  private void combineInto(Matrix m, final double factor, Matrix dest) {
+
+    checkDestination(dest, rows, columns);
+
+    final double[] a          = getDenseData();
+    final double[] b          = m.getDenseData();
+    final double[] c          = dest.data;
+    final int[]    destBounds = dest.isGeneral() ? null : dest.getRowBounds();
+    if (destBounds != null) {
+      checkCovered(getRowBounds(),   destBounds);
+      checkCovered(m.getRowBounds(), destBounds);
+    }
+
+    // the elements outside of the destination structure are null in
+    // both operands, so only the destination ranges are computed
+    long operations = ((long) rows) * columns;
+    if (RowsTask.isSerial(rows, operations)) {
+      combineRows(a, factor, b, c, columns, destBounds, 0, rows);
+    } else {
+      RowsTask.run(new RowsTask.Kernel() {
+          public void compute(int iStart, int iEnd) {
+            combineRows(a, factor, b, c, columns, destBounds, iStart, iEnd);
+          }
+        }, rows, operations);
+    }
+
+    dest.resetFactorizations();
+
+  }
+
+  /** Compute rows of <code>c = a + factor.b</code>.
+   * @param a first operand data
+   * @param factor factor of the second operand (must be 1.0 or -1.0)
+   * @param b second operand data
+   * @param c result data (may be a or b)
+   * @param p number of columns of the matrices
+   * @param bounds rows bounds of the result (null for full rows)
+   * @param iStart index of the first row to compute
+   * @param iEnd index after the last row to compute
+   */
+  private static void combineRows(double[] a, double factor, double[] b,
+                                  double[] c, int p, int[] bounds,
+                                  int iStart, int iEnd) {
+    for (int i = iStart; i < iEnd; ++i) {
+      int index = i * p + ((bounds == null) ? 0 : bounds[2 * i]);
+      int end   = i * p + ((bounds == null) ? p : bounds[2 * i + 1]);
+      for (; index < end; ++index) {
+        c[index] = a[index] + factor * b[index];
       }
+    }
+  }
+
+  /** Multiply the instance by a matrix and store the result in a
+   * destination matrix.
+   * <p>This method computes <tt>dest = this.m</tt> without
+   * allocating any new matrix, see {@link #mulAddInto} for the
+   * details and constraints. The results are exactly the same as
+   * the ones of {@link #mul(Matrix)}.</p>
+   * @param m matrix by which to multiply
+   * @param dest destination matrix (must not be the instance or m)
+   * @exception IllegalArgumentException if there is a dimension
+   * mismatch or if the destination cannot hold the result
+   * @see #mul(Matrix)
+   */
+  public void mulInto(Matrix m, Matrix dest) {
+    mulAddInto(1.0, m, 0.0, null, dest);
+  }
+
+  /** Compute a scaled product plus a scaled matrix into a destination matrix.
+   * <p>This method computes <tt>dest = alpha.this.m + beta.c</tt> in
+   * one pass, without allocating any new matrix and without
+   * inferring the structure of the result: the destination keeps
+   * its type, which must be able to hold the result. This allows
+   * steady-state computations (for example covariance propagation
+   * in a filter) to reuse the same matrices at each step.</p>
+   * <p>The destination must store its elements densely (it cannot
+   * be a {@link SparseMatrix} or a {@link BandMatrix}), it must have
+   * the dimensions of the result and its structure must cover the
+   * structure of the result (for example a {@link LowerTriangularMatrix}
+   * can hold the product of two lower triangular matrices but not
+   * the product of two general matrices), otherwise an
+   * IllegalArgumentException is thrown. If the destination is a
+   * {@link SymetricalMatrix}, the caller is responsible for the
+   * result being symetrical. Any factorization cached by the
+   * destination is reset.</p>
+   * <p>No memory at all is allocated when the operands and the
+   * destination have a general structure. Otherwise, only the rows
+   * bounds of the structured matrices are built, and operands using
+   * a specific storage are converted to dense arrays.</p>
+   * @param alpha factor of the product
+   * @param m matrix by which to multiply
+   * @param beta factor of c (if 0.0, c is ignored and may be null)
+   * @param c matrix to add (may be the destination itself)
+   * @param dest destination matrix (must not be the instance or m)
+   * @exception IllegalArgumentException if there is a dimension
+   * mismatch or if the destination cannot hold the result
+   * @see #mulInto
+   */
+  public void mulAddInto(final double alpha, Matrix m,
+                         final double beta, Matrix c, Matrix dest) {
+
+    // validity checks
+    if (columns != m.rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix");
+    }
+    checkDestination(dest, rows, m.columns);
+    if (dest == this || dest == m) {
+      throw new IllegalArgumentException("cannot store a product"
+                                         + " into one of its operands");
+    }
+    if (beta != 0.0 && (c.rows != rows || c.columns != m.columns)) {
+      throw new IllegalArgumentException("cannot add a "
+                                         + c.rows + 'x' + c.columns
+                                         + " matrix to a "
+                                         + rows + 'x' + m.columns
+                                         + " matrix");
+    }
 
-      // compute the possibly non null elements
-      while (j < range.end) {
-        resultData[resultIndex] = data[index];
+    final int      n          = columns;
+    final int      p          = m.columns;
+    final double[] a          = getDenseData();
+    final double[] b          = m.getDenseData();
+    final double[] cData      = (beta == 0.0) ? null : c.getDenseData();
+    final double[] destData   = dest.data;
+    final boolean  full       = isGeneral() && m.isGeneral();
+    final int[]    aBounds    = full ? null : getRowBounds();
+    final int[]    bBounds    = full ? null : m.getRowBounds();
+    final int[]    destBounds = dest.isGeneral() ? null : dest.getRowBounds();
+
+    if (destBounds != null) {
+      checkCovered(productBounds(full ? getRowBounds() : aBounds,
+                                 full ? m.getRowBounds() : bBounds),
+                   destBounds);
+      if (cData != null) {
+        checkCovered(c.getRowBounds(), destBounds);
+      }
+    }
 
-        // count the affected upper and lower elements
-        // (in order to deduce the shape of the resulting matrix)
-        if (j < i) {
-          ++lowerElements;
-        } else if (i < j) {
-          ++upperElements;
+    long operations = ((long) rows) * n * p;
+    if (RowsTask.isSerial(rows, operations)) {
+      mulAddRows(alpha, a, aBounds, b, bBounds, beta, cData,
+                 destData, destBounds, n, p, 0, rows);
+    } else {
+      RowsTask.run(new RowsTask.Kernel() {
+          public void compute(int iStart, int iEnd) {
+            mulAddRows(alpha, a, aBounds, b, bBounds, beta, cData,
+                       destData, destBounds, n, p, iStart, iEnd);
+          }
+        }, rows, operations);
+    }
+
+    dest.resetFactorizations();
+
+  }
+
+  /** Compute rows of <code>d = alpha.a.b + beta.c</code>.
+   * @param alpha factor of the product
+   * @param a left operand data
+   * @param aRowBounds rows bounds of a (null for the full kernel)
+   * @param b right operand data
+   * @param bRowBounds rows bounds of b (null for the full kernel)
+   * @param beta factor of c
+   * @param c added matrix data (null if beta is 0.0, may be d)
+   * @param d result data
+   * @param dRowBounds rows bounds of the result (null for full rows)
+   * @param n number of columns of <code>a</code> (and rows of <code>b</code>)
+   * @param p number of columns of <code>b</code> (and of <code>c</code>)
+   * @param iStart index of the first row to compute
+   * @param iEnd index after the last row to compute
+   */
+  private static void mulAddRows(double alpha,
+                                 double[] a, int[] aRowBounds,
+                                 double[] b, int[] bRowBounds,
+                                 double beta, double[] c,
+                                 double[] d, int[] dRowBounds,
+                                 int n, int p, int iStart, int iEnd) {
+
+    // initialize the result with beta.c
+    for (int i = iStart; i < iEnd; ++i) {
+      int index = i * p + ((dRowBounds == null) ? 0 : dRowBounds[2 * i]);
+      int end   = i * p + ((dRowBounds == null) ? p : dRowBounds[2 * i + 1]);
+      if (c == null) {
+        for (; index < end; ++index) {
+          d[index] = 0.0;
+        }
+      } else if (c == d) {
+        if (beta != 1.0) {
+          for (; index < end; ++index) {
+            d[index] *= beta;
+          }
         }
+      } else {
+        for (; index < end; ++index) {
+          d[index] = beta * c[index];
+        }
+      }
+    }
 
-        index += columns;
-        ++resultIndex;
-        ++j;
+    // accumulate the product
+    if (aRowBounds == null) {
+      multiplyFull(alpha, a, b, d, n, p, iStart, iEnd);
+    } else {
+      multiplyStructured(alpha, a, aRowBounds, b, bRowBounds,
+                         d, n, p, iStart, iEnd);
+    }
 
+  }
+
+  /** Compute the rows bounds of a product.
+   * @param aRowBounds rows bounds of the left operand
+   * @param bRowBounds rows bounds of the right operand
+   * @return rows bounds of the product (empty rows have a begin
+   * index larger than their end index)
+   */
+  private static int[] productBounds(int[] aRowBounds, int[] bRowBounds) {
+    int[] bounds = new int[aRowBounds.length];
+    for (int i = 0; 2 * i < bounds.length; ++i) {
+      int begin = Integer.MAX_VALUE;
+      int end   = Integer.MIN_VALUE;
+      for (int k = aRowBounds[2 * i]; k < aRowBounds[2 * i + 1]; ++k) {
+        if (bRowBounds[2 * k] < bRowBounds[2 * k + 1]) {
+          begin = Math.min(begin, bRowBounds[2 * k]);
+          end   = Math.max(end,   bRowBounds[2 * k + 1]);
+        }
       }
+      bounds[2 * i]     = begin;
+      bounds[2 * i + 1] = end;
+    }
+    return bounds;
+  }
+
+  /** Transpose the instance into a destination matrix.
+   * <p>This method computes <tt>dest = transpose(this)</tt> without
+   * allocating any new matrix, see {@link #mulAddInto} for the
+   * constraints on the destination.</p>
+   * @param dest destination matrix (must not be the instance)
+   * @exception IllegalArgumentException if there is a dimension
+   * mismatch or if the destination cannot hold the result
+   * @see #getTranspose
+   */
+  public void transposeInto(Matrix dest) {
+
+    checkDestination(dest, columns, rows);
+    if (dest == this) {
+      throw new IllegalArgumentException("cannot transpose a matrix"
+                                         + " into itself");
+    }
 
-      // assign the zeros after the non null range
-      while (j < rows) {
-        resultData[resultIndex] = 0.0;
-        ++resultIndex;
-        ++j;
+    final double[] a          = getDenseData();
+    final double[] c          = dest.data;
+    final int[]    destBounds = dest.isGeneral() ? null : dest.getRowBounds();
+    if (destBounds != null) {
+      checkCovered(getColumnBounds(), destBounds);
+    }
+
+    long operations = ((long) rows) * columns;
+    if (RowsTask.isSerial(columns, operations)) {
+      transposeRows(a, rows, columns, c, destBounds, 0, columns);
+    } else {
+      RowsTask.run(new RowsTask.Kernel() {
+          public void compute(int iStart, int iEnd) {
+            transposeRows(a, rows, columns, c, destBounds, iStart, iEnd);
+          }
+        }, columns, operations);
+    }
+
+    dest.resetFactorizations();
+
+  }
+
+  /** Compute rows of the transpose of a matrix.
+   * @param a matrix data
+   * @param n number of rows of a
+   * @param p number of columns of a
+   * @param c result data
+   * @param bounds rows bounds of the result (null for full rows)
+   * @param iStart index of the first row of the result to compute
+   * @param iEnd index after the last row of the result to compute
+   */
+  private static void transposeRows(double[] a, int n, int p,
+                                    double[] c, int[] bounds,
+                                    int iStart, int iEnd) {
+    for (int i = iStart; i < iEnd; ++i) {
+      int jBegin = (bounds == null) ? 0 : bounds[2 * i];
+      int jEnd   = (bounds == null) ? n : bounds[2 * i + 1];
+      int index  = i * n + jBegin;
+      for (int j = jBegin; j < jEnd; ++j) {
+        c[index++] = a[j * p + i];
       }
+    }
+  }
 
+  /** Check a destination matrix.
+   * @param dest destination matrix
+   * @param r number of rows of the result
+   * @param c number of columns of the result
+   * @exception IllegalArgumentException if the destination does not
+   * store its elements densely or has not the dimensions of the result
+   */
+  private static void checkDestination(Matrix dest, int r, int c) {
+    if (dest.data == null) {
+      throw new IllegalArgumentException("cannot use a matrix with specific"
+                                         + " storage as a destination");
+    }
+    if (dest.rows != r || dest.columns != c) {
+      throw new IllegalArgumentException("cannot store a "
+                                         + r + 'x' + c
+                                         + " result in a "
+                                         + dest.rows + 'x' + dest.columns
+                                         + " matrix");
     }
+  }
 
-    return MatrixFactory.buildMatrix(columns, rows, resultData,
-                                     lowerElements, upperElements);
+  /** Check that a structure is covered by a destination structure.
+   * @param bounds rows bounds of the result
+   * @param destBounds rows bounds of the destination
+   * @exception IllegalArgumentException if some possibly non null
+   * elements of the result are outside of the destination structure
+   */
+  private static void checkCovered(int[] bounds, int[] destBounds) {
+    for (int i = 0; i < bounds.length; i += 2) {
+      if (bounds[i] < bounds[i + 1]
+          && (bounds[i] < destBounds[i] || bounds[i + 1] > destBounds[i + 1])) {
+        throw new IllegalArgumentException("the destination matrix structure"
+                                           + " cannot hold the result");
+      }
+    }
+  }
 
+  /** Check if the matrix has a general structure.
+   * <p>Matrices with a general structure have no structurally null
+   * elements, so they can be processed by the full kernels without
+   * building their rows bounds. This default implementation returns
+   * false.</p>
+   * @return true if all rows of the matrix are full
+   */
+  boolean isGeneral() {
+    return false;
+  }
+
+  /** Reset the cached factorizations.
+   * <p>This method is called each time the elements of a destination
+   * matrix are overwritten by the into-destination methods. This
+   * default implementation does nothing, derived classes caching
+   * factorizations must override it.</p>
+   */
+  protected void resetFactorizations() {
+  }
+
+  /** Replace the instance by a compact form for serialization.
+   * <p>The matrices types supported by {@link MatrixCodec} are
+   * serialized as an <code>Externalizable</code> proxy that only
+   * holds their structurally non null elements, other matrices are
+   * serialized as is.</p>
+   * @return object to serialize in place of the instance
+   */
+  protected Object writeReplace() {
+    if (MatrixCodec.isSupported(this)) {
+      return new MatrixCodec.SerialProxy(this);
+    }
+    return this;
+  }
+
+  /** Get the elements of the matrix in a dense array.
+   * <p>For matrices that store their elements densely, the internal
+   * array itself is returned, so it must not be modified. Matrices
+   * using another storage build a new array.</p>
+   * @return array containing all the elements of the matrix, stored
+   * row after row
+   */
+  double[] getDenseData() {
+    return data;
   }
 
   /** Set a range to the non null part covered by a row.
@@ -434,9 +980,117 @@ public abstract class Matrix
    */
   protected abstract NonNullRange getRangeForColumn(int j);
 
+  /** Get the bounds of the non null ranges of all rows.
+   * @return an array containing the begin index of the range of
+   * row i at index 2i and its end index at index 2i+1
+   * @see #getRangeForRow
+   * @see #getColumnBounds
+   */
+  int[] getRowBounds() {
+    int[] bounds = new int[2 * rows];
+    for (int i = 0; i < rows; ++i) {
+      NonNullRange r    = getRangeForRow(i);
+      bounds[2 * i]     = r.begin;
+      bounds[2 * i + 1] = r.end;
+    }
+    return bounds;
+  }
+
+  /** Get the bounds of the non null ranges of all columns.
+   * @return an array containing the begin index of the range of
+   * column j at index 2j and its end index at index 2j+1
+   * @see #getRangeForColumn
+   * @see #getRowBounds
+   */
+  int[] getColumnBounds() {
+    int[] bounds = new int[2 * columns];
+    for (int j = 0; j < columns; ++j) {
+      NonNullRange r    = getRangeForColumn(j);
+      bounds[2 * j]     = r.begin;
+      bounds[2 * j + 1] = r.end;
+    }
+    return bounds;
+  }
+
+  /** Count the elements below the diagonal covered by rows bounds.
+   * @param bounds rows bounds, as returned by {@link #getRowBounds}
+   * @return number of elements below the diagonal in the ranges
+   * @see #countUpperElements
+   */
+  static int countLowerElements(int[] bounds) {
+    int count = 0;
+    for (int i = 0; 2 * i < bounds.length; ++i) {
+      count += Math.max(0, Math.min(bounds[2 * i + 1], i) - bounds[2 * i]);
+    }
+    return count;
+  }
+
+  /** Count the elements above the diagonal covered by rows bounds.
+   * @param bounds rows bounds, as returned by {@link #getRowBounds}
+   * @return number of elements above the diagonal in the ranges
+   * @see #countLowerElements
+   */
+  static int countUpperElements(int[] bounds) {
+    int count = 0;
+    for (int i = 0; 2 * i < bounds.length; ++i) {
+      count += Math.max(0, bounds[2 * i + 1] - Math.max(bounds[2 * i], i + 1));
+    }
+    return count;
+  }
+
+  /** Check if ranges bounds cover everything.
+   * @param bounds ranges bounds, as returned by {@link #getRowBounds}
+   * or {@link #getColumnBounds}
+   * @param length length of the rows or columns
+   * @return true if all ranges span from 0 to length
+   */
+  static boolean isFull(int[] bounds, int length) {
+    for (int i = 0; i < bounds.length; i += 2) {
+      if (bounds[i] != 0 || bounds[i + 1] != length) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Enable parallel computation for large matrices.
+   * <p>When parallel mode is enabled, the {@link #add add}, {@link
+   * #sub sub}, {@link #mul(Matrix) mul}, {@link #apply apply} and {@link
+   * #getTranspose getTranspose} methods and their into-destination
+   * counterparts split their work into rows tiles processed
+   * by the threads of the specified pool, as soon as the number of
+   * elementary operations involved (i.e. the number of elements for
+   * addition, substraction and transposition and the number of
+   * multiplications for products) is at least equal to the specified
+   * threshold. Smaller operations still use the serial path. Each
+   * element of the result is computed by exactly the same sequence
+   * of operations in both modes, so the results are identical.</p>
+   * <p>Parallel mode is disabled by default.</p>
+   * @param pool pool to use for the computation
+   * @param threshold number of elementary operations below which
+   * the serial path is used
+   * @exception IllegalArgumentException if the pool is null or the
+   * threshold is negative
+   * @see #setSerialMode
+   */
+  public static void setParallelMode(ForkJoinPool pool, long threshold) {
+    if (pool == null || threshold < 0) {
+      throw new IllegalArgumentException("invalid parallel mode settings");
+    }
+    RowsTask.setMode(pool, threshold);
+  }
+
+  /** Disable parallel computation.
+   * @see #setParallelMode
+   */
+  public static void setSerialMode() {
+    RowsTask.setMode(null, Long.MAX_VALUE);
+  }
+
   public String toString() {
     String separator = System.getProperty("line.separator");
 
+    double[] elements = getDenseData();
     StringBuffer buf = new StringBuffer();
     for (int index = 0; index < rows * columns; ++index) {
       if (index > 0) {
@@ -446,7 +1100,7 @@ public abstract class Matrix
           buf.append(' ');
         }
       }
-      buf.append(Double.toString(data[index]));
+      buf.append(Double.toString(elements[index]));
     }
 
     return buf.toString();
@@ -459,6 +1113,12 @@ public abstract class Matrix
   /** number of columns of the matrix. */
   protected final int columns;
 
+  /** Number of rows of the right operand in a multiplication tile. */
+  private static final int BLOCK_K = 64;
+
+  /** Number of columns of the right operand in a multiplication tile. */
+  private static final int BLOCK_J = 256;
+
   /** array of the matrix elements.
    * the elements are stored in a one dimensional array, row after row
    */
@@ -0,0 +1,473 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/** This class encodes matrices in a compact binary form.
+
+ * <p>Only the structurally non-null part of the matrices is encoded,
+ * as given by their non-null ranges: the diagonal for {@link
+ * DiagonalMatrix}, one triangle for {@link LowerTriangularMatrix},
+ * {@link UpperTriangularMatrix} and {@link SymetricalMatrix}, the
+ * band for {@link BandMatrix} and all elements for {@link
+ * GeneralMatrix} and {@link GeneralSquareMatrix}. The encoding is a
+ * 24 bytes header (a magic number, the matrix type, its dimensions
+ * and its bandwidths) followed by the elements, row after row.</p>
+
+ * <p>Two byte orders are available. The {@link #write(Matrix,
+ * DataOutput) write}/{@link #read(DataInput) read} pair uses the big
+ * endian order of the <code>java.io</code> data streams, it is used
+ * by Java serialization: all the matrices types listed above are
+ * serialized through an <code>Externalizable</code> proxy using this
+ * encoding, without class descriptors for their internal fields and
+ * without their cached factorizations. The {@link #writeRaw
+ * writeRaw}/{@link #readRaw readRaw} pair uses the little endian
+ * order of most hardware and bulk transfers between the matrices and
+ * NIO channels, which is the fastest way to checkpoint large
+ * matrices in files.</p>
+
+ * <p>Other matrices ({@link SparseMatrix}, {@link BufferMatrix},
+ * {@link FloatMatrix} and user defined subclasses) are not supported
+ * by this class, they keep their own serialization.</p>
+
+ * @see Matrix#getRangeForRow
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class MatrixCodec {
+
+  /** Private constructor for a utility class. */
+  private MatrixCodec() {
+  }
+
+  /** Check if a matrix can be encoded.
+   * @param m matrix to check
+   * @return true if the matrix type is supported by this class
+   */
+  public static boolean isSupported(Matrix m) {
+    return getType(m) >= 0;
+  }
+
+  /** Get the number of bytes needed to encode a matrix.
+   * @param m matrix to encode
+   * @return number of bytes needed to encode the matrix (the same
+   * for both byte orders)
+   * @exception IllegalArgumentException if the matrix type is not
+   * supported
+   */
+  public static long getEncodedSize(Matrix m) {
+    int type = checkSupported(m);
+    long count = 0;
+    for (int i = 0; i < m.rows; ++i) {
+      NonNullRange range = getRange(m, type, i);
+      count += range.end - range.begin;
+    }
+    return HEADER_SIZE + 8l * count;
+  }
+
+  /** Write a matrix to a data stream, in big endian order.
+   * @param m matrix to write
+   * @param out data stream where to write the matrix
+   * @exception IOException if the matrix cannot be written
+   * @exception IllegalArgumentException if the matrix type is not
+   * supported
+   */
+  public static void write(Matrix m, DataOutput out)
+    throws IOException {
+    int[] header = buildHeader(m);
+    for (int k = 0; k < header.length; ++k) {
+      out.writeInt(header[k]);
+    }
+    double[] row = (m.data == null) ? new double[m.columns] : null;
+    for (int i = 0; i < m.rows; ++i) {
+      NonNullRange range = getRange(m, header[1], i);
+      if (m.data == null) {
+        readRow(m, i, range, row);
+        for (int j = range.begin; j < range.end; ++j) {
+          out.writeDouble(row[j]);
+        }
+      } else {
+        for (int index = i * m.columns + range.begin;
+             index < i * m.columns + range.end;
+             ++index) {
+          out.writeDouble(m.data[index]);
+        }
+      }
+    }
+  }
+
+  /** Read a matrix from a data stream, in big endian order.
+   * @param in data stream from which to read the matrix
+   * @return a new matrix, of the same type as the written one
+   * @exception IOException if the matrix cannot be read or if the
+   * stream does not contain an encoded matrix
+   */
+  public static Matrix read(DataInput in)
+    throws IOException {
+    int[] header = new int[HEADER_SIZE / 4];
+    for (int k = 0; k < header.length; ++k) {
+      header[k] = in.readInt();
+    }
+    Matrix m = buildMatrix(header);
+    double[] row = new double[m.columns];
+    for (int i = 0; i < m.rows; ++i) {
+      NonNullRange range = getRange(m, header[1], i);
+      for (int j = range.begin; j < range.end; ++j) {
+        row[j] = in.readDouble();
+      }
+      writeRow(m, header[1], i, range, row);
+    }
+    return m;
+  }
+
+  /** Write a matrix to a channel, in little endian order.
+   * <p>The elements are transferred in bulk through a direct buffer,
+   * several rows at a time.</p>
+   * @param m matrix to write
+   * @param channel channel where to write the matrix
+   * @exception IOException if the matrix cannot be written
+   * @exception IllegalArgumentException if the matrix type is not
+   * supported
+   */
+  public static void writeRaw(Matrix m, WritableByteChannel channel)
+    throws IOException {
+
+    ByteBuffer buffer =
+      ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    int[] header = buildHeader(m);
+    for (int k = 0; k < header.length; ++k) {
+      buffer.putInt(header[k]);
+    }
+
+    double[] row = (m.data == null) ? new double[m.columns] : null;
+    for (int i = 0; i < m.rows; ++i) {
+      NonNullRange range = getRange(m, header[1], i);
+      double[] source = m.data;
+      int      offset = i * m.columns + range.begin;
+      if (m.data == null) {
+        readRow(m, i, range, row);
+        source = row;
+        offset = range.begin;
+      }
+      int remaining = range.end - range.begin;
+      while (remaining > 0) {
+        if (buffer.remaining() < 8) {
+          flush(buffer, channel);
+        }
+        int n = Math.min(remaining, buffer.remaining() / 8);
+        buffer.asDoubleBuffer().put(source, offset, n);
+        buffer.position(buffer.position() + 8 * n);
+        offset    += n;
+        remaining -= n;
+      }
+    }
+    flush(buffer, channel);
+
+  }
+
+  /** Read a matrix from a channel, in little endian order.
+   * @param channel channel from which to read the matrix
+   * @return a new matrix, of the same type as the written one
+   * @exception IOException if the matrix cannot be read or if the
+   * channel does not contain an encoded matrix
+   */
+  public static Matrix readRaw(ReadableByteChannel channel)
+    throws IOException {
+
+    ByteBuffer buffer =
+      ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.limit(HEADER_SIZE);
+    fill(buffer, channel);
+    int[] header = new int[HEADER_SIZE / 4];
+    for (int k = 0; k < header.length; ++k) {
+      header[k] = buffer.getInt();
+    }
+    Matrix m = buildMatrix(header);
+
+    // the channel is never read beyond the end of the matrix
+    long pending = getEncodedSize(m) - HEADER_SIZE;
+    double[] row = new double[m.columns];
+    buffer.clear();
+    buffer.limit(0);
+    for (int i = 0; i < m.rows; ++i) {
+      NonNullRange range = getRange(m, header[1], i);
+      boolean  direct      = (m.data != null) && (header[1] != SYMETRICAL);
+      double[] destination = direct ? m.data : row;
+      int      offset      = direct ? i * m.columns + range.begin : range.begin;
+      int remaining = range.end - range.begin;
+      while (remaining > 0) {
+        if (buffer.remaining() < 8) {
+          buffer.compact();
+          int size = (int) Math.min(buffer.capacity() - buffer.position(), pending);
+          buffer.limit(buffer.position() + size);
+          pending -= size;
+          fill(buffer, channel);
+        }
+        int n = Math.min(remaining, buffer.remaining() / 8);
+        buffer.asDoubleBuffer().get(destination, offset, n);
+        buffer.position(buffer.position() + 8 * n);
+        offset    += n;
+        remaining -= n;
+      }
+      if (! direct) {
+        writeRow(m, header[1], i, range, row);
+      }
+    }
+
+    return m;
+
+  }
+
+  /** Write the content of a buffer to a channel and clear it.
+   * @param buffer buffer to flush
+   * @param channel channel where to write the buffer content
+   * @exception IOException if the buffer cannot be written
+   */
+  private static void flush(ByteBuffer buffer, WritableByteChannel channel)
+    throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /** Fill a buffer up to its limit from a channel and flip it.
+   * @param buffer buffer to fill
+   * @param channel channel from which to read
+   * @exception IOException if the channel ends before the buffer is full
+   */
+  private static void fill(ByteBuffer buffer, ReadableByteChannel channel)
+    throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+  }
+
+  /** Get the type of a matrix.
+   * @param m matrix to check
+   * @return type of the matrix, or -1 if it is not supported
+   */
+  private static int getType(Matrix m) {
+    Class c = m.getClass();
+    if (c == GeneralMatrix.class) {
+      return GENERAL;
+    } else if (c == GeneralSquareMatrix.class) {
+      return GENERAL_SQUARE;
+    } else if (c == SymetricalMatrix.class) {
+      return SYMETRICAL;
+    } else if (c == DiagonalMatrix.class) {
+      return DIAGONAL;
+    } else if (c == LowerTriangularMatrix.class) {
+      return LOWER_TRIANGULAR;
+    } else if (c == UpperTriangularMatrix.class) {
+      return UPPER_TRIANGULAR;
+    } else if (c == BandMatrix.class) {
+      return BAND;
+    }
+    return -1;
+  }
+
+  /** Check that a matrix type is supported.
+   * @param m matrix to check
+   * @return type of the matrix
+   * @exception IllegalArgumentException if the matrix type is not
+   * supported
+   */
+  private static int checkSupported(Matrix m) {
+    int type = getType(m);
+    if (type < 0) {
+      throw new IllegalArgumentException("cannot encode matrices of type "
+                                         + m.getClass().getName());
+    }
+    return type;
+  }
+
+  /** Build the header of an encoded matrix.
+   * @param m matrix to encode
+   * @return header fields
+   * @exception IllegalArgumentException if the matrix type is not
+   * supported
+   */
+  private static int[] buildHeader(Matrix m) {
+    int type = checkSupported(m);
+    int lower = 0;
+    int upper = 0;
+    if (type == BAND) {
+      lower = ((BandMatrix) m).getLowerBandwidth();
+      upper = ((BandMatrix) m).getUpperBandwidth();
+    }
+    return new int[] { MAGIC, type, m.rows, m.columns, lower, upper };
+  }
+
+  /** Build an empty matrix from an encoded header.
+   * @param header header fields
+   * @return a new matrix with null elements
+   * @exception IOException if the header is invalid
+   */
+  private static Matrix buildMatrix(int[] header)
+    throws IOException {
+
+    int rows    = header[2];
+    int columns = header[3];
+    if (header[0] != MAGIC || rows <= 0 || columns <= 0
+        || ((header[1] != GENERAL) && (rows != columns))) {
+      throw new IOException("invalid encoded matrix header");
+    }
+
+    switch (header[1]) {
+    case GENERAL :
+      return new GeneralMatrix(rows, columns);
+    case GENERAL_SQUARE :
+      return new GeneralSquareMatrix(rows);
+    case SYMETRICAL :
+      return new SymetricalMatrix(rows);
+    case DIAGONAL :
+      return new DiagonalMatrix(rows, 0.0);
+    case LOWER_TRIANGULAR :
+      return new LowerTriangularMatrix(rows);
+    case UPPER_TRIANGULAR :
+      return new UpperTriangularMatrix(rows);
+    case BAND :
+      if (header[4] < 0 || header[5] < 0) {
+        throw new IOException("invalid encoded matrix header");
+      }
+      return new BandMatrix(rows, header[4], header[5]);
+    default :
+      throw new IOException("invalid encoded matrix header");
+    }
+
+  }
+
+  /** Get the encoded range of a row.
+   * @param m matrix
+   * @param type type of the matrix
+   * @param i index of the row
+   * @return encoded range of the row (only the lower triangle is
+   * encoded for symetrical matrices)
+   */
+  private static NonNullRange getRange(Matrix m, int type, int i) {
+    return (type == SYMETRICAL) ? new NonNullRange(0, i + 1) : m.getRangeForRow(i);
+  }
+
+  /** Read a row of a matrix without dense storage.
+   * @param m matrix
+   * @param i index of the row
+   * @param range range of the row to read
+   * @param row placeholder where to put the row elements
+   */
+  private static void readRow(Matrix m, int i, NonNullRange range, double[] row) {
+    for (int j = range.begin; j < range.end; ++j) {
+      row[j] = m.getElement(i, j);
+    }
+  }
+
+  /** Write a row into a freshly built matrix.
+   * @param m matrix
+   * @param type type of the matrix
+   * @param i index of the row
+   * @param range range of the row to write
+   * @param row row elements
+   */
+  private static void writeRow(Matrix m, int type, int i, NonNullRange range,
+                               double[] row) {
+    if (type == BAND) {
+      for (int j = range.begin; j < range.end; ++j) {
+        m.setElement(i, j, row[j]);
+      }
+    } else {
+      System.arraycopy(row, range.begin, m.data,
+                       i * m.columns + range.begin, range.end - range.begin);
+      if (type == SYMETRICAL) {
+        for (int j = 0; j < i; ++j) {
+          m.data[j * m.columns + i] = row[j];
+        }
+      }
+    }
+  }
+
+  /** Serialization proxy for supported matrices. */
+  static class SerialProxy
+    implements Externalizable {
+
+    /** Empty constructor for deserialization. */
+    public SerialProxy() {
+      matrix = null;
+    }
+
+    /** Simple constructor.
+     * @param matrix matrix to serialize
+     */
+    public SerialProxy(Matrix matrix) {
+      this.matrix = matrix;
+    }
+
+    public void writeExternal(ObjectOutput out)
+      throws IOException {
+      write(matrix, out);
+    }
+
+    public void readExternal(ObjectInput in)
+      throws IOException {
+      matrix = read(in);
+    }
+
+    /** Replace the proxy by the matrix it holds after deserialization.
+     * @return deserialized matrix
+     */
+    protected Object readResolve() {
+      return matrix;
+    }
+
+    /** Serialized matrix. */
+    private Matrix matrix;
+
+    private static final long serialVersionUID = -3340285315765622290L;
+
+  }
+
+  /** Magic number of the encoded matrices ("MTX1"). */
+  private static final int MAGIC = 0x4D545831;
+
+  /** Size of the header in bytes. */
+  private static final int HEADER_SIZE = 24;
+
+  /** Size of the transfer buffers of the raw format. */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /** Type for {@link GeneralMatrix}. */
+  private static final int GENERAL = 0;
+
+  /** Type for {@link GeneralSquareMatrix}. */
+  private static final int GENERAL_SQUARE = 1;
+
+  /** Type for {@link SymetricalMatrix}. */
+  private static final int SYMETRICAL = 2;
+
+  /** Type for {@link DiagonalMatrix}. */
+  private static final int DIAGONAL = 3;
+
+  /** Type for {@link LowerTriangularMatrix}. */
+  private static final int LOWER_TRIANGULAR = 4;
+
+  /** Type for {@link UpperTriangularMatrix}. */
+  private static final int UPPER_TRIANGULAR = 5;
+
+  /** Type for {@link BandMatrix}. */
+  private static final int BAND = 6;
+
+}
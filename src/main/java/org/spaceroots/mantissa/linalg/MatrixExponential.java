@@ -0,0 +1,375 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** This class computes exponentials of a constant square matrix.
+
+ * <p>The exponential <tt>exp(A.t)</tt> is computed using the scaling
+ * and squaring algorithm with Pad&eacute; approximants described by
+ * N. J. Higham in <em>The scaling and squaring method for the matrix
+ * exponential revisited</em> (SIAM J. Matrix Anal. Appl., 2005): the
+ * degree of the approximant (3, 5, 7, 9 or 13) is selected from the
+ * 1-norm of <tt>A.t</tt>, and if even the degree 13 is not accurate
+ * enough, the matrix is divided by a power of two before the
+ * approximation and the result is squared back. The result is
+ * accurate to a few units in the last place for normal matrices.</p>
+
+ * <p>This class is intended for linearized propagation of states
+ * and covariances, where the transition matrix <tt>&Phi;(dt) =
+ * exp(A.dt)</tt> is needed for many time steps, most of them with
+ * the same few step sizes. The matrix A is copied at construction
+ * and the transition matrices are cached, the least recently used
+ * ones being dropped when the cache is full, so repeated step sizes
+ * cost a single lookup. Each call returns a new matrix built from
+ * the cached elements, so the caller can modify it freely.</p>
+
+ * <p>The {@link #getTransitionAndNoise getTransitionAndNoise} method
+ * uses the block matrix method of C. F. Van Loan (<em>Computing
+ * integrals involving the matrix exponential</em>, IEEE
+ * Trans. Automatic Control, 1978) to compute the discrete process
+ * noise <tt>Q<sub>d</sub> = &int;<sub>0</sub><sup>dt</sup>
+ * &Phi;(s).Q.&Phi;<sup>T</sup>(s) ds</tt> of a continuous white noise
+ * of spectral density Q together with the transition matrix, using
+ * a single exponential of order 2n.</p>
+
+ * <p>Instances of this class can be shared between threads, the
+ * cache being synchronized.</p>
+
+ * @see SquareMatrix#getExponential
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class MatrixExponential {
+
+  /** Simple constructor.
+   * @param a matrix to exponentiate (it is copied, so it can be
+   * modified afterwards without affecting the instance)
+   * @param cacheSize maximal number of transition matrices to cache
+   * (0 disables caching)
+   */
+  public MatrixExponential(SquareMatrix a, int cacheSize) {
+    this.order     = a.getRows();
+    this.a         = (double[]) a.getDenseData().clone();
+    this.cacheSize = cacheSize;
+    cache = new LinkedHashMap<Double, double[]>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Double, double[]> eldest) {
+          return size() > MatrixExponential.this.cacheSize;
+        }
+        private static final long serialVersionUID = -6045315211346372219L;
+      };
+  }
+
+  /** Get the order of the matrix.
+   * @return order of the matrix
+   */
+  public int getOrder() {
+    return order;
+  }
+
+  /** Get the transition matrix for a time step.
+   * @param dt time step
+   * @return a new transition matrix <tt>exp(A.dt)</tt>
+   */
+  public SquareMatrix getTransition(double dt) {
+
+    Double key = Double.valueOf(dt);
+    double[] cached;
+    synchronized (cache) {
+      cached = cache.get(key);
+    }
+
+    if (cached == null) {
+      cached = exponential(a, order, dt);
+      store(key, cached);
+    }
+
+    // the constructor copies the cached elements
+    return new GeneralSquareMatrix(order, cached);
+
+  }
+
+  /** Check if the transition matrix for a time step is cached.
+   * <p>This method does not change the least recently used order.</p>
+   * @param dt time step
+   * @return true if the transition matrix for dt is cached
+   */
+  boolean isCached(double dt) {
+    synchronized (cache) {
+      return cache.containsKey(Double.valueOf(dt));
+    }
+  }
+
+  /** Compute the transition matrix and the discrete process noise.
+   * <p>The computation uses the exponential of the 2n order block
+   * matrix <tt>[[-A, Q], [0, A<sup>T</sup>]].dt</tt>, which is
+   * <tt>[[E<sub>11</sub>, E<sub>12</sub>], [0, E<sub>22</sub>]]</tt>
+   * with <tt>&Phi; = E<sub>22</sub><sup>T</sup></tt> and <tt>Q<sub>d</sub>
+   * = &Phi;.E<sub>12</sub></tt>. The transition matrix is also stored
+   * in the cache, so a later call to {@link #getTransition} with the
+   * same step is free.</p>
+   * @param q spectral density of the continuous process noise
+   * @param dt time step
+   * @param phi placeholder where to put the transition matrix
+   * <tt>exp(A.dt)</tt> (must be a general square matrix)
+   * @param qd placeholder where to put the discrete process noise
+   * (must be a general or symetrical matrix)
+   * @exception IllegalArgumentException if the matrices dimensions do
+   * not match the order of the instance or if a placeholder cannot
+   * hold the result
+   */
+  public void getTransitionAndNoise(SquareMatrix q, double dt,
+                                    GeneralSquareMatrix phi,
+                                    GeneralSquareMatrix qd) {
+
+    if (q.getRows() != order || phi.getRows() != order || qd.getRows() != order) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    if (phi.getClass() != GeneralSquareMatrix.class
+        || (qd.getClass() != GeneralSquareMatrix.class
+            && qd.getClass() != SymetricalMatrix.class)) {
+      throw new IllegalArgumentException("the destination matrix structure"
+                                         + " cannot hold the result");
+    }
+
+    // build the Van Loan block matrix
+    int      n2    = 2 * order;
+    double[] m     = new double[n2 * n2];
+    double[] qData = q.getDenseData();
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j < order; ++j) {
+        m[i * n2 + j]                   = -a[i * order + j];
+        m[i * n2 + order + j]           = qData[i * order + j];
+        m[(order + j) * n2 + order + i] = a[i * order + j];
+      }
+    }
+    double[] e = exponential(m, n2, dt);
+
+    // extract the transition matrix
+    double[] phiData = phi.data;
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j < order; ++j) {
+        phiData[i * order + j] = e[(order + j) * n2 + order + i];
+      }
+    }
+    phi.resetFactorizations();
+
+    // compute the discrete process noise, enforcing its symmetry
+    double[] qdData = qd.data;
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        double sij = 0;
+        double sji = 0;
+        for (int k = 0; k < order; ++k) {
+          sij += phiData[i * order + k] * e[k * n2 + order + j];
+          sji += phiData[j * order + k] * e[k * n2 + order + i];
+        }
+        double value = 0.5 * (sij + sji);
+        qdData[i * order + j] = value;
+        qdData[j * order + i] = value;
+      }
+    }
+    qd.resetFactorizations();
+
+    store(Double.valueOf(dt), (double[]) phiData.clone());
+
+  }
+
+  /** Store a transition matrix in the cache.
+   * @param key time step
+   * @param phi elements of the transition matrix (stored row after
+   * row, they are not copied and must not be modified afterwards)
+   */
+  private void store(Double key, double[] phi) {
+    if (cacheSize > 0) {
+      synchronized (cache) {
+        cache.put(key, phi);
+      }
+    }
+  }
+
+  /** Compute the exponential of a scaled matrix.
+   * @param m elements of the matrix (stored row after row, not modified)
+   * @param n order of the matrix
+   * @param t scaling factor
+   * @return elements of <tt>exp(m.t)</tt> (stored row after row)
+   */
+  static double[] exponential(double[] m, int n, double t) {
+
+    double[] x = new double[n * n];
+    for (int index = 0; index < x.length; ++index) {
+      x[index] = t * m[index];
+    }
+
+    // 1-norm of the scaled matrix
+    double norm = 0;
+    for (int j = 0; j < n; ++j) {
+      double sum = 0;
+      for (int i = 0; i < n; ++i) {
+        sum += Math.abs(x[i * n + j]);
+      }
+      norm = Math.max(norm, sum);
+    }
+
+    if (Double.isNaN(norm) || Double.isInfinite(norm)) {
+      throw new IllegalArgumentException("cannot compute the exponential"
+                                         + " of a non finite matrix");
+    }
+
+    // select the lowest degree Pade approximant that is accurate enough
+    for (int k = 0; k < THETA.length - 1; ++k) {
+      if (norm <= THETA[k]) {
+        return pade(x, n, COEFFICIENTS[k]);
+      }
+    }
+
+    // scale the matrix, use the degree 13 approximant and square back
+    int s = 0;
+    if (norm > THETA[THETA.length - 1]) {
+      s = (int) Math.ceil(Math.log(norm / THETA[THETA.length - 1]) / Math.log(2.0));
+      VectorKernels.scale(Math.pow(2.0, -s), x, 0, x, 0, x.length);
+    }
+    double[] r = pade(x, n, COEFFICIENTS[THETA.length - 1]);
+    double[] w = new double[n * n];
+    for (int k = 0; k < s; ++k) {
+      VectorKernels.gemm(1.0, r, r, 0.0, w, n, n, n);
+      double[] tmp = r;
+      r = w;
+      w = tmp;
+    }
+    return r;
+
+  }
+
+  /** Compute a diagonal Pade approximant of the exponential.
+   * @param x elements of the matrix (stored row after row)
+   * @param n order of the matrix
+   * @param b coefficients of the approximant numerator
+   * @return elements of the approximant (stored row after row)
+   */
+  private static double[] pade(double[] x, int n, double[] b) {
+
+    int      nn     = n * n;
+    int      degree = b.length - 1;
+    double[] u      = new double[nn];
+    double[] v      = new double[nn];
+    double[] x2     = new double[nn];
+    VectorKernels.gemm(1.0, x, x, 0.0, x2, n, n, n);
+
+    if (degree < 13) {
+
+      // U = X.(b1 I + b3 X^2 + ...), V = b0 I + b2 X^2 + ...
+      double[] odd  = new double[nn];
+      double[] p    = null;
+      for (int k = 0; k <= degree / 2; ++k) {
+        if (k == 0) {
+          addIdentity(b[1], odd, n);
+          addIdentity(b[0], v, n);
+        } else {
+          if (p == null) {
+            p = (double[]) x2.clone();
+          } else {
+            double[] next = new double[nn];
+            VectorKernels.gemm(1.0, p, x2, 0.0, next, n, n, n);
+            p = next;
+          }
+          VectorKernels.axpy(b[2 * k + 1], p, 0, odd, 0, nn);
+          VectorKernels.axpy(b[2 * k], p, 0, v, 0, nn);
+        }
+      }
+      VectorKernels.gemm(1.0, x, odd, 0.0, u, n, n, n);
+
+    } else {
+
+      double[] x4 = new double[nn];
+      double[] x6 = new double[nn];
+      VectorKernels.gemm(1.0, x2, x2, 0.0, x4, n, n, n);
+      VectorKernels.gemm(1.0, x4, x2, 0.0, x6, n, n, n);
+
+      // U = X.(X6.(b13 X6 + b11 X4 + b9 X2) + b7 X6 + b5 X4 + b3 X2 + b1 I)
+      double[] w1 = new double[nn];
+      double[] w2 = new double[nn];
+      VectorKernels.scale(b[13], x6, 0, w1, 0, nn);
+      VectorKernels.axpy(b[11], x4, 0, w1, 0, nn);
+      VectorKernels.axpy(b[9],  x2, 0, w1, 0, nn);
+      VectorKernels.gemm(1.0, x6, w1, 0.0, w2, n, n, n);
+      VectorKernels.axpy(b[7], x6, 0, w2, 0, nn);
+      VectorKernels.axpy(b[5], x4, 0, w2, 0, nn);
+      VectorKernels.axpy(b[3], x2, 0, w2, 0, nn);
+      addIdentity(b[1], w2, n);
+      VectorKernels.gemm(1.0, x, w2, 0.0, u, n, n, n);
+
+      // V = X6.(b12 X6 + b10 X4 + b8 X2) + b6 X6 + b4 X4 + b2 X2 + b0 I
+      VectorKernels.scale(b[12], x6, 0, w1, 0, nn);
+      VectorKernels.axpy(b[10], x4, 0, w1, 0, nn);
+      VectorKernels.axpy(b[8],  x2, 0, w1, 0, nn);
+      VectorKernels.gemm(1.0, x6, w1, 0.0, v, n, n, n);
+      VectorKernels.axpy(b[6], x6, 0, v, 0, nn);
+      VectorKernels.axpy(b[4], x4, 0, v, 0, nn);
+      VectorKernels.axpy(b[2], x2, 0, v, 0, nn);
+      addIdentity(b[0], v, n);
+
+    }
+
+    // solve (V - U).R = (V + U)
+    double[] q = new double[nn];
+    for (int index = 0; index < nn; ++index) {
+      q[index]  = v[index] - u[index];
+      v[index] += u[index];
+    }
+    try {
+      new LUDecomposition(new GeneralSquareMatrix(n, q), 0.0).solve(v, n, v);
+    } catch (SingularMatrixException e) {
+      // the denominator of the approximants is always well
+      // conditioned for the norms selected, this cannot happen
+      throw new RuntimeException("internal error");
+    }
+    return v;
+
+  }
+
+  /** Add a multiple of the identity to a matrix.
+   * @param alpha multiplicative factor of the identity
+   * @param m elements of the matrix (stored row after row)
+   * @param n order of the matrix
+   */
+  private static void addIdentity(double alpha, double[] m, int n) {
+    for (int index = 0; index < n * n; index += n + 1) {
+      m[index] += alpha;
+    }
+  }
+
+  /** Maximal 1-norms for the Pade approximants of degree 3, 5, 7, 9 and 13. */
+  private static final double[] THETA = {
+    1.495585217958292e-2, 2.539398330063230e-1, 9.504178996162932e-1,
+    2.097847961257068e0,  5.371920351148152e0
+  };
+
+  /** Coefficients of the Pade approximants of degree 3, 5, 7, 9 and 13. */
+  private static final double[][] COEFFICIENTS = {
+    { 120.0, 60.0, 12.0, 1.0 },
+    { 30240.0, 15120.0, 3360.0, 420.0, 30.0, 1.0 },
+    { 17297280.0, 8648640.0, 1995840.0, 277200.0, 25200.0, 1512.0, 56.0, 1.0 },
+    { 17643225600.0, 8821612800.0, 2075673600.0, 302702400.0, 30270240.0,
+      2162160.0, 110880.0, 3960.0, 90.0, 1.0 },
+    { 64764752532480000.0, 32382376266240000.0, 7771770303897600.0,
+      1187353796428800.0, 129060195264000.0, 10559470521600.0,
+      670442572800.0, 33522128640.0, 1323241920.0, 40840800.0, 960960.0,
+      16380.0, 182.0, 1.0 }
+  };
+
+  /** Order of the matrix. */
+  private final int order;
+
+  /** Elements of the matrix (stored row after row). */
+  private final double[] a;
+
+  /** Maximal number of cached transition matrices. */
+  private final int cacheSize;
+
+  /** Cache of transition matrices elements, indexed by time step. */
+  private final Map<Double, double[]> cache;
+
+}
@@ -1,5 +1,8 @@
 package org.spaceroots.mantissa.linalg;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
 /** This class is a factory for the linear algebra package.
 
  * <p>This class is devoted to building the right type of matrix
@@ -66,4 +69,153 @@ public class MatrixFactory {
     return new GeneralMatrix(rows, columns, data);
   }
 
+  /** Build a sparse matrix from its non null elements.
+   * <p>The elements are given as (row, column, value) triplets in
+   * any order. Elements appearing several times are summed, which is
+   * convenient for assembling matrices from independent
+   * contributions.</p>
+   * @param rows number of row of the matrix
+   * @param columns number of columns of the matrix
+   * @param rowIndices row index of each element
+   * @param columnIndices column index of each element
+   * @param values value of each element
+   * @return a sparse matrix containing the elements
+   * @exception IllegalArgumentException if the arrays have different
+   * lengths or if an index is out of range
+   */
+  public static SparseMatrix buildSparseMatrix(int rows, int columns,
+                                               int[] rowIndices,
+                                               int[] columnIndices,
+                                               double[] values) {
+
+    int n = values.length;
+    if (rowIndices.length != n || columnIndices.length != n) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    for (int k = 0; k < n; ++k) {
+      if (rowIndices[k] < 0 || rowIndices[k] >= rows
+          || columnIndices[k] < 0 || columnIndices[k] >= columns) {
+        throw new IllegalArgumentException("wrong element indices ("
+                                           + rowIndices[k] + ", "
+                                           + columnIndices[k] + ") for a "
+                                           + rows + 'x' + columns
+                                           + " matrix");
+      }
+    }
+
+    // sort the elements by columns, then (stable) by rows
+    int[] byColumn = countingSort(columnIndices, columns, null);
+    int[] order    = countingSort(rowIndices,    rows,    byColumn);
+
+    // merge the duplicated elements
+    int[]    rowStart    = new int[rows + 1];
+    int[]    columnIndex = new int[n];
+    double[] sorted      = new double[n];
+    int nnz = 0;
+    for (int l = 0; l < n; ++l) {
+      int k = order[l];
+      if (nnz > 0
+          && columnIndex[nnz - 1] == columnIndices[k]
+          && rowStart[rowIndices[k] + 1] > 0) {
+        sorted[nnz - 1] += values[k];
+      } else {
+        columnIndex[nnz] = columnIndices[k];
+        sorted[nnz]      = values[k];
+        ++nnz;
+        ++rowStart[rowIndices[k] + 1];
+      }
+    }
+    for (int i = 0; i < rows; ++i) {
+      rowStart[i + 1] += rowStart[i];
+    }
+
+    return new SparseMatrix(rows, columns, rowStart, columnIndex, sorted);
+
+  }
+
+  /** Build a sparse matrix from its compressed column storage.
+   * <p>For each column j, the elements are stored in increasing row
+   * order between indices <code>columnStart[j]</code> (included) and
+   * <code>columnStart[j+1]</code> (excluded) of the
+   * <code>rowIndex</code> and <code>values</code> arrays.</p>
+   * @param rows number of row of the matrix
+   * @param columns number of columns of the matrix
+   * @param columnStart index of the first element of each column in the
+   * other arrays, with an additional last element containing the
+   * number of non null elements (the array size must be columns + 1)
+   * @param rowIndex row of each element (the row indices must be
+   * strictly increasing within each column)
+   * @param values value of each element
+   * @return a sparse matrix containing the elements
+   * @exception IllegalArgumentException if the arrays are not consistent
+   */
+  public static SparseMatrix buildSparseMatrixFromColumns(int rows, int columns,
+                                                          int[] columnStart,
+                                                          int[] rowIndex,
+                                                          double[] values) {
+    // the compressed column storage of a matrix is the
+    // compressed row storage of its transpose
+    SparseMatrix transposed =
+      new SparseMatrix(columns, rows, columnStart, rowIndex, values);
+    return (SparseMatrix) transposed.getTranspose();
+  }
+
+  /** Build a matrix stored in NIO buffers.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   * @param storage storage to use, must be either {@link
+   * BufferMatrix#HEAP} or {@link BufferMatrix#DIRECT}
+   * @return a new matrix with null elements
+   * @exception IllegalArgumentException if the storage is not
+   * supported or if the dimensions are invalid
+   * @see #mapMatrix
+   */
+  public static BufferMatrix buildBufferMatrix(int rows, int columns,
+                                               int storage) {
+    return new BufferMatrix(rows, columns, storage);
+  }
+
+  /** Build a matrix mapped from a file.
+   * <p>The file contains the elements row after row in little endian
+   * byte order, starting at the specified position. The same file can
+   * be mapped by several processes simultaneously.</p>
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   * @param channel channel of the file
+   * @param position position of the first element in the file (in bytes)
+   * @param readOnly if true, the file is mapped in read only mode
+   * @return a new matrix backed by the file
+   * @exception IOException if the file cannot be mapped
+   * @exception IllegalArgumentException if the dimensions are invalid
+   * @see #buildBufferMatrix
+   */
+  public static BufferMatrix mapMatrix(int rows, int columns,
+                                       FileChannel channel, long position,
+                                       boolean readOnly)
+    throws IOException {
+    return new BufferMatrix(rows, columns, channel, position, readOnly);
+  }
+
+  /** Sort elements according to a key using a stable counting sort.
+   * @param keys keys of the elements
+   * @param range number of different keys (keys are between 0 and range - 1)
+   * @param order initial order of the elements (null for natural order)
+   * @return indices of the elements sorted according to the keys
+   */
+  private static int[] countingSort(int[] keys, int range, int[] order) {
+    int[] start = new int[range + 1];
+    for (int k = 0; k < keys.length; ++k) {
+      ++start[keys[k] + 1];
+    }
+    for (int key = 0; key < range; ++key) {
+      start[key + 1] += start[key];
+    }
+    int[] sorted = new int[keys.length];
+    for (int l = 0; l < keys.length; ++l) {
+      int k = (order == null) ? l : order[l];
+      sorted[start[keys[k]]++] = k;
+    }
+    return sorted;
+  }
+
 }
@@ -0,0 +1,258 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+
+/** This class solves dense linear systems using mixed precision.
+
+ * <p>The matrix is factored once in single precision by a {@link
+ * FloatLUDecomposition}, which needs half the memory bandwidth of a
+ * double precision factorization. Each solve starts with a single
+ * precision solution which is then improved by iterative refinement:
+ * the residual <tt>r = b - A.x</tt> is computed in double precision,
+ * the correction <tt>A.d = r</tt> is solved with the single precision
+ * factors and added to x. For reasonably conditioned matrices (up to
+ * about 10<sup>6</sup>), a few iterations are enough to get the same
+ * accuracy as {@link LUDecomposition}.</p>
+
+ * <p>If the single precision factorization fails or if the
+ * refinement does not converge (ill-conditioned matrices), the solver
+ * falls back to a double precision {@link LUDecomposition}, computed
+ * once the first time it is needed, so the result is always as
+ * accurate as the one of {@link GeneralSquareMatrix#solve}.</p>
+
+ * <p>Storing the matrix itself in a {@link FloatMatrix} also halves
+ * the cost of the residuals computation. The residuals are then
+ * computed with respect to the single precision matrix, which is
+ * considered to be the exact matrix of the system.</p>
+
+ * <p>The stopping criterion is the one of the LAPACK
+ * <code>dsgesv</code> routine: refinement stops as soon as
+ * <tt>|r| &lt;= |x| |A| &epsilon; sqrt(n)</tt>, using infinity
+ * norms.</p>
+
+ * <p>Instances of this class are not thread-safe, as they keep the
+ * statistics of the last solve.</p>
+
+ * @see FloatLUDecomposition
+ * @see FloatMatrix
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class MixedPrecisionSolver
+  implements Serializable {
+
+  /** Simple constructor.
+   * Build a solver for a matrix, factoring it in single precision.
+   * @param a matrix of the system (it must not be modified while the
+   * solver is used)
+   * @param epsilon threshold on pivots below which the matrix is
+   * considered singular
+   * @param maxIterations maximal number of refinement iterations
+   * before falling back to a double precision solve
+   * @exception SingularMatrixException if the matrix is singular
+   * even in double precision
+   * @exception IllegalArgumentException if the matrix is not square
+   */
+  public MixedPrecisionSolver(Matrix a, double epsilon, int maxIterations)
+    throws SingularMatrixException {
+
+    if (a.getRows() != a.getColumns()) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    this.a             = a;
+    this.epsilon       = epsilon;
+    this.maxIterations = maxIterations;
+    iterations         = 0;
+    fallback           = false;
+
+    // infinity norm of the matrix
+    double norm = 0;
+    for (int i = 0; i < a.getRows(); ++i) {
+      double sum = 0;
+      for (int j = 0; j < a.getColumns(); ++j) {
+        sum += Math.abs(a.getElement(i, j));
+      }
+      norm = Math.max(norm, sum);
+    }
+    threshold = norm * EPSILON * Math.sqrt(a.getRows());
+
+    try {
+      floatLU  = new FloatLUDecomposition(a, epsilon);
+      doubleLU = null;
+    } catch (SingularMatrixException e) {
+      // the single precision factorization failed,
+      // we use double precision from the start
+      floatLU  = null;
+      doubleLU = getDoubleLU();
+    }
+
+  }
+
+  /** Solve the <tt>A.x = b</tt> equation.
+   * @param b second term of the equation (not modified unless it
+   * is the same array as x)
+   * @param x array where to store the solution (may be b itself)
+   * @exception SingularMatrixException if the fallback double
+   * precision factorization is needed and the matrix is singular
+   * @exception IllegalArgumentException if the arrays are too small
+   */
+  public void solve(double[] b, double[] x)
+    throws SingularMatrixException {
+
+    int n = a.getRows();
+    if (b.length < n || x.length < n) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    iterations = 0;
+    fallback   = false;
+    if (floatLU != null) {
+
+      double[] xs = new double[n];
+      double[] r  = new double[n];
+      double[] ax = new double[n];
+      floatLU.solve(b, xs);
+
+      for (;;) {
+
+        // compute the residual in double precision
+        a.apply(xs, ax);
+        double rNorm = 0;
+        double xNorm = 0;
+        for (int i = 0; i < n; ++i) {
+          r[i]  = b[i] - ax[i];
+          rNorm = Math.max(rNorm, Math.abs(r[i]));
+          xNorm = Math.max(xNorm, Math.abs(xs[i]));
+        }
+
+        if (rNorm <= xNorm * threshold) {
+          // converged
+          System.arraycopy(xs, 0, x, 0, n);
+          return;
+        }
+
+        if (iterations >= maxIterations
+            || Double.isNaN(rNorm) || Double.isInfinite(xNorm)) {
+          // refinement failed, fall back to double precision
+          break;
+        }
+
+        // correct the solution
+        ++iterations;
+        floatLU.solve(r, r);
+        for (int i = 0; i < n; ++i) {
+          xs[i] += r[i];
+        }
+
+      }
+
+    }
+
+    fallback = true;
+    getDoubleLU().solve(b, x);
+
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation.
+   * @param b second term of the equation
+   * @return a new matrix X such that <tt>A.X = B</tt>
+   * @exception SingularMatrixException if the fallback double
+   * precision factorization is needed and the matrix is singular
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix solve(Matrix b)
+    throws SingularMatrixException {
+
+    int n = a.getRows();
+    if (b.getRows() != n) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    int      nRhs   = b.getColumns();
+    double[] bData  = b.getDenseData();
+    double[] column = new double[n];
+    double[] x      = new double[bData.length];
+    int      total  = 0;
+    boolean  any    = false;
+    for (int j = 0; j < nRhs; ++j) {
+      for (int i = 0; i < n; ++i) {
+        column[i] = bData[i * nRhs + j];
+      }
+      solve(column, column);
+      total += iterations;
+      any    = any || fallback;
+      for (int i = 0; i < n; ++i) {
+        x[i * nRhs + j] = column[i];
+      }
+    }
+    iterations = total;
+    fallback   = any;
+
+    return MatrixFactory.buildMatrix(n, nRhs, x);
+
+  }
+
+  /** Get the number of refinement iterations of the last solve.
+   * @return number of refinement iterations of the last solve (summed
+   * over all right hand sides for {@link #solve(Matrix)})
+   */
+  public int getIterations() {
+    return iterations;
+  }
+
+  /** Check if the last solve fell back to double precision.
+   * @return true if the last solve (or one of the right hand sides
+   * for {@link #solve(Matrix)}) used the double precision
+   * factorization
+   */
+  public boolean hasFallenBack() {
+    return fallback;
+  }
+
+  /** Get the double precision factorization, computing it if needed.
+   * @return double precision LU decomposition of the matrix
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  private LUDecomposition getDoubleLU()
+    throws SingularMatrixException {
+    if (doubleLU == null) {
+      doubleLU = new LUDecomposition(new GeneralSquareMatrix(a.getRows(),
+                                                             a.getDenseData()),
+                                     epsilon);
+    }
+    return doubleLU;
+  }
+
+  /** Relative accuracy of double numbers. */
+  private static final double EPSILON = 0x1.0p-53;
+
+  /** Matrix of the system. */
+  private final Matrix a;
+
+  /** Threshold on pivots. */
+  private final double epsilon;
+
+  /** Maximal number of refinement iterations. */
+  private final int maxIterations;
+
+  /** Convergence threshold (relative to the norm of x). */
+  private final double threshold;
+
+  /** Single precision factorization (null if it failed). */
+  private FloatLUDecomposition floatLU;
+
+  /** Double precision factorization (null if not needed yet). */
+  private LUDecomposition doubleLU;
+
+  /** Number of refinement iterations of the last solve. */
+  private int iterations;
+
+  /** Indicator for double precision fallback in the last solve. */
+  private boolean fallback;
+
+  private static final long serialVersionUID = 8212617839050294412L;
+
+}
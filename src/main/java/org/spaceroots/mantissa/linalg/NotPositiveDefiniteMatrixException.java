@@ -0,0 +1,26 @@
+package org.spaceroots.mantissa.linalg;
+
+import org.spaceroots.mantissa.MantissaException;
+
+/** This class represent exceptions thrown by factorizations
+ * requiring a positive definite matrix.
+
+ * @see CholeskyDecomposition
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class NotPositiveDefiniteMatrixException
+  extends MantissaException {
+
+  /** Simple constructor.
+   * Build an exception with a default message
+   */
+  public NotPositiveDefiniteMatrixException() {
+    super("not positive definite matrix");
+  }
+
+  private static final long serialVersionUID = 2417750185263508154L;
+
+}
@@ -0,0 +1,534 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+
+/** This class implements QR decompositions of rectangular matrices.
+
+ * <p>The decomposition of a m&times;n matrix A is A.P = Q.R where Q is
+ * an orthogonal m&times;m matrix, R is a m&times;n upper triangular
+ * (or trapezoidal) matrix and P is a permutation matrix. The
+ * decomposition is computed using Householder reflections. Q is never
+ * formed explicitly: it is kept as the product of k = min(m, n)
+ * elementary reflectors H<sub>j</sub> = I - &tau;<sub>j</sub>
+ * v<sub>j</sub>.v<sub>j</sub><sup>T</sup> and can be applied to
+ * vectors using {@link #applyQ} and {@link #applyQt}.</p>
+
+ * <p>Without column pivoting, P is the identity and the decomposition
+ * is computed by panels of columns. The reflectors of one panel are
+ * accumulated in compact WY form I - V.T.V<sup>T</sup> (where T is a
+ * small upper triangular matrix) and applied to the remaining
+ * columns at once, so that each of these columns is read only twice
+ * per panel instead of twice per reflector. The working copy of the
+ * matrix is stored column after column, so both the reflectors and
+ * the updated columns are contiguous in memory, which is important
+ * for tall and skinny matrices.</p>
+
+ * <p>With column pivoting, the column with largest remaining norm
+ * is selected at each step. This makes the magnitude of the diagonal
+ * elements of R decrease, which allows to reveal the numerical rank
+ * of the matrix. The pivoting strategy requires updating the column
+ * norms after each reflection, so this variant is not blocked.</p>
+
+ * <p>The main use of this class is to solve linear least squares
+ * problems without forming the normal equations, whose condition
+ * number is the square of the condition number of A.</p>
+
+ * @see GeneralMatrix#getQRDecomposition
+ * @see GeneralMatrix#solveLeastSquares
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class QRDecomposition
+  implements Serializable {
+
+  /** Simple constructor.
+   * Build the decomposition of a matrix.
+   * @param m matrix to decompose
+   * @param columnPivoting if true, columns are permuted to reveal
+   * the rank of the matrix
+   */
+  public QRDecomposition(Matrix m, boolean columnPivoting) {
+
+    rows        = m.getRows();
+    columns     = m.getColumns();
+    k           = Math.min(rows, columns);
+    qr          = new double[rows * columns];
+    tau         = new double[k];
+    permutation = new int[columns];
+    pivoting    = columnPivoting;
+
+    // transpose the matrix elements into column major order
+    double[] mData = m.getDenseData();
+    for (int j = 0; j < columns; ++j) {
+      for (int i = 0, index = j; i < rows; ++i, index += columns) {
+        qr[j * rows + i] = mData[index];
+      }
+      permutation[j] = j;
+    }
+
+    if (columnPivoting) {
+      decomposeWithPivoting();
+    } else {
+      decomposeByPanels();
+    }
+
+  }
+
+  /** Compute the decomposition by panels of columns. */
+  private void decomposeByPanels() {
+
+    double[] t = new double[BLOCK_SIZE * BLOCK_SIZE];
+    double[] w = new double[BLOCK_SIZE];
+
+    for (int j0 = 0; j0 < k; j0 += BLOCK_SIZE) {
+      int nb = Math.min(BLOCK_SIZE, k - j0);
+
+      // factorize the panel
+      for (int j = j0; j < j0 + nb; ++j) {
+        computeReflector(j);
+        for (int c = j + 1; c < j0 + nb; ++c) {
+          applyReflector(j, c * rows);
+        }
+      }
+
+      if (j0 + nb < columns) {
+
+        // accumulate the reflectors of the panel in compact WY form
+        computeT(j0, nb, t, w);
+
+        // apply (I - V.T.V^T)^T to the trailing columns
+        for (int c = j0 + nb; c < columns; ++c) {
+          int cBase = c * rows;
+
+          // w = V^T.c
+          for (int p = 0; p < nb; ++p) {
+            int j     = j0 + p;
+            int vBase = j * rows;
+            double s  = qr[cBase + j];
+            for (int i = j + 1; i < rows; ++i) {
+              s += qr[vBase + i] * qr[cBase + i];
+            }
+            w[p] = s;
+          }
+
+          // w = T^T.w (in place, from bottom to top)
+          for (int p = nb - 1; p >= 0; --p) {
+            double s = 0;
+            for (int q = 0; q <= p; ++q) {
+              s += t[q * BLOCK_SIZE + p] * w[q];
+            }
+            w[p] = s;
+          }
+
+          // c = c - V.w
+          for (int p = 0; p < nb; ++p) {
+            int j     = j0 + p;
+            int vBase = j * rows;
+            double wp = w[p];
+            qr[cBase + j] -= wp;
+            for (int i = j + 1; i < rows; ++i) {
+              qr[cBase + i] -= wp * qr[vBase + i];
+            }
+          }
+
+        }
+      }
+    }
+
+  }
+
+  /** Compute the triangular factor of a block of reflectors.
+   * <p>The product H<sub>j0</sub>...H<sub>j0+nb-1</sub> is equal to
+   * I - V.T.V<sup>T</sup> where the columns of V are the reflectors
+   * vectors and T is an upper triangular matrix.</p>
+   * @param j0 index of the first reflector of the block
+   * @param nb number of reflectors in the block
+   * @param t array where to store T (row after row, with a row
+   * length of {@link #BLOCK_SIZE})
+   * @param z work array
+   */
+  private void computeT(int j0, int nb, double[] t, double[] z) {
+    for (int p = 0; p < nb; ++p) {
+      int jp = j0 + p;
+      int vp = jp * rows;
+
+      // z = -tau_p V(:, 0:p)^T.v_p
+      for (int q = 0; q < p; ++q) {
+        int vq  = (j0 + q) * rows;
+        double s = qr[vq + jp];
+        for (int i = jp + 1; i < rows; ++i) {
+          s += qr[vq + i] * qr[vp + i];
+        }
+        z[q] = -tau[jp] * s;
+      }
+
+      // T(0:p, p) = T(0:p, 0:p).z
+      for (int q = 0; q < p; ++q) {
+        double s = 0;
+        for (int r = q; r < p; ++r) {
+          s += t[q * BLOCK_SIZE + r] * z[r];
+        }
+        t[q * BLOCK_SIZE + p] = s;
+      }
+      t[p * BLOCK_SIZE + p] = tau[jp];
+
+    }
+  }
+
+  /** Compute the decomposition with column pivoting. */
+  private void decomposeWithPivoting() {
+
+    // initial columns norms
+    double[] norms    = new double[columns];
+    double[] refNorms = new double[columns];
+    for (int j = 0; j < columns; ++j) {
+      norms[j]    = partialNorm(j * rows, 0);
+      refNorms[j] = norms[j];
+    }
+
+    for (int j = 0; j < k; ++j) {
+
+      // select the column with largest remaining norm
+      int pivot = j;
+      for (int c = j + 1; c < columns; ++c) {
+        if (norms[c] > norms[pivot]) {
+          pivot = c;
+        }
+      }
+      if (pivot != j) {
+        for (int iJ = j * rows, iP = pivot * rows, i = 0;
+             i < rows;
+             ++i, ++iJ, ++iP) {
+          double tmp = qr[iJ];
+          qr[iJ]     = qr[iP];
+          qr[iP]     = tmp;
+        }
+        norms[pivot]       = norms[j];
+        refNorms[pivot]    = refNorms[j];
+        int tmp            = permutation[j];
+        permutation[j]     = permutation[pivot];
+        permutation[pivot] = tmp;
+      }
+
+      computeReflector(j);
+
+      for (int c = j + 1; c < columns; ++c) {
+        int cBase = c * rows;
+        applyReflector(j, cBase);
+
+        // update the norm of the remaining part of the column
+        if (norms[c] != 0) {
+          double ratio = Math.abs(qr[cBase + j]) / norms[c];
+          double f     = Math.max(0, (1 - ratio) * (1 + ratio));
+          double check = norms[c] / refNorms[c];
+          if (f * check * check <= NORM_TOLERANCE) {
+            // too much cancellation, recompute the norm
+            norms[c]    = partialNorm(cBase, j + 1);
+            refNorms[c] = norms[c];
+          } else {
+            norms[c] *= Math.sqrt(f);
+          }
+        }
+      }
+
+    }
+
+  }
+
+  /** Compute the norm of the lower part of a column.
+   * @param base index of the first element of the column
+   * @param start index of the first row to consider
+   * @return norm of the elements of the column from row start
+   */
+  private double partialNorm(int base, int start) {
+    double sum = 0;
+    for (int i = base + start; i < base + rows; ++i) {
+      sum += qr[i] * qr[i];
+    }
+    return Math.sqrt(sum);
+  }
+
+  /** Compute the reflector that zeroes a column below the diagonal.
+   * <p>The reflector vector is stored in place below the diagonal,
+   * its first element being implicitly 1, and the diagonal element
+   * is replaced by the corresponding element of R.</p>
+   * @param j index of the column
+   */
+  private void computeReflector(int j) {
+    int base     = j * rows;
+    double alpha = qr[base + j];
+    double xNorm = partialNorm(base, j + 1);
+    if (xNorm == 0) {
+      // the column is already in upper triangular form
+      tau[j] = 0;
+      return;
+    }
+    double beta = Math.sqrt(alpha * alpha + xNorm * xNorm);
+    if (alpha > 0) {
+      beta = -beta;
+    }
+    tau[j] = (beta - alpha) / beta;
+    double scale = 1.0 / (alpha - beta);
+    for (int i = base + j + 1; i < base + rows; ++i) {
+      qr[i] *= scale;
+    }
+    qr[base + j] = beta;
+  }
+
+  /** Apply a reflector to one column of the working array.
+   * @param j index of the reflector
+   * @param cBase index of the first element of the column
+   */
+  private void applyReflector(int j, int cBase) {
+    if (tau[j] == 0) {
+      return;
+    }
+    int vBase = j * rows;
+    double s  = qr[cBase + j];
+    for (int i = j + 1; i < rows; ++i) {
+      s += qr[vBase + i] * qr[cBase + i];
+    }
+    s *= tau[j];
+    qr[cBase + j] -= s;
+    for (int i = j + 1; i < rows; ++i) {
+      qr[cBase + i] -= s * qr[vBase + i];
+    }
+  }
+
+  /** Apply a reflector to all columns of a row-major array.
+   * @param j index of the reflector
+   * @param b array containing a rows&times;nRhs matrix, row after row
+   * @param nRhs number of columns of b
+   */
+  private void applyReflector(int j, double[] b, int nRhs) {
+    if (tau[j] == 0) {
+      return;
+    }
+    int vBase = j * rows;
+    for (int c = 0; c < nRhs; ++c) {
+      double s = b[j * nRhs + c];
+      for (int i = j + 1, index = (j + 1) * nRhs + c; i < rows; ++i, index += nRhs) {
+        s += qr[vBase + i] * b[index];
+      }
+      s *= tau[j];
+      b[j * nRhs + c] -= s;
+      for (int i = j + 1, index = (j + 1) * nRhs + c; i < rows; ++i, index += nRhs) {
+        b[index] -= s * qr[vBase + i];
+      }
+    }
+  }
+
+  /** Get the number of rows of the decomposed matrix.
+   * @return number of rows of the decomposed matrix
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /** Get the number of columns of the decomposed matrix.
+   * @return number of columns of the decomposed matrix
+   */
+  public int getColumns() {
+    return columns;
+  }
+
+  /** Check if the decomposition was computed with column pivoting.
+   * @return true if the decomposition was computed with column pivoting
+   */
+  public boolean isPivoting() {
+    return pivoting;
+  }
+
+  /** Get the columns permutation.
+   * @return an array p such that column j of Q.R is column p[j] of
+   * the decomposed matrix (this is the identity if the decomposition
+   * was computed without column pivoting)
+   */
+  public int[] getPermutation() {
+    return (int[]) permutation.clone();
+  }
+
+  /** Get the R factor.
+   * @return a new min(m, n)&times;n matrix containing the non null
+   * rows of R (an {@link UpperTriangularMatrix} if m &ge; n)
+   */
+  public Matrix getR() {
+    double[] rData = new double[k * columns];
+    int upperElements = 0;
+    for (int i = 0; i < k; ++i) {
+      for (int j = i; j < columns; ++j) {
+        rData[i * columns + j] = qr[j * rows + i];
+        if (j > i) {
+          ++upperElements;
+        }
+      }
+    }
+    return MatrixFactory.buildMatrix(k, columns, rData, 0, upperElements);
+  }
+
+  /** Get the first min(m, n) columns of the Q factor.
+   * @return a new m&times;min(m, n) matrix containing the first
+   * columns of Q
+   */
+  public Matrix getQ() {
+    double[] qData = new double[rows * k];
+    for (int i = 0; i < k; ++i) {
+      qData[i * (k + 1)] = 1.0;
+    }
+    for (int j = k - 1; j >= 0; --j) {
+      applyReflector(j, qData, k);
+    }
+    return MatrixFactory.buildMatrix(rows, k, qData);
+  }
+
+  /** Get the numerical rank of the decomposed matrix.
+   * <p>The rank is the number of leading diagonal elements of R
+   * whose absolute value is at least epsilon. It is meaningful
+   * mainly for decompositions computed with column pivoting.</p>
+   * @param epsilon threshold on the diagonal elements of R
+   * @return numerical rank of the matrix
+   */
+  public int getRank(double epsilon) {
+    int rank = 0;
+    while (rank < k && Math.abs(qr[rank * (rows + 1)]) >= epsilon) {
+      ++rank;
+    }
+    return rank;
+  }
+
+  /** Apply Q<sup>T</sup> to a matrix in place.
+   * @param b array containing a m&times;nRhs matrix, row after row,
+   * it is replaced by Q<sup>T</sup>.b
+   * @param nRhs number of columns of b
+   * @exception IllegalArgumentException if the array is too small
+   * @see #applyQ
+   */
+  public void applyQt(double[] b, int nRhs) {
+    if (nRhs <= 0 || b.length < rows * nRhs) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    for (int j = 0; j < k; ++j) {
+      applyReflector(j, b, nRhs);
+    }
+  }
+
+  /** Apply Q to a matrix in place.
+   * @param b array containing a m&times;nRhs matrix, row after row,
+   * it is replaced by Q.b
+   * @param nRhs number of columns of b
+   * @exception IllegalArgumentException if the array is too small
+   * @see #applyQt
+   */
+  public void applyQ(double[] b, int nRhs) {
+    if (nRhs <= 0 || b.length < rows * nRhs) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    for (int j = k - 1; j >= 0; --j) {
+      applyReflector(j, b, nRhs);
+    }
+  }
+
+  /** Solve the linear least squares problem min ||A.X - B||.
+   * <p>If the decomposition was computed with column pivoting, the
+   * basic solution is computed using only the columns corresponding
+   * to the numerical rank of A (see {@link #getRank}), the other
+   * unknowns being set to zero. Otherwise, a full rank matrix is
+   * required.</p>
+   * @param b array containing the m&times;nRhs second term, row after
+   * row, it is overwritten by Q<sup>T</sup>.b
+   * @param nRhs number of columns of b
+   * @param x array where to store the n&times;nRhs solution, row after row
+   * @param epsilon threshold on the diagonal elements of R below
+   * which the matrix is considered rank deficient
+   * @exception SingularMatrixException if the decomposition was
+   * computed without pivoting and the matrix is rank deficient
+   * @exception IllegalArgumentException if the matrix has less rows
+   * than columns or if the arrays are too small
+   */
+  public void solveLeastSquares(double[] b, int nRhs, double[] x,
+                                double epsilon)
+    throws SingularMatrixException {
+
+    // validity check
+    if (rows < columns || x.length < columns * nRhs) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    int rank = getRank(epsilon);
+    if (rank < columns && ! pivoting) {
+      throw new SingularMatrixException();
+    }
+
+    applyQt(b, nRhs);
+
+    // solve R.z = Q^T.b on the first rank rows, z being directly
+    // stored at its permuted location in x
+    for (int c = 0; c < nRhs; ++c) {
+      for (int j = rank - 1; j >= 0; --j) {
+        double s = b[j * nRhs + c];
+        for (int l = j + 1; l < rank; ++l) {
+          s -= qr[l * rows + j] * x[permutation[l] * nRhs + c];
+        }
+        x[permutation[j] * nRhs + c] = s / qr[j * (rows + 1)];
+      }
+      for (int j = rank; j < columns; ++j) {
+        x[permutation[j] * nRhs + c] = 0;
+      }
+    }
+
+  }
+
+  /** Solve the linear least squares problem min ||A.X - B||.
+   * @param b second term of the equation
+   * @param epsilon threshold on the diagonal elements of R below
+   * which the matrix is considered rank deficient
+   * @return a new matrix X minimizing ||A.X - B||
+   * @exception SingularMatrixException if the decomposition was
+   * computed without pivoting and the matrix is rank deficient
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   * @see #solveLeastSquares(double[], int, double[], double)
+   */
+  public Matrix solveLeastSquares(Matrix b, double epsilon)
+    throws SingularMatrixException {
+    if (b.getRows() != rows) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    int nRhs = b.getColumns();
+    double[] work = (double[]) b.getDenseData().clone();
+    double[] x    = new double[columns * nRhs];
+    solveLeastSquares(work, nRhs, x, epsilon);
+    return MatrixFactory.buildMatrix(columns, nRhs, x);
+  }
+
+  /** Number of columns per panel in the blocked decomposition. */
+  private static final int BLOCK_SIZE = 32;
+
+  /** Threshold for columns norms recomputation in pivoted decomposition. */
+  private static final double NORM_TOLERANCE = Math.sqrt(2.2204460492503131e-16);
+
+  /** Number of rows of the decomposed matrix. */
+  private final int rows;
+
+  /** Number of columns of the decomposed matrix. */
+  private final int columns;
+
+  /** Number of elementary reflectors. */
+  private final int k;
+
+  /** Packed R factor and reflectors vectors, stored column after column. */
+  private final double[] qr;
+
+  /** Scaling factors of the reflectors. */
+  private final double[] tau;
+
+  /** Columns permutation. */
+  private final int[] permutation;
+
+  /** Indicator for decompositions computed with column pivoting. */
+  private final boolean pivoting;
+
+  private static final long serialVersionUID = 2956187315497286405L;
+
+}
@@ -0,0 +1,154 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** This class splits a rows-based computation into fork/join tasks.
+
+ * <p>The computation is described by a {@link Kernel} which is able
+ * to process any contiguous range of rows independently of the other
+ * rows. The task recursively splits the range in halves until they
+ * are small enough, so each row is processed exactly once by exactly
+ * the same code as in the sequential case. This implies that the
+ * results are the same whether the computation is performed in
+ * parallel or not.</p>
+
+ * <p>This class also holds the parallel execution settings of the
+ * package, which are configured through {@link
+ * Matrix#setParallelMode} and {@link Matrix#setSerialMode}.</p>
+
+ * @see Matrix#setParallelMode
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+class RowsTask
+  extends RecursiveAction {
+
+  /** Interface for rows-based computations. */
+  interface Kernel {
+    /** Process a range of rows.
+     * @param iStart index of the first row to process
+     * @param iEnd index after the last row to process
+     */
+    public void compute(int iStart, int iEnd);
+  }
+
+  /** Immutable parallel execution settings.
+   * <p>The pool and the threshold are always published together, so
+   * a computation never sees the pool of one configuration with the
+   * threshold of another one.</p>
+   */
+  private static final class Mode {
+
+    /** Simple constructor.
+     * @param pool pool to use for parallel computation (null for serial mode)
+     * @param threshold number of operations below which computation
+     * remains serial
+     */
+    public Mode(ForkJoinPool pool, long threshold) {
+      this.pool      = pool;
+      this.threshold = threshold;
+    }
+
+    /** Check if a computation must be performed serially.
+     * @param nRows total number of rows
+     * @param operations estimated number of elementary operations
+     * @return true if the computation must be performed in the
+     * calling thread
+     */
+    public boolean isSerial(int nRows, long operations) {
+      return (pool == null) || (operations < threshold) || (nRows < 2);
+    }
+
+    /** Pool to use for parallel computation (null for serial mode). */
+    public final ForkJoinPool pool;
+
+    /** Number of operations below which computation remains serial. */
+    public final long threshold;
+
+  }
+
+  /** Simple constructor.
+   * @param kernel computation to perform
+   * @param iStart index of the first row to process
+   * @param iEnd index after the last row to process
+   * @param grain maximal number of rows processed without splitting
+   */
+  private RowsTask(Kernel kernel, int iStart, int iEnd, int grain) {
+    this.kernel = kernel;
+    this.iStart = iStart;
+    this.iEnd   = iEnd;
+    this.grain  = grain;
+  }
+
+  protected void compute() {
+    if (iEnd - iStart <= grain) {
+      kernel.compute(iStart, iEnd);
+    } else {
+      int iMiddle = (iStart + iEnd) >>> 1;
+      invokeAll(new RowsTask(kernel, iStart, iMiddle, grain),
+                new RowsTask(kernel, iMiddle, iEnd, grain));
+    }
+  }
+
+  /** Run a rows-based computation.
+   * <p>The computation is performed in the calling thread if
+   * parallel mode is disabled or if the number of operations is
+   * below the configured threshold, otherwise it is split between
+   * the threads of the configured pool.</p>
+   * @param kernel computation to perform
+   * @param nRows total number of rows
+   * @param operations estimated number of elementary operations
+   */
+  static void run(Kernel kernel, int nRows, long operations) {
+    Mode m = mode;
+    if (m.isSerial(nRows, operations)) {
+      kernel.compute(0, nRows);
+    } else {
+      int grain = Math.max(1, nRows / (4 * m.pool.getParallelism()));
+      m.pool.invoke(new RowsTask(kernel, 0, nRows, grain));
+    }
+  }
+
+  /** Check if a rows-based computation would be performed serially.
+   * <p>This method allows callers that must not allocate memory in
+   * the serial case to call their computation directly instead of
+   * wrapping it in a {@link Kernel}.</p>
+   * @param nRows total number of rows
+   * @param operations estimated number of elementary operations
+   * @return true if {@link #run} would perform the computation in
+   * the calling thread
+   */
+  static boolean isSerial(int nRows, long operations) {
+    return mode.isSerial(nRows, operations);
+  }
+
+  /** Set the parallel execution settings.
+   * @param pool pool to use for parallel computation (null for serial mode)
+   * @param threshold number of operations below which computation
+   * remains serial
+   */
+  static void setMode(ForkJoinPool pool, long threshold) {
+    mode = new Mode(pool, threshold);
+  }
+
+  /** Computation to perform. */
+  private final Kernel kernel;
+
+  /** Index of the first row to process. */
+  private final int iStart;
+
+  /** Index after the last row to process. */
+  private final int iEnd;
+
+  /** Maximal number of rows processed without splitting. */
+  private final int grain;
+
+  /** Parallel execution settings. */
+  private static volatile Mode mode = new Mode(null, Long.MAX_VALUE);
+
+  private static final long serialVersionUID = 3412578923059382331L;
+
+}
@@ -0,0 +1,270 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class provides low rank updates of inverses and factorizations.
+
+ * <p>The Sherman-Morrison formula gives the inverse of a rank one
+ * modification of a matrix from the inverse of the matrix:</p>
+ * <pre>
+ *   (A + u.v<sup>T</sup>)<sup>-1</sup> = A<sup>-1</sup> - A<sup>-1</sup>.u.v<sup>T</sup>.A<sup>-1</sup> / (1 + v<sup>T</sup>.A<sup>-1</sup>.u)
+ * </pre>
+ * <p>and the Woodbury identity extends it to rank k modifications
+ * <tt>A + U.C.V<sup>T</sup></tt> where U and V are n by k matrices,
+ * replacing the scalar denominator by a k by k system. Both need
+ * O(n<sup>2</sup>) operations per rank instead of the
+ * O(n<sup>3</sup>) of a new inversion.</p>
+
+ * <p>This class also allows to update a {@link Factorization}
+ * without recomputing it: the updated factorization solves the
+ * modified systems with the original factors and a rank one
+ * correction, which needs O(n<sup>2</sup>) operations to set up and
+ * adds O(n) operations per right hand side. As the corrections
+ * accumulate when updates are chained, a new factorization should
+ * be computed from time to time in long sliding window processes.
+ * For symetrical positive definite matrices, the {@link
+ * CholeskyDecomposition#update CholeskyDecomposition.update} method
+ * updates the factor itself and does not have this drawback.</p>
+
+ * <p>The modified matrix is singular when the denominator
+ * <tt>1 + v<sup>T</sup>.A<sup>-1</sup>.u</tt> (or the k by k matrix
+ * of the Woodbury identity) is singular. The formulas lose accuracy
+ * when this denominator is small with respect to 1, so the threshold
+ * used to detect singularity should not be too small.</p>
+
+ * @see CholeskyDecomposition#update
+ * @see LUDecomposition#update
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class ShermanMorrisonWoodbury {
+
+  /** Private constructor for a utility class. */
+  private ShermanMorrisonWoodbury() {
+  }
+
+  /** Compute the inverse of a rank one modification of a matrix.
+   * @param inverse inverse of the matrix A (not modified)
+   * @param u first vector of the modification
+   * @param v second vector of the modification
+   * @param epsilon threshold on the denominator below which the
+   * modified matrix is considered singular
+   * @return a new matrix containing <tt>(A + u.v<sup>T</sup>)<sup>-1</sup></tt>
+   * @exception SingularMatrixException if the modified matrix is singular
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public static SquareMatrix updateInverse(SquareMatrix inverse,
+                                           double[] u, double[] v,
+                                           double epsilon)
+    throws SingularMatrixException {
+
+    int n = inverse.getRows();
+    if (u.length != n || v.length != n) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    // B.u and B^T.v
+    double[] b  = (double[]) inverse.getDenseData().clone();
+    double[] bu = new double[n];
+    double[] vb = new double[n];
+    for (int i = 0; i < n; ++i) {
+      bu[i] = VectorKernels.dot(b, i * n, u, 0, n);
+      VectorKernels.axpy(v[i], b, i * n, vb, 0, n);
+    }
+
+    double denominator = 1.0 + VectorKernels.dot(v, 0, bu, 0, n);
+    if (Math.abs(denominator) < epsilon) {
+      throw new SingularMatrixException();
+    }
+
+    // B - (B.u).(v^T.B) / denominator
+    for (int i = 0; i < n; ++i) {
+      VectorKernels.axpy(-bu[i] / denominator, vb, 0, b, i * n, n);
+    }
+    return new GeneralSquareMatrix(n, b);
+
+  }
+
+  /** Compute the inverse of a symetrical rank one modification of a
+   * symetrical matrix.
+   * <p>This method is the inverse counterpart of {@link
+   * SymetricalMatrix#selfAddWAAt selfAddWAAt}, it is typically used to
+   * update covariance matrices when a measurement is added (w &gt; 0)
+   * or removed (w &lt; 0) from an information matrix.</p>
+   * @param inverse inverse of the matrix A (not modified)
+   * @param w multiplicative factor (weight)
+   * @param a base vector of the modification
+   * @param epsilon threshold on the denominator below which the
+   * modified matrix is considered singular
+   * @return a new symetrical matrix containing
+   * <tt>(A + w.a.a<sup>T</sup>)<sup>-1</sup></tt>
+   * @exception SingularMatrixException if the modified matrix is singular
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public static SymetricalMatrix updateInverse(SymetricalMatrix inverse,
+                                               double w, double[] a,
+                                               double epsilon)
+    throws SingularMatrixException {
+
+    int n = inverse.getRows();
+    if (a.length != n) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    double[] ba = new double[n];
+    inverse.apply(a, ba);
+    double denominator = 1.0 + w * VectorKernels.dot(a, 0, ba, 0, n);
+    if (Math.abs(denominator) < epsilon) {
+      throw new SingularMatrixException();
+    }
+
+    SymetricalMatrix updated = new SymetricalMatrix(inverse);
+    updated.selfAddWAAt(-w / denominator, ba);
+    return updated;
+
+  }
+
+  /** Compute the inverse of a rank k modification of a matrix.
+   * @param inverse inverse of the n by n matrix A (not modified)
+   * @param u n by k matrix U
+   * @param c k by k matrix C
+   * @param v n by k matrix V
+   * @param epsilon threshold on matrix elements below which the
+   * modified matrix is considered singular
+   * @return a new matrix containing
+   * <tt>(A + U.C.V<sup>T</sup>)<sup>-1</sup></tt>
+   * @exception SingularMatrixException if C or the modified matrix is
+   * singular
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public static SquareMatrix updateInverse(SquareMatrix inverse,
+                                           Matrix u, SquareMatrix c, Matrix v,
+                                           double epsilon)
+    throws SingularMatrixException {
+
+    int n = inverse.getRows();
+    int k = c.getRows();
+    if (u.getRows() != n || v.getRows() != n
+        || u.getColumns() != k || v.getColumns() != k) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    // B.U, V^T.B and the capacitance matrix C^-1 + V^T.B.U
+    Matrix bu  = inverse.mul(u);
+    Matrix vtb = v.getTranspose().mul(inverse);
+    Matrix s   = c.getInverse(epsilon).add(v.getTranspose().mul(bu));
+
+    // B - B.U.(C^-1 + V^T.B.U)^-1.V^T.B
+    Matrix correction =
+      bu.mul(new GeneralSquareMatrix(k, s.getDenseData()).solve(vtb, epsilon));
+    return new GeneralSquareMatrix(n, inverse.sub(correction).getDenseData());
+
+  }
+
+  /** Update a factorization for a rank one modification of the matrix.
+   * @param base factorization of the matrix A (it is shared by the
+   * returned factorization, which is immutable too)
+   * @param u first vector of the modification
+   * @param v second vector of the modification
+   * @param epsilon threshold on the denominator below which the
+   * modified matrix is considered singular
+   * @return a factorization of <tt>A + u.v<sup>T</sup></tt>
+   * @exception SingularMatrixException if the modified matrix is singular
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public static Factorization update(Factorization base,
+                                     double[] u, double[] v,
+                                     double epsilon)
+    throws SingularMatrixException {
+    return new RankOneUpdate(base, u, v, epsilon);
+  }
+
+  /** Factorization of a rank one modification of a factored matrix. */
+  private static class RankOneUpdate
+    implements Factorization {
+
+    /** Simple constructor.
+     * @param base factorization of the matrix A
+     * @param u first vector of the modification
+     * @param v second vector of the modification
+     * @param epsilon threshold on the denominator below which the
+     * modified matrix is considered singular
+     * @exception SingularMatrixException if the modified matrix is singular
+     * @exception IllegalArgumentException if there is a dimension mismatch
+     */
+    public RankOneUpdate(Factorization base, double[] u, double[] v,
+                         double epsilon)
+      throws SingularMatrixException {
+
+      int n = base.getOrder();
+      if (u.length != n || v.length != n) {
+        throw new IllegalArgumentException("dimension mismatch");
+      }
+
+      this.base = base;
+      this.v    = (double[]) v.clone();
+      z = new double[n];
+      base.solve(u, z);
+      denominator = 1.0 + VectorKernels.dot(v, 0, z, 0, n);
+      if (Math.abs(denominator) < epsilon) {
+        throw new SingularMatrixException();
+      }
+
+    }
+
+    public int getOrder() {
+      return base.getOrder();
+    }
+
+    public double getDeterminant() {
+      // matrix determinant lemma
+      return base.getDeterminant() * denominator;
+    }
+
+    public void solve(double[] b, double[] x) {
+      solve(b, 1, x);
+    }
+
+    public void solve(double[] b, int nRhs, double[] x) {
+      base.solve(b, nRhs, x);
+      int n = z.length;
+      for (int j = 0; j < nRhs; ++j) {
+        double vx = 0;
+        for (int i = 0; i < n; ++i) {
+          vx += v[i] * x[i * nRhs + j];
+        }
+        double factor = vx / denominator;
+        for (int i = 0; i < n; ++i) {
+          x[i * nRhs + j] -= factor * z[i];
+        }
+      }
+    }
+
+    public Matrix solve(Matrix b) {
+      int n = z.length;
+      if (b.getRows() != n) {
+        throw new IllegalArgumentException("dimension mismatch");
+      }
+      double[] bData = b.getDenseData();
+      double[] x = new double[bData.length];
+      solve(bData, b.getColumns(), x);
+      return MatrixFactory.buildMatrix(n, b.getColumns(), x);
+    }
+
+    /** Factorization of the unmodified matrix. */
+    private final Factorization base;
+
+    /** Second vector of the modification. */
+    private final double[] v;
+
+    /** Solution of A.z = u. */
+    private final double[] z;
+
+    /** Denominator 1 + v<sup>T</sup>.A<sup>-1</sup>.u. */
+    private final double denominator;
+
+    private static final long serialVersionUID = 2836459158620394417L;
+
+  }
+
+}
@@ -0,0 +1,669 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+
+/** This class implements singular value decompositions of general matrices.
+
+ * <p>The singular value decomposition of a m&times;n matrix A is
+ * A = U.S.V<sup>T</sup> where, with p = min(m, n), U is a m&times;p
+ * matrix with orthonormal columns, S is a p&times;p diagonal matrix
+ * containing the non-negative singular values sorted in decreasing
+ * order and V is a n&times;p matrix with orthonormal columns.</p>
+
+ * <p>This class reduces the matrix to bidiagonal form using Householder
+ * transformations, then computes the singular values of the bidiagonal
+ * matrix using the implicit shifted QR algorithm of Golub and Kahan.
+ * When only the singular values are needed, the transformations are
+ * not accumulated, which saves most of the computation.</p>
+
+ * <p>The decomposition can be used to compute the rank, the norm and
+ * the condition number of a matrix, and to solve rank deficient least
+ * squares problems using the pseudo-inverse.</p>
+
+ * @see QRDecomposition
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class SingularValueDecomposition
+  implements Serializable {
+
+  /** Simple constructor.
+   * Build the decomposition of a matrix.
+   * @param m matrix to decompose
+   * @param computeVectors if true, singular vectors are computed in
+   * addition to the singular values
+   * @exception ConvergenceException if the singular values do not
+   * converge (which happens for example if the matrix contains NaN
+   * elements)
+   */
+  public SingularValueDecomposition(Matrix m, boolean computeVectors)
+    throws ConvergenceException {
+
+    rows    = m.getRows();
+    columns = m.getColumns();
+
+    // the algorithm needs at least as many rows as columns,
+    // wide matrices are handled through their transpose
+    transposed = rows < columns;
+    int nR = transposed ? columns : rows;
+    int nC = transposed ? rows    : columns;
+    double[][] a = new double[nR][nC];
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < columns; ++j) {
+        if (transposed) {
+          a[j][i] = m.getElement(i, j);
+        } else {
+          a[i][j] = m.getElement(i, j);
+        }
+      }
+    }
+
+    values = new double[nC];
+    double[][] u = computeVectors ? new double[nR][nC] : null;
+    double[][] v = computeVectors ? new double[nC][nC] : null;
+    decompose(a, u, v);
+
+    if (computeVectors) {
+      double[][] left  = transposed ? v : u;
+      double[][] right = transposed ? u : v;
+      uData = new double[rows * nC];
+      for (int i = 0; i < rows; ++i) {
+        System.arraycopy(left[i], 0, uData, i * nC, nC);
+      }
+      vData = new double[columns * nC];
+      for (int i = 0; i < columns; ++i) {
+        System.arraycopy(right[i], 0, vData, i * nC, nC);
+      }
+    } else {
+      uData = null;
+      vData = null;
+    }
+
+  }
+
+  /** Compute the decomposition of a matrix with at least as many
+   * rows as columns.
+   * @param a matrix to decompose (destroyed)
+   * @param u array where to store the left singular vectors
+   * (null if they are not needed)
+   * @param v array where to store the right singular vectors
+   * (null if they are not needed)
+   * @exception ConvergenceException if the singular values do not
+   * converge in {@link #MAX_ITERATIONS_FACTOR} times the larger
+   * dimension iterations
+   */
+  private void decompose(double[][] a, double[][] u, double[][] v)
+    throws ConvergenceException {
+
+    int m = a.length;
+    int n = values.length;
+    double[] s    = values;
+    double[] e    = new double[n];
+    double[] work = new double[m];
+    boolean wantVectors = u != null;
+
+    // reduce a to bidiagonal form, storing the diagonal elements
+    // in s and the super-diagonal elements in e
+    int nct = Math.min(m - 1, n);
+    int nrt = Math.max(0, Math.min(n - 2, m));
+    for (int k = 0; k < Math.max(nct, nrt); ++k) {
+
+      if (k < nct) {
+        // compute the transformation for the k-th column
+        s[k] = 0;
+        for (int i = k; i < m; ++i) {
+          s[k] = Math.hypot(s[k], a[i][k]);
+        }
+        if (s[k] != 0.0) {
+          if (a[k][k] < 0.0) {
+            s[k] = -s[k];
+          }
+          for (int i = k; i < m; ++i) {
+            a[i][k] /= s[k];
+          }
+          a[k][k] += 1.0;
+        }
+        s[k] = -s[k];
+      }
+
+      for (int j = k + 1; j < n; ++j) {
+        if ((k < nct) && (s[k] != 0.0))  {
+          // apply the transformation
+          double t = 0;
+          for (int i = k; i < m; ++i) {
+            t += a[i][k] * a[i][j];
+          }
+          t = -t / a[k][k];
+          for (int i = k; i < m; ++i) {
+            a[i][j] += t * a[i][k];
+          }
+        }
+        // keep the k-th row for the row transformation
+        e[j] = a[k][j];
+      }
+
+      if (wantVectors && (k < nct)) {
+        // keep the transformation for the back multiplication
+        for (int i = k; i < m; ++i) {
+          u[i][k] = a[i][k];
+        }
+      }
+
+      if (k < nrt) {
+        // compute the transformation for the k-th row
+        e[k] = 0;
+        for (int i = k + 1; i < n; ++i) {
+          e[k] = Math.hypot(e[k], e[i]);
+        }
+        if (e[k] != 0.0) {
+          if (e[k + 1] < 0.0) {
+            e[k] = -e[k];
+          }
+          for (int i = k + 1; i < n; ++i) {
+            e[i] /= e[k];
+          }
+          e[k + 1] += 1.0;
+        }
+        e[k] = -e[k];
+        if ((k + 1 < m) && (e[k] != 0.0)) {
+          // apply the transformation
+          for (int i = k + 1; i < m; ++i) {
+            work[i] = 0.0;
+          }
+          for (int j = k + 1; j < n; ++j) {
+            for (int i = k + 1; i < m; ++i) {
+              work[i] += e[j] * a[i][j];
+            }
+          }
+          for (int j = k + 1; j < n; ++j) {
+            double t = -e[j] / e[k + 1];
+            for (int i = k + 1; i < m; ++i) {
+              a[i][j] += t * work[i];
+            }
+          }
+        }
+        if (wantVectors) {
+          // keep the transformation for the back multiplication
+          for (int i = k + 1; i < n; ++i) {
+            v[i][k] = e[i];
+          }
+        }
+      }
+
+    }
+
+    // set up the final bidiagonal matrix of order p
+    int p = n;
+    if (nct < n) {
+      s[nct] = a[nct][nct];
+    }
+    if (m < p) {
+      s[p - 1] = 0.0;
+    }
+    if (nrt + 1 < p) {
+      e[nrt] = a[nrt][p - 1];
+    }
+    e[p - 1] = 0.0;
+
+    if (wantVectors) {
+
+      // generate U
+      for (int j = nct; j < n; ++j) {
+        for (int i = 0; i < m; ++i) {
+          u[i][j] = 0.0;
+        }
+        u[j][j] = 1.0;
+      }
+      for (int k = nct - 1; k >= 0; --k) {
+        if (s[k] != 0.0) {
+          for (int j = k + 1; j < n; ++j) {
+            double t = 0;
+            for (int i = k; i < m; ++i) {
+              t += u[i][k] * u[i][j];
+            }
+            t = -t / u[k][k];
+            for (int i = k; i < m; ++i) {
+              u[i][j] += t * u[i][k];
+            }
+          }
+          for (int i = k; i < m; ++i ) {
+            u[i][k] = -u[i][k];
+          }
+          u[k][k] = 1.0 + u[k][k];
+          for (int i = 0; i < k - 1; ++i) {
+            u[i][k] = 0.0;
+          }
+        } else {
+          for (int i = 0; i < m; ++i) {
+            u[i][k] = 0.0;
+          }
+          u[k][k] = 1.0;
+        }
+      }
+
+      // generate V
+      for (int k = n - 1; k >= 0; --k) {
+        if ((k < nrt) && (e[k] != 0.0)) {
+          for (int j = k + 1; j < n; ++j) {
+            double t = 0;
+            for (int i = k + 1; i < n; ++i) {
+              t += v[i][k] * v[i][j];
+            }
+            t = -t / v[k + 1][k];
+            for (int i = k + 1; i < n; ++i) {
+              v[i][j] += t * v[i][k];
+            }
+          }
+        }
+        for (int i = 0; i < n; ++i) {
+          v[i][k] = 0.0;
+        }
+        v[k][k] = 1.0;
+      }
+
+    }
+
+    // main iteration loop for the singular values
+    int pp = p - 1;
+    int maxIterations = MAX_ITERATIONS_FACTOR * Math.max(m, n);
+    int iterations    = 0;
+    while (p > 0) {
+
+      if (++iterations > maxIterations) {
+        throw new ConvergenceException(maxIterations);
+      }
+
+      // inspect for negligible elements in the s and e arrays,
+      // on completion the variables kase and k are set as follows:
+      // kase = 1 if s[p - 1] and e[k - 1] are negligible and k < p
+      // kase = 2 if s[k] is negligible and k < p
+      // kase = 3 if e[k - 1] is negligible, k < p and
+      //          s[k], ..., s[p - 1] are not negligible (QR step)
+      // kase = 4 if e[p - 2] is negligible (convergence)
+      int k;
+      int kase;
+      for (k = p - 2; k >= 0; --k) {
+        double threshold = TINY + EPSILON * (Math.abs(s[k]) + Math.abs(s[k + 1]));
+        if (Math.abs(e[k]) <= threshold) {
+          e[k] = 0.0;
+          break;
+        }
+      }
+      if (k == p - 2) {
+        kase = 4;
+      } else {
+        int ks;
+        for (ks = p - 1; ks > k; --ks) {
+          double t = ((ks != p) ? Math.abs(e[ks]) : 0.0)
+                   + ((ks != k + 1) ? Math.abs(e[ks - 1]) : 0.0);
+          if (Math.abs(s[ks]) <= TINY + EPSILON * t)  {
+            s[ks] = 0.0;
+            break;
+          }
+        }
+        if (ks == k) {
+          kase = 3;
+        } else if (ks == p - 1) {
+          kase = 1;
+        } else {
+          kase = 2;
+          k = ks;
+        }
+      }
+      ++k;
+
+      switch (kase) {
+
+      case 1 : {
+        // deflate negligible s[p - 1]
+        double f = e[p - 2];
+        e[p - 2] = 0.0;
+        for (int j = p - 2; j >= k; --j) {
+          double t  = Math.hypot(s[j], f);
+          double cs = s[j] / t;
+          double sn = f / t;
+          s[j] = t;
+          if (j != k) {
+            f = -sn * e[j - 1];
+            e[j - 1] = cs * e[j - 1];
+          }
+          if (wantVectors) {
+            for (int i = 0; i < n; ++i) {
+              t = cs * v[i][j] + sn * v[i][p - 1];
+              v[i][p - 1] = -sn * v[i][j] + cs * v[i][p - 1];
+              v[i][j] = t;
+            }
+          }
+        }
+      }
+      break;
+
+      case 2 : {
+        // split at negligible s[k - 1]
+        double f = e[k - 1];
+        e[k - 1] = 0.0;
+        for (int j = k; j < p; ++j) {
+          double t  = Math.hypot(s[j], f);
+          double cs = s[j] / t;
+          double sn = f / t;
+          s[j] = t;
+          f = -sn * e[j];
+          e[j] = cs * e[j];
+          if (wantVectors) {
+            for (int i = 0; i < m; ++i) {
+              t = cs * u[i][j] + sn * u[i][k - 1];
+              u[i][k - 1] = -sn * u[i][j] + cs * u[i][k - 1];
+              u[i][j] = t;
+            }
+          }
+        }
+      }
+      break;
+
+      case 3 : {
+
+        // calculate the shift
+        double scale = Math.max(Math.max(Math.max(Math.max(
+                         Math.abs(s[p - 1]), Math.abs(s[p - 2])), Math.abs(e[p - 2])),
+                         Math.abs(s[k])), Math.abs(e[k]));
+        double sp    = s[p - 1] / scale;
+        double spm1  = s[p - 2] / scale;
+        double epm1  = e[p - 2] / scale;
+        double sk    = s[k] / scale;
+        double ek    = e[k] / scale;
+        double b     = ((spm1 + sp) * (spm1 - sp) + epm1 * epm1) / 2.0;
+        double c     = (sp * epm1) * (sp * epm1);
+        double shift = 0.0;
+        if ((b != 0.0) || (c != 0.0)) {
+          shift = Math.sqrt(b * b + c);
+          if (b < 0.0) {
+            shift = -shift;
+          }
+          shift = c / (b + shift);
+        }
+        double f = (sk + sp) * (sk - sp) + shift;
+        double g = sk * ek;
+
+        // chase zeros
+        for (int j = k; j < p - 1; ++j) {
+          double t  = Math.hypot(f, g);
+          double cs = f / t;
+          double sn = g / t;
+          if (j != k) {
+            e[j - 1] = t;
+          }
+          f        = cs * s[j] + sn * e[j];
+          e[j]     = cs * e[j] - sn * s[j];
+          g        = sn * s[j + 1];
+          s[j + 1] = cs * s[j + 1];
+          if (wantVectors) {
+            for (int i = 0; i < n; ++i) {
+              t = cs * v[i][j] + sn * v[i][j + 1];
+              v[i][j + 1] = -sn * v[i][j] + cs * v[i][j + 1];
+              v[i][j] = t;
+            }
+          }
+          t        = Math.hypot(f, g);
+          cs       = f / t;
+          sn       = g / t;
+          s[j]     = t;
+          f        = cs * e[j] + sn * s[j + 1];
+          s[j + 1] = -sn * e[j] + cs * s[j + 1];
+          g        = sn * e[j + 1];
+          e[j + 1] = cs * e[j + 1];
+          if (wantVectors && (j < m - 1)) {
+            for (int i = 0; i < m; ++i) {
+              t = cs * u[i][j] + sn * u[i][j + 1];
+              u[i][j + 1] = -sn * u[i][j] + cs * u[i][j + 1];
+              u[i][j] = t;
+            }
+          }
+        }
+        e[p - 2] = f;
+
+      }
+      break;
+
+      default : {
+
+        // make the singular value positive
+        if (s[k] <= 0.0) {
+          s[k] = (s[k] < 0.0) ? -s[k] : 0.0;
+          if (wantVectors) {
+            for (int i = 0; i <= pp; ++i) {
+              v[i][k] = -v[i][k];
+            }
+          }
+        }
+
+        // order the singular values
+        while (k < pp) {
+          if (s[k] >= s[k + 1]) {
+            break;
+          }
+          double t = s[k];
+          s[k]     = s[k + 1];
+          s[k + 1] = t;
+          if (wantVectors) {
+            if (k < n - 1) {
+              for (int i = 0; i < n; ++i) {
+                t = v[i][k + 1];
+                v[i][k + 1] = v[i][k];
+                v[i][k] = t;
+              }
+            }
+            if (k < m - 1) {
+              for (int i = 0; i < m; ++i) {
+                t = u[i][k + 1];
+                u[i][k + 1] = u[i][k];
+                u[i][k] = t;
+              }
+            }
+          }
+          ++k;
+        }
+        --p;
+
+      }
+
+      }
+    }
+
+  }
+
+  /** Get the number of rows of the decomposed matrix.
+   * @return number of rows of the decomposed matrix
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /** Get the number of columns of the decomposed matrix.
+   * @return number of columns of the decomposed matrix
+   */
+  public int getColumns() {
+    return columns;
+  }
+
+  /** Check if the singular vectors are available.
+   * @return true if the singular vectors have been computed
+   */
+  public boolean hasSingularVectors() {
+    return uData != null;
+  }
+
+  /** Get the singular values.
+   * @return a new array containing the min(m, n) singular values
+   * in decreasing order
+   */
+  public double[] getSingularValues() {
+    return (double[]) values.clone();
+  }
+
+  /** Get the diagonal matrix S of the singular values.
+   * @return a new diagonal matrix containing the singular values
+   */
+  public DiagonalMatrix getS() {
+    int p = values.length;
+    DiagonalMatrix s = new DiagonalMatrix(p);
+    for (int i = 0; i < p; ++i) {
+      s.data[i * (p + 1)] = values[i];
+    }
+    return s;
+  }
+
+  /** Get the matrix U of the left singular vectors.
+   * @return a new m&times;min(m, n) matrix whose columns are the
+   * left singular vectors
+   * @exception IllegalStateException if the singular vectors have not
+   * been computed
+   */
+  public Matrix getU() {
+    checkVectors();
+    return MatrixFactory.buildMatrix(rows, values.length,
+                                     (double[]) uData.clone());
+  }
+
+  /** Get the matrix V of the right singular vectors.
+   * @return a new n&times;min(m, n) matrix whose columns are the
+   * right singular vectors
+   * @exception IllegalStateException if the singular vectors have not
+   * been computed
+   */
+  public Matrix getV() {
+    checkVectors();
+    return MatrixFactory.buildMatrix(columns, values.length,
+                                     (double[]) vData.clone());
+  }
+
+  /** Get the 2-norm of the decomposed matrix.
+   * @return largest singular value
+   */
+  public double getNorm() {
+    return (values.length == 0) ? 0.0 : values[0];
+  }
+
+  /** Get the 2-norm condition number of the decomposed matrix.
+   * @return ratio of the largest to the smallest singular value
+   * (infinite if the smallest singular value is zero)
+   */
+  public double getConditionNumber() {
+    return values[0] / values[values.length - 1];
+  }
+
+  /** Get the numerical rank of the decomposed matrix.
+   * @param epsilon threshold on the singular values, relative to the
+   * largest one, below which they are considered to be zero
+   * @return number of singular values larger than epsilon times the
+   * largest one
+   */
+  public int getRank(double epsilon) {
+    double threshold = epsilon * getNorm();
+    int rank = 0;
+    while (rank < values.length && values[rank] > threshold) {
+      ++rank;
+    }
+    return rank;
+  }
+
+  /** Solve a least squares problem using the pseudo-inverse.
+   * <p>This method computes the minimum norm solution of the least
+   * squares problem min ||A.X - B|| where the singular values smaller
+   * than epsilon times the largest one are considered to be zero. It
+   * handles rank deficient and under-determined problems.</p>
+   * @param b right-hand side matrix (one problem per column)
+   * @param epsilon threshold on the singular values, relative to the
+   * largest one, below which they are considered to be zero
+   * @return a new n&times;k matrix containing the minimal norm solution
+   * @exception IllegalArgumentException if the number of rows of b
+   * does not match the number of rows of the decomposed matrix
+   * @exception IllegalStateException if the singular vectors have not
+   * been computed
+   */
+  public Matrix solve(Matrix b, double epsilon) {
+
+    checkVectors();
+    if (b.getRows() != rows) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+
+    int p    = values.length;
+    int nRhs = b.getColumns();
+    int rank = getRank(epsilon);
+
+    // y = S^-1 . U^T . b, restricted to the significant singular values
+    double[] y = new double[rank * nRhs];
+    for (int i = 0; i < rows; ++i) {
+      for (int k = 0; k < rank; ++k) {
+        double uik = uData[i * p + k];
+        if (uik != 0.0) {
+          for (int l = 0; l < nRhs; ++l) {
+            y[k * nRhs + l] += uik * b.getElement(i, l);
+          }
+        }
+      }
+    }
+    for (int k = 0; k < rank; ++k) {
+      double inv = 1.0 / values[k];
+      for (int l = 0; l < nRhs; ++l) {
+        y[k * nRhs + l] *= inv;
+      }
+    }
+
+    // x = V . y
+    double[] x = new double[columns * nRhs];
+    for (int i = 0; i < columns; ++i) {
+      for (int k = 0; k < rank; ++k) {
+        double vik = vData[i * p + k];
+        for (int l = 0; l < nRhs; ++l) {
+          x[i * nRhs + l] += vik * y[k * nRhs + l];
+        }
+      }
+    }
+
+    return MatrixFactory.buildMatrix(columns, nRhs, x);
+
+  }
+
+  /** Check the singular vectors are available.
+   * @exception IllegalStateException if the singular vectors have not
+   * been computed
+   */
+  private void checkVectors() {
+    if (uData == null) {
+      throw new IllegalStateException("singular vectors have not been computed");
+    }
+  }
+
+  /** Relative accuracy of double numbers. */
+  private static final double EPSILON = 0x1.0p-52;
+
+  /** Smallest number whose inverse does not overflow. */
+  private static final double TINY = 0x1.0p-966;
+
+  /** Maximal number of iterations per row or column of the matrix. */
+  private static final int MAX_ITERATIONS_FACTOR = 75;
+
+  /** Number of rows of the decomposed matrix. */
+  private final int rows;
+
+  /** Number of columns of the decomposed matrix. */
+  private final int columns;
+
+  /** Indicator for decompositions performed on the transposed matrix. */
+  private final boolean transposed;
+
+  /** Singular values, in decreasing order. */
+  private final double[] values;
+
+  /** Left singular vectors (row major m&times;p array), null if not computed. */
+  private final double[] uData;
+
+  /** Right singular vectors (row major n&times;p array), null if not computed. */
+  private final double[] vData;
+
+  private static final long serialVersionUID = 3410298563927046150L;
+
+}
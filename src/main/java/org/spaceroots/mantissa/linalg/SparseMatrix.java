@@ -0,0 +1,698 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.Arrays;
+
+/** This class represents sparse matrices in compressed row storage.
+
+ * <p>Only the non null elements of the matrix are stored, using three
+ * arrays: for each row i, the elements are stored in increasing column
+ * order between indices <code>rowStart[i]</code> (included) and
+ * <code>rowStart[i+1]</code> (excluded) of the <code>columnIndex</code>
+ * array (which holds their column) and of the <code>values</code>
+ * array (which holds their value). This is the classical Compressed
+ * Sparse Row (CSR) format. The Compressed Sparse Column (CSC) format
+ * of a matrix is the CSR format of its transpose, it can be imported
+ * using {@link MatrixFactory#buildSparseMatrixFromColumns}.</p>
+
+ * <p>The memory needed by a sparse matrix is proportional to its number
+ * of non null elements instead of its number of rows times its number of
+ * columns. Products of sparse matrices by dense matrices (in both
+ * orders) and by other sparse matrices, additions, substractions and
+ * transposition only use the stored elements. Products and sums
+ * involving a dense matrix are dense matrices, products and sums of
+ * sparse matrices are sparse matrices.</p>
+
+ * <p>Setting an element not yet stored requires shifting all the
+ * elements stored after it, so large matrices should rather be
+ * assembled at once, for example using {@link
+ * MatrixFactory#buildSparseMatrix}.</p>
+
+ * @see MatrixFactory#buildSparseMatrix
+ * @see MatrixFactory#buildSparseMatrixFromColumns
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class SparseMatrix
+  extends Matrix {
+
+  /** Simple constructor.
+   * Build a matrix with null elements.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   */
+  public SparseMatrix(int rows, int columns) {
+    super(rows, columns, null);
+    rowStart    = new int[rows + 1];
+    columnIndex = new int[0];
+    values      = new double[0];
+  }
+
+  /** Simple constructor.
+   * Build a matrix from its compressed row storage. The arrays are
+   * copied, so they can be reused by the caller.
+   * @param rows number of rows of the matrix
+   * @param columns number of columns of the matrix
+   * @param rowStart index of the first element of each row in the
+   * other arrays, with an additional last element containing the
+   * number of non null elements (the array size must be rows + 1)
+   * @param columnIndex column of each element (the column indices
+   * must be strictly increasing within each row)
+   * @param values value of each element
+   * @exception IllegalArgumentException if the arrays are not consistent
+   */
+  public SparseMatrix(int rows, int columns,
+                      int[] rowStart, int[] columnIndex, double[] values) {
+
+    this(rows, columns);
+
+    // sanity checks
+    if (rowStart.length != rows + 1 || rowStart[0] != 0) {
+      throw new IllegalArgumentException("wrong rows start array");
+    }
+    int nnz = rowStart[rows];
+    if (columnIndex.length < nnz || values.length < nnz) {
+      throw new IllegalArgumentException("too short elements arrays");
+    }
+    for (int i = 0; i < rows; ++i) {
+      if (rowStart[i + 1] < rowStart[i]) {
+        throw new IllegalArgumentException("wrong rows start array");
+      }
+      int previous = -1;
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        int j = columnIndex[index];
+        if (j <= previous || j >= columns) {
+          throw new IllegalArgumentException("wrong column index "
+                                             + j + " in row " + i);
+        }
+        previous = j;
+      }
+    }
+
+    this.rowStart    = (int[]) rowStart.clone();
+    this.columnIndex = new int[nnz];
+    this.values      = new double[nnz];
+    System.arraycopy(columnIndex, 0, this.columnIndex, 0, nnz);
+    System.arraycopy(values,      0, this.values,      0, nnz);
+
+  }
+
+  /** Copy constructor.
+   * Build a sparse matrix containing the non null elements of any
+   * matrix.
+   * @param m matrix to copy
+   */
+  public SparseMatrix(Matrix m) {
+
+    this(m.rows, m.columns);
+
+    if (m instanceof SparseMatrix) {
+      SparseMatrix s = (SparseMatrix) m;
+      int nnz = s.getNonZeros();
+      rowStart    = (int[]) s.rowStart.clone();
+      columnIndex = new int[nnz];
+      values      = new double[nnz];
+      System.arraycopy(s.columnIndex, 0, columnIndex, 0, nnz);
+      System.arraycopy(s.values,      0, values,      0, nnz);
+      return;
+    }
+
+    // count the non null elements
+    double[] mData  = m.getDenseData();
+    int[]    bounds = m.getRowBounds();
+    int nnz = 0;
+    for (int i = 0; i < rows; ++i) {
+      for (int index = i * columns + bounds[2 * i];
+           index < i * columns + bounds[2 * i + 1];
+           ++index) {
+        if (mData[index] != 0.0) {
+          ++nnz;
+        }
+      }
+    }
+
+    // copy them
+    columnIndex = new int[nnz];
+    values      = new double[nnz];
+    nnz = 0;
+    for (int i = 0; i < rows; ++i) {
+      for (int j = bounds[2 * i]; j < bounds[2 * i + 1]; ++j) {
+        double value = mData[i * columns + j];
+        if (value != 0.0) {
+          columnIndex[nnz] = j;
+          values[nnz]      = value;
+          ++nnz;
+        }
+      }
+      rowStart[i + 1] = nnz;
+    }
+
+  }
+
+  public Matrix duplicate() {
+    return new SparseMatrix(this);
+  }
+
+  /** Get the number of stored elements.
+   * @return number of stored elements
+   */
+  public int getNonZeros() {
+    return rowStart[rows];
+  }
+
+  public double getElement(int i, int j) {
+    if (i < 0 || i >= rows || j < 0 || j >= columns) {
+      throw new IllegalArgumentException("cannot get element ("
+                                         + i + ", " + j + ") from a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+    int index = Arrays.binarySearch(columnIndex, rowStart[i], rowStart[i + 1], j);
+    return (index < 0) ? 0.0 : values[index];
+  }
+
+  /** Set a matrix element.
+   * <p>Setting an element that is not stored yet to a non null value
+   * requires shifting all the elements stored after it.</p>
+   * @param i row index, from 0 to rows - 1
+   * @param j column index, from 0 to cols - 1
+   * @param value value of the element
+   * @exception IllegalArgumentException if the indices are wrong
+   */
+  public void setElement(int i, int j, double value) {
+
+    if (i < 0 || i >= rows || j < 0 || j >= columns) {
+      throw new IllegalArgumentException("cannot set element ("
+                                         + i + ", " + j + ") in a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    int index = Arrays.binarySearch(columnIndex, rowStart[i], rowStart[i + 1], j);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+    if (value == 0.0) {
+      // nothing to store
+      return;
+    }
+
+    // insert the new element
+    index = -(index + 1);
+    int nnz = getNonZeros();
+    if (nnz == values.length) {
+      int capacity = Math.max(16, 2 * nnz);
+      int[]    newColumnIndex = new int[capacity];
+      double[] newValues      = new double[capacity];
+      System.arraycopy(columnIndex, 0, newColumnIndex, 0, nnz);
+      System.arraycopy(values,      0, newValues,      0, nnz);
+      columnIndex = newColumnIndex;
+      values      = newValues;
+    }
+    System.arraycopy(columnIndex, index, columnIndex, index + 1, nnz - index);
+    System.arraycopy(values,      index, values,      index + 1, nnz - index);
+    columnIndex[index] = j;
+    values[index]      = value;
+    for (int k = i + 1; k <= rows; ++k) {
+      ++rowStart[k];
+    }
+
+  }
+
+  /** Add a matrix to the instance.
+   * This method adds a matrix to the instance. It returns a new
+   * matrix and does not modify the instance. The result is a sparse
+   * matrix if m is sparse, otherwise it is a dense matrix.
+   * @param m matrix to add
+   * @return a new matrix containing the result
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix add(Matrix m) {
+
+    // validity check
+    if ((rows != m.rows) || (columns != m.columns)) {
+      throw new IllegalArgumentException("cannot add a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix to a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    if (m instanceof SparseMatrix) {
+      return combine((SparseMatrix) m, 1.0);
+    }
+    return combine(m, 1.0);
+
+  }
+
+  /** Substract a matrix from the instance.
+   * This method substracts a matrix from the instance. It returns a new
+   * matrix and does not modify the instance. The result is a sparse
+   * matrix if m is sparse, otherwise it is a dense matrix.
+   * @param m matrix to substract
+   * @return a new matrix containing the result
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix sub(Matrix m) {
+
+    // validity check
+    if ((rows != m.rows) || (columns != m.columns)) {
+      throw new IllegalArgumentException("cannot substract a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix from a "
+                                         + rows + 'x' + columns
+                                         + " matrix");
+    }
+
+    if (m instanceof SparseMatrix) {
+      return combine((SparseMatrix) m, -1.0);
+    }
+    return combine(m, -1.0);
+
+  }
+
+  /** Add a multiple of a sparse matrix to the instance.
+   * @param m sparse matrix to add
+   * @param factor multiplicative factor for m (1 or -1)
+   * @return a new sparse matrix containing the result
+   */
+  private SparseMatrix combine(SparseMatrix m, double factor) {
+
+    SparseMatrix result = new SparseMatrix(rows, columns);
+    int[]    cIndex  = new int[getNonZeros() + m.getNonZeros()];
+    double[] cValues = new double[cIndex.length];
+
+    // merge the rows
+    int nnz = 0;
+    for (int i = 0; i < rows; ++i) {
+      int k1 = rowStart[i];
+      int k2 = m.rowStart[i];
+      while (k1 < rowStart[i + 1] || k2 < m.rowStart[i + 1]) {
+        int j1 = (k1 < rowStart[i + 1])   ? columnIndex[k1]   : columns;
+        int j2 = (k2 < m.rowStart[i + 1]) ? m.columnIndex[k2] : columns;
+        if (j1 < j2) {
+          cIndex[nnz]  = j1;
+          cValues[nnz] = values[k1++];
+        } else if (j2 < j1) {
+          cIndex[nnz]  = j2;
+          cValues[nnz] = factor * m.values[k2++];
+        } else {
+          cIndex[nnz]  = j1;
+          cValues[nnz] = values[k1++] + factor * m.values[k2++];
+        }
+        ++nnz;
+      }
+      result.rowStart[i + 1] = nnz;
+    }
+
+    result.columnIndex = cIndex;
+    result.values      = cValues;
+    return result;
+
+  }
+
+  /** Add a multiple of a dense matrix to the instance.
+   * @param m dense matrix to add
+   * @param factor multiplicative factor for m (1 or -1)
+   * @return a new dense matrix containing the result
+   */
+  private Matrix combine(Matrix m, double factor) {
+
+    double[] mData      = m.getDenseData();
+    double[] resultData = new double[rows * columns];
+    for (int i = 0; i < resultData.length; ++i) {
+      resultData[i] = factor * mData[i];
+    }
+    for (int i = 0; i < rows; ++i) {
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        resultData[i * columns + columnIndex[index]] += values[index];
+      }
+    }
+
+    // compute the structure of the result
+    int[] bounds  = getRowBounds();
+    int[] mBounds = m.getRowBounds();
+    for (int i = 0; i < rows; ++i) {
+      if (bounds[2 * i] == bounds[2 * i + 1]) {
+        bounds[2 * i]     = mBounds[2 * i];
+        bounds[2 * i + 1] = mBounds[2 * i + 1];
+      } else {
+        bounds[2 * i]     = Math.min(bounds[2 * i],     mBounds[2 * i]);
+        bounds[2 * i + 1] = Math.max(bounds[2 * i + 1], mBounds[2 * i + 1]);
+      }
+    }
+
+    return MatrixFactory.buildMatrix(rows, columns, resultData,
+                                     countLowerElements(bounds),
+                                     countUpperElements(bounds));
+
+  }
+
+  /** Multiply the instance by a matrix.
+   * This method multiplies the instance by a matrix. It returns a new
+   * matrix and does not modify the instance. The result is a sparse
+   * matrix if m is sparse, otherwise it is a dense matrix.
+   * @param m matrix by which to multiply
+   * @return a new matrix containing the result
+   * @exception IllegalArgumentException if there is a dimension mismatch
+   */
+  public Matrix mul(Matrix m) {
+
+    // validity check
+    if (columns != m.rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + m.rows + 'x' + m.columns
+                                         + " matrix");
+    }
+
+    if (m instanceof SparseMatrix) {
+      return mul((SparseMatrix) m);
+    }
+
+    final int      p          = m.columns;
+    final double[] mData      = m.getDenseData();
+    final int[]    mRowBounds = m.getRowBounds();
+    final double[] resultData = new double[rows * p];
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            int c0 = i * p;
+            for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+              int    k    = columnIndex[index];
+              double aik  = values[index];
+              int    jEnd = mRowBounds[2 * k + 1];
+              for (int j = mRowBounds[2 * k], bIndex = k * p + j; j < jEnd; ++j) {
+                resultData[c0 + j] += aik * mData[bIndex++];
+              }
+            }
+          }
+        }
+      }, rows, ((long) getNonZeros()) * p);
+
+    return MatrixFactory.buildMatrix(rows, p, resultData);
+
+  }
+
+  /** Multiply the instance by a sparse matrix.
+   * <p>The product is computed row by row using a dense accumulator
+   * (Gustavson's algorithm), so the number of operations is
+   * proportional to the number of elementary products involved.</p>
+   * @param m sparse matrix by which to multiply
+   * @return a new sparse matrix containing the result
+   */
+  private SparseMatrix mul(SparseMatrix m) {
+
+    int p = m.columns;
+    SparseMatrix result = new SparseMatrix(rows, p);
+
+    double[] accumulator = new double[p];
+    int[]    marker      = new int[p];
+    int[]    rowColumns  = new int[p];
+    Arrays.fill(marker, -1);
+
+    int[]    cIndex  = new int[Math.max(16, getNonZeros() + m.getNonZeros())];
+    double[] cValues = new double[cIndex.length];
+    int nnz = 0;
+
+    for (int i = 0; i < rows; ++i) {
+
+      // accumulate the contributions of the stored elements of the row
+      int count = 0;
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        int    k   = columnIndex[index];
+        double aik = values[index];
+        for (int mIndex = m.rowStart[k]; mIndex < m.rowStart[k + 1]; ++mIndex) {
+          int j = m.columnIndex[mIndex];
+          if (marker[j] != i) {
+            marker[j]           = i;
+            rowColumns[count++] = j;
+            accumulator[j]      = aik * m.values[mIndex];
+          } else {
+            accumulator[j]     += aik * m.values[mIndex];
+          }
+        }
+      }
+
+      // store the row
+      if (nnz + count > cIndex.length) {
+        int capacity = Math.max(nnz + count, 2 * cIndex.length);
+        int[]    newIndex  = new int[capacity];
+        double[] newValues = new double[capacity];
+        System.arraycopy(cIndex,  0, newIndex,  0, nnz);
+        System.arraycopy(cValues, 0, newValues, 0, nnz);
+        cIndex  = newIndex;
+        cValues = newValues;
+      }
+      Arrays.sort(rowColumns, 0, count);
+      for (int l = 0; l < count; ++l) {
+        int j = rowColumns[l];
+        cIndex[nnz]  = j;
+        cValues[nnz] = accumulator[j];
+        ++nnz;
+      }
+      result.rowStart[i + 1] = nnz;
+
+    }
+
+    result.columnIndex = cIndex;
+    result.values      = cValues;
+    return result;
+
+  }
+
+  /** Multiply a dense matrix by the instance.
+   * @param a dense matrix to multiply (left operand)
+   * @return a new dense matrix containing a.this
+   */
+  Matrix preMultiply(Matrix a) {
+
+    final int      n          = rows;
+    final int      p          = columns;
+    final double[] aData      = a.getDenseData();
+    final int[]    aRowBounds = a.getRowBounds();
+    final double[] resultData = new double[a.rows * p];
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            int c0 = i * p;
+            for (int k = aRowBounds[2 * i]; k < aRowBounds[2 * i + 1]; ++k) {
+              double aik = aData[i * n + k];
+              if (aik != 0.0) {
+                for (int index = rowStart[k]; index < rowStart[k + 1]; ++index) {
+                  resultData[c0 + columnIndex[index]] += aik * values[index];
+                }
+              }
+            }
+          }
+        }
+      }, a.rows, ((long) a.rows) * getNonZeros());
+
+    return MatrixFactory.buildMatrix(a.rows, p, resultData);
+
+  }
+
+  public void apply(final double[] x, final double[] y) {
+
+    // validity check
+    if (x.length != columns || y.length != rows) {
+      throw new IllegalArgumentException("cannot multiply a "
+                                         + rows + 'x' + columns
+                                         + " matrix by a "
+                                         + x.length + " elements vector");
+    }
+
+    RowsTask.run(new RowsTask.Kernel() {
+        public void compute(int iStart, int iEnd) {
+          for (int i = iStart; i < iEnd; ++i) {
+            double sum = 0;
+            for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+              sum += values[index] * x[columnIndex[index]];
+            }
+            y[i] = sum;
+          }
+        }
+      }, rows, getNonZeros());
+
+  }
+
+  public void selfMul(double a) {
+    for (int index = 0; index < getNonZeros(); ++index) {
+      values[index] *= a;
+    }
+  }
+
+  /** Compute the transpose of the instance.
+   * This method transposes the instance. It returns a new sparse
+   * matrix and does not modify the instance. The compressed row
+   * storage of the transpose is the compressed column storage of the
+   * instance.
+   * @return a new sparse matrix containing the result
+   */
+  public Matrix getTranspose() {
+
+    int nnz = getNonZeros();
+    SparseMatrix result = new SparseMatrix(columns, rows);
+    int[] tStart = result.rowStart;
+
+    // count the elements in each column
+    for (int index = 0; index < nnz; ++index) {
+      ++tStart[columnIndex[index] + 1];
+    }
+    for (int j = 0; j < columns; ++j) {
+      tStart[j + 1] += tStart[j];
+    }
+
+    // scatter the elements, rows are visited in increasing order
+    int[]    next    = new int[columns];
+    int[]    tIndex  = new int[nnz];
+    double[] tValues = new double[nnz];
+    System.arraycopy(tStart, 0, next, 0, columns);
+    for (int i = 0; i < rows; ++i) {
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        int position = next[columnIndex[index]]++;
+        tIndex[position]  = i;
+        tValues[position] = values[index];
+      }
+    }
+
+    result.columnIndex = tIndex;
+    result.values      = tValues;
+    return result;
+
+  }
+
+  /** Build a dense matrix containing the same elements as the instance.
+   * @return a new dense matrix of the right subtype
+   * @see MatrixFactory#buildMatrix(int, int, double[], int, int)
+   */
+  public Matrix getDenseMatrix() {
+    int[] bounds = getRowBounds();
+    return MatrixFactory.buildMatrix(rows, columns, getDenseData(),
+                                     countLowerElements(bounds),
+                                     countUpperElements(bounds));
+  }
+
+  double[] getDenseData() {
+    double[] dense = new double[rows * columns];
+    for (int i = 0; i < rows; ++i) {
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        dense[i * columns + columnIndex[index]] = values[index];
+      }
+    }
+    return dense;
+  }
+
+  protected NonNullRange getRangeForRow(int i) {
+    if (rowStart[i] == rowStart[i + 1]) {
+      return new NonNullRange(0, 0);
+    }
+    return new NonNullRange(columnIndex[rowStart[i]],
+                            columnIndex[rowStart[i + 1] - 1] + 1);
+  }
+
+  protected NonNullRange getRangeForColumn(int j) {
+
+    // only column j is scanned, from both ends
+    int begin = 0;
+    while ((begin < rows) && ! isStored(begin, j)) {
+      ++begin;
+    }
+    if (begin == rows) {
+      // empty column
+      return new NonNullRange(0, 0);
+    }
+
+    int end = rows;
+    while (! isStored(end - 1, j)) {
+      --end;
+    }
+
+    return new NonNullRange(begin, end);
+
+  }
+
+  /** Check if an element is stored.
+   * @param i row index
+   * @param j column index
+   * @return true if element (i, j) is stored
+   */
+  private boolean isStored(int i, int j) {
+    return Arrays.binarySearch(columnIndex, rowStart[i], rowStart[i + 1], j) >= 0;
+  }
+
+  int[] getRowBounds() {
+    int[] bounds = new int[2 * rows];
+    for (int i = 0; i < rows; ++i) {
+      if (rowStart[i] < rowStart[i + 1]) {
+        bounds[2 * i]     = columnIndex[rowStart[i]];
+        bounds[2 * i + 1] = columnIndex[rowStart[i + 1] - 1] + 1;
+      }
+    }
+    return bounds;
+  }
+
+  int[] getColumnBounds() {
+    int[] bounds = new int[2 * columns];
+    for (int j = 0; j < columns; ++j) {
+      bounds[2 * j] = rows;
+    }
+    for (int i = 0; i < rows; ++i) {
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        int j = columnIndex[index];
+        bounds[2 * j]     = Math.min(bounds[2 * j], i);
+        bounds[2 * j + 1] = i + 1;
+      }
+    }
+    for (int j = 0; j < columns; ++j) {
+      if (bounds[2 * j + 1] == 0) {
+        // empty column
+        bounds[2 * j] = 0;
+      }
+    }
+    return bounds;
+  }
+
+  public String toString() {
+    String separator = System.getProperty("line.separator");
+
+    StringBuffer buf = new StringBuffer();
+    double[] row = new double[columns];
+    for (int i = 0; i < rows; ++i) {
+      if (i > 0) {
+        buf.append(separator);
+      }
+      Arrays.fill(row, 0.0);
+      for (int index = rowStart[i]; index < rowStart[i + 1]; ++index) {
+        row[columnIndex[index]] = values[index];
+      }
+      for (int j = 0; j < columns; ++j) {
+        if (j > 0) {
+          buf.append(' ');
+        }
+        buf.append(Double.toString(row[j]));
+      }
+    }
+
+    return buf.toString();
+
+  }
+
+  /** Index of the first element of each row (with an additional
+   * last element containing the number of stored elements). */
+  int[] rowStart;
+
+  /** Column of each stored element (may be larger than needed). */
+  int[] columnIndex;
+
+  /** Value of each stored element (may be larger than needed). */
+  double[] values;
+
+  private static final long serialVersionUID = 5893466081204736617L;
+
+}
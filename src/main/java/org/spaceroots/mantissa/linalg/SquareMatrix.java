@@ -45,6 +45,41 @@ public abstract class SquareMatrix
    */
   public abstract double getDeterminant(double epsilon);
 
+  /** Factorize the instance.
+   * <p>The returned factorization is an immutable snapshot of the
+   * current state of the instance: it is not affected by later
+   * modifications of the matrix and it can be shared between threads
+   * to solve many systems concurrently. The default implementation
+   * computes an {@link LUDecomposition}, derived classes may use a
+   * factorization better suited to their structure.</p>
+   * @param epsilon threshold on matrix elements below which the
+   * matrix is considered singular
+   * @return an immutable factorization of the instance
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  public Factorization factorize(double epsilon)
+    throws SingularMatrixException {
+    return new LUDecomposition(this, epsilon);
+  }
+
+  /** Compute the exponential of the scaled instance.
+   * <p>The exponential is computed using the scaling and squaring
+   * algorithm with Pad&eacute; approximants. If the exponential is
+   * needed for many values of t, a {@link MatrixExponential}
+   * instance, which caches its results, should be used instead.</p>
+   * @param t scaling factor (typically a time step)
+   * @return a new matrix containing <tt>exp(t.A)</tt>, where A is the
+   * instance
+   * @exception IllegalArgumentException if the matrix contains non
+   * finite elements
+   * @see MatrixExponential
+   */
+  public SquareMatrix getExponential(double t) {
+    return new GeneralSquareMatrix(rows,
+                                   MatrixExponential.exponential(getDenseData(),
+                                                                 rows, t));
+  }
+
   /** Invert the instance.
    * @param epsilon threshold on matrix elements below which the
    * matrix is considered singular
@@ -0,0 +1,519 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** This class represents batches of small square matrices.
+
+ * <p>Many applications (covariance propagation for large populations
+ * of objects, frames transforms, ...) perform the same operations on
+ * a huge number of small matrices (typically 3x3 or 6x6). Using one
+ * {@link GeneralSquareMatrix} instance for each of them costs more
+ * in objects allocation and ranges handling than in arithmetic. This
+ * class stores all matrices of a batch together in a
+ * structure-of-arrays layout: element (i, j) of all matrices are
+ * stored contiguously, element (i, j) of matrix k being at index
+ * <code>(i * order + j) * size + k</code> of a single array. All
+ * operations process the whole batch with the matrix index in the
+ * innermost loop, so the just-in-time compiler can use the SIMD
+ * instructions of the host, several matrices being processed by each
+ * instruction.</p>
+
+ * <p>Operations store their results in a destination batch provided
+ * by the caller, so steady-state computations do not allocate any
+ * memory. Large batches are split between several threads when the
+ * {@link Matrix#setParallelMode parallel mode} of the package is
+ * enabled.</p>
+
+ * @see GeneralSquareMatrix
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class SquareMatrixBatch
+  implements Serializable {
+
+  /** Simple constructor.
+   * Build a batch of matrices with null elements.
+   * @param order order of the matrices
+   * @param size number of matrices in the batch
+   * @exception IllegalArgumentException if the order or size is
+   * negative or null
+   */
+  public SquareMatrixBatch(int order, int size) {
+    if (order <= 0 || size <= 0) {
+      throw new IllegalArgumentException("cannot build a matrix"
+                                         + " with negative or null dimension");
+    }
+    this.order = order;
+    this.size  = size;
+    data       = new double[order * order * size];
+    workspace  = null;
+  }
+
+  /** Get the order of the matrices.
+   * @return order of the matrices
+   */
+  public int getOrder() {
+    return order;
+  }
+
+  /** Get the number of matrices in the batch.
+   * @return number of matrices in the batch
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /** Get an element of one matrix.
+   * @param k index of the matrix in the batch
+   * @param i row index
+   * @param j column index
+   * @return value of the element
+   */
+  public double getElement(int k, int i, int j) {
+    return data[(i * order + j) * size + k];
+  }
+
+  /** Set an element of one matrix.
+   * @param k index of the matrix in the batch
+   * @param i row index
+   * @param j column index
+   * @param value value of the element
+   */
+  public void setElement(int k, int i, int j, double value) {
+    data[(i * order + j) * size + k] = value;
+  }
+
+  /** Get the elements of one matrix.
+   * @param k index of the matrix in the batch
+   * @param elements array where to store the elements (row after row)
+   * @param offset index of the first element in the array
+   */
+  public void getMatrix(int k, double[] elements, int offset) {
+    for (int index = 0; index < order * order; ++index) {
+      elements[offset + index] = data[index * size + k];
+    }
+  }
+
+  /** Set the elements of one matrix.
+   * @param k index of the matrix in the batch
+   * @param elements array containing the elements (row after row)
+   * @param offset index of the first element in the array
+   */
+  public void setMatrix(int k, double[] elements, int offset) {
+    for (int index = 0; index < order * order; ++index) {
+      data[index * size + k] = elements[offset + index];
+    }
+  }
+
+  /** Multiply all matrices of the instance by the matrices of another batch.
+   * <p>This method computes <tt>dest<sub>k</sub> = this<sub>k</sub>.b<sub>k</sub></tt>
+   * for all matrices of the batch.</p>
+   * @param b batch by which to multiply
+   * @param dest destination batch (must not be the instance or b)
+   * @exception IllegalArgumentException if the batches are not
+   * compatible
+   */
+  public void mulInto(final SquareMatrixBatch b, final SquareMatrixBatch dest) {
+    checkCompatible(b);
+    checkCompatible(dest);
+    if (dest == this || dest == b) {
+      throw new IllegalArgumentException("cannot store a product"
+                                         + " into one of its operands");
+    }
+    long operations = ((long) size) * order * order * order;
+    if (RowsTask.isSerial(size, operations)) {
+      multiply(data, b.data, dest.data, order, size, false, 0, size);
+    } else {
+      RowsTask.run(new RowsTask.Kernel() {
+          public void compute(int kStart, int kEnd) {
+            multiply(data, b.data, dest.data, order, size, false, kStart, kEnd);
+          }
+        }, size, operations);
+    }
+  }
+
+  /** Transpose all matrices of the instance.
+   * @param dest destination batch (may be the instance itself)
+   * @exception IllegalArgumentException if the batches are not
+   * compatible
+   */
+  public void transposeInto(SquareMatrixBatch dest) {
+    checkCompatible(dest);
+    for (int i = 0; i < order; ++i) {
+      System.arraycopy(data, (i * order + i) * size,
+                       dest.data, (i * order + i) * size, size);
+      for (int j = i + 1; j < order; ++j) {
+        int ij = (i * order + j) * size;
+        int ji = (j * order + i) * size;
+        for (int k = 0; k < size; ++k) {
+          double tmp       = data[ij + k];
+          dest.data[ij + k] = data[ji + k];
+          dest.data[ji + k] = tmp;
+        }
+      }
+    }
+  }
+
+  /** Compute the congruence transforms of the matrices of another batch.
+   * <p>This method computes <tt>dest<sub>k</sub> =
+   * this<sub>k</sub>.p<sub>k</sub>.this<sub>k</sub><sup>T</sup></tt>
+   * for all matrices of the batch, which is the propagation of the
+   * covariance matrices p by the transition matrices of the
+   * instance. The intermediate product is stored in a workspace
+   * allocated once and reused by the following calls on the same
+   * destination.</p>
+   * @param p batch of matrices to transform
+   * @param dest destination batch (must not be the instance or p)
+   * @exception IllegalArgumentException if the batches are not
+   * compatible
+   */
+  public void congruenceInto(final SquareMatrixBatch p, final SquareMatrixBatch dest) {
+    checkCompatible(p);
+    checkCompatible(dest);
+    if (dest == this || dest == p) {
+      throw new IllegalArgumentException("cannot store a product"
+                                         + " into one of its operands");
+    }
+    if (dest.workspace == null) {
+      dest.workspace = new double[data.length];
+    }
+    final double[] tmp = dest.workspace;
+    long operations = 2l * size * order * order * order;
+    if (RowsTask.isSerial(size, operations)) {
+      multiply(data, p.data, tmp, order, size, false, 0, size);
+      multiply(tmp, data, dest.data, order, size, true, 0, size);
+    } else {
+      RowsTask.run(new RowsTask.Kernel() {
+          public void compute(int kStart, int kEnd) {
+            multiply(data, p.data, tmp, order, size, false, kStart, kEnd);
+            multiply(tmp, data, dest.data, order, size, true, kStart, kEnd);
+          }
+        }, size, operations);
+    }
+  }
+
+  /** Invert all matrices of the instance.
+   * <p>Matrices of order 1, 2 and 3 are inverted using explicit
+   * cofactors formulas, larger matrices are inverted using
+   * Gauss-Jordan elimination with partial pivoting, all matrices
+   * being reduced together in a workspace allocated once and reused
+   * by the following calls on the same destination.</p>
+   * @param dest destination batch (may be the instance itself)
+   * @param epsilon threshold on the absolute value of the
+   * determinants below which a matrix is considered singular (the
+   * threshold has the same meaning for all orders)
+   * @exception SingularMatrixException if one of the matrices is
+   * singular (the destination content is undefined in this case)
+   * @exception IllegalArgumentException if the batches are not
+   * compatible
+   */
+  public void invertInto(SquareMatrixBatch dest, double epsilon)
+    throws SingularMatrixException {
+    checkCompatible(dest);
+    final double[] a = data;
+    final double[] r = dest.data;
+    final int      s = size;
+    switch (order) {
+    case 1 :
+      for (int k = 0; k < s; ++k) {
+        if (! (Math.abs(a[k]) >= epsilon)) {
+          throw new SingularMatrixException();
+        }
+        r[k] = 1.0 / a[k];
+      }
+      break;
+    case 2 :
+      for (int k = 0; k < s; ++k) {
+        double a00 = a[k];
+        double a01 = a[s + k];
+        double a10 = a[2 * s + k];
+        double a11 = a[3 * s + k];
+        double det = a00 * a11 - a01 * a10;
+        if (! (Math.abs(det) >= epsilon)) {
+          throw new SingularMatrixException();
+        }
+        double inv = 1.0 / det;
+        r[k]         =  a11 * inv;
+        r[s + k]     = -a01 * inv;
+        r[2 * s + k] = -a10 * inv;
+        r[3 * s + k] =  a00 * inv;
+      }
+      break;
+    case 3 :
+      for (int k = 0; k < s; ++k) {
+        double a00 = a[k];
+        double a01 = a[s + k];
+        double a02 = a[2 * s + k];
+        double a10 = a[3 * s + k];
+        double a11 = a[4 * s + k];
+        double a12 = a[5 * s + k];
+        double a20 = a[6 * s + k];
+        double a21 = a[7 * s + k];
+        double a22 = a[8 * s + k];
+        double c00 = a11 * a22 - a12 * a21;
+        double c01 = a12 * a20 - a10 * a22;
+        double c02 = a10 * a21 - a11 * a20;
+        double det = a00 * c00 + a01 * c01 + a02 * c02;
+        if (! (Math.abs(det) >= epsilon)) {
+          throw new SingularMatrixException();
+        }
+        double inv = 1.0 / det;
+        r[k]         = c00 * inv;
+        r[s + k]     = (a02 * a21 - a01 * a22) * inv;
+        r[2 * s + k] = (a01 * a12 - a02 * a11) * inv;
+        r[3 * s + k] = c01 * inv;
+        r[4 * s + k] = (a00 * a22 - a02 * a20) * inv;
+        r[5 * s + k] = (a02 * a10 - a00 * a12) * inv;
+        r[6 * s + k] = c02 * inv;
+        r[7 * s + k] = (a01 * a20 - a00 * a21) * inv;
+        r[8 * s + k] = (a00 * a11 - a01 * a10) * inv;
+      }
+      break;
+    default :
+      gaussJordan(dest, epsilon);
+    }
+  }
+
+  /** Invert all matrices using Gauss-Jordan elimination.
+   * <p>The matrices are reduced together, each one with its own
+   * pivots, so the matrix index remains in the innermost loop.</p>
+   * @param dest destination batch
+   * @param epsilon threshold on the absolute value of the
+   * determinants below which a matrix is considered singular
+   * @exception SingularMatrixException if one of the matrices is singular
+   */
+  private void gaussJordan(SquareMatrixBatch dest, double epsilon)
+    throws SingularMatrixException {
+
+    // the workspace holds [A | I] for all matrices, in the same
+    // layout as the batch, the matrices being reduced in place to
+    // [I | A^-1], it also holds one determinant, one pivot row index
+    // and one scaling factor per matrix
+    final int n       = order;
+    final int w       = 2 * n;
+    final int s       = size;
+    final int detBase = n * w * s;
+    final int pivBase = detBase + s;
+    final int facBase = pivBase + s;
+    double[] gj = dest.workspace;
+    if ((gj == null) || (gj.length < facBase + s)) {
+      gj = new double[facBase + s];
+      dest.workspace = gj;
+    }
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        System.arraycopy(data, (i * n + j) * s, gj, (i * w + j) * s, s);
+        int id = (i * w + n + j) * s;
+        Arrays.fill(gj, id, id + s, (i == j) ? 1.0 : 0.0);
+      }
+    }
+    Arrays.fill(gj, detBase, pivBase, 1.0);
+
+    for (int c = 0; c < n; ++c) {
+
+      // find the pivots
+      int cc = (c * w + c) * s;
+      for (int k = 0; k < s; ++k) {
+        gj[pivBase + k] = c;
+        gj[facBase + k] = Math.abs(gj[cc + k]);
+      }
+      for (int i = c + 1; i < n; ++i) {
+        int ic = (i * w + c) * s;
+        for (int k = 0; k < s; ++k) {
+          double curElt = Math.abs(gj[ic + k]);
+          if (curElt > gj[facBase + k]) {
+            gj[facBase + k] = curElt;
+            gj[pivBase + k] = i;
+          }
+        }
+      }
+
+      // swap the rows
+      for (int j = c; j < w; ++j) {
+        int cj = (c * w + j) * s;
+        for (int k = 0; k < s; ++k) {
+          int iMax = (int) gj[pivBase + k];
+          if (iMax != c) {
+            int    pj  = (iMax * w + j) * s + k;
+            double tmp = gj[cj + k];
+            gj[cj + k] = gj[pj];
+            gj[pj]     = tmp;
+          }
+        }
+      }
+
+      // update the determinants and normalize the pivot rows
+      for (int k = 0; k < s; ++k) {
+        double pivot = gj[cc + k];
+        gj[detBase + k] *= (gj[pivBase + k] == c) ? pivot : -pivot;
+        gj[facBase + k]  = 1.0 / pivot;
+      }
+      for (int j = c; j < w; ++j) {
+        int cj = (c * w + j) * s;
+        for (int k = 0; k < s; ++k) {
+          gj[cj + k] *= gj[facBase + k];
+        }
+      }
+
+      // eliminate the column
+      for (int i = 0; i < n; ++i) {
+        if (i != c) {
+          int ic = (i * w + c) * s;
+          System.arraycopy(gj, ic, gj, facBase, s);
+          for (int j = c; j < w; ++j) {
+            int ij = (i * w + j) * s;
+            int cj = (c * w + j) * s;
+            for (int k = 0; k < s; ++k) {
+              gj[ij + k] -= gj[facBase + k] * gj[cj + k];
+            }
+          }
+        }
+      }
+
+    }
+
+    // a null pivot leads to a null or NaN determinant
+    for (int k = 0; k < s; ++k) {
+      if (! (Math.abs(gj[detBase + k]) >= epsilon)) {
+        throw new SingularMatrixException();
+      }
+    }
+
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        System.arraycopy(gj, (i * w + n + j) * s, dest.data, (i * n + j) * s, s);
+      }
+    }
+
+  }
+
+  /** Compute the Cholesky factors of all matrices of the instance.
+   * <p>This method computes the lower triangular matrices
+   * L<sub>k</sub> such that <tt>this<sub>k</sub> =
+   * L<sub>k</sub>.L<sub>k</sub><sup>T</sup></tt>, using only the lower
+   * triangles of the instance matrices. The elements above the
+   * diagonal of the destination are set to 0.</p>
+   * @param dest destination batch (may be the instance itself)
+   * @param epsilon threshold on the pivots (i.e. the squares of the
+   * diagonal elements of the factors) below which a matrix is
+   * considered not positive definite
+   * @exception NotPositiveDefiniteMatrixException if one of the
+   * matrices is not positive definite (the destination content is
+   * undefined in this case)
+   * @exception IllegalArgumentException if the batches are not
+   * compatible
+   */
+  public void choleskyInto(SquareMatrixBatch dest, double epsilon)
+    throws NotPositiveDefiniteMatrixException {
+
+    checkCompatible(dest);
+    final int      n = order;
+    final int      s = size;
+    final double[] a = data;
+    final double[] l = dest.data;
+
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j <= i; ++j) {
+
+        // remove the contribution of the already computed columns
+        int ij = (i * n + j) * s;
+        if (l != a) {
+          System.arraycopy(a, ij, l, ij, s);
+        }
+        for (int m = 0; m < j; ++m) {
+          int im = (i * n + m) * s;
+          int jm = (j * n + m) * s;
+          for (int k = 0; k < s; ++k) {
+            l[ij + k] -= l[im + k] * l[jm + k];
+          }
+        }
+
+        if (j < i) {
+          int jj = (j * n + j) * s;
+          for (int k = 0; k < s; ++k) {
+            l[ij + k] /= l[jj + k];
+          }
+        } else {
+          for (int k = 0; k < s; ++k) {
+            double value = l[ij + k];
+            if (! (value > 0) || value < epsilon) {
+              throw new NotPositiveDefiniteMatrixException();
+            }
+            l[ij + k] = Math.sqrt(value);
+          }
+        }
+
+      }
+
+      // clear the upper part of the row
+      for (int index = (i * n + i + 1) * s; index < (i + 1) * n * s; ++index) {
+        l[index] = 0.0;
+      }
+
+    }
+
+  }
+
+  /** Multiply matrices of two batches.
+   * @param a left operands
+   * @param b right operands
+   * @param c destination (must be neither a nor b)
+   * @param n order of the matrices
+   * @param s size of the batches
+   * @param transposeB if true, the right operands are transposed
+   * @param kStart index of the first matrix to process
+   * @param kEnd index after the last matrix to process
+   */
+  private static void multiply(double[] a, double[] b, double[] c,
+                               int n, int s, boolean transposeB,
+                               int kStart, int kEnd) {
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        int ij = (i * n + j) * s;
+        for (int k = kStart; k < kEnd; ++k) {
+          c[ij + k] = 0.0;
+        }
+        for (int l = 0; l < n; ++l) {
+          int il = (i * n + l) * s;
+          int lj = (transposeB ? (j * n + l) : (l * n + j)) * s;
+          for (int k = kStart; k < kEnd; ++k) {
+            c[ij + k] += a[il + k] * b[lj + k];
+          }
+        }
+      }
+    }
+  }
+
+  /** Check that another batch is compatible with the instance.
+   * @param batch batch to check
+   * @exception IllegalArgumentException if the batch has not the
+   * same order and size as the instance
+   */
+  private void checkCompatible(SquareMatrixBatch batch) {
+    if (batch.order != order || batch.size != size) {
+      throw new IllegalArgumentException("cannot combine a batch of "
+                                         + batch.size + " matrices of order "
+                                         + batch.order + " with a batch of "
+                                         + size + " matrices of order "
+                                         + order);
+    }
+  }
+
+  /** Order of the matrices. */
+  private final int order;
+
+  /** Number of matrices in the batch. */
+  private final int size;
+
+  /** Elements of the matrices (structure of arrays layout). */
+  private final double[] data;
+
+  /** Workspace for the operations needing temporary storage. */
+  private transient double[] workspace;
+
+  private static final long serialVersionUID = -7380459170728823711L;
+
+}
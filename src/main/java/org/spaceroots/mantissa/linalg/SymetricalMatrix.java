@@ -33,6 +33,11 @@ public class SymetricalMatrix
    */
   public SymetricalMatrix(SymetricalMatrix s) {
     super(s);
+
+    // the decomposition is never modified, it can be shared
+    cholesky            = s.cholesky;
+    notPositiveDefinite = s.notPositiveDefinite;
+
   }
 
   /** Build the symetrical matrix resulting from the product w.A.At.
@@ -132,6 +137,7 @@ public class SymetricalMatrix
         data[indexL]  = data[indexU];
       }
     }
+    resetFactorizations();
 
   }
 
@@ -165,6 +171,7 @@ public class SymetricalMatrix
         data[indexL] = data[indexU];
       }
     }
+    resetFactorizations();
 
   }
 
@@ -185,22 +192,141 @@ public class SymetricalMatrix
     }
 
     for (int i = 0; i < rows; ++i) {
-      int indexU = i * (columns + 1);
-      int indexL = indexU;
 
-      double factor   = w * a[i];
-      data[indexU] += factor * a[i];
+      // update the upper part of the row, including the diagonal
+      int indexU = i * (columns + 1);
+      VectorKernels.axpy(w * a[i], a, i, data, indexU, columns - i);
 
+      // copy it to the lower part of the column
+      int indexL = indexU;
       for (int j = i + 1; j < columns; ++j) {
-        ++indexU;
         indexL += columns;
-        data[indexU] += factor * a[j];
-        data[indexL]  = data[indexU];
+        data[indexL] = data[++indexU];
       }
+
     }
+    resetFactorizations();
 
   }
 
+  /** Factorize the instance.
+   * <p>This method returns the cached Cholesky decomposition of the
+   * instance, falling back to its LU decomposition if the matrix is
+   * not positive definite. Both decompositions are immutable and can
+   * be shared between threads.</p>
+   * @param epsilon threshold on matrix elements below which the
+   * matrix is considered singular
+   * @return Cholesky or LU decomposition of the instance
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  public Factorization factorize(double epsilon)
+    throws SingularMatrixException {
+    try {
+      return getCholeskyDecomposition(epsilon);
+    } catch (NotPositiveDefiniteMatrixException e) {
+      return super.factorize(epsilon);
+    }
+  }
+
+  /** Get the Cholesky decomposition of the instance.
+   * <p>The decomposition is computed only once and cached until the
+   * instance is modified.</p>
+   * @param epsilon threshold on the pivots (i.e. the squares of the
+   * diagonal elements of the factor) below which the matrix is
+   * considered not positive definite (only used if the decomposition
+   * is not already available)
+   * @return Cholesky decomposition of the instance
+   * @exception NotPositiveDefiniteMatrixException if the matrix is
+   * not positive definite
+   */
+  public CholeskyDecomposition getCholeskyDecomposition(double epsilon)
+    throws NotPositiveDefiniteMatrixException {
+    CholeskyDecomposition decomposition = cholesky;
+    if (decomposition == null) {
+      if (notPositiveDefinite) {
+        throw new NotPositiveDefiniteMatrixException();
+      }
+      try {
+        decomposition = new CholeskyDecomposition(this, epsilon);
+        cholesky      = decomposition;
+      } catch (NotPositiveDefiniteMatrixException e) {
+        notPositiveDefinite = true;
+        throw e;
+      }
+    }
+    return decomposition;
+  }
+
+  /** Get the determinant of the matrix.
+   * <p>The determinant is computed using a Cholesky decomposition,
+   * falling back to an LU decomposition if the matrix is not
+   * positive definite.</p>
+   * @param epsilon threshold on matrix elements below which the
+   * matrix is considered singular
+   * @return the determinant of the matrix
+   */
+  public double getDeterminant(double epsilon) {
+    try {
+      return getCholeskyDecomposition(epsilon).getDeterminant();
+    } catch (NotPositiveDefiniteMatrixException e) {
+      return super.getDeterminant(epsilon);
+    }
+  }
+
+  /** Invert the instance.
+   * <p>The inverse is computed using a Cholesky decomposition,
+   * falling back to an LU decomposition if the matrix is not
+   * positive definite.</p>
+   * @param epsilon threshold on matrix elements below which the
+   * matrix is considered singular
+   * @return the inverse matrix of the instance (a symetrical matrix
+   * if the instance is positive definite)
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  public SquareMatrix getInverse(double epsilon)
+    throws SingularMatrixException {
+    try {
+      return getCholeskyDecomposition(epsilon).getInverse();
+    } catch (NotPositiveDefiniteMatrixException e) {
+      return super.getInverse(epsilon);
+    }
+  }
+
+  /** Solve the <tt>A.X = B</tt> equation.
+   * <p>The equation is solved using a Cholesky decomposition,
+   * falling back to an LU decomposition if the matrix is not
+   * positive definite.</p>
+   * @param b second term of the equation
+   * @param epsilon threshold on matrix elements below which the
+   * matrix is considered singular
+   * @return a matrix X such that <tt>A.X = B</tt>, where A is the instance
+   * @exception SingularMatrixException if the matrix is singular
+   */
+  public Matrix solve(Matrix b, double epsilon)
+    throws SingularMatrixException {
+    // validity check
+    if (b.getRows() != rows) {
+      throw new IllegalArgumentException("dimension mismatch");
+    }
+    try {
+      return getCholeskyDecomposition(epsilon).solve(b);
+    } catch (NotPositiveDefiniteMatrixException e) {
+      return super.solve(b, epsilon);
+    }
+  }
+
+  protected void resetFactorizations() {
+    super.resetFactorizations();
+    cholesky            = null;
+    notPositiveDefinite = false;
+  }
+
+  /** Cached Cholesky decomposition (null if not computed yet). */
+  private volatile CholeskyDecomposition cholesky;
+
+  /** Indicator for matrices known not to be positive definite. */
+  private volatile boolean notPositiveDefinite;
+
   private static final long serialVersionUID = -2083829252075519221L;
 
 }
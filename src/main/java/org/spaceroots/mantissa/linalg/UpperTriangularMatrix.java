@@ -117,14 +117,15 @@ public class UpperTriangularMatrix
     int bRows  = b.getRows();
     int bCols  = b.getColumns();
 
+    double[] bData      = b.getDenseData();
     double[] resultData = new double[bRows * bCols];
-    int resultIndex     = bRows * bCols - 1;
     int lowerElements   = 0;
     int upperElements   = 0;
     int minJ            = columns;
     int maxJ            = 0;
 
-    // solve the linear system
+    // solve the linear system, the possibly non null elements of
+    // each row of the result being updated by the next rows
     for (int i = rows - 1; i >= 0; --i) {
       double diag = data[i * (columns + 1)];
       if (Math.abs(diag) < epsilon) {
@@ -136,47 +137,21 @@ public class UpperTriangularMatrix
       minJ = Math.min(minJ, range.begin);
       maxJ = Math.max(maxJ, range.end);
 
-      int j = bCols - 1;
-      while (j >= maxJ) {
-        resultData[resultIndex] = 0.0;
-        --resultIndex;
-        --j;
-      }
-
-      // compute the possibly non null elements
-      int bIndex = i * bCols + maxJ - 1;
-      while (j >= minJ) {
-
-        // compute the current element
-        int index1 = (i + 1) * columns - 1;
-        int index2 = (bRows - 1) * bCols + j;
-        double value = b.data[bIndex];
-        while (index1 >= i * (columns + 1)) {
-          value -= data[index1] * resultData[index2];
-          --index1;
-          index2 -= bCols;
+      if (minJ < maxJ) {
+        int length  = maxJ - minJ;
+        int resultI = i * bCols + minJ;
+        System.arraycopy(bData, resultI, resultData, resultI, length);
+        for (int k = columns - 1; k > i; --k) {
+          VectorKernels.axpy(-data[i * columns + k],
+                             resultData, k * bCols + minJ,
+                             resultData, resultI, length);
         }
-        value *= inv;
-        resultData[resultIndex] = value;
+        VectorKernels.scale(inv, resultData, resultI, resultData, resultI, length);
 
         // count the affected upper and lower elements
         // (in order to deduce the shape of the resulting matrix)
-        if (j < i) {
-          ++lowerElements;
-        } else if (i < j) {
-          ++upperElements;
-        }
-
-        --bIndex;
-        --resultIndex;
-        --j;
-
-      }
-
-      while (j >= 0) {
-        resultData[resultIndex] = 0.0;
-        --resultIndex;
-        --j;
+        lowerElements += Math.max(0, Math.min(maxJ, i) - minJ);
+        upperElements += Math.max(0, maxJ - Math.max(minJ, i + 1));
       }
 
     }
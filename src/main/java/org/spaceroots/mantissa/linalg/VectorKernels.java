@@ -0,0 +1,172 @@
+package org.spaceroots.mantissa.linalg;
+
+/** This class gathers the low level vector kernels of the library.
+
+ * <p>The kernels (dot product, axpy, matrix-vector and matrix-matrix
+ * products) operate on slices of <code>double</code> arrays. They are
+ * written so that the just-in-time compiler can map them on the SIMD
+ * instructions of the host (SSE, AVX2, AVX-512): the loops that
+ * update arrays element-wise ({@link #axpy axpy}, {@link #scale
+ * scale}) are kept in the simple single statement form the compiler
+ * auto-vectorizes, and the reductions ({@link #dot dot}, {@link #gemv
+ * gemv}) use four independent accumulators so that several
+ * additions are in flight at the same time instead of waiting for
+ * each other.</p>
+
+ * <p>The element-wise kernels compute each element exactly as the
+ * straightforward loop does, so routing existing loops through them
+ * does not change any result. The reductions sum the products in a
+ * different order than a sequential loop, so their results may
+ * differ from the sequential ones in the last bits.</p>
+
+ * <p>This is a utility class, no instance of this class should be
+ * built, so the constructor is explicitly made private.</p>
+
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class VectorKernels {
+
+  /** Simple constructor.
+   * Since the class is a utility class with only static methods, the
+   * constructor is made private to prevent creating instances of this
+   * class.
+   */
+  private VectorKernels() {
+  }
+
+  /** Compute the dot product of two vectors slices.
+   * @param x array containing the first vector
+   * @param xOffset index of the first element of the first vector
+   * @param y array containing the second vector
+   * @param yOffset index of the first element of the second vector
+   * @param n number of elements of the vectors
+   * @return x.y
+   */
+  public static double dot(double[] x, int xOffset,
+                           double[] y, int yOffset, int n) {
+    double s0 = 0;
+    double s1 = 0;
+    double s2 = 0;
+    double s3 = 0;
+    int i = 0;
+    for (; i + 3 < n; i += 4) {
+      s0 += x[xOffset + i]     * y[yOffset + i];
+      s1 += x[xOffset + i + 1] * y[yOffset + i + 1];
+      s2 += x[xOffset + i + 2] * y[yOffset + i + 2];
+      s3 += x[xOffset + i + 3] * y[yOffset + i + 3];
+    }
+    for (; i < n; ++i) {
+      s0 += x[xOffset + i] * y[yOffset + i];
+    }
+    return (s0 + s1) + (s2 + s3);
+  }
+
+  /** Add a scaled vector slice to another vector slice.
+   * <p>This method computes <code>y += a.x</code> element-wise.</p>
+   * @param a scaling factor
+   * @param x array containing the vector to add
+   * @param xOffset index of the first element of x
+   * @param y array containing the vector to update (may be the same
+   * array as x if the slices do not overlap)
+   * @param yOffset index of the first element of y
+   * @param n number of elements of the vectors
+   */
+  public static void axpy(double a, double[] x, int xOffset,
+                          double[] y, int yOffset, int n) {
+    for (int i = 0; i < n; ++i) {
+      y[yOffset + i] += a * x[xOffset + i];
+    }
+  }
+
+  /** Scale a vector slice into another vector slice.
+   * <p>This method computes <code>y = a.x</code> element-wise.</p>
+   * @param a scaling factor
+   * @param x array containing the vector to scale
+   * @param xOffset index of the first element of x
+   * @param y array where to store the result (may be x itself)
+   * @param yOffset index of the first element of y
+   * @param n number of elements of the vectors
+   */
+  public static void scale(double a, double[] x, int xOffset,
+                           double[] y, int yOffset, int n) {
+    for (int i = 0; i < n; ++i) {
+      y[yOffset + i] = a * x[xOffset + i];
+    }
+  }
+
+  /** Compute a linear combination of vectors added to a base vector.
+   * <p>This method computes <code>r = y + h.(c<sub>0</sub>.v<sub>0</sub>
+   * + ... + c<sub>count-1</sub>.v<sub>count-1</sub>)</code>
+   * element-wise, with the products summed in increasing index
+   * order. This is the combination of the stages of Runge-Kutta
+   * methods, computed one vector at a time so that all loops are
+   * contiguous.</p>
+   * @param y base vector
+   * @param h global factor of the combination
+   * @param c coefficients of the combination (at least count elements)
+   * @param v vectors to combine (at least count vectors)
+   * @param count number of vectors to combine (must be at least 1)
+   * @param r array where to store the result (must not be y or one of v)
+   */
+  public static void combine(double[] y, double h, double[] c, double[][] v,
+                             int count, double[] r) {
+    int n = r.length;
+    scale(c[0], v[0], 0, r, 0, n);
+    for (int l = 1; l < count; ++l) {
+      axpy(c[l], v[l], 0, r, 0, n);
+    }
+    for (int i = 0; i < n; ++i) {
+      r[i] = y[i] + h * r[i];
+    }
+  }
+
+  /** Compute a matrix-vector product.
+   * <p>This method computes <code>y = A.x</code> where A is a
+   * <code>rows</code> by <code>columns</code> matrix stored row after
+   * row. Each element of y is computed by {@link #dot}.</p>
+   * @param a matrix elements (stored row after row)
+   * @param rows number of rows of A
+   * @param columns number of columns of A
+   * @param x vector by which to multiply (columns elements)
+   * @param y array where to store the result (rows elements, must
+   * not be x)
+   */
+  public static void gemv(double[] a, int rows, int columns,
+                          double[] x, double[] y) {
+    for (int i = 0; i < rows; ++i) {
+      y[i] = dot(a, i * columns, x, 0, columns);
+    }
+  }
+
+  /** Compute a scaled matrix-matrix product added to a scaled matrix.
+   * <p>This method computes <code>C = alpha.A.B + beta.C</code> where
+   * A is a <code>m</code> by <code>n</code> matrix, B a <code>n</code>
+   * by <code>p</code> matrix and C a <code>m</code> by <code>p</code>
+   * matrix, all stored row after row. The product uses the tiled
+   * kernel of {@link Matrix#mul(Matrix)}.</p>
+   * @param alpha factor of the product
+   * @param a elements of A
+   * @param b elements of B
+   * @param beta factor of C (if 0.0, the initial content of C is ignored)
+   * @param c elements of C (must not be a or b)
+   * @param m number of rows of A and C
+   * @param n number of columns of A and rows of B
+   * @param p number of columns of B and C
+   */
+  public static void gemm(double alpha, double[] a, double[] b,
+                          double beta, double[] c,
+                          int m, int n, int p) {
+    if (beta == 0.0) {
+      for (int i = 0; i < m * p; ++i) {
+        c[i] = 0.0;
+      }
+    } else if (beta != 1.0) {
+      scale(beta, c, 0, c, 0, m * p);
+    }
+    Matrix.multiplyFull(alpha, a, b, c, n, p, 0, m);
+  }
+
+}
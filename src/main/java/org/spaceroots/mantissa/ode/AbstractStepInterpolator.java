@@ -127,6 +127,9 @@ public abstract class AbstractStepInterpolator
   }
 
   /** Reinitialize the instance
+   * <p>The interpolated state array is reused if it already has the
+   * right dimension, which allows integrators to reuse the same
+   * instance for several integrations without allocating anything.</p>
    * @param y reference to the integrator array holding the state at
    * the end of the step
    * @param forward integration direction indicator
@@ -139,7 +142,9 @@ public abstract class AbstractStepInterpolator
     interpolatedTime  = Double.NaN;
 
     currentState      = y;
-    interpolatedState = new double[y.length];
+    if ((interpolatedState == null) || (interpolatedState.length != y.length)) {
+      interpolatedState = new double[y.length];
+    }
 
     finalized         = false;
     this.forward      = forward;
@@ -268,7 +273,26 @@ public abstract class AbstractStepInterpolator
   protected abstract void computeInterpolatedState(double theta,
                                                    double oneMinusThetaH)
     throws DerivativeException;
-    
+
+  /** Get the degree of the interpolation polynomial.
+   * <p>If the interpolated state is a polynomial of the normalized
+   * abscissa <code>theta</code> within the step, its degree is used
+   * by {@link ContinuousOutputModel} to store the step as a set of
+   * state samples from which the polynomial can be rebuilt
+   * exactly.</p>
+   * <p>The default implementation returns -1, meaning the interpolated
+   * state is not known to be a polynomial: {@link
+   * ContinuousOutputModel} then stores a copy of the interpolator.
+   * Derived classes whose interpolated state is a polynomial should
+   * override it.</p>
+   * @return degree of the interpolation polynomial for the current
+   * step, or -1 if the interpolated state is not a polynomial of known
+   * degree
+   */
+  protected int getInterpolationDegree() {
+    return -1;
+  }
+
   /**
    * Get the state vector of the interpolated point.
    * @return state vector at time {@link #getInterpolatedTime}
@@ -62,6 +62,13 @@ class ClassicalRungeKuttaStepInterpolator
     return new ClassicalRungeKuttaStepInterpolator(this);
   }
 
+  /** Get the degree of the interpolation polynomial.
+   * @return degree of the interpolation polynomial
+   */
+  protected int getInterpolationDegree() {
+    return 3;
+  }
+
   /** Compute the state at the interpolated time.
    * This is the main processing method that should be implemented by
    * the derived classes to perform the interpolation.
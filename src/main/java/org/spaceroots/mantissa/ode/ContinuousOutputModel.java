@@ -1,8 +1,10 @@
 package org.spaceroots.mantissa.ode;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.concurrent.ExecutorService;
 
 /**
  * This class stores all information provided by an ODE integrator
@@ -11,8 +13,8 @@ import java.io.Serializable;
 
  * <p>This class act as a step handler from the integrator point of
  * view. It is called iteratively during the integration process and
- * stores a copy of all steps information in a sorted collection for
- * later use. Once the integration process is over, the user can use
+ * stores a copy of all steps information in sorted arrays for later
+ * use. Once the integration process is over, the user can use
  * the {@link #setInterpolatedTime setInterpolatedTime} and {@link
  * #getInterpolatedState getInterpolatedState} to retrieve this
  * information at any time. It is important to wait for the
@@ -49,6 +51,29 @@ import java.io.Serializable;
  * stored, there is no reference to the integrated problem by
  * itself.</p>
 
+ * <p>The steps are not stored as copies of the integrator step
+ * interpolators. The interpolated state of all interpolators of this
+ * package is a polynomial of the normalized abscissa within the step
+ * (see {@link AbstractStepInterpolator#getInterpolationDegree}), it
+ * is therefore stored as the state samples at the Chebyshev-Lobatto
+ * points of the step from which the polynomial is rebuilt exactly
+ * (see {@link SampledStepInterpolator}). The step boundaries are
+ * stored in contiguous <code>double</code> arrays and the samples in
+ * large <code>double</code> chunks, so the memory overhead per step is
+ * only a few words and locating a time is a binary search in an
+ * array. The steps of interpolators whose interpolated state is not
+ * known to be a polynomial (typically user interpolators that do not
+ * override {@link AbstractStepInterpolator#getInterpolationDegree})
+ * are stored as copies of the interpolators, as in previous
+ * versions.</p>
+
+ * <p>The {@link #setInterpolatedTime setInterpolatedTime} method
+ * changes the state of the instance, it cannot be used by several
+ * threads at once. The {@link #getStateAt getStateAt} and {@link
+ * #getStatesAt(double[], int[], double[]) getStatesAt} methods and the
+ * immutable {@link ContinuousOutputSnapshot snapshots} returned by
+ * {@link #getSnapshot getSnapshot} can be used concurrently.</p>
+
  * <p>One should be aware that the amount of data stored in a
  * ContinuousOutputModel instance can be important if the state vector
  * is large, if the integration interval is long or if the steps are
@@ -70,7 +95,6 @@ public class ContinuousOutputModel
    * Build an empty continuous output model.
    */
   public ContinuousOutputModel() {
-    steps = new ArrayList();
     reset();
   }
 
@@ -82,16 +106,18 @@ public class ContinuousOutputModel
    */
   public void append(ContinuousOutputModel model) {
 
-    if (model.steps.size() == 0) {
+    if (model.stepsCount == 0) {
       return;
     }
 
-    if (steps.size() == 0) {
-      initialTime = model.initialTime;
-      forward     = model.forward;
+    if (stepsCount == 0) {
+      initialTime       = model.initialTime;
+      forward           = model.forward;
+      dimension         = model.dimension;
+      interpolatedState = new double[dimension];
     } else {
 
-      if (getInterpolatedState().length != model.getInterpolatedState().length) {
+      if (dimension != model.dimension) {
         throw new IllegalArgumentException("state vector dimension mismatch");
       }
 
@@ -99,9 +125,9 @@ public class ContinuousOutputModel
         throw new IllegalArgumentException("propagation direction mismatch");
       }
 
-      StepInterpolator lastInterpolator = (StepInterpolator) steps.get(index);
-      double current  = lastInterpolator.getCurrentTime();
-      double previous = lastInterpolator.getPreviousTime();
+      int last = stepsCount - 1;
+      double current  = currentTimes[last];
+      double previous = previousTimes[last];
       double step = current - previous;
       double gap = model.getInitialTime() - current;
       if (Math.abs(gap) > 1.0e-3 * Math.abs(step)) {
@@ -110,13 +136,26 @@ public class ContinuousOutputModel
 
     }
 
-    for (Iterator iter = model.steps.iterator(); iter.hasNext(); ) {
-      AbstractStepInterpolator ai = (AbstractStepInterpolator) iter.next();
-      steps.add(ai.clone());
+    // the model may be the instance itself
+    int n = model.stepsCount;
+    for (int i = 0; i < n; ++i) {
+      if (model.sampleCounts[i] == 0) {
+        AbstractStepInterpolator copy = model.copies[model.sampleOffsets[i]];
+        synchronized (copy) {
+          copy = (AbstractStepInterpolator) copy.clone();
+        }
+        addCopy(copy);
+        continue;
+      }
+      int size = model.sampleCounts[i] * dimension;
+      int offset = allocate(size);
+      System.arraycopy(model.chunks[model.sampleChunks[i]], model.sampleOffsets[i],
+                       chunks[chunksCount - 1], offset, size);
+      addStep(model.previousTimes[i], model.currentTimes[i],
+              model.sampleCounts[i], offset);
     }
 
-    index = steps.size() - 1;
-    finalTime = ((StepInterpolator) steps.get(index)).getCurrentTime();
+    setLastStep();
 
   }
 
@@ -135,11 +174,25 @@ public class ContinuousOutputModel
    * handled.
    */
   public void reset() {
-    initialTime = Double.NaN;
-    finalTime   = Double.NaN;
-    forward     = true;
-    index       = 0;
-    steps.clear();
+    initialTime       = Double.NaN;
+    finalTime         = Double.NaN;
+    forward           = true;
+    dimension         = -1;
+    index             = 0;
+    interpolatedTime  = Double.NaN;
+    interpolatedState = null;
+    stepsCount        = 0;
+    previousTimes     = new double[INITIAL_CAPACITY];
+    currentTimes      = new double[INITIAL_CAPACITY];
+    sampleCounts      = new int[INITIAL_CAPACITY];
+    sampleChunks      = new int[INITIAL_CAPACITY];
+    sampleOffsets     = new int[INITIAL_CAPACITY];
+    chunks            = new double[4][];
+    chunksCount       = 0;
+    chunkFill         = 0;
+    copies            = null;
+    copiesCount       = 0;
+    snapshot          = null;
    }
 
   /** Handle the last accepted step.
@@ -154,18 +207,50 @@ public class ContinuousOutputModel
     throws DerivativeException {
 
     AbstractStepInterpolator ai = (AbstractStepInterpolator) interpolator;
-
-    if (steps.size() == 0) {
-      initialTime = interpolator.getPreviousTime();
-      forward     = interpolator.isForward();
+    int n = ai.currentState.length;
+
+    if (stepsCount == 0) {
+      initialTime       = interpolator.getPreviousTime();
+      forward           = interpolator.isForward();
+      dimension         = n;
+      interpolatedState = new double[n];
+    } else if (n != dimension) {
+      throw new IllegalArgumentException("state vector dimension mismatch");
     }
 
     ai.finalizeStep();
-    steps.add(ai.clone());
+
+    int degree = ai.getInterpolationDegree();
+    if (degree < 0) {
+      // unknown interpolation function, store a copy of the interpolator
+      addCopy((AbstractStepInterpolator) ai.clone());
+      if (isLast) {
+        setLastStep();
+      }
+      return;
+    }
+
+    // sample the interpolation polynomial at the Chebyshev-Lobatto points
+    double   previous = ai.getPreviousTime();
+    double   current  = ai.getCurrentTime();
+    double   h        = current - previous;
+    int      count    = degree + 1;
+    double[] nodes    = SampledStepInterpolator.getNodes(count);
+    int      offset   = allocate(count * n);
+    double[] chunk    = chunks[chunksCount - 1];
+    double   saved    = ai.getInterpolatedTime();
+    for (int j = 0; j < count; ++j) {
+      ai.computeInterpolatedState(nodes[j], (1.0 - nodes[j]) * h);
+      System.arraycopy(ai.interpolatedState, 0, chunk, offset + j * n, n);
+    }
+
+    // restore the interpolated state for the other users of the interpolator
+    ai.setInterpolatedTime(saved);
+
+    addStep(previous, current, count, offset);
 
     if (isLast) {
-      finalTime = ai.getCurrentTime();
-      index     = steps.size() - 1;
+      setLastStep();
     }
 
   }
@@ -193,7 +278,7 @@ public class ContinuousOutputModel
    * @return interpolation point time
    */
   public double getInterpolatedTime() {
-    return ((StepInterpolator) steps.get(index)).getInterpolatedTime();
+    return interpolatedTime;
   }
     
   /** Set the time of the interpolated point.
@@ -209,135 +294,388 @@ public class ContinuousOutputModel
    * @param time time of the interpolated point
    */
   public void setInterpolatedTime(double time) {
+    index = locateStep(previousTimes, currentTimes, stepsCount, forward, time, index);
+    getSnapshot().evaluate(index, null, time, interpolatedState, 0);
+    interpolatedTime = time;
+  }
 
-    try {
-      // initialize the search with the complete steps table
-      int iMin = 0;
-      StepInterpolator sMin = (StepInterpolator) steps.get(iMin);
-      double tMin = 0.5 * (sMin.getPreviousTime() + sMin.getCurrentTime());
-
-      int iMax = steps.size() - 1;
-      StepInterpolator sMax = (StepInterpolator) steps.get(iMax);
-      double tMax = 0.5 * (sMax.getPreviousTime() + sMax.getCurrentTime());
-
-      // handle points outside of the integration interval
-      // or in the first and last step
-      if (locatePoint(time, sMin) <= 0) {
-        index = iMin;
-        sMin.setInterpolatedTime(time);
-        return;
+  /**
+   * Get the state vector of the interpolated point.
+   * @return state vector at time {@link #getInterpolatedTime}
+   */
+  public double[] getInterpolatedState() {
+    return (double[]) interpolatedState.clone();
+  }
+
+  /** Get the state vector at a given time.
+   * <p>Contrary to {@link #setInterpolatedTime setInterpolatedTime},
+   * this method does not change the state of the instance, so several
+   * threads can call it concurrently as long as no steps are added to
+   * the instance at the same time. Use a {@link #getSnapshot snapshot}
+   * if the instance may still be modified.</p>
+   * <p>As for {@link #setInterpolatedTime setInterpolatedTime}, times
+   * outside of the integration interval are allowed but the accuracy
+   * will probably be very poor far from this interval.</p>
+   * @param time time of the point
+   * @param out array where to store the state vector (its size must
+   * be the dimension of the state vector)
+   * @exception IllegalStateException if the instance is empty
+   * @exception IllegalArgumentException if the array dimension does
+   * not match the state vector dimension
+   */
+  public void getStateAt(double time, double[] out) {
+    getSnapshot().getStateAt(time, out);
+  }
+
+  /** Get the state vectors at many sorted times.
+   * <p>This method changes neither the state of the instance nor its
+   * interpolated point, see {@link
+   * ContinuousOutputSnapshot#getStatesAt(double[], int[], double[])}
+   * for the layout of the output array.</p>
+   * @param times times of the points, sorted in increasing or
+   * decreasing order
+   * @param components indices of the components to compute (if null,
+   * all components are computed)
+   * @param out array where to store the states one after the other
+   * @exception IllegalStateException if the instance is empty
+   * @exception IllegalArgumentException if the times are not sorted, if
+   * the components are not valid or if the output array is too small
+   */
+  public void getStatesAt(double[] times, int[] components, double[] out) {
+    getSnapshot().getStatesAt(times, components, out);
+  }
+
+  /** Get the state vectors at many sorted times, using several threads.
+   * <p>This method changes neither the state of the instance nor its
+   * interpolated point, see {@link
+   * ContinuousOutputSnapshot#getStatesAt(double[], int[], double[],
+   * ExecutorService)} for the splitting of the grid.</p>
+   * @param times times of the points, sorted in increasing or
+   * decreasing order
+   * @param components indices of the components to compute (if null,
+   * all components are computed)
+   * @param out array where to store the states one after the other
+   * @param executor executor service to use (it is not shut down by
+   * this method)
+   * @exception IllegalStateException if the instance is empty
+   * @exception IllegalArgumentException if the times are not sorted, if
+   * the components are not valid or if the output array is too small
+   */
+  public void getStatesAt(double[] times, int[] components, double[] out,
+                          ExecutorService executor) {
+    getSnapshot().getStatesAt(times, components, out, executor);
+  }
+
+  /** Get an immutable snapshot of the instance.
+   * <p>The snapshot contains the steps stored so far. It shares the
+   * stored data with the instance, so building it is cheap, and it is
+   * not affected by the steps added later to the instance or by
+   * {@link #reset}. The same snapshot is returned until steps are
+   * added to the instance.</p>
+   * @return immutable snapshot of the instance
+   */
+  public ContinuousOutputSnapshot getSnapshot() {
+    ContinuousOutputSnapshot s = snapshot;
+    if (s == null) {
+      s = new ContinuousOutputSnapshot(initialTime, forward,
+                                       dimension, stepsCount,
+                                       previousTimes, currentTimes,
+                                       sampleCounts, sampleChunks, sampleOffsets,
+                                       chunks, copies);
+      snapshot = s;
+    }
+    return s;
+  }
+
+  /** Get the number of steps stored in the instance.
+   * @return number of steps
+   */
+  public int getStepsCount() {
+    return stepsCount;
+  }
+
+  /** Get a view of one of the steps stored in the instance.
+   * <p>The view is built on demand, it shares the stored data with
+   * the instance but has its own interpolated time and state.</p>
+   * @param i index of the step (between 0 and {@link
+   * #getStepsCount()} - 1, in integration order)
+   * @return interpolator for the step
+   * @exception IndexOutOfBoundsException if the index is out of range
+   */
+  public StepInterpolator getStep(int i) {
+    return getSnapshot().getStep(i);
+  }
+
+  /** Find the step containing a time.
+   * <p>The step containing the point is the first one whose current
+   * time is not before the point, the first and last steps are used
+   * for points outside of the integration interval.</p>
+   * <p>This method does not use any shared state, it can be called
+   * concurrently by several threads.</p>
+   * @param previousTimes previous times of the steps
+   * @param currentTimes current times of the steps
+   * @param stepsCount number of steps
+   * @param forward integration direction indicator
+   * @param time point to locate
+   * @param hint index of a step to check first (ignored if negative)
+   * @return index of the step containing the point
+   */
+  static int locateStep(double[] previousTimes, double[] currentTimes,
+                        int stepsCount, boolean forward,
+                        double time, int hint) {
+
+    if ((hint >= 0) && (hint < stepsCount)) {
+      // consecutive points are often in the same step
+      double previous = previousTimes[hint];
+      double current  = currentTimes[hint];
+      if (forward
+          ? ((time >= previous) && (time <= current))
+          : ((time <= previous) && (time >= current))) {
+        return hint;
       }
-      if (locatePoint(time, sMax) >= 0) {
-        index = iMax;
-        sMax.setInterpolatedTime(time);
-        return;
+    }
+
+    int iMin = 0;
+    int iMax = stepsCount - 1;
+    while (iMin < iMax) {
+      int iMed = (iMin + iMax) >>> 1;
+      if (forward ? (time > currentTimes[iMed]) : (time < currentTimes[iMed])) {
+        iMin = iMed + 1;
+      } else {
+        iMax = iMed;
       }
+    }
+    return iMin;
 
-      // reduction of the table slice size
-      while (iMax - iMin > 5) {
-
-        // use the last estimated index as the splitting index
-        StepInterpolator si = (StepInterpolator) steps.get(index);
-        int location = locatePoint(time, si);
-        if (location < 0) {
-          iMax = index;
-          tMax = 0.5 * (si.getPreviousTime() + si.getCurrentTime());
-        } else if (location > 0) {
-          iMin = index;
-          tMin = 0.5 * (si.getPreviousTime() + si.getCurrentTime());
-        } else {
-          // we have found the target step, no need to continue searching
-          si.setInterpolatedTime(time);
-          return;
-        }
+  }
 
-        // compute a new estimate of the index in the reduced table slice
-        int iMed = (iMin + iMax) / 2;
-        StepInterpolator sMed = (StepInterpolator) steps.get(iMed);
-        double tMed = 0.5 * (sMed.getPreviousTime() + sMed.getCurrentTime());
-
-        if ((Math.abs(tMed - tMin) < 1e-6) || (Math.abs(tMax - tMed) < 1e-6)) {
-          // too close to the bounds, we estimate using a simple dichotomy
-          index = iMed;
-        } else {
-          // estimate the index using a reverse quadratic polynom
-          // (reverse means we have i = P(t), thus allowing to simply
-          // compute index = P(time) rather than solving a quadratic equation)
-          double d12 = tMax - tMed;
-          double d23 = tMed - tMin;
-          double d13 = tMax - tMin;
-          double dt1 = time - tMax;
-          double dt2 = time - tMed;
-          double dt3 = time - tMin;
-          double iLagrange = (  (dt2 * dt3 * d23) * iMax
-                              - (dt1 * dt3 * d13) * iMed
-                              + (dt1 * dt2 * d12) * iMin)
-                           / (d12 * d23 * d13);
-          index = (int) Math.rint(iLagrange);
-        }
+  /** Evaluate the state within one step.
+   * <p>This method does not use any shared state, it can be called
+   * concurrently by several threads.</p>
+   * @param previous previous time of the step
+   * @param current current time of the step
+   * @param samples chunk containing the samples of the step
+   * @param offset index of the first sample element in the chunk
+   * @param count number of samples of the step
+   * @param dimension dimension of the state vector
+   * @param components indices of the components to evaluate (if null,
+   * all components are evaluated)
+   * @param time time of the point
+   * @param out array where to store the state
+   * @param outOffset index of the first state element in out
+   */
+  static void evaluate(double previous, double current,
+                       double[] samples, int offset, int count, int dimension,
+                       int[] components, double time, double[] out, int outOffset) {
+    double h     = current - previous;
+    double theta = (h == 0) ? 1.0 : (time - previous) / h;
+    SampledStepInterpolator.interpolate(samples, offset, count, dimension, components,
+                                        theta, out, outOffset);
+  }
 
-        // force the next size reduction to be at least one tenth
-        int low  = Math.max(iMin + 1, (9 * iMin + iMax) / 10);
-        int high = Math.min(iMax - 1, (iMin + 9 * iMax) / 10);
-        if (index < low) {
-          index = low;
-        } else if (index > high) {
-          index = high;
-        }
+  /** Allocate room for the samples of one step.
+   * <p>The samples of one step are always stored in the last chunk,
+   * a new chunk is added if the last one is full.</p>
+   * @param size number of sample elements of the step
+   * @return index of the first sample element in the last chunk
+   */
+  private int allocate(int size) {
 
-      }
+    if ((chunksCount == 0) || (chunkFill + size > chunks[chunksCount - 1].length)) {
 
-      // now the table slice is very small, we perform an iterative search
-      index = iMin;
-      while ((index <= iMax)
-             && (locatePoint(time, (StepInterpolator) steps.get(index)) > 0)) {
-        ++index;
+      // the chunks size grows up to a fixed limit,
+      // so small models do not waste memory
+      int chunkSize = (chunksCount == 0)
+                    ? MIN_CHUNK_SIZE
+                    : Math.min(MAX_CHUNK_SIZE, 2 * chunks[chunksCount - 1].length);
+      chunkSize = Math.max(chunkSize, size);
+
+      if (chunksCount == chunks.length) {
+        double[][] newChunks = new double[2 * chunks.length][];
+        System.arraycopy(chunks, 0, newChunks, 0, chunksCount);
+        chunks = newChunks;
       }
+      chunks[chunksCount++] = new double[chunkSize];
+      chunkFill = 0;
+
+    }
 
-      StepInterpolator si = (StepInterpolator) steps.get(index);
+    int offset = chunkFill;
+    chunkFill += size;
+    return offset;
 
-      si.setInterpolatedTime(time);
+  }
 
-    } catch (DerivativeException de) {
-      throw new RuntimeException("unexpected DerivativeException caught", de);
+  /** Add a step stored as an interpolator copy.
+   * @param copy interpolator copy (it will not be shared)
+   */
+  private void addCopy(AbstractStepInterpolator copy) {
+
+    if (copies == null) {
+      copies = new AbstractStepInterpolator[INITIAL_CAPACITY];
+    } else if (copiesCount == copies.length) {
+      AbstractStepInterpolator[] newCopies =
+        new AbstractStepInterpolator[2 * copiesCount];
+      System.arraycopy(copies, 0, newCopies, 0, copiesCount);
+      copies = newCopies;
     }
+    copies[copiesCount] = copy;
+
+    addStep(copy.getPreviousTime(), copy.getCurrentTime(), 0, -1, copiesCount++);
 
   }
 
-  /**
-   * Get the state vector of the interpolated point.
-   * @return state vector at time {@link #getInterpolatedTime}
+  /** Add a step whose samples are in the last chunk.
+   * @param previous previous time of the step
+   * @param current current time of the step
+   * @param count number of samples of the step
+   * @param offset index of the first sample element in the last chunk
    */
-  public double[] getInterpolatedState() {
-    return ((StepInterpolator) steps.get(index)).getInterpolatedState();
+  private void addStep(double previous, double current, int count, int offset) {
+    addStep(previous, current, count, chunksCount - 1, offset);
   }
 
-  /** Compare a step interval and a double. 
-   * @param time point to locate
-   * @param interval step interval
-   * @return -1 if the double is before the interval, 0 if it is in
-   * the interval, and +1 if it is after the interval, according to
-   * the interval direction
+  /** Add a step.
+   * @param previous previous time of the step
+   * @param current current time of the step
+   * @param count number of samples of the step (0 for interpolator copies)
+   * @param chunk index of the chunk containing the samples of the step
+   * @param offset index of the first sample element in the chunk (or
+   * index of the interpolator copy)
    */
-  private int locatePoint(double time, StepInterpolator interval) {
-    if (forward) {
-      if (time < interval.getPreviousTime()) {
-        return -1;
-      } else if (time > interval.getCurrentTime()) {
-        return +1;
-      } else {
-        return 0;
+  private void addStep(double previous, double current,
+                       int count, int chunk, int offset) {
+
+    if (stepsCount == currentTimes.length) {
+      int capacity = 2 * stepsCount;
+      previousTimes = grow(previousTimes, capacity);
+      currentTimes  = grow(currentTimes,  capacity);
+      sampleCounts  = grow(sampleCounts,  capacity);
+      sampleChunks  = grow(sampleChunks,  capacity);
+      sampleOffsets = grow(sampleOffsets, capacity);
+    }
+
+    previousTimes[stepsCount] = previous;
+    currentTimes[stepsCount]  = current;
+    sampleCounts[stepsCount]  = count;
+    sampleChunks[stepsCount]  = chunk;
+    sampleOffsets[stepsCount] = offset;
+    ++stepsCount;
+    snapshot = null;
+
+  }
+
+  /** Set the interpolated point at the end of the last step. */
+  private void setLastStep() {
+    index            = stepsCount - 1;
+    finalTime        = currentTimes[index];
+    interpolatedTime = finalTime;
+    getSnapshot().evaluate(index, null, finalTime, interpolatedState, 0);
+  }
+
+  /** Grow an array.
+   * @param array array to grow
+   * @param capacity new capacity
+   * @return new array, containing a copy of the original one
+   */
+  private static double[] grow(double[] array, int capacity) {
+    double[] newArray = new double[capacity];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
+  }
+
+  /** Grow an array.
+   * @param array array to grow
+   * @param capacity new capacity
+   * @return new array, containing a copy of the original one
+   */
+  private static int[] grow(int[] array, int capacity) {
+    int[] newArray = new int[capacity];
+    System.arraycopy(array, 0, newArray, 0, array.length);
+    return newArray;
+  }
+
+  /** Save the instance.
+   * Only the used part of the arrays is saved, the steps stored as
+   * interpolators copies are saved as objects.
+   * @param out stream where to save the instance
+   * @exception IOException in case of write error
+   */
+  private void writeObject(ObjectOutputStream out)
+    throws IOException {
+    out.defaultWriteObject();
+    for (int i = 0; i < stepsCount; ++i) {
+      out.writeDouble(previousTimes[i]);
+      out.writeDouble(currentTimes[i]);
+      out.writeInt(sampleCounts[i]);
+      if (sampleCounts[i] == 0) {
+        AbstractStepInterpolator copy = copies[sampleOffsets[i]];
+        synchronized (copy) {
+          out.writeObject(copy);
+        }
+        continue;
+      }
+      double[] chunk = chunks[sampleChunks[i]];
+      int size = sampleCounts[i] * dimension;
+      for (int k = 0; k < size; ++k) {
+        out.writeDouble(chunk[sampleOffsets[i] + k]);
       }
     }
-    if (time > interval.getPreviousTime()) {
-      return -1;
-    } else if (time < interval.getCurrentTime()) {
-      return +1;
-    } else {
-      return 0;
+  }
+
+  /** Read the instance.
+   * @param in stream from which to read the instance
+   * @exception IOException in case of read error
+   * @exception ClassNotFoundException if a class in the stream cannot
+   * be found
+   */
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException {
+
+    in.defaultReadObject();
+
+    int n = stepsCount;
+    int capacity = Math.max(INITIAL_CAPACITY, n);
+    previousTimes = new double[capacity];
+    currentTimes  = new double[capacity];
+    sampleCounts  = new int[capacity];
+    sampleChunks  = new int[capacity];
+    sampleOffsets = new int[capacity];
+    chunks        = new double[4][];
+    chunksCount   = 0;
+    chunkFill     = 0;
+    copies        = null;
+    copiesCount   = 0;
+    stepsCount    = 0;
+
+    for (int i = 0; i < n; ++i) {
+      double previous = in.readDouble();
+      double current  = in.readDouble();
+      int    count    = in.readInt();
+      if (count == 0) {
+        addCopy((AbstractStepInterpolator) in.readObject());
+        continue;
+      }
+      int    size     = count * dimension;
+      int    offset   = allocate(size);
+      double[] chunk  = chunks[chunksCount - 1];
+      for (int k = 0; k < size; ++k) {
+        chunk[offset + k] = in.readDouble();
+      }
+      addStep(previous, current, count, offset);
     }
+
   }
 
+  /** Initial capacity of the steps arrays. */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Size of the first samples chunk. */
+  private static final int MIN_CHUNK_SIZE = 1024;
+
+  /** Maximal size of the samples chunks (unless one step needs more). */
+  private static final int MAX_CHUNK_SIZE = 65536;
+
   /** Initial integration time. */
   private double initialTime;
 
@@ -347,12 +685,54 @@ public class ContinuousOutputModel
   /** Integration direction indicator. */
   private boolean forward;
 
-  /** Current interpolator index. */
+  /** Dimension of the state vector (-1 if no step has been stored). */
+  private int dimension;
+
+  /** Current step index. */
   private int index;
 
-  /** Steps table. */
-  private ArrayList steps;
+  /** Time of the interpolated point. */
+  private double interpolatedTime;
+
+  /** State at the interpolated point. */
+  private double[] interpolatedState;
+
+  /** Number of stored steps. */
+  private int stepsCount;
+
+  /** Previous times of the steps. */
+  private transient double[] previousTimes;
+
+  /** Current times of the steps. */
+  private transient double[] currentTimes;
+
+  /** Number of samples of the steps. */
+  private transient int[] sampleCounts;
+
+  /** Index of the chunk containing the samples of the steps. */
+  private transient int[] sampleChunks;
+
+  /** Index of the first sample element of the steps in their chunk. */
+  private transient int[] sampleOffsets;
+
+  /** Samples chunks. */
+  private transient double[][] chunks;
+
+  /** Number of used chunks. */
+  private transient int chunksCount;
+
+  /** Number of used elements in the last chunk. */
+  private transient int chunkFill;
+
+  /** Interpolators copies for the steps without samples (may be null). */
+  private transient AbstractStepInterpolator[] copies;
+
+  /** Number of used interpolators copies. */
+  private transient int copiesCount;
+
+  /** Snapshot of the current steps (null if it must be rebuilt). */
+  private transient ContinuousOutputSnapshot snapshot;
 
-  private static final long serialVersionUID = 2259286184268533249L;
+  private static final long serialVersionUID = -1417964919405031606L;
 
 }
@@ -0,0 +1,519 @@
+package org.spaceroots.mantissa.ode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is an immutable snapshot of a {@link ContinuousOutputModel}.
+
+ * <p>Instances of this class are built by the {@link
+ * ContinuousOutputModel#getSnapshot getSnapshot} method of the model.
+ * They contain all the steps stored in the model at build time and
+ * are not affected by the later changes of the model.</p>
+
+ * <p>All the fields of this class are final and the stored data is
+ * never modified, so a snapshot can be published to many threads
+ * (for example a propagated ephemeris shared by several analysis
+ * threads) without any synchronization (only the steps stored as
+ * interpolators copies are evaluated under the lock of the copy).
+ * There is no current
+ * interpolated point: the {@link #getStateAt getStateAt} method
+ * locates the step and interpolates the state into a caller buffer
+ * at each call.</p>
+
+ * <p>Sampling the model on a dense time grid is more efficient with
+ * the {@link #getStatesAt(double[], int[], double[]) getStatesAt}
+ * batch methods: the steps are walked monotonically rather than
+ * searched for each point, steps containing many points are converted
+ * once to a form which is cheaper to evaluate, the states are written
+ * directly in one contiguous array, only the selected components are
+ * computed and large grids can be split between the threads of an
+ * executor service.</p>
+
+ * @see ContinuousOutputModel
+
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public final class ContinuousOutputSnapshot {
+
+  /** Simple constructor.
+   * The arrays are shared with the model, they are not copied. The
+   * model only writes into them beyond the stored steps, or replaces
+   * them by new arrays.
+   * @param initialTime initial integration time
+   * @param forward integration direction indicator
+   * @param dimension dimension of the state vector
+   * @param stepsCount number of steps
+   * @param previousTimes previous times of the steps
+   * @param currentTimes current times of the steps
+   * @param sampleCounts number of samples of the steps
+   * @param sampleChunks index of the chunk containing the samples of the steps
+   * @param sampleOffsets index of the first sample element of the steps
+   * in their chunk (or index of the interpolator copy for steps
+   * without samples)
+   * @param chunks samples chunks
+   * @param copies interpolators copies for the steps without samples
+   */
+  ContinuousOutputSnapshot(double initialTime, boolean forward,
+                           int dimension, int stepsCount,
+                           double[] previousTimes, double[] currentTimes,
+                           int[] sampleCounts, int[] sampleChunks, int[] sampleOffsets,
+                           double[][] chunks, AbstractStepInterpolator[] copies) {
+    this.initialTime   = initialTime;
+    this.finalTime     = (stepsCount == 0)
+                       ? Double.NaN : currentTimes[stepsCount - 1];
+    this.forward       = forward;
+    this.dimension     = dimension;
+    this.stepsCount    = stepsCount;
+    this.previousTimes = previousTimes;
+    this.currentTimes  = currentTimes;
+    this.sampleCounts  = sampleCounts;
+    this.sampleChunks  = sampleChunks;
+    this.sampleOffsets = sampleOffsets;
+    this.chunks        = chunks;
+    this.copies        = copies;
+  }
+
+  /**
+   * Get the initial integration time.
+   * @return initial integration time
+   */
+  public double getInitialTime() {
+    return initialTime;
+  }
+
+  /**
+   * Get the final integration time.
+   * @return final integration time (time at the end of the last step
+   * stored in the snapshot)
+   */
+  public double getFinalTime() {
+    return finalTime;
+  }
+
+  /** Check if the natural integration direction is forward.
+   * @return true if the integration variable (time) increases during
+   * integration
+   */
+  public boolean isForward() {
+    return forward;
+  }
+
+  /** Get the dimension of the state vector.
+   * @return dimension of the state vector (-1 if the snapshot is empty)
+   */
+  public int getDimension() {
+    return dimension;
+  }
+
+  /** Get the number of steps stored in the snapshot.
+   * @return number of steps
+   */
+  public int getStepsCount() {
+    return stepsCount;
+  }
+
+  /** Get the state vector at a given time.
+   * <p>This method can be called concurrently by several threads.</p>
+   * <p>Times outside of the integration interval are allowed but the
+   * accuracy will probably be very poor far from this interval.</p>
+   * @param time time of the point
+   * @param out array where to store the state vector (its size must
+   * be the dimension of the state vector)
+   * @exception IllegalStateException if the snapshot is empty
+   * @exception IllegalArgumentException if the array dimension does
+   * not match the state vector dimension
+   */
+  public void getStateAt(double time, double[] out) {
+
+    if (stepsCount == 0) {
+      throw new IllegalStateException("no steps in the model");
+    }
+    if (out.length != dimension) {
+      throw new IllegalArgumentException("state vector dimension mismatch");
+    }
+
+    int i = ContinuousOutputModel.locateStep(previousTimes, currentTimes,
+                                             stepsCount, forward, time, -1);
+    evaluate(i, null, time, out, 0);
+
+  }
+
+  /** Get the state vectors at many sorted times.
+   * <p>The times must be sorted, either in increasing or in decreasing
+   * order. The steps are walked monotonically and each point is
+   * interpolated in the step containing it, as with {@link #getStateAt
+   * getStateAt} (up to rounding errors, since steps containing many
+   * points are evaluated from their Chebyshev coefficients).</p>
+   * <p>The states are stored one after the other in the output array:
+   * the components of the state at <code>times[k]</code> are stored
+   * starting at index <code>k * width</code>, where width is the
+   * number of selected components.</p>
+   * @param times times of the points
+   * @param components indices of the components to compute (if null,
+   * all components are computed)
+   * @param out array where to store the states (its size must be at
+   * least <code>times.length * width</code>)
+   * @exception IllegalStateException if the snapshot is empty
+   * @exception IllegalArgumentException if the times are not sorted, if
+   * the components are not valid or if the output array is too small
+   */
+  public void getStatesAt(double[] times, int[] components, double[] out) {
+    int width = checkBatch(times, components, out);
+    interpolateRange(times, 0, times.length, components, width, out);
+  }
+
+  /** Get the state vectors at many sorted times, using several threads.
+   * <p>This method is similar to {@link #getStatesAt(double[], int[],
+   * double[]) getStatesAt}, but large grids are split in contiguous
+   * slices (hence in contiguous step ranges) which are interpolated
+   * concurrently, one slice being interpolated by the calling thread.
+   * Small grids are interpolated by the calling thread only.</p>
+   * <p>This method always waits for the started slices before
+   * returning, even if one of them fails, so no thread writes into the
+   * output array after it has returned. The slices that have not been
+   * started yet when a failure occurs are skipped, and the failure
+   * of the first failed slice is rethrown.</p>
+   * @param times times of the points
+   * @param components indices of the components to compute (if null,
+   * all components are computed)
+   * @param out array where to store the states (its size must be at
+   * least <code>times.length * width</code>)
+   * @param executor executor service to use (it is not shut down by
+   * this method)
+   * @exception IllegalStateException if the snapshot is empty
+   * @exception IllegalArgumentException if the times are not sorted, if
+   * the components are not valid or if the output array is too small
+   */
+  public void getStatesAt(double[] times, int[] components,
+                          double[] out, ExecutorService executor) {
+    int slices = Math.min(Runtime.getRuntime().availableProcessors(),
+                          times.length / MIN_SLICE_POINTS);
+    getStatesAt(times, components, out, executor, slices);
+  }
+
+  /** Get the state vectors at many sorted times, using several threads.
+   * @param times times of the points
+   * @param components indices of the components to compute (may be null)
+   * @param out array where to store the states
+   * @param executor executor service to use
+   * @param slices number of slices of the grid (the grid is
+   * interpolated by the calling thread only if it is less than 2)
+   */
+  void getStatesAt(final double[] times, final int[] components,
+                   final double[] out, ExecutorService executor, int slices) {
+
+    final int width = checkBatch(times, components, out);
+
+    if ((slices < 2) || (times.length < slices)) {
+      interpolateRange(times, 0, times.length, components, width, out);
+      return;
+    }
+
+    final AtomicBoolean aborted = new AtomicBoolean(false);
+    List<Future<?>> futures = new ArrayList<Future<?>>(slices - 1);
+    for (int s = 0; s < slices - 1; ++s) {
+      final int from = (int) (((long) times.length * s) / slices);
+      final int to   = (int) (((long) times.length * (s + 1)) / slices);
+      futures.add(executor.submit(new Runnable() {
+          public void run() {
+            if (! aborted.get()) {
+              interpolateRange(times, from, to, components, width, out);
+            }
+          }
+        }));
+    }
+
+    Throwable local = null;
+    try {
+      int from = (int) (((long) times.length * (slices - 1)) / slices);
+      interpolateRange(times, from, times.length, components, width, out);
+    } catch (RuntimeException re) {
+      local = re;
+      aborted.set(true);
+    } catch (Error e) {
+      local = e;
+      aborted.set(true);
+    }
+
+    // wait for all slices, so that none of them is still writing into
+    // the output array once this method has returned, the slices that
+    // have not been started yet are skipped after a failure
+    Throwable failure     = null;
+    boolean   interrupted = false;
+    for (int s = 0; s < futures.size(); ++s) {
+      Future<?> future = futures.get(s);
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (ExecutionException ee) {
+          if (failure == null) {
+            // first failure in slices order
+            failure = ee.getCause();
+            aborted.set(true);
+          }
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+          aborted.set(true);
+        }
+      }
+    }
+    if (failure == null) {
+      failure = local;
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      if (failure == null) {
+        throw new RuntimeException("batch interpolation interrupted");
+      }
+    }
+
+    if (failure != null) {
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      throw new RuntimeException("unexpected exception caught", failure);
+    }
+
+  }
+
+  /** Check the arguments of a batch interpolation.
+   * @param times times of the points
+   * @param components indices of the components to compute (may be null)
+   * @param out array where to store the states
+   * @return number of components per point
+   * @exception IllegalStateException if the snapshot is empty
+   * @exception IllegalArgumentException if the times are not sorted, if
+   * the components are not valid or if the output array is too small
+   */
+  private int checkBatch(double[] times, int[] components, double[] out) {
+
+    if (stepsCount == 0) {
+      throw new IllegalStateException("no steps in the model");
+    }
+
+    int width = dimension;
+    if (components != null) {
+      for (int i = 0; i < components.length; ++i) {
+        if ((components[i] < 0) || (components[i] >= dimension)) {
+          throw new IllegalArgumentException("invalid component index: "
+                                             + components[i]);
+        }
+      }
+      width = components.length;
+    }
+
+    if (out.length < (long) times.length * width) {
+      throw new IllegalArgumentException("output array too small");
+    }
+
+    if (times.length > 1) {
+      boolean increasing = times[times.length - 1] >= times[0];
+      for (int k = 1; k < times.length; ++k) {
+        if (increasing ? (times[k] < times[k - 1]) : (times[k] > times[k - 1])) {
+          throw new IllegalArgumentException("times are not sorted");
+        }
+      }
+    }
+
+    return width;
+
+  }
+
+  /** Interpolate a slice of sorted times.
+   * @param times times of the points (sorted)
+   * @param from index of the first point of the slice
+   * @param to index after the last point of the slice
+   * @param components indices of the components to compute (may be null)
+   * @param width number of components per point
+   * @param out array where to store the states
+   */
+  private void interpolateRange(double[] times, int from, int to,
+                                int[] components, int width, double[] out) {
+
+    if (from >= to) {
+      return;
+    }
+
+    // direction of the walk through the steps table
+    boolean ahead = forward ^ (times[to - 1] < times[from]);
+
+    double[] coefficients = null;
+    int i    = ContinuousOutputModel.locateStep(previousTimes, currentTimes,
+                                                stepsCount, forward, times[from], -1);
+    int last = stepsCount - 1;
+    int k    = from;
+    while (k < to) {
+
+      // find the first step whose current time is not before the point
+      i = walk(times[k], i, ahead, last);
+
+      // find the points of the slice that belong to the same step
+      int end = k + 1;
+      while ((end < to) && (walk(times[end], i, ahead, last) == i)) {
+        ++end;
+      }
+
+      double   previous = previousTimes[i];
+      double   h        = currentTimes[i] - previous;
+      int      count    = sampleCounts[i];
+      if ((count == 0) || (end - k < count)) {
+        // few points in the step (or interpolator copy), evaluate them one at a time
+        for (; k < end; ++k) {
+          evaluate(i, components, times[k], out, k * width);
+        }
+      } else {
+        // many points in the step, convert it to Chebyshev form once
+        if ((coefficients == null) || (coefficients.length < count * width)) {
+          coefficients = new double[count * width];
+        }
+        SampledStepInterpolator.computeChebyshev(chunks[sampleChunks[i]], sampleOffsets[i],
+                                                 count, dimension, components,
+                                                 coefficients);
+        for (; k < end; ++k) {
+          double theta = (h == 0) ? 1.0 : (times[k] - previous) / h;
+          SampledStepInterpolator.evaluateChebyshev(coefficients, count, width,
+                                                    theta, out, k * width);
+        }
+      }
+
+    }
+
+  }
+
+  /** Evaluate the state within one step.
+   * <p>Steps stored as interpolators copies are evaluated under the
+   * lock of the copy, so this method can be called concurrently by
+   * several threads.</p>
+   * @param i index of the step
+   * @param components indices of the components to evaluate (if null,
+   * all components are evaluated)
+   * @param time time of the point
+   * @param out array where to store the state
+   * @param outOffset index of the first state element in out
+   */
+  void evaluate(int i, int[] components, double time, double[] out, int outOffset) {
+
+    if (sampleCounts[i] > 0) {
+      ContinuousOutputModel.evaluate(previousTimes[i], currentTimes[i],
+                                     chunks[sampleChunks[i]], sampleOffsets[i],
+                                     sampleCounts[i], dimension,
+                                     components, time, out, outOffset);
+      return;
+    }
+
+    AbstractStepInterpolator copy = copies[sampleOffsets[i]];
+    synchronized (copy) {
+      try {
+        copy.setInterpolatedTime(time);
+      } catch (DerivativeException de) {
+        throw new RuntimeException("unexpected DerivativeException caught", de);
+      }
+      if (components == null) {
+        System.arraycopy(copy.interpolatedState, 0, out, outOffset, dimension);
+      } else {
+        for (int j = 0; j < components.length; ++j) {
+          out[outOffset + j] = copy.interpolatedState[components[j]];
+        }
+      }
+    }
+
+  }
+
+  /** Walk through the steps table up to the step containing a point.
+   * @param t time of the point
+   * @param i index of the step containing the previous point
+   * @param ahead if true, the walk is performed towards the last step
+   * @param last index of the last step
+   * @return index of the first step whose current time is not before
+   * the point (or first or last step for points out of the table)
+   */
+  private int walk(double t, int i, boolean ahead, int last) {
+    if (ahead) {
+      while ((i < last) && (forward ? (t > currentTimes[i]) : (t < currentTimes[i]))) {
+        ++i;
+      }
+    } else {
+      while ((i > 0) && (forward ? (t <= currentTimes[i - 1]) : (t >= currentTimes[i - 1]))) {
+        --i;
+      }
+    }
+    return i;
+  }
+
+  /** Get a view of one of the steps stored in the snapshot.
+   * <p>Each call builds a new view, which can be used by one thread
+   * only.</p>
+   * @param i index of the step (between 0 and {@link
+   * #getStepsCount()} - 1, in integration order)
+   * @return interpolator for the step
+   * @exception IndexOutOfBoundsException if the index is out of range
+   */
+  public StepInterpolator getStep(int i) {
+    if ((i < 0) || (i >= stepsCount)) {
+      throw new IndexOutOfBoundsException("no step " + i + " in a model with "
+                                          + stepsCount + " steps");
+    }
+    if (sampleCounts[i] == 0) {
+      AbstractStepInterpolator copy = copies[sampleOffsets[i]];
+      synchronized (copy) {
+        return (StepInterpolator) copy.clone();
+      }
+    }
+    return new SampledStepInterpolator(previousTimes[i], currentTimes[i], forward,
+                                       chunks[sampleChunks[i]], sampleOffsets[i],
+                                       sampleCounts[i], dimension);
+  }
+
+  /** Minimal number of points per slice for multi-threaded batches. */
+  private static final int MIN_SLICE_POINTS = 4096;
+
+  /** Initial integration time. */
+  private final double initialTime;
+
+  /** Final integration time. */
+  private final double finalTime;
+
+  /** Integration direction indicator. */
+  private final boolean forward;
+
+  /** Dimension of the state vector. */
+  private final int dimension;
+
+  /** Number of steps. */
+  private final int stepsCount;
+
+  /** Previous times of the steps. */
+  private final double[] previousTimes;
+
+  /** Current times of the steps. */
+  private final double[] currentTimes;
+
+  /** Number of samples of the steps. */
+  private final int[] sampleCounts;
+
+  /** Index of the chunk containing the samples of the steps. */
+  private final int[] sampleChunks;
+
+  /** Index of the first sample element of the steps in their chunk. */
+  private final int[] sampleOffsets;
+
+  /** Samples chunks. */
+  private final double[][] chunks;
+
+  /** Interpolators copies for the steps without samples. */
+  private final AbstractStepInterpolator[] copies;
+
+}
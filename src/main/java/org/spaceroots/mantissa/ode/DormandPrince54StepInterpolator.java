@@ -82,10 +82,12 @@ class DormandPrince54StepInterpolator
   public void reinitialize(FirstOrderDifferentialEquations equations,
                            double[] y, double[][] yDotK, boolean forward) {
     super.reinitialize(equations, y, yDotK, forward);
-    v1 = null;
-    v2 = null;
-    v3 = null;
-    v4 = null;
+    if ((v1 != null) && (v1.length != y.length)) {
+      v1 = null;
+      v2 = null;
+      v3 = null;
+      v4 = null;
+    }
     vectorsInitialized = false;
   }
 
@@ -97,6 +99,13 @@ class DormandPrince54StepInterpolator
     vectorsInitialized = false;
   }
 
+  /** Get the degree of the interpolation polynomial.
+   * @return degree of the interpolation polynomial
+   */
+  protected int getInterpolationDegree() {
+    return 4;
+  }
+
   /** Compute the state at the interpolated time.
    * @param theta normalized interpolation abscissa within the step
    * (theta is zero at the previous time step and one at the current time step)
@@ -114,16 +114,22 @@ class DormandPrince853StepInterpolator
 
     int dimension = currentState.length;
 
-    yDotKLast = new double[3][];
-    for (int k = 0; k < yDotKLast.length; ++k) {
-      yDotKLast[k] = new double[dimension];
-    }
+    // the arrays are reused when the instance is reinitialized
+    // for another integration of a problem with the same dimension
+    if ((yTmp == null) || (yTmp.length != dimension)) {
 
-    yTmp = new double[dimension];
+      yDotKLast = new double[3][];
+      for (int k = 0; k < yDotKLast.length; ++k) {
+        yDotKLast[k] = new double[dimension];
+      }
+
+      yTmp = new double[dimension];
+
+      v = new double[7][];
+      for (int k = 0; k < v.length; ++k) {
+        v[k]  = new double[dimension];
+      }
 
-    v = new double[7][];
-    for (int k = 0; k < v.length; ++k) {
-      v[k]  = new double[dimension];
     }
 
     vectorsInitialized = false;
@@ -138,6 +144,13 @@ class DormandPrince853StepInterpolator
     vectorsInitialized = false;
   }
 
+  /** Get the degree of the interpolation polynomial.
+   * @return degree of the interpolation polynomial
+   */
+  protected int getInterpolationDegree() {
+    return 7;
+  }
+
   /** Compute the state at the interpolated time.
    * This is the main processing method that should be implemented by
    * the derived classes to perform the interpolation.
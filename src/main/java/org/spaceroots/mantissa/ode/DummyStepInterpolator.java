@@ -45,6 +45,13 @@ public class DummyStepInterpolator
     super(y, forward);
   }
 
+  /** Get the degree of the interpolation polynomial.
+   * @return degree of the interpolation polynomial
+   */
+  protected int getInterpolationDegree() {
+    return 0;
+  }
+
   /** Compute the state at the interpolated time.
    * In this class, this method does nothing: the interpolated state
    * is always the state at the end of the current step.
@@ -0,0 +1,81 @@
+package org.spaceroots.mantissa.ode;
+
+/** This class converts first order differential equations to
+ * ensemble ones.
+
+ * <p>This class is a wrapper around a {@link
+ * FirstOrderDifferentialEquations} which allow to use an {@link
+ * EnsembleRungeKuttaIntegrator} to integrate it for several members
+ * at once.</p>
+
+ * <p>For each call to {@link #computeDerivatives computeDerivatives},
+ * the wrapper gathers the state vector of each member, calls the
+ * underlying equations set and scatters the derivatives back. The
+ * step control logic is still shared between all members, but the
+ * derivatives are not computed with contiguous loops over the
+ * members. Problems for which performance matters should rather
+ * implement {@link EnsembleDifferentialEquations} directly.</p>
+
+ * @see EnsembleRungeKuttaIntegrator
+ * @see EnsembleDifferentialEquations
+ * @see FirstOrderDifferentialEquations
+
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class EnsembleConverter
+  implements EnsembleDifferentialEquations {
+
+  /** Simple constructor.
+   * Build a converter around a first order equations set.
+   * @param equations first order equations set to convert
+   */
+  public EnsembleConverter(FirstOrderDifferentialEquations equations) {
+    this.equations = equations;
+    dimension      = equations.getDimension();
+    z              = new double[dimension];
+    zDot           = new double[dimension];
+  }
+
+  public int getDimension() {
+    return dimension;
+  }
+
+  public void computeDerivatives(double t, double[][] y, double[][] yDot)
+  throws DerivativeException {
+
+    int members = y[0].length;
+    for (int k = 0; k < members; ++k) {
+
+      // gather the state of one member
+      for (int i = 0; i < dimension; ++i) {
+        z[i] = y[i][k];
+      }
+
+      // compute its derivative
+      equations.computeDerivatives(t, z, zDot);
+
+      // scatter the derivative
+      for (int i = 0; i < dimension; ++i) {
+        yDot[i][k] = zDot[i];
+      }
+
+    }
+
+  }
+
+  /** Underlying first order equations set. */
+  private FirstOrderDifferentialEquations equations;
+
+  /** Dimension of the problem. */
+  private int dimension;
+
+  /** State vector of one member. */
+  private double[] z;
+
+  /** State vector derivative of one member. */
+  private double[] zDot;
+
+}
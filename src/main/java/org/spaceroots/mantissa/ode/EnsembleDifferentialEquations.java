@@ -0,0 +1,46 @@
+package org.spaceroots.mantissa.ode;
+
+/** This interface represents an ensemble of copies of one first
+ * order differential equations set.
+ *
+ * <p>This interface should be implemented by problems that are
+ * integrated for many members at once (for example perturbed copies
+ * of the same trajectory in Monte Carlo dispersion analyses) by the
+ * {@link EnsembleRungeKuttaIntegrator#integrate} method.</p>
+ *
+ * <p>The states of all members are stored in a structure of arrays
+ * layout: <code>y[i][k]</code> is the component i of the state
+ * vector of member k, so each <code>y[i]</code> array contains the
+ * same component for all members. This allows the implementations to
+ * compute the derivatives of all members with contiguous loops over
+ * the members.</p>
+ *
+ * @see EnsembleRungeKuttaIntegrator
+ * @see EnsembleConverter
+ * @see FirstOrderDifferentialEquations
+ *
+ * @version $Id$
+ * @author L. Maisonobe
+ *
+ */
+
+public interface EnsembleDifferentialEquations {
+
+    /** Get the dimension of the problem.
+     * @return dimension of the state vector of one member
+     */
+    public int getDimension();
+
+    /** Get the current time derivative of the state vectors of all members.
+     * @param t current value of the independent <I>time</I> variable
+     * @param y array containing the current value of the state
+     * vectors, <code>y[i][k]</code> is the component i of member k
+     * @param yDot placeholder array where to put the time derivatives
+     * of the state vectors, with the same layout as y
+     * @throws DerivativeException this exception is propagated to the caller if the
+     * underlying user function triggers one
+     */
+    public void computeDerivatives(double t, double[][] y, double[][] yDot)
+    throws DerivativeException;
+
+}
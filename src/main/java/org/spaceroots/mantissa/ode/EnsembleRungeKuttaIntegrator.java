@@ -0,0 +1,554 @@
+package org.spaceroots.mantissa.ode;
+
+import org.spaceroots.mantissa.linalg.VectorKernels;
+
+/**
+ * This class integrates many members of an ensemble in lockstep with
+ * a Runge-Kutta method.
+
+ * <p>All members of the ensemble are copies of the same differential
+ * equations set started from different initial states (typically the
+ * perturbed copies of a Monte Carlo dispersion analysis). They are
+ * integrated together with the same steps sequence, so the step
+ * control logic is run once for all members and the stages are
+ * computed with contiguous loops over the members, using the
+ * structure of arrays layout of {@link
+ * EnsembleDifferentialEquations}.</p>
+
+ * <p>The method is taken from a configured single trajectory
+ * integrator. With a {@link RungeKuttaIntegrator}, the ensemble is
+ * integrated with the fixed step of this integrator. With a {@link
+ * RungeKuttaFehlbergIntegrator}, the step size is adapted with the
+ * settings of this integrator (tolerances, step bounds, initial step
+ * size, safety factor, reduction and growth factors) and driven by
+ * the worst member: a step is accepted only if the error of all
+ * members is within tolerance, and the next step size is computed
+ * from the largest error.</p>
+
+ * <p>Neither step handlers nor switching functions are supported,
+ * only the final states of the members are provided. The working
+ * arrays are kept across calls to {@link #integrate integrate} and
+ * reallocated only when the dimension or the number of members
+ * changes.</p>
+
+ * <p>Like the single trajectory integrators, instances of this class
+ * are not thread-safe.</p>
+
+ * @see EnsembleDifferentialEquations
+ * @see RungeKuttaIntegrator
+ * @see RungeKuttaFehlbergIntegrator
+
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class EnsembleRungeKuttaIntegrator {
+
+  /** Build a fixed step ensemble integrator.
+   * @param integrator fixed step integrator providing the method and
+   * the step size (it is not modified)
+   */
+  public EnsembleRungeKuttaIntegrator(RungeKuttaIntegrator integrator) {
+    this(integrator.getName(), integrator.isFsal(),
+         integrator.getTimeSteps(), integrator.getInternalWeights(),
+         integrator.getExternalWeights(), integrator.getStep(), null);
+  }
+
+  /** Build an adaptive step ensemble integrator.
+   * @param integrator adaptive step integrator providing the method
+   * and the step control settings (it is used to estimate errors and
+   * filter steps but its state is not modified)
+   */
+  public EnsembleRungeKuttaIntegrator(RungeKuttaFehlbergIntegrator integrator) {
+    this(integrator.getName(), integrator.isFsal(),
+         integrator.getTimeSteps(), integrator.getInternalWeights(),
+         integrator.getExternalWeights(), Double.NaN, integrator);
+  }
+
+  /** Simple constructor.
+   * @param name name of the method
+   * @param fsal indicate that the method is an <i>fsal</i>
+   * @param c time steps from Butcher array (without the first zero)
+   * @param a internal weights from Butcher array (without the first empty row)
+   * @param b external weights for the high order method from Butcher array
+   * @param step integration step (only for fixed step integration)
+   * @param adaptive adaptive step integrator (null for fixed step integration)
+   */
+  private EnsembleRungeKuttaIntegrator(String name, boolean fsal,
+                                       double[] c, double[][] a, double[] b,
+                                       double step,
+                                       RungeKuttaFehlbergIntegrator adaptive) {
+    this.name     = name;
+    this.fsal     = fsal;
+    this.c        = c;
+    this.a        = a;
+    this.b        = b;
+    this.step     = step;
+    this.adaptive = adaptive;
+    flatView      = new FlatView();
+    dimension     = -1;
+    members       = -1;
+    resetInternalState();
+  }
+
+  /** Get the name of the method.
+   * @return name of the method
+   */
+  public String getName() {
+    return name;
+  }
+
+  /** Integrate the ensemble up to the given time.
+   * @param equations differential equations to integrate
+   * @param t0 initial time
+   * @param y0 initial value of the state vectors of all members at t0,
+   * <code>y0[i][k]</code> is the component i of member k
+   * @param t target time for the integration
+   * (can be set to a value smaller thant <code>t0</code> for backward integration)
+   * @param y placeholder where to put the state vectors of all members
+   * at the final time, with the same layout as y0 (may be y0 itself)
+   * @throws IntegratorException if the integrator cannot perform integration
+   * @throws DerivativeException this exception is propagated to the caller if
+   * the underlying user function triggers one
+   */
+  public void integrate(EnsembleDifferentialEquations equations,
+                        double t0, double[][] y0,
+                        double t, double[][] y)
+  throws DerivativeException, IntegratorException {
+
+    // sanity checks
+    if ((equations.getDimension() != y0.length)
+        || (y.length != y0.length)) {
+      throw new IntegratorException("dimensions mismatch: ODE problem has dimension {0},"
+                                    + " state vector has dimension {1}",
+                                    new String[] {
+                                      Integer.toString(equations.getDimension()),
+                                      Integer.toString(y0.length)
+                                    });
+    }
+    int n = y0.length;
+    int m = (n == 0) ? 0 : y0[0].length;
+    for (int i = 0; i < n; ++i) {
+      if ((y0[i].length != m) || (y[i].length != m)) {
+        throw new IntegratorException("inconsistent ensemble size: {0} members"
+                                      + " expected, {1} found",
+                                      new String[] {
+                                        Integer.toString(m),
+                                        Integer.toString(Math.min(y0[i].length,
+                                                                  y[i].length))
+                                      });
+      }
+    }
+    if (Math.abs(t - t0) <= 1.0e-12 * Math.max(Math.abs(t0), Math.abs(t))) {
+      throw new IntegratorException("too small integration interval: length = {0}",
+                                    new String[] {
+                                      Double.toString(Math.abs(t - t0))
+                                    });
+    }
+
+    if (y != y0) {
+      for (int i = 0; i < n; ++i) {
+        System.arraycopy(y0[i], 0, y[i], 0, m);
+      }
+    }
+    setUp(n, m);
+
+    if (adaptive == null) {
+      integrateFixed(equations, t0, y, t);
+    } else {
+      integrateAdaptive(equations, t0, y, t);
+    }
+
+    resetInternalState();
+
+  }
+
+  /** Integrate the ensemble with fixed steps.
+   * @param equations differential equations to integrate
+   * @param t0 initial time
+   * @param y state vectors of all members, initialized at t0 and
+   * updated in place up to t
+   * @param t target time for the integration
+   * @throws DerivativeException this exception is propagated to the caller if
+   * the underlying user function triggers one
+   */
+  private void integrateFixed(EnsembleDifferentialEquations equations,
+                              double t0, double[][] y, double t)
+  throws DerivativeException {
+
+    long nbStep = Math.max(1l, Math.abs(Math.round((t - t0) / step)));
+    stepStart   = t0;
+    stepSize    = (t - t0) / nbStep;
+
+    for (long i = 0; i < nbStep; ++i) {
+
+      if ((i == 0) || !fsal) {
+        // first stage
+        equations.computeDerivatives(stepStart, y, stages[0]);
+      }
+
+      computeStages(equations, y);
+      acceptStep(y);
+
+    }
+
+  }
+
+  /** Integrate the ensemble with adaptive steps.
+   * @param equations differential equations to integrate
+   * @param t0 initial time
+   * @param y state vectors of all members, initialized at t0 and
+   * updated in place up to t
+   * @param t target time for the integration
+   * @throws IntegratorException if the step size becomes too small
+   * @throws DerivativeException this exception is propagated to the caller if
+   * the underlying user function triggers one
+   */
+  private void integrateAdaptive(EnsembleDifferentialEquations equations,
+                                 double t0, double[][] y, double t)
+  throws DerivativeException, IntegratorException {
+
+    boolean forward      = (t > t0);
+    double  exp          = -1.0 / adaptive.getOrder();
+    double  safety       = adaptive.getSafety();
+    double  minReduction = adaptive.getMinReduction();
+    double  maxGrowth    = adaptive.getMaxGrowth();
+
+    stepStart = t0;
+    double  hNew      = 0;
+    boolean firstTime = true;
+    boolean lastStep;
+    do {
+
+      double error = 0;
+      for (boolean loop = true; loop;) {
+
+        if (firstTime || !fsal) {
+          // first stage
+          equations.computeDerivatives(stepStart, y, stages[0]);
+        }
+
+        if (firstTime) {
+          hNew = initializeStep(equations, forward, y);
+          firstTime = false;
+        }
+
+        stepSize = hNew;
+
+        // step adjustment near bounds
+        if ((forward && (stepStart + stepSize > t))
+            || ((! forward) && (stepStart + stepSize < t))) {
+          stepSize = t - stepStart;
+        }
+
+        computeStages(equations, y);
+
+        // the worst member drives the step size control
+        error = estimateError(y);
+        if (error <= 1.0) {
+          loop = false;
+        } else {
+          // reject the step and attempt to reduce error by stepsize control
+          double factor = Math.min(maxGrowth,
+                                   Math.max(minReduction,
+                                            safety * Math.pow(error, exp)));
+          hNew = adaptive.filterStep(stepSize * factor, false);
+        }
+
+      }
+
+      // the step has been accepted
+      acceptStep(y);
+      lastStep = forward ? (stepStart >= t) : (stepStart <= t);
+
+      if (! lastStep) {
+        // stepsize control for next step
+        double  factor     = Math.min(maxGrowth,
+                                      Math.max(minReduction,
+                                               safety * Math.pow(error, exp)));
+        double  scaledH    = stepSize * factor;
+        double  nextT      = stepStart + scaledH;
+        boolean nextIsLast = forward ? (nextT >= t) : (nextT <= t);
+        hNew = adaptive.filterStep(scaledH, nextIsLast);
+      }
+
+    } while (! lastStep);
+
+  }
+
+  /** Compute the stages following the first one and the state at
+   * the end of the step for all members.
+   * <p>The first stage must already be available.</p>
+   * @param equations differential equations to integrate
+   * @param y state vectors of all members at step start
+   * @throws DerivativeException this exception is propagated to the caller if
+   * the underlying user function triggers one
+   */
+  private void computeStages(EnsembleDifferentialEquations equations,
+                             double[][] y)
+  throws DerivativeException {
+
+    int n = y.length;
+
+    // next stages
+    for (int k = 1; k < stages.length; ++k) {
+      for (int i = 0; i < n; ++i) {
+        VectorKernels.combine(y[i], stepSize, a[k-1], yDotK[i], k, yTmp[i]);
+      }
+      equations.computeDerivatives(stepStart + c[k-1] * stepSize, yTmp, stages[k]);
+    }
+
+    // estimate the state at the end of the step
+    for (int i = 0; i < n; ++i) {
+      VectorKernels.combine(y[i], stepSize, b, yDotK[i], stages.length, yTmp[i]);
+    }
+
+  }
+
+  /** Accept the current step for all members.
+   * @param y state vectors of all members, updated in place
+   */
+  private void acceptStep(double[][] y) {
+    stepStart += stepSize;
+    int last = stages.length - 1;
+    for (int i = 0; i < y.length; ++i) {
+      System.arraycopy(yTmp[i], 0, y[i], 0, members);
+      if (fsal) {
+        // save the last evaluation for the next step
+        System.arraycopy(yDotK[i][last], 0, yDotK[i][0], 0, members);
+      }
+    }
+  }
+
+  /** Estimate the error of the worst member.
+   * @param y state vectors of all members at step start
+   * @return largest error ratio of all members, greater than 1 if
+   * step should be rejected
+   */
+  private double estimateError(double[][] y) {
+    double error = 0;
+    for (int k = 0; k < members; ++k) {
+
+      // gather the data of one member
+      for (int i = 0; i < dimension; ++i) {
+        memberY0[i] = y[i][k];
+        memberY1[i] = yTmp[i][k];
+        for (int l = 0; l < memberYDotK.length; ++l) {
+          memberYDotK[l][i] = yDotK[i][l][k];
+        }
+      }
+
+      error = Math.max(error,
+                       adaptive.estimateError(memberYDotK, memberY0, memberY1,
+                                              stepSize));
+
+    }
+    return error;
+  }
+
+  /** Initialize the integration step.
+   * <p>The initial step is computed by the adaptive integrator as if
+   * all members were components of one large state vector, hence
+   * with only one additional derivatives evaluation for the whole
+   * ensemble.</p>
+   * @param equations differential equations to integrate
+   * @param forward forward integration indicator
+   * @param y state vectors of all members at start time
+   * @return first integration step
+   * @throws DerivativeException this exception is propagated to the caller if
+   * the underlying user function triggers one
+   */
+  private double initializeStep(EnsembleDifferentialEquations equations,
+                                boolean forward, double[][] y)
+  throws DerivativeException {
+
+    // flatten the ensemble, component after component
+    for (int i = 0; i < dimension; ++i) {
+      int offset = i * members;
+      System.arraycopy(y[i], 0, flatY0, offset, members);
+      System.arraycopy(stages[0][i], 0, flatYDot0, offset, members);
+      double tol = (adaptive.vecAbsoluteTolerance == null)
+                 ? adaptive.scalAbsoluteTolerance
+                 : adaptive.vecAbsoluteTolerance[i];
+      for (int k = 0; k < members; ++k) {
+        flatScale[offset + k] = tol;
+      }
+    }
+
+    flatView.equations = equations;
+    try {
+      return adaptive.initializeStep(flatView, forward, adaptive.getOrder(),
+                                     flatScale, stepStart, flatY0, flatYDot0,
+                                     flatY1, flatYDot1);
+    } finally {
+      flatView.equations = null;
+    }
+
+  }
+
+  /** Set up the working arrays.
+   * <p>The arrays are reallocated only if the dimension or the
+   * number of members differ from the previous integration.</p>
+   * @param n dimension of the problem
+   * @param m number of members
+   */
+  private void setUp(int n, int m) {
+
+    if ((n == dimension) && (m == members)) {
+      return;
+    }
+
+    int s = c.length + 1;
+    yDotK  = new double[n][s][m];
+    stages = new double[s][n][];
+    for (int k = 0; k < s; ++k) {
+      for (int i = 0; i < n; ++i) {
+        stages[k][i] = yDotK[i][k];
+      }
+    }
+    yTmp = new double[n][m];
+
+    if (adaptive != null) {
+      memberYDotK = new double[s][n];
+      memberY0    = new double[n];
+      memberY1    = new double[n];
+      flatY0      = new double[n * m];
+      flatYDot0   = new double[n * m];
+      flatY1      = new double[n * m];
+      flatYDot1   = new double[n * m];
+      flatScale   = new double[n * m];
+    }
+
+    dimension = n;
+    members   = m;
+
+  }
+
+  /** Get the current value of the step start time.
+   * <p>This method can be called during integration (typically by
+   * the derivatives computation) to know the start of the current
+   * step. Outside of integration, it returns
+   * <code>Double.NaN</code>.</p>
+   * @return current value of the step start time
+   */
+  public double getCurrentStepStart() {
+    return stepStart;
+  }
+
+  /** Get the current signed value of the integration stepsize.
+   * <p>This method can be called during integration (typically by
+   * the derivatives computation) to know the current step size.
+   * Outside of integration, it returns <code>Double.NaN</code>.</p>
+   * @return current signed value of the stepsize
+   */
+  public double getCurrentStepsize() {
+    return stepSize;
+  }
+
+  /** Reset internal state to dummy values. */
+  private void resetInternalState() {
+    stepStart = Double.NaN;
+    stepSize  = Double.NaN;
+  }
+
+  /** View of the whole ensemble as one flat first order problem.
+   * <p>This view is used only for the initial step estimation, the
+   * components of all members are stored component after
+   * component.</p>
+   */
+  private class FlatView
+    implements FirstOrderDifferentialEquations {
+
+    public int getDimension() {
+      return dimension * members;
+    }
+
+    public void computeDerivatives(double t, double[] y, double[] yDot)
+      throws DerivativeException {
+      for (int i = 0; i < dimension; ++i) {
+        System.arraycopy(y, i * members, yTmp[i], 0, members);
+      }
+      equations.computeDerivatives(t, yTmp, stages[1]);
+      for (int i = 0; i < dimension; ++i) {
+        System.arraycopy(stages[1][i], 0, yDot, i * members, members);
+      }
+    }
+
+    /** Ensemble equations. */
+    private EnsembleDifferentialEquations equations;
+
+  }
+
+  /** Name of the method. */
+  private String name;
+
+  /** Indicator for <i>fsal</i> methods. */
+  private boolean fsal;
+
+  /** Time steps from Butcher array (without the first zero). */
+  private double[] c;
+
+  /** Internal weights from Butcher array (without the first empty row). */
+  private double[][] a;
+
+  /** External weights for the high order method from Butcher array. */
+  private double[] b;
+
+  /** Integration step (fixed step integration only). */
+  private double step;
+
+  /** Adaptive step integrator (null for fixed step integration). */
+  private RungeKuttaFehlbergIntegrator adaptive;
+
+  /** Flat view of the ensemble (for initial step estimation). */
+  private FlatView flatView;
+
+  /** Current dimension of the arrays. */
+  private int dimension;
+
+  /** Current number of members. */
+  private int members;
+
+  /** Slopes at the intermediate points, yDotK[i][k][m] is the
+   * component i of stage k for member m. */
+  private double[][][] yDotK;
+
+  /** Stages views sharing the yDotK arrays, stages[k][i][m] is the
+   * component i of stage k for member m. */
+  private double[][][] stages;
+
+  /** Intermediate and end of step states. */
+  private double[][] yTmp;
+
+  /** Slopes of one member (for error estimation). */
+  private double[][] memberYDotK;
+
+  /** Step start state of one member (for error estimation). */
+  private double[] memberY0;
+
+  /** Step end state of one member (for error estimation). */
+  private double[] memberY1;
+
+  /** Flattened initial state (for initial step estimation). */
+  private double[] flatY0;
+
+  /** Flattened initial derivative (for initial step estimation). */
+  private double[] flatYDot0;
+
+  /** Flattened work state (for initial step estimation). */
+  private double[] flatY1;
+
+  /** Flattened work derivative (for initial step estimation). */
+  private double[] flatYDot1;
+
+  /** Flattened scaling vector (for initial step estimation). */
+  private double[] flatScale;
+
+  /** Current step start time. */
+  private double stepStart;
+
+  /** Current stepsize. */
+  private double stepSize;
+
+}
@@ -55,6 +55,13 @@ class EulerStepInterpolator
     return new EulerStepInterpolator(this);
   }
 
+  /** Get the degree of the interpolation polynomial.
+   * @return degree of the interpolation polynomial
+   */
+  protected int getInterpolationDegree() {
+    return 1;
+  }
+
   /** Compute the state at the interpolated time.
    * This is the main processing method that should be implemented by
    * the derived classes to perform the interpolation.
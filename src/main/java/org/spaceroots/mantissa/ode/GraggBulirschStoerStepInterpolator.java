@@ -289,6 +289,15 @@ class GraggBulirschStoerStepInterpolator
     return error;
   }
 
+  /** Get the degree of the interpolation polynomial.
+   * <p>The degree of the Hermite polynomial depends on the
+   * extrapolation order used for the current step.</p>
+   * @return degree of the interpolation polynomial
+   */
+  protected int getInterpolationDegree() {
+    return Math.max(3, currentDegree);
+  }
+
   /** Compute the state at the interpolated time.
    * This is the main processing method that should be implemented by
    * the derived classes to perform the interpolation.
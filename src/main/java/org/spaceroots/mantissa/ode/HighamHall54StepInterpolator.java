@@ -46,6 +46,13 @@ class HighamHall54StepInterpolator
     return new HighamHall54StepInterpolator(this);
   }
 
+  /** Get the degree of the interpolation polynomial.
+   * @return degree of the interpolation polynomial
+   */
+  protected int getInterpolationDegree() {
+    return 5;
+  }
+
   /** Compute the state at the interpolated time.
    * @param theta normalized interpolation abscissa within the step
    * (theta is zero at the previous time step and one at the current time step)
@@ -0,0 +1,29 @@
+package org.spaceroots.mantissa.ode;
+
+/** This interface represents factories for first order integrators.
+ *
+ * <p>Integrators carry mutable state during integration (current
+ * step, step handler, switching functions), so one integrator cannot
+ * be used by several threads at the same time. Factories allow
+ * classes like {@link PropagationExecutor} to build as many
+ * identically configured integrators as they need.</p>
+ *
+ * @see PropagationExecutor
+ * @see FirstOrderIntegrator
+ *
+ * @version $Id$
+ * @author L. Maisonobe
+ *
+ */
+
+public interface IntegratorFactory {
+
+  /** Build a new integrator.
+   * <p>Each call must return a new instance, configured with its own
+   * switching functions if needed. The step handler of the returned
+   * integrator is overridden by the caller.</p>
+   * @return a new integrator
+   */
+  public FirstOrderIntegrator buildIntegrator();
+
+}
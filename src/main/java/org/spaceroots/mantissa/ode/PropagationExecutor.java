@@ -0,0 +1,222 @@
+package org.spaceroots.mantissa.ode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** This class runs independent integrations concurrently.
+
+ * <p>Each {@link PropagationJob job} is integrated by an integrator
+ * built by an {@link IntegratorFactory}, on the threads of an
+ * executor service. Integrators are not thread-safe and their
+ * switching functions keep their state from one integration to the
+ * next one, so each job gets a new integrator for its exclusive use,
+ * with the job step handler set up.</p>
+
+ * <p>The executor service can be provided by the user, for example
+ * a pool of platform threads or a virtual thread per task executor
+ * (<code>Executors.newVirtualThreadPerTaskExecutor()</code>, on Java
+ * runtimes that support them). It is not shut down by this class in
+ * this case. If only a number of threads is specified, a fixed pool
+ * of daemon platform threads is built, it is shut down by {@link
+ * #shutdown}.</p>
+
+ * @see PropagationJob
+ * @see IntegratorFactory
+
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class PropagationExecutor {
+
+  /** Build an executor running jobs on a dedicated pool.
+   * @param factory factory for the integrators (its {@link
+   * IntegratorFactory#buildIntegrator buildIntegrator} method is never
+   * called concurrently)
+   * @param threads number of threads of the pool
+   * @exception IllegalArgumentException if the number of threads is
+   * not strictly positive
+   */
+  public PropagationExecutor(IntegratorFactory factory, int threads) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("invalid number of threads: "
+                                         + threads);
+    }
+    this.factory  = factory;
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "mantissa-propagation");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    ownExecutor   = true;
+  }
+
+  /** Build an executor running jobs on a user provided executor service.
+   * @param factory factory for the integrators (its {@link
+   * IntegratorFactory#buildIntegrator buildIntegrator} method is never
+   * called concurrently)
+   * @param executor executor service to use (it is not shut down by
+   * {@link #shutdown})
+   */
+  public PropagationExecutor(IntegratorFactory factory,
+                             ExecutorService executor) {
+    this.factory  = factory;
+    this.executor = executor;
+    ownExecutor   = false;
+  }
+
+  /** Run a set of jobs and wait for their completion.
+   * <p>If some jobs fail, the jobs that have not been started yet are
+   * skipped, the running ones are completed and the exception of
+   * the failed job with the smallest index is thrown. This method
+   * always waits for the started jobs, so no job is still running
+   * once it has returned, even if the calling thread is
+   * interrupted or if the executor service rejects some jobs.</p>
+   * @param jobs jobs to run
+   * @return final states of the jobs, in the same order as the jobs
+   * @throws RejectedExecutionException if the executor service
+   * rejects one job (the jobs already submitted are skipped if they
+   * have not been started yet, the running ones are completed)
+   * @throws IntegratorException if one integration fails or if the
+   * calling thread is interrupted while waiting for the jobs
+   * @throws DerivativeException if the user function of one job
+   * triggers one
+   */
+  public double[][] propagate(PropagationJob[] jobs)
+    throws DerivativeException, IntegratorException {
+
+    final double[][] results = new double[jobs.length][];
+    final AtomicBoolean  aborted = new AtomicBoolean(false);
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(jobs.length);
+    RejectedExecutionException rejected = null;
+    try {
+      for (int i = 0; i < jobs.length; ++i) {
+        final int            index = i;
+        final PropagationJob job   = jobs[i];
+        futures.add(executor.submit(new Callable<Object>() {
+            public Object call()
+              throws DerivativeException, IntegratorException {
+              if (! aborted.get()) {
+                results[index] = run(job);
+              }
+              return null;
+            }
+          }));
+      }
+    } catch (RejectedExecutionException ree) {
+      // the jobs already submitted must still be waited for
+      rejected = ree;
+      aborted.set(true);
+    }
+
+    // wait for all jobs, so that none of them is still running (and
+    // calling user step handlers) once this method has returned, the
+    // jobs that have not been started yet are skipped after a failure
+    Throwable failure     = null;
+    boolean   interrupted = false;
+    for (int i = 0; i < futures.size(); ++i) {
+      Future<Object> future = futures.get(i);
+      while (true) {
+        try {
+          future.get();
+          break;
+        } catch (ExecutionException ee) {
+          if (failure == null) {
+            // first failure in jobs order
+            failure = ee.getCause();
+            aborted.set(true);
+          }
+          break;
+        } catch (InterruptedException ie) {
+          interrupted = true;
+          aborted.set(true);
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (rejected != null) {
+      throw rejected;
+    }
+
+    if (interrupted) {
+      throw new IntegratorException("propagation interrupted", new String[0]);
+    }
+
+    if (failure != null) {
+      if (failure instanceof DerivativeException) {
+        throw (DerivativeException) failure;
+      } else if (failure instanceof IntegratorException) {
+        throw (IntegratorException) failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      } else if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      throw new DerivativeException(failure);
+    }
+
+    return results;
+
+  }
+
+  /** Run one job.
+   * @param job job to run
+   * @return final state
+   * @throws IntegratorException if the integration fails
+   * @throws DerivativeException if the user function triggers one
+   */
+  private double[] run(PropagationJob job)
+    throws DerivativeException, IntegratorException {
+
+    FirstOrderIntegrator integrator;
+    synchronized (factoryLock) {
+      integrator = factory.buildIntegrator();
+    }
+
+    double[] y = new double[job.getInitialState().length];
+    integrator.setStepHandler(job.getStepHandler());
+    integrator.integrate(job.getEquations(),
+                         job.getInitialTime(), job.getInitialState(),
+                         job.getTargetTime(), y);
+    return y;
+
+  }
+
+  /** Shut down the pool built by this instance.
+   * <p>This method does nothing if the executor service has been
+   * provided by the user.</p>
+   */
+  public void shutdown() {
+    if (ownExecutor) {
+      executor.shutdown();
+    }
+  }
+
+  /** Factory for the integrators. */
+  private final IntegratorFactory factory;
+
+  /** Lock serializing the calls to the factory. */
+  private final Object factoryLock = new Object();
+
+  /** Executor service running the jobs. */
+  private final ExecutorService executor;
+
+  /** Indicator for executor services built by this instance. */
+  private final boolean ownExecutor;
+
+}
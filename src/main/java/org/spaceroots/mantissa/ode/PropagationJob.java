@@ -0,0 +1,99 @@
+package org.spaceroots.mantissa.ode;
+
+/** This class describes one integration to be run by a {@link
+ * PropagationExecutor}.
+
+ * <p>A job is a differential equations set, an initial state and a
+ * target time, and optionally a step handler dedicated to this
+ * job. Jobs are run concurrently, so neither the equations nor the
+ * step handler should be shared between jobs unless they are
+ * thread-safe.</p>
+
+ * @see PropagationExecutor
+
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+public class PropagationJob {
+
+  /** Build a job without step handler.
+   * @param equations differential equations to integrate
+   * @param t0 initial time
+   * @param y0 initial value of the state vector at t0 (it is not modified)
+   * @param t target time for the integration
+   */
+  public PropagationJob(FirstOrderDifferentialEquations equations,
+                        double t0, double[] y0, double t) {
+    this(equations, t0, y0, t, DummyStepHandler.getInstance());
+  }
+
+  /** Build a job with a step handler.
+   * @param equations differential equations to integrate
+   * @param t0 initial time
+   * @param y0 initial value of the state vector at t0 (it is not modified)
+   * @param t target time for the integration
+   * @param handler step handler for this job
+   */
+  public PropagationJob(FirstOrderDifferentialEquations equations,
+                        double t0, double[] y0, double t,
+                        StepHandler handler) {
+    this.equations = equations;
+    this.t0        = t0;
+    this.y0        = y0;
+    this.t         = t;
+    this.handler   = handler;
+  }
+
+  /** Get the differential equations to integrate.
+   * @return differential equations to integrate
+   */
+  public FirstOrderDifferentialEquations getEquations() {
+    return equations;
+  }
+
+  /** Get the initial time.
+   * @return initial time
+   */
+  public double getInitialTime() {
+    return t0;
+  }
+
+  /** Get the initial state.
+   * @return reference to the initial state array
+   */
+  public double[] getInitialState() {
+    return y0;
+  }
+
+  /** Get the target time.
+   * @return target time for the integration
+   */
+  public double getTargetTime() {
+    return t;
+  }
+
+  /** Get the step handler.
+   * @return step handler for this job
+   */
+  public StepHandler getStepHandler() {
+    return handler;
+  }
+
+  /** Differential equations to integrate. */
+  private final FirstOrderDifferentialEquations equations;
+
+  /** Initial time. */
+  private final double t0;
+
+  /** Initial state. */
+  private final double[] y0;
+
+  /** Target time. */
+  private final double t;
+
+  /** Step handler. */
+  private final StepHandler handler;
+
+}
@@ -1,5 +1,7 @@
 package org.spaceroots.mantissa.ode;
 
+import org.spaceroots.mantissa.linalg.VectorKernels;
+
 /**
  * This class implements the common part of all Runge-Kutta-Fehlberg
  * integrators for Ordinary Differential Equations.
@@ -164,154 +166,150 @@ public abstract class RungeKuttaFehlbergIntegrator
     
     boolean forward = (t > t0);
 
-    // create some internal working arrays
+    // set up the internal working arrays, reusing the ones
+    // from the previous integration if the dimension is the same
     int stages = c.length + 1;
     if (y != y0) {
       System.arraycopy(y0, 0, y, 0, y0.length);
     }
-    double[][] yDotK = new double[stages][];
-    for (int i = 0; i < stages; ++i) {
-      yDotK [i] = new double[y0.length];
-    }
-    double[] yTmp = new double[y0.length];
-
-    // set up an interpolator sharing the integrator arrays
-    AbstractStepInterpolator interpolator;
-    if (handler.requiresDenseOutput() || (! switchesHandler.isEmpty())) {
-      RungeKuttaStepInterpolator rki = (RungeKuttaStepInterpolator) prototype.clone();
-      rki.reinitialize(equations, yTmp, yDotK, forward);
-      interpolator = rki;
-    } else {
-      interpolator = new DummyStepInterpolator(yTmp, forward);
+    if (workspace == null) {
+      workspace = new RungeKuttaWorkspace(stages, prototype);
     }
-    interpolator.storeTime(t0);
+    workspace.setUp(y0.length);
+    double[][] yDotK = workspace.getYDotK();
+    double[]   yTmp  = workspace.getYTmp();
+
+    try {
+
+      // set up an interpolator sharing the integrator arrays
+      // (there is none if nobody consumes the steps)
+      AbstractStepInterpolator interpolator =
+        workspace.getInterpolator(equations, handler, switchesHandler, forward);
+      if (interpolator != null) {
+        interpolator.storeTime(t0);
+      }
 
-    stepStart  = t0;
-    double  hNew      = 0;
-    boolean firstTime = true;
-    boolean lastStep;
-    handler.reset();
-    do {
+      stepStart  = t0;
+      double  hNew      = 0;
+      boolean firstTime = true;
+      boolean lastStep;
+      handler.reset();
+      do {
 
-      interpolator.shift();
+        if (interpolator != null) {
+          interpolator.shift();
+        }
 
-      double error = 0;
-      for (boolean loop = true; loop;) {
+        double error = 0;
+        for (boolean loop = true; loop;) {
 
-        if (firstTime || !fsal) {
-          // first stage
-          equations.computeDerivatives(stepStart, y, yDotK[0]);
-        }
+          if (firstTime || !fsal) {
+            // first stage
+            equations.computeDerivatives(stepStart, y, yDotK[0]);
+          }
 
-        if (firstTime) {
-          double[] scale;
-          if (vecAbsoluteTolerance != null) {
-            scale = vecAbsoluteTolerance;
-          } else {
-            scale = new double[y0.length];
-            for (int i = 0; i < scale.length; ++i) {
-              scale[i] = scalAbsoluteTolerance;
+          if (firstTime) {
+            double[] scale;
+            if (vecAbsoluteTolerance != null) {
+              scale = vecAbsoluteTolerance;
+            } else {
+              scale = workspace.getScale(scalAbsoluteTolerance);
             }
+            hNew = initializeStep(equations, forward, getOrder(), scale,
+                                  stepStart, y, yDotK[0], yTmp, yDotK[1]);
+            firstTime = false;
           }
-          hNew = initializeStep(equations, forward, getOrder(), scale,
-                                stepStart, y, yDotK[0], yTmp, yDotK[1]);
-          firstTime = false;
-        }
-
-        stepSize = hNew;
-
-        // step adjustment near bounds
-        if ((forward && (stepStart + stepSize > t))
-            || ((! forward) && (stepStart + stepSize < t))) {
-          stepSize = t - stepStart;
-        }
 
-        // next stages
-        for (int k = 1; k < stages; ++k) {
+          stepSize = hNew;
 
-          for (int j = 0; j < y0.length; ++j) {
-            double sum = a[k-1][0] * yDotK[0][j];
-            for (int l = 1; l < k; ++l) {
-              sum += a[k-1][l] * yDotK[l][j];
-            }
-            yTmp[j] = y[j] + stepSize * sum;
+          // step adjustment near bounds
+          if ((forward && (stepStart + stepSize > t))
+              || ((! forward) && (stepStart + stepSize < t))) {
+            stepSize = t - stepStart;
           }
 
-          equations.computeDerivatives(stepStart + c[k-1] * stepSize, yTmp, yDotK[k]);
+          // next stages
+          for (int k = 1; k < stages; ++k) {
 
-        }
+            VectorKernels.combine(y, stepSize, a[k-1], yDotK, k, yTmp);
+
+            equations.computeDerivatives(stepStart + c[k-1] * stepSize, yTmp, yDotK[k]);
 
-        // estimate the state at the end of the step
-        for (int j = 0; j < y0.length; ++j) {
-          double sum    = b[0] * yDotK[0][j];
-          for (int l = 1; l < stages; ++l) {
-            sum    += b[l] * yDotK[l][j];
           }
-          yTmp[j] = y[j] + stepSize * sum;
-        }
 
-        // estimate the error at the end of the step
-        error = estimateError(yDotK, y, yTmp, stepSize);
-        if (error <= 1.0) {
+          // estimate the state at the end of the step
+          VectorKernels.combine(y, stepSize, b, yDotK, stages, yTmp);
+
+          // estimate the error at the end of the step
+          error = estimateError(yDotK, y, yTmp, stepSize);
+          if (error <= 1.0) {
+
+            // Switching functions handling
+            if (interpolator != null) {
+              interpolator.storeTime(stepStart + stepSize);
+            }
+            if (switchesHandler.evaluateStep(interpolator)) {
+              // reject the step to match exactly the next switch time
+              hNew = switchesHandler.getEventTime() - stepStart;
+            } else {
+              // accept the step
+              loop = false;
+            }
 
-          // Switching functions handling
-          interpolator.storeTime(stepStart + stepSize);
-          if (switchesHandler.evaluateStep(interpolator)) {
-            // reject the step to match exactly the next switch time
-            hNew = switchesHandler.getEventTime() - stepStart;
           } else {
-            // accept the step
-            loop = false;
+            // reject the step and attempt to reduce error by stepsize control
+            double factor = Math.min(maxGrowth,
+                                     Math.max(minReduction,
+                                              safety * Math.pow(error, exp)));
+            hNew = filterStep(stepSize * factor, false);
           }
 
-        } else {
-          // reject the step and attempt to reduce error by stepsize control
-          double factor = Math.min(maxGrowth,
-                                   Math.max(minReduction,
-                                            safety * Math.pow(error, exp)));
-          hNew = filterStep(stepSize * factor, false);
         }
 
-      }
-
-      // the step has been accepted
-      stepStart += stepSize;
-      System.arraycopy(yTmp, 0, y, 0, y0.length);
-      switchesHandler.stepAccepted(stepStart, y);
-      if (switchesHandler.stop()) {
-        lastStep = true;
-      } else {
-        lastStep = forward ? (stepStart >= t) : (stepStart <= t);
-      }
+        // the step has been accepted
+        stepStart += stepSize;
+        System.arraycopy(yTmp, 0, y, 0, y0.length);
+        switchesHandler.stepAccepted(stepStart, y);
+        if (switchesHandler.stop()) {
+          lastStep = true;
+        } else {
+          lastStep = forward ? (stepStart >= t) : (stepStart <= t);
+        }
 
-      // provide the step data to the step handler
-      interpolator.storeTime(stepStart);
-      handler.handleStep(interpolator, lastStep);
+        // provide the step data to the step handler
+        if (interpolator != null) {
+          interpolator.storeTime(stepStart);
+          handler.handleStep(interpolator, lastStep);
+        }
 
-      if (fsal) {
-        // save the last evaluation for the next step
-        System.arraycopy(yDotK[stages - 1], 0, yDotK[0], 0, y0.length);
-      }
+        if (fsal) {
+          // save the last evaluation for the next step
+          System.arraycopy(yDotK[stages - 1], 0, yDotK[0], 0, y0.length);
+        }
 
-      if (switchesHandler.reset(stepStart, y) && ! lastStep) {
-        // some switching function has triggered changes that
-        // invalidate the derivatives, we need to recompute them
-        equations.computeDerivatives(stepStart, y, yDotK[0]);
-      }
+        if (switchesHandler.reset(stepStart, y) && ! lastStep) {
+          // some switching function has triggered changes that
+          // invalidate the derivatives, we need to recompute them
+          equations.computeDerivatives(stepStart, y, yDotK[0]);
+        }
 
-      if (! lastStep) {
-        // stepsize control for next step
-        double  factor     = Math.min(maxGrowth,
-                                      Math.max(minReduction,
-                                               safety * Math.pow(error, exp)));
-        double  scaledH    = stepSize * factor;
-        double  nextT      = stepStart + scaledH;
-        boolean nextIsLast = forward ? (nextT >= t) : (nextT <= t);
-        hNew = filterStep(scaledH, nextIsLast);
-      }
+        if (! lastStep) {
+          // stepsize control for next step
+          double  factor     = Math.min(maxGrowth,
+                                        Math.max(minReduction,
+                                                 safety * Math.pow(error, exp)));
+          double  scaledH    = stepSize * factor;
+          double  nextT      = stepStart + scaledH;
+          boolean nextIsLast = forward ? (nextT >= t) : (nextT <= t);
+          hNew = filterStep(scaledH, nextIsLast);
+        }
 
-    } while (! lastStep);
+      } while (! lastStep);
 
+    } finally {
+      // even after a failure, the workspace must not keep the user equations
+      workspace.release();
+    }
     resetInternalState();
 
   }
@@ -344,6 +342,34 @@ public abstract class RungeKuttaFehlbergIntegrator
     this.maxGrowth = maxGrowth;
   }
 
+  /** Check if the method is an <i>fsal</i> method.
+   * @return true if the method is an <i>fsal</i> method
+   */
+  boolean isFsal() {
+    return fsal;
+  }
+
+  /** Get the time steps from Butcher array (without the first zero).
+   * @return reference to the internal time steps array
+   */
+  double[] getTimeSteps() {
+    return c;
+  }
+
+  /** Get the internal weights from Butcher array (without the first empty row).
+   * @return reference to the internal weights array
+   */
+  double[][] getInternalWeights() {
+    return a;
+  }
+
+  /** Get the external weights for the high order method from Butcher array.
+   * @return reference to the external weights array
+   */
+  double[] getExternalWeights() {
+    return b;
+  }
+
   /** Compute the error ratio.
    * @param yDotK derivatives computed during the first stages
    * @param y0 estimate of the step at the start of the step
@@ -369,6 +395,9 @@ public abstract class RungeKuttaFehlbergIntegrator
 
   /** Prototype of the step interpolator. */
   private RungeKuttaStepInterpolator prototype;
+
+  /** Working arrays kept across integrations. */
+  private RungeKuttaWorkspace workspace;
                                          
   /** Stepsize control exponent. */
   private double exp;
@@ -1,5 +1,7 @@
 package org.spaceroots.mantissa.ode;
 
+import org.spaceroots.mantissa.linalg.VectorKernels;
+
 /**
  * This class implements the common part of all fixed step Runge-Kutta
  * integrators for Ordinary Differential Equations.
@@ -122,118 +124,117 @@ public abstract class RungeKuttaIntegrator
     
     boolean forward = (t > t0);
 
-    // create some internal working arrays
+    // set up the internal working arrays, reusing the ones
+    // from the previous integration if the dimension is the same
     int stages = c.length + 1;
     if (y != y0) {
       System.arraycopy(y0, 0, y, 0, y0.length);
     }
-    double[][] yDotK = new double[stages][];
-    for (int i = 0; i < stages; ++i) {
-      yDotK [i] = new double[y0.length];
-    }
-    double[] yTmp = new double[y0.length];
-
-    // set up an interpolator sharing the integrator arrays
-    AbstractStepInterpolator interpolator;
-    if (handler.requiresDenseOutput() || (! switchesHandler.isEmpty())) {
-      RungeKuttaStepInterpolator rki = (RungeKuttaStepInterpolator) prototype.clone();
-      rki.reinitialize(equations, yTmp, yDotK, forward);
-      interpolator = rki;
-    } else {
-      interpolator = new DummyStepInterpolator(yTmp, forward);
+    if (workspace == null) {
+      workspace = new RungeKuttaWorkspace(stages, prototype);
     }
-    interpolator.storeTime(t0);
+    workspace.setUp(y0.length);
+    double[][] yDotK = workspace.getYDotK();
+    double[]   yTmp  = workspace.getYTmp();
+
+    try {
+
+      // set up an interpolator sharing the integrator arrays
+      // (there is none if nobody consumes the steps)
+      AbstractStepInterpolator interpolator =
+        workspace.getInterpolator(equations, handler, switchesHandler, forward);
+      if (interpolator != null) {
+        interpolator.storeTime(t0);
+      }
+
+      // recompute the step
+      long    nbStep    = Math.max(1l, Math.abs(Math.round((t - t0) / step)));
+      boolean firstTime = true;
+      boolean lastStep  = false;
+      stepStart = t0;
+      stepSize  = (t - t0) / nbStep;
+      handler.reset();
+      for (long i = 0; ! lastStep; ++i) {
+
+        if (interpolator != null) {
+          interpolator.shift();
+        }
 
-    // recompute the step
-    long    nbStep    = Math.max(1l, Math.abs(Math.round((t - t0) / step)));
-    boolean firstTime = true;
-    boolean lastStep  = false;
-    stepStart = t0;
-    stepSize  = (t - t0) / nbStep;
-    handler.reset();
-    for (long i = 0; ! lastStep; ++i) {
+        boolean needUpdate = false;
+        for (boolean loop = true; loop;) {
 
-      interpolator.shift();
+          if (firstTime || !fsal) {
+            // first stage
+            equations.computeDerivatives(stepStart, y, yDotK[0]);
+            firstTime = false;
+          }
 
-      boolean needUpdate = false;
-      for (boolean loop = true; loop;) {
+          // next stages
+          for (int k = 1; k < stages; ++k) {
 
-        if (firstTime || !fsal) {
-          // first stage
-          equations.computeDerivatives(stepStart, y, yDotK[0]);
-          firstTime = false;
-        }
+            VectorKernels.combine(y, stepSize, a[k-1], yDotK, k, yTmp);
 
-        // next stages
-        for (int k = 1; k < stages; ++k) {
+            equations.computeDerivatives(stepStart + c[k-1] * stepSize, yTmp, yDotK[k]);
 
-          for (int j = 0; j < y0.length; ++j) {
-            double sum = a[k-1][0] * yDotK[0][j];
-            for (int l = 1; l < k; ++l) {
-              sum += a[k-1][l] * yDotK[l][j];
-            }
-            yTmp[j] = y[j] + stepSize * sum;
           }
 
-          equations.computeDerivatives(stepStart + c[k-1] * stepSize, yTmp, yDotK[k]);
-
-        }
+          // estimate the state at the end of the step
+          VectorKernels.combine(y, stepSize, b, yDotK, stages, yTmp);
 
-        // estimate the state at the end of the step
-        for (int j = 0; j < y0.length; ++j) {
-          double sum    = b[0] * yDotK[0][j];
-          for (int l = 1; l < stages; ++l) {
-            sum    += b[l] * yDotK[l][j];
+          // Switching functions handling
+          if (interpolator != null) {
+            interpolator.storeTime(stepStart + stepSize);
           }
-          yTmp[j] = y[j] + stepSize * sum;
+          if (switchesHandler.evaluateStep(interpolator)) {
+            needUpdate = true;
+            stepSize = switchesHandler.getEventTime() - stepStart;
+          } else {
+            loop = false;
+          }
+
         }
 
-        // Switching functions handling
-        interpolator.storeTime(stepStart + stepSize);
-        if (switchesHandler.evaluateStep(interpolator)) {
-          needUpdate = true;
-          stepSize = switchesHandler.getEventTime() - stepStart;
+        // the step has been accepted
+        stepStart += stepSize;
+        System.arraycopy(yTmp, 0, y, 0, y0.length);
+        switchesHandler.stepAccepted(stepStart, y);
+        if (switchesHandler.stop()) {
+          lastStep = true;
         } else {
-          loop = false;
+          lastStep = (i == (nbStep - 1));
         }
 
-      }
-
-      // the step has been accepted
-      stepStart += stepSize;
-      System.arraycopy(yTmp, 0, y, 0, y0.length);
-      switchesHandler.stepAccepted(stepStart, y);
-      if (switchesHandler.stop()) {
-        lastStep = true;
-      } else {
-        lastStep = (i == (nbStep - 1));
-      }
+        // provide the step data to the step handler
+        if (interpolator != null) {
+          interpolator.storeTime(stepStart);
+          handler.handleStep(interpolator, lastStep);
+        }
 
-      // provide the step data to the step handler
-      interpolator.storeTime(stepStart);
-      handler.handleStep(interpolator, lastStep);
+        if (fsal) {
+          // save the last evaluation for the next step
+          System.arraycopy(yDotK[stages - 1], 0, yDotK[0], 0, y0.length);
+        }
 
-      if (fsal) {
-        // save the last evaluation for the next step
-        System.arraycopy(yDotK[stages - 1], 0, yDotK[0], 0, y0.length);
-      }
+        if (switchesHandler.reset(stepStart, y) && ! lastStep) {
+          // some switching function has triggered changes that
+          // invalidate the derivatives, we need to recompute them
+          equations.computeDerivatives(stepStart, y, yDotK[0]);
+        }
 
-      if (switchesHandler.reset(stepStart, y) && ! lastStep) {
-        // some switching function has triggered changes that
-        // invalidate the derivatives, we need to recompute them
-        equations.computeDerivatives(stepStart, y, yDotK[0]);
-      }
+        if (needUpdate) {
+          // a switching function has changed the step
+          // we need to recompute stepsize
+          nbStep = Math.max(1l, Math.abs(Math.round((t - stepStart) / step)));
+          stepSize = (t - stepStart) / nbStep;
+          i = -1;
+        }
 
-      if (needUpdate) {
-        // a switching function has changed the step
-        // we need to recompute stepsize
-        nbStep = Math.max(1l, Math.abs(Math.round((t - stepStart) / step)));
-        stepSize = (t - stepStart) / nbStep;
-        i = -1;
       }
 
+    } finally {
+      // even after a failure, the workspace must not keep the user equations
+      workspace.release();
     }
-
     resetInternalState();
 
   }
@@ -246,6 +247,41 @@ public abstract class RungeKuttaIntegrator
     return stepSize;
   }
 
+  /** Check if the method is an <i>fsal</i> method.
+   * @return true if the method is an <i>fsal</i> method
+   */
+  boolean isFsal() {
+    return fsal;
+  }
+
+  /** Get the time steps from Butcher array (without the first zero).
+   * @return reference to the internal time steps array
+   */
+  double[] getTimeSteps() {
+    return c;
+  }
+
+  /** Get the internal weights from Butcher array (without the first empty row).
+   * @return reference to the internal weights array
+   */
+  double[][] getInternalWeights() {
+    return a;
+  }
+
+  /** Get the external weights for the high order method from Butcher array.
+   * @return reference to the external weights array
+   */
+  double[] getExternalWeights() {
+    return b;
+  }
+
+  /** Get the integration step.
+   * @return integration step
+   */
+  double getStep() {
+    return step;
+  }
+
   /** Reset internal state to dummy values. */
   private void resetInternalState() {
     stepStart = Double.NaN;
@@ -266,6 +302,9 @@ public abstract class RungeKuttaIntegrator
 
   /** Prototype of the step interpolator. */
   private RungeKuttaStepInterpolator prototype;
+
+  /** Working arrays kept across integrations. */
+  private RungeKuttaWorkspace workspace;
                                          
   /** Integration step. */
   private double step;
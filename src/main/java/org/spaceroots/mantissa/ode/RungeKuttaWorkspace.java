@@ -0,0 +1,167 @@
+package org.spaceroots.mantissa.ode;
+
+/** This class holds the working arrays of Runge-Kutta integrators.
+
+ * <p>The {@link RungeKuttaIntegrator} and {@link
+ * RungeKuttaFehlbergIntegrator} classes keep one instance of this
+ * class across calls to their <code>integrate</code> method. The
+ * arrays and the step interpolators are allocated at the first call
+ * and reallocated only when the dimension of the problem changes, so
+ * repeated integrations of problems with the same dimension (for
+ * example many short arcs) do not allocate anything once the
+ * workspace has been set up.</p>
+
+ * <p>Reusing the step interpolator is consistent with the {@link
+ * StepHandler} contract: the interpolator provided to the handler is
+ * only valid during the {@link StepHandler#handleStep handleStep}
+ * call, handlers that need to keep it must copy it.</p>
+
+ * @see RungeKuttaIntegrator
+ * @see RungeKuttaFehlbergIntegrator
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+class RungeKuttaWorkspace {
+
+  /** Simple constructor.
+   * The arrays are allocated by the first call to {@link #setUp}.
+   * @param stages number of stages of the method
+   * @param prototype prototype of the dense output step interpolator
+   */
+  public RungeKuttaWorkspace(int stages,
+                             RungeKuttaStepInterpolator prototype) {
+    this.stages    = stages;
+    this.prototype = prototype;
+    dimension      = -1;
+    yDotK          = null;
+    yTmp           = null;
+    scale          = null;
+    dense          = null;
+    dummy          = null;
+  }
+
+  /** Set up the workspace for a problem.
+   * <p>The arrays are reallocated only if the dimension differs from
+   * the dimension of the previous problem. Their content is not
+   * reset.</p>
+   * @param n dimension of the problem
+   */
+  public void setUp(int n) {
+    if (n != dimension) {
+      yDotK = new double[stages][n];
+      yTmp  = new double[n];
+      scale = null;
+      dense = null;
+      dummy = null;
+      dimension = n;
+    }
+  }
+
+  /** Get the slopes at the intermediate points.
+   * @return reference to the internal array of slopes
+   */
+  public double[][] getYDotK() {
+    return yDotK;
+  }
+
+  /** Get the intermediate and end of step state.
+   * @return reference to the internal state array
+   */
+  public double[] getYTmp() {
+    return yTmp;
+  }
+
+  /** Get the step interpolator to use for an integration.
+   * <p>A dense output interpolator is returned if the step handler
+   * requires dense output or if there are switching functions, a
+   * {@link DummyStepInterpolator} is returned if the handler does not
+   * require dense output and <code>null</code> is returned if there
+   * is no consumer at all for the steps (i.e. if the handler is the
+   * {@link DummyStepHandler} and there are no switching functions),
+   * in which case the integrator should not maintain any interpolator
+   * during integration.</p>
+   * @param equations differential equations being integrated
+   * @param handler step handler
+   * @param switchesHandler switching functions handler
+   * @param forward integration direction indicator
+   * @return interpolator sharing the workspace arrays (may be null)
+   */
+  public AbstractStepInterpolator
+    getInterpolator(FirstOrderDifferentialEquations equations,
+                    StepHandler handler,
+                    SwitchingFunctionsHandler switchesHandler,
+                    boolean forward) {
+
+    if (handler.requiresDenseOutput() || (! switchesHandler.isEmpty())) {
+      if (dense == null) {
+        dense = (RungeKuttaStepInterpolator) prototype.clone();
+      }
+      dense.reinitialize(equations, yTmp, yDotK, forward);
+      return dense;
+    }
+
+    if (handler == DummyStepHandler.getInstance()) {
+      return null;
+    }
+
+    if (dummy == null) {
+      dummy = new DummyStepInterpolator(yTmp, forward);
+    } else {
+      dummy.reinitialize(yTmp, forward);
+    }
+    return dummy;
+
+  }
+
+  /** Get the scaling vector for a scalar absolute tolerance.
+   * @param tolerance absolute tolerance
+   * @return scaling vector (shared, reused by subsequent calls)
+   */
+  public double[] getScale(double tolerance) {
+    if (scale == null) {
+      scale = new double[dimension];
+    }
+    for (int i = 0; i < dimension; ++i) {
+      scale[i] = tolerance;
+    }
+    return scale;
+  }
+
+  /** Release the references to the user objects.
+   * This method should be called at the end of integration so that
+   * the workspace does not prevent the differential equations from
+   * being garbage collected.
+   */
+  public void release() {
+    if (dense != null) {
+      dense.equations = null;
+    }
+  }
+
+  /** Number of stages of the method. */
+  private final int stages;
+
+  /** Prototype of the dense output step interpolator. */
+  private final RungeKuttaStepInterpolator prototype;
+
+  /** Current dimension of the arrays. */
+  private int dimension;
+
+  /** Slopes at the intermediate points. */
+  private double[][] yDotK;
+
+  /** Intermediate and end of step state. */
+  private double[] yTmp;
+
+  /** Scaling vector for scalar absolute tolerances. */
+  private double[] scale;
+
+  /** Dense output step interpolator. */
+  private RungeKuttaStepInterpolator dense;
+
+  /** Step interpolator without dense output. */
+  private DummyStepInterpolator dummy;
+
+}
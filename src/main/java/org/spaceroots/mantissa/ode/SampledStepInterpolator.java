@@ -0,0 +1,449 @@
+package org.spaceroots.mantissa.ode;
+
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.IOException;
+
+/** This class is a step interpolator based on state samples.
+
+ * <p>The dense output of all the integrators of this package is a
+ * polynomial of the normalized abscissa <code>theta</code> within the
+ * step. A polynomial of degree d is completely defined by its values
+ * at d+1 points, so such an interpolator can be represented by the
+ * states at the d+1 Chebyshev-Lobatto points of the step (the first
+ * one being the previous time and the last one being the current
+ * time), and evaluated by the barycentric Lagrange formula, which is
+ * numerically stable even for high degrees.</p>
+
+ * <p>This representation is used by {@link ContinuousOutputModel} to
+ * store the steps in flat arrays, instances of this class are only
+ * lightweight views of one stored step.</p>
+
+ * @see ContinuousOutputModel
+ * @see AbstractStepInterpolator#getInterpolationDegree
+
+ * @version $Id$
+ * @author L. Maisonobe
+
+ */
+
+class SampledStepInterpolator
+  extends AbstractStepInterpolator {
+
+  /** Simple constructor.
+   * This constructor builds an instance that is not usable yet, it
+   * is used only for deserialization.
+   */
+  public SampledStepInterpolator() {
+    super();
+    samples = null;
+    offset  = 0;
+    count   = 0;
+  }
+
+  /** Build an interpolator from samples.
+   * @param previousTime previous grid point time
+   * @param currentTime current grid point time
+   * @param forward integration direction indicator
+   * @param samples array containing the states at the
+   * Chebyshev-Lobatto points of the step, one after the other (the
+   * array is shared, it is not copied)
+   * @param offset index of the first sample element in the array
+   * @param count number of samples
+   * @param dimension dimension of the state vector
+   */
+  public SampledStepInterpolator(double previousTime, double currentTime,
+                                 boolean forward,
+                                 double[] samples, int offset,
+                                 int count, int dimension) {
+    this.samples = samples;
+    this.offset  = offset;
+    this.count   = count;
+    double[] y = new double[dimension];
+    System.arraycopy(samples, offset + (count - 1) * dimension, y, 0, dimension);
+    reinitialize(y, forward);
+    storeTime(previousTime);
+    shift();
+    storeTime(currentTime);
+  }
+
+  /** Copy constructor.
+   * @param interpolator interpolator to copy from.
+   */
+  public SampledStepInterpolator(SampledStepInterpolator interpolator) {
+    super(interpolator);
+    if (interpolator.samples == null) {
+      samples = null;
+    } else {
+      samples = new double[interpolator.count * currentState.length];
+      System.arraycopy(interpolator.samples, interpolator.offset,
+                       samples, 0, samples.length);
+    }
+    offset  = 0;
+    count   = interpolator.count;
+  }
+
+  /** Copy the instance.
+   * the copy is a deep copy: its arrays are separated from the
+   * original arrays of the instance
+   * @return a copy of the instance
+   */
+  public Object clone() {
+    return new SampledStepInterpolator(this);
+  }
+
+  /** Get the degree of the interpolation polynomial.
+   * @return degree of the interpolation polynomial
+   */
+  protected int getInterpolationDegree() {
+    return count - 1;
+  }
+
+  /** Compute the state at the interpolated time.
+   * @param theta normalized interpolation abscissa within the step
+   * (theta is zero at the previous time step and one at the current time step)
+   * @param oneMinusThetaH time gap between the interpolated time and
+   * the current time
+   */
+  protected void computeInterpolatedState(double theta, double oneMinusThetaH) {
+    interpolate(samples, offset, count, currentState.length,
+                theta, interpolatedState, 0);
+  }
+
+  /** Get the normalized abscissas of the Chebyshev-Lobatto points.
+   * @param count number of points
+   * @return abscissas of the points between 0 and 1 (the returned
+   * array is shared, it must not be modified)
+   */
+  static double[] getNodes(int count) {
+    if (count < NODES.length) {
+      return NODES[count];
+    }
+    return buildNodes(count);
+  }
+
+  /** Build the normalized abscissas of the Chebyshev-Lobatto points.
+   * @param count number of points
+   * @return abscissas of the points between 0 and 1
+   */
+  private static double[] buildNodes(int count) {
+    double[] nodes = new double[count];
+    if (count == 1) {
+      nodes[0] = 1.0;
+    } else {
+      for (int j = 0; j < count; ++j) {
+        nodes[j] = 0.5 * (1.0 - Math.cos(j * Math.PI / (count - 1)));
+      }
+      // enforce exact bounds and symmetry
+      nodes[0]         = 0.0;
+      nodes[count - 1] = 1.0;
+      if ((count & 1) == 1) {
+        nodes[count / 2] = 0.5;
+      }
+    }
+    return nodes;
+  }
+
+  /** Interpolate a state from samples.
+   * <p>This method does not use any shared state, it can be called
+   * concurrently by several threads.</p>
+   * @param samples array containing the states at the
+   * Chebyshev-Lobatto points of the step, one after the other
+   * @param offset index of the first sample element in the array
+   * @param count number of samples
+   * @param dimension dimension of the state vector
+   * @param theta normalized interpolation abscissa within the step
+   * @param out array where to store the interpolated state
+   * @param outOffset index of the first state element in out
+   */
+  static void interpolate(double[] samples, int offset,
+                          int count, int dimension,
+                          double theta, double[] out, int outOffset) {
+    interpolate(samples, offset, count, dimension, null, theta, out, outOffset);
+  }
+
+  /** Interpolate some components of a state from samples.
+   * <p>This method does not use any shared state, it can be called
+   * concurrently by several threads.</p>
+   * @param samples array containing the states at the
+   * Chebyshev-Lobatto points of the step, one after the other
+   * @param offset index of the first sample element in the array
+   * @param count number of samples
+   * @param dimension dimension of the state vector
+   * @param components indices of the components to interpolate (if
+   * null, all components are interpolated)
+   * @param theta normalized interpolation abscissa within the step
+   * @param out array where to store the interpolated components
+   * @param outOffset index of the first component in out
+   */
+  static void interpolate(double[] samples, int offset,
+                          int count, int dimension, int[] components,
+                          double theta, double[] out, int outOffset) {
+
+    int width = (components == null) ? dimension : components.length;
+
+    if (count == 1) {
+      copy(samples, offset, components, width, out, outOffset);
+      return;
+    }
+
+    // barycentric weights of the Chebyshev-Lobatto points
+    // are (-1)^j, halved for the first and last points
+    double[] nodes = getNodes(count);
+    double   den   = 0;
+    for (int j = 0; j < count; ++j) {
+      double d = theta - nodes[j];
+      if (d == 0) {
+        // the point is exactly one of the samples
+        copy(samples, offset + j * dimension, components, width, out, outOffset);
+        return;
+      }
+      double w = (((j & 1) == 0) ? 1.0 : -1.0) / d;
+      if ((j == 0) || (j == count - 1)) {
+        w *= 0.5;
+      }
+      int base = offset + j * dimension;
+      if (components == null) {
+        if (j == 0) {
+          for (int i = 0; i < width; ++i) {
+            out[outOffset + i] = w * samples[base + i];
+          }
+        } else {
+          for (int i = 0; i < width; ++i) {
+            out[outOffset + i] += w * samples[base + i];
+          }
+        }
+      } else {
+        if (j == 0) {
+          for (int i = 0; i < width; ++i) {
+            out[outOffset + i] = w * samples[base + components[i]];
+          }
+        } else {
+          for (int i = 0; i < width; ++i) {
+            out[outOffset + i] += w * samples[base + components[i]];
+          }
+        }
+      }
+      den += w;
+    }
+
+    double inv = 1.0 / den;
+    for (int i = 0; i < width; ++i) {
+      out[outOffset + i] *= inv;
+    }
+
+  }
+
+  /** Compute the Chebyshev coefficients of the interpolation polynomial.
+   * <p>The Chebyshev-Lobatto points are the extrema of the Chebyshev
+   * polynomial of degree count - 1, so the coefficients of the
+   * interpolation polynomial in the Chebyshev basis of [0 ; 1] are a
+   * discrete cosine transform of the samples. Evaluating them with
+   * {@link #evaluateChebyshev evaluateChebyshev} is cheaper than the
+   * barycentric formula, which is worth when many points are
+   * interpolated in the same step.</p>
+   * <p>This method does not use any shared state, it can be called
+   * concurrently by several threads.</p>
+   * @param samples array containing the states at the
+   * Chebyshev-Lobatto points of the step, one after the other
+   * @param offset index of the first sample element in the array
+   * @param count number of samples
+   * @param dimension dimension of the state vector
+   * @param components indices of the components to consider (if null,
+   * all components are considered)
+   * @param coefficients array where to store the coefficients, the
+   * coefficients of degree k of all considered components are stored
+   * starting at index k * width
+   */
+  static void computeChebyshev(double[] samples, int offset,
+                               int count, int dimension, int[] components,
+                               double[] coefficients) {
+
+    int width = (components == null) ? dimension : components.length;
+    double[] transform = getTransform(count);
+
+    for (int k = 0; k < count; ++k) {
+      int kBase = k * width;
+      for (int i = 0; i < width; ++i) {
+        coefficients[kBase + i] = 0;
+      }
+      for (int j = 0; j < count; ++j) {
+        double m    = transform[k * count + j];
+        int    base = offset + j * dimension;
+        if (components == null) {
+          for (int i = 0; i < width; ++i) {
+            coefficients[kBase + i] += m * samples[base + i];
+          }
+        } else {
+          for (int i = 0; i < width; ++i) {
+            coefficients[kBase + i] += m * samples[base + components[i]];
+          }
+        }
+      }
+    }
+
+  }
+
+  /** Evaluate a polynomial from its Chebyshev coefficients.
+   * <p>The evaluation uses the Clenshaw recurrence.</p>
+   * @param coefficients coefficients computed by {@link
+   * #computeChebyshev computeChebyshev}
+   * @param count number of coefficients per component
+   * @param width number of components
+   * @param theta normalized interpolation abscissa within the step
+   * @param out array where to store the components
+   * @param outOffset index of the first component in out
+   */
+  static void evaluateChebyshev(double[] coefficients, int count, int width,
+                                double theta, double[] out, int outOffset) {
+    double x  = 2 * theta - 1;
+    double x2 = 2 * x;
+    for (int i = 0; i < width; ++i) {
+      double b1 = 0;
+      double b2 = 0;
+      for (int k = (count - 1) * width + i; k >= width; k -= width) {
+        double b = coefficients[k] + x2 * b1 - b2;
+        b2 = b1;
+        b1 = b;
+      }
+      out[outOffset + i] = coefficients[i] + x * b1 - b2;
+    }
+  }
+
+  /** Get the transform from samples to Chebyshev coefficients.
+   * @param count number of samples
+   * @return transform matrix, in row major order (the returned array
+   * is shared, it must not be modified)
+   */
+  private static double[] getTransform(int count) {
+    if (count < TRANSFORMS.length) {
+      return TRANSFORMS[count];
+    }
+    return buildTransform(count);
+  }
+
+  /** Build the transform from samples to Chebyshev coefficients.
+   * @param count number of samples
+   * @return transform matrix, in row major order
+   */
+  private static double[] buildTransform(int count) {
+
+    double[] transform = new double[count * count];
+    if (count == 1) {
+      transform[0] = 1.0;
+      return transform;
+    }
+
+    // sample j is at x = 2 theta_j - 1 = cos((n - j) pi / n)
+    int n = count - 1;
+    for (int k = 0; k <= n; ++k) {
+      for (int j = 0; j <= n; ++j) {
+        double m = 2.0 * Math.cos(Math.PI * ((k * (n - j)) % (2 * n)) / n) / n;
+        if ((j == 0) || (j == n)) {
+          m *= 0.5;
+        }
+        if ((k == 0) || (k == n)) {
+          m *= 0.5;
+        }
+        transform[k * count + j] = m;
+      }
+    }
+    return transform;
+
+  }
+
+  /** Copy some components of one sample.
+   * @param samples array containing the samples
+   * @param base index of the first element of the sample
+   * @param components indices of the components to copy (if null, all
+   * components are copied)
+   * @param width number of components to copy
+   * @param out array where to copy the components
+   * @param outOffset index of the first component in out
+   */
+  private static void copy(double[] samples, int base, int[] components, int width,
+                           double[] out, int outOffset) {
+    if (components == null) {
+      System.arraycopy(samples, base, out, outOffset, width);
+    } else {
+      for (int i = 0; i < width; ++i) {
+        out[outOffset + i] = samples[base + components[i]];
+      }
+    }
+  }
+
+  /** Save the state of the instance.
+   * @param out stream where to save the state
+   * @exception IOException in case of write error
+   */
+  public void writeExternal(ObjectOutput out)
+    throws IOException {
+
+    // save the state of the base class
+    writeBaseExternal(out);
+
+    // save the local attributes
+    out.writeInt(count);
+    int size = count * currentState.length;
+    for (int i = 0; i < size; ++i) {
+      out.writeDouble(samples[offset + i]);
+    }
+
+  }
+
+  /** Read the state of the instance.
+   * @param in stream where to read the state from
+   * @exception IOException in case of read error
+   */
+  public void readExternal(ObjectInput in)
+    throws IOException {
+
+    // read the base class
+    double t = readBaseExternal(in);
+
+    // read the local attributes
+    offset  = 0;
+    count   = in.readInt();
+    samples = new double[count * currentState.length];
+    for (int i = 0; i < samples.length; ++i) {
+      samples[i] = in.readDouble();
+    }
+
+    try {
+      // we can now set the interpolated time and state
+      setInterpolatedTime(t);
+    } catch (DerivativeException e) {
+      IOException ioe = new IOException();
+      ioe.initCause(e);
+      throw ioe;
+    }
+
+  }
+
+  /** Shared abscissas of the Chebyshev-Lobatto points for small counts. */
+  private static final double[][] NODES;
+
+  /** Shared transforms to Chebyshev coefficients for small counts. */
+  private static final double[][] TRANSFORMS;
+
+  static {
+    NODES      = new double[64][];
+    TRANSFORMS = new double[NODES.length][];
+    for (int count = 1; count < NODES.length; ++count) {
+      NODES[count]      = buildNodes(count);
+      TRANSFORMS[count] = buildTransform(count);
+    }
+  }
+
+  /** States at the Chebyshev-Lobatto points of the step. */
+  private double[] samples;
+
+  /** Index of the first sample element. */
+  private int offset;
+
+  /** Number of samples. */
+  private int count;
+
+  private static final long serialVersionUID = -4352106472591728823L;
+
+}
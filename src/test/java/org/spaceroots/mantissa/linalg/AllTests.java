@@ -15,6 +15,23 @@ public class AllTests {
     suite.addTest(UpperTriangularMatrixTest.suite()); 
     suite.addTest(GeneralSquareMatrixTest.suite()); 
     suite.addTest(SymetricalMatrixTest.suite()); 
+    suite.addTest(LUDecompositionTest.suite());
+    suite.addTest(CholeskyDecompositionTest.suite());
+    suite.addTest(QRDecompositionTest.suite());
+    suite.addTest(EigenDecompositionTest.suite());
+    suite.addTest(SingularValueDecompositionTest.suite());
+    suite.addTest(SparseMatrixTest.suite());
+    suite.addTest(BandMatrixTest.suite());
+    suite.addTest(BufferMatrixTest.suite());
+    suite.addTest(VectorKernelsTest.suite());
+    suite.addTest(SquareMatrixBatchTest.suite());
+    suite.addTest(FloatMatrixTest.suite());
+    suite.addTest(MixedPrecisionSolverTest.suite());
+    suite.addTest(FactorizationTest.suite());
+    suite.addTest(MatrixExponentialTest.suite());
+    suite.addTest(ShermanMorrisonWoodburyTest.suite());
+    suite.addTest(MatrixCodecTest.suite());
+    suite.addTest(IterativeSolverTest.suite());
     suite.addTest(MatrixFactoryTest.suite());
 
     return suite; 
@@ -0,0 +1,174 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class BandMatrixTest
+  extends TestCase {
+
+  public BandMatrixTest(String name) {
+    super(name);
+  }
+
+  public void testElements() {
+    BandMatrix b = buildBand(6, 1, 2);
+    assertEquals(1, b.getLowerBandwidth());
+    assertEquals(2, b.getUpperBandwidth());
+    assertEquals(0.0, b.getElement(3, 1), 0.0);
+    assertEquals(0.0, b.getElement(1, 4), 0.0);
+    assertTrue(b.getElement(2, 1) != 0.0);
+    assertTrue(b.getElement(2, 4) != 0.0);
+    try {
+      b.setElement(0, 3, 1.0);
+      fail("an exception should have been thrown");
+    } catch (ArrayIndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  public void testRanges() {
+    BandMatrix b = buildBand(7, 2, 1);
+    Matrix dense = new GeneralSquareMatrix(7, b.getDenseData());
+    for (int i = 0; i < 7; ++i) {
+      NonNullRange r = b.getRangeForRow(i);
+      NonNullRange c = b.getRangeForColumn(i);
+      assertEquals(Math.max(0, i - 2), r.begin);
+      assertEquals(Math.min(7, i + 2), r.end);
+      assertEquals(Math.max(0, i - 1), c.begin);
+      assertEquals(Math.min(7, i + 3), c.end);
+    }
+    MatrixChecker.checkEquals(dense, new GeneralMatrix(b), 0.0);
+    assertEquals(dense.toString(), b.toString());
+  }
+
+  public void testOperations() {
+    BandMatrix a = buildBand(9, 1, 2);
+    BandMatrix b = buildBand(9, 2, 0);
+    Matrix da = new GeneralSquareMatrix(9, a.getDenseData());
+    Matrix db = new GeneralSquareMatrix(9, b.getDenseData());
+
+    Matrix sum = a.add(b);
+    assertTrue(sum instanceof BandMatrix);
+    MatrixChecker.checkEquals(da.add(db), sum, 1.0e-15);
+    MatrixChecker.checkEquals(da.sub(db), a.sub(b), 1.0e-15);
+    MatrixChecker.checkEquals(da.add(db), a.add(db), 1.0e-15);
+    MatrixChecker.checkEquals(da.sub(db), da.sub(b), 1.0e-15);
+
+    GeneralSquareMatrix g = new GeneralSquareMatrix(9, a.getDenseData());
+    g.selfAdd(b);
+    MatrixChecker.checkEquals(da.add(db), g, 1.0e-15);
+    g.selfSub(b);
+    g.selfSub(b);
+    MatrixChecker.checkEquals(da.sub(db), g, 1.0e-15);
+
+    Matrix product = a.mul(b);
+    assertTrue(product instanceof BandMatrix);
+    assertEquals(3, ((BandMatrix) product).getLowerBandwidth());
+    assertEquals(2, ((BandMatrix) product).getUpperBandwidth());
+    MatrixChecker.checkEquals(da.mul(db), product, 1.0e-14);
+    MatrixChecker.checkEquals(da.mul(db), a.mul(db), 1.0e-14);
+    MatrixChecker.checkEquals(da.mul(db), da.mul(b), 1.0e-14);
+
+    Matrix t = a.getTranspose();
+    assertTrue(t instanceof BandMatrix);
+    MatrixChecker.checkEquals(da.getTranspose(), t, 0.0);
+    MatrixChecker.checkEquals(da.mul(2.5), a.mul(2.5), 0.0);
+
+    double[] x = new double[9];
+    double[] y = new double[9];
+    double[] z = new double[9];
+    for (int i = 0; i < x.length; ++i) {
+      x[i] = i - 3.5;
+    }
+    a.apply(x, y);
+    da.apply(x, z);
+    for (int i = 0; i < x.length; ++i) {
+      assertEquals(z[i], y[i], 1.0e-14);
+    }
+  }
+
+  public void testSolveWithPivoting()
+    throws SingularMatrixException {
+
+    // small diagonal elements force rows exchanges
+    BandMatrix a = buildBand(40, 2, 1);
+    for (int i = 0; i < 40; i += 3) {
+      a.setElement(i, i, 1.0e-3);
+    }
+    GeneralSquareMatrix dense = new GeneralSquareMatrix(40, a.getDenseData());
+    GeneralMatrix b = new GeneralMatrix(40, 3);
+    for (int i = 0; i < 40; ++i) {
+      for (int j = 0; j < 3; ++j) {
+        b.setElement(i, j, Math.cos(i + 2 * j));
+      }
+    }
+
+    MatrixChecker.checkEquals(dense.solve(b, 1.0e-12), a.solve(b, 1.0e-12), 1.0e-10);
+    assertEquals(1.0, a.getDeterminant(1.0e-12) / dense.getDeterminant(1.0e-12), 1.0e-10);
+
+    // U keeps a band structure, widened by the lower bandwidth
+    BandMatrix u = a.getLUDecomposition(1.0e-12).getU();
+    assertEquals(0, u.getLowerBandwidth());
+    assertEquals(3, u.getUpperBandwidth());
+
+    Matrix identity = a.mul(a.getInverse(1.0e-12));
+    MatrixChecker.checkEquals(new DiagonalMatrix(40, 1.0), identity, 1.0e-10);
+
+  }
+
+  public void testLargeTridiagonal()
+    throws SingularMatrixException {
+
+    // this would need 80 GB with dense storage
+    int n = 100000;
+    BandMatrix a = new BandMatrix(n, 1, 1);
+    for (int i = 0; i < n; ++i) {
+      a.setElement(i, i, 4.0);
+      if (i > 0) {
+        a.setElement(i, i - 1, -1.0);
+        a.setElement(i - 1, i, -1.0);
+      }
+    }
+    double[] x = new double[n];
+    for (int i = 0; i < n; ++i) {
+      x[i] = Math.sin(0.001 * i);
+    }
+    double[] b = new double[n];
+    a.apply(x, b);
+
+    double[] solution = new double[n];
+    a.getLUDecomposition(1.0e-12).solve(b, solution);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(x[i], solution[i], 1.0e-12);
+    }
+
+  }
+
+  public void testSingular() {
+    BandMatrix a = new BandMatrix(4, 1, 1);
+    a.setElement(0, 0, 1.0);
+    a.setElement(1, 1, 1.0);
+    a.setElement(3, 3, 1.0);
+    try {
+      a.solve(new DiagonalMatrix(4, 1.0), 1.0e-12);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+    assertEquals(0.0, a.getDeterminant(1.0e-12), 0.0);
+  }
+
+  public static Test suite() {
+    return new TestSuite(BandMatrixTest.class);
+  }
+
+  private BandMatrix buildBand(int order, int lower, int upper) {
+    BandMatrix b = new BandMatrix(order, lower, upper);
+    for (int i = 0; i < order; ++i) {
+      for (int j = Math.max(0, i - lower); j < Math.min(order, i + upper + 1); ++j) {
+        b.setElement(i, j, Math.sin(1.1 * i + 0.3 * j) + ((i == j) ? 2.0 : 0.0));
+      }
+    }
+    return b;
+  }
+
+}
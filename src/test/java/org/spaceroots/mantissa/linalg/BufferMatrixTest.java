@@ -0,0 +1,303 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.*;
+
+public class BufferMatrixTest
+  extends TestCase {
+
+  public BufferMatrixTest(String name) {
+    super(name);
+  }
+
+  public void testElements() {
+    int[] storages = { BufferMatrix.HEAP, BufferMatrix.DIRECT };
+    for (int k = 0; k < storages.length; ++k) {
+      // small buffers, to have several rows per buffer and several buffers
+      BufferMatrix b = new BufferMatrix(7, 5, storages[k], 12);
+      assertEquals(storages[k], b.getStorage());
+      Matrix dense = buildDense(7, 5, 0.3);
+      for (int i = 0; i < 7; ++i) {
+        for (int j = 0; j < 5; ++j) {
+          assertEquals(0.0, b.getElement(i, j), 0.0);
+          b.setElement(i, j, dense.getElement(i, j));
+        }
+      }
+      MatrixChecker.checkEquals(dense, b, 0.0);
+      MatrixChecker.checkEquals(dense, new GeneralMatrix(b), 0.0);
+      assertEquals(dense.toString(), b.toString());
+      MatrixChecker.checkEquals(dense, b.duplicate(), 0.0);
+    }
+    try {
+      new BufferMatrix(3, 3, BufferMatrix.MAPPED);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testOperations() {
+
+    Matrix d1 = buildDense(37, 23, 0.3);
+    Matrix d2 = buildDense(23, 19, -1.1);
+    Matrix d3 = buildDense(37, 23, 2.0);
+    BufferMatrix b1 = new BufferMatrix(d1, BufferMatrix.DIRECT);
+    BufferMatrix b2 = new BufferMatrix(d2, BufferMatrix.HEAP);
+    BufferMatrix b3 = new BufferMatrix(d3, BufferMatrix.DIRECT);
+
+    MatrixChecker.checkEquals(d1.mul(d2), b1.mul(b2), 1.0e-12);
+    MatrixChecker.checkEquals(d1.mul(d2), b1.mul(d2), 1.0e-12);
+    MatrixChecker.checkEquals(d1.mul(d2), d1.mul(b2), 1.0e-12);
+    assertTrue(b1.mul(b2) instanceof BufferMatrix);
+    assertTrue(d1.mul(b2) instanceof BufferMatrix);
+    assertEquals(BufferMatrix.HEAP, ((BufferMatrix) b2.getTranspose()).getStorage());
+    assertEquals(BufferMatrix.DIRECT, ((BufferMatrix) b1.getTranspose()).getStorage());
+
+    MatrixChecker.checkEquals(d1.add(d3), b1.add(b3), 0.0);
+    MatrixChecker.checkEquals(d1.sub(d3), b1.sub(d3), 0.0);
+    MatrixChecker.checkEquals(d1.getTranspose(), b1.getTranspose(), 0.0);
+    MatrixChecker.checkEquals(d1.mul(2.5), b1.mul(2.5), 0.0);
+
+    double[] x = new double[23];
+    for (int j = 0; j < x.length; ++j) {
+      x[j] = j - 11.5;
+    }
+    double[] y1 = new double[37];
+    double[] y2 = new double[37];
+    d1.apply(x, y1);
+    b1.apply(x, y2);
+    for (int i = 0; i < y1.length; ++i) {
+      assertEquals(y1[i], y2[i], 1.0e-12);
+    }
+
+    try {
+      b1.mul(b1);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+  }
+
+  public void testLU()
+    throws SingularMatrixException {
+
+    int n = 40;
+    GeneralSquareMatrix a = new GeneralSquareMatrix(n, buildDense(n, n, 0.7).getDenseData());
+    BufferMatrix b = new BufferMatrix(a, BufferMatrix.DIRECT);
+
+    BufferLUDecomposition blu = new BufferLUDecomposition(b, 1.0e-10);
+    LUDecomposition       lu  = a.getLUDecomposition(1.0e-10);
+    assertEquals(lu.getDeterminant(), blu.getDeterminant(),
+                 1.0e-10 * Math.abs(lu.getDeterminant()));
+    MatrixChecker.checkEquals(a, b, 0.0);
+
+    double[] rhs = new double[3 * n];
+    for (int i = 0; i < rhs.length; ++i) {
+      rhs[i] = Math.cos(i);
+    }
+    double[] x1 = new double[rhs.length];
+    double[] x2 = new double[rhs.length];
+    lu.solve(rhs, 3, x1);
+    blu.solve(rhs, 3, x2);
+    for (int i = 0; i < x1.length; ++i) {
+      assertEquals(x1[i], x2[i], 1.0e-10);
+    }
+
+    // in place decomposition, with several buffers
+    BufferMatrix c = new BufferMatrix(n, n, BufferMatrix.HEAP, 3 * n);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        c.setElement(i, j, a.getElement(i, j));
+      }
+    }
+    for (int j = 0; j < n; j += 7) {
+      for (int iStart = 0; iStart < n; iStart += 5) {
+        int iMax = iStart;
+        for (int i = iStart + 1; i < n; ++i) {
+          if (Math.abs(c.getElement(i, j)) > Math.abs(c.getElement(iMax, j))) {
+            iMax = i;
+          }
+        }
+        assertEquals(iMax, c.findColumnPivot(c.getViews(), j, iStart));
+      }
+    }
+    Matrix rhsMatrix = new GeneralMatrix(n, 3, rhs);
+    Factorization f  = new BufferLUDecomposition(c, 1.0e-10, true);
+    assertEquals(lu.getDeterminant(), f.getDeterminant(),
+                 1.0e-10 * Math.abs(lu.getDeterminant()));
+    Matrix solution  = f.solve(rhsMatrix);
+    MatrixChecker.checkEquals(new GeneralMatrix(n, 3, x1), solution, 1.0e-10);
+
+    try {
+      new BufferLUDecomposition(new BufferMatrix(3, 3, BufferMatrix.HEAP), 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+
+  }
+
+  public void testTriangularSolve()
+    throws SingularMatrixException {
+
+    int n = 9;
+    LowerTriangularMatrix l = new LowerTriangularMatrix(n);
+    UpperTriangularMatrix u = new UpperTriangularMatrix(n);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        l.setElement(i, j, (i == j) ? (i + 2.0) : Math.sin(i + 2 * j));
+        u.setElement(j, i, (i == j) ? (i + 3.0) : Math.cos(i - j));
+      }
+    }
+    double[] rhs = new double[2 * n];
+    for (int i = 0; i < rhs.length; ++i) {
+      rhs[i] = i - 4.0;
+    }
+    Matrix b = new GeneralMatrix(n, 2, rhs);
+
+    double[] x = new double[rhs.length];
+    new BufferMatrix(l, BufferMatrix.HEAP).solveLowerTriangular(rhs, 2, x, 1.0e-10);
+    MatrixChecker.checkEquals(l.solve(b, 1.0e-10), new GeneralMatrix(n, 2, x), 1.0e-12);
+
+    // the other half of the matrix must be ignored
+    BufferMatrix full = new BufferMatrix(u.add(l), BufferMatrix.DIRECT);
+    for (int i = 0; i < n; ++i) {
+      full.setElement(i, i, u.getElement(i, i));
+    }
+    System.arraycopy(rhs, 0, x, 0, rhs.length);
+    full.solveUpperTriangular(x, 2, x, 1.0e-10);
+    MatrixChecker.checkEquals(u.solve(b, 1.0e-10), new GeneralMatrix(n, 2, x), 1.0e-12);
+
+    full.setElement(3, 3, 0.0);
+    try {
+      full.solveUpperTriangular(rhs, 2, x, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+
+  }
+
+  public void testMapped()
+    throws IOException {
+
+    File file = File.createTempFile("mantissa", ".bin");
+    try {
+
+      Matrix dense = buildDense(11, 6, 0.4);
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        BufferMatrix m = new BufferMatrix(11, 6, raf.getChannel(), 16, false, 20);
+        assertEquals(BufferMatrix.MAPPED, m.getStorage());
+        for (int i = 0; i < 11; ++i) {
+          for (int j = 0; j < 6; ++j) {
+            m.setElement(i, j, dense.getElement(i, j));
+          }
+        }
+        MatrixChecker.checkEquals(dense.mul(dense.getTranspose()),
+                                  m.mul(m.getTranspose()), 1.0e-12);
+        assertEquals(BufferMatrix.DIRECT, ((BufferMatrix) m.getTranspose()).getStorage());
+      } finally {
+        raf.close();
+      }
+
+      // the file uses little endian raw doubles after the offset
+      raf = new RandomAccessFile(file, "r");
+      try {
+        FileChannel channel = raf.getChannel();
+        assertEquals(16 + 8 * 66, channel.size());
+        ByteBuffer bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(bytes, 16 + 8 * (3 * 6 + 4));
+        bytes.flip();
+        assertEquals(dense.getElement(3, 4), bytes.getDouble(), 0.0);
+
+        BufferMatrix m = MatrixFactory.mapMatrix(11, 6, channel, 16, true);
+        MatrixChecker.checkEquals(dense, m, 0.0);
+        try {
+          m.setElement(0, 0, 1.0);
+          fail("an exception should have been thrown");
+        } catch (ReadOnlyBufferException e) {
+          // expected
+        }
+      } finally {
+        raf.close();
+      }
+
+    } finally {
+      file.delete();
+    }
+
+  }
+
+  public void testSerialization()
+    throws IOException, ClassNotFoundException {
+    Matrix dense = buildDense(5, 8, 1.3);
+    BufferMatrix m = new BufferMatrix(dense, BufferMatrix.HEAP);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream    oos = new ObjectOutputStream(bos);
+    oos.writeObject(m);
+    oos.close();
+    ObjectInputStream ois =
+      new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    BufferMatrix read = (BufferMatrix) ois.readObject();
+    assertEquals(BufferMatrix.HEAP, read.getStorage());
+    MatrixChecker.checkEquals(dense, read, 0.0);
+  }
+
+  public void testParallelMode()
+    throws SingularMatrixException {
+
+    Matrix d1 = buildDense(61, 61, 0.3);
+    BufferMatrix b1 = MatrixFactory.buildBufferMatrix(61, 61, BufferMatrix.DIRECT);
+    for (int i = 0; i < 61; ++i) {
+      for (int j = 0; j < 61; ++j) {
+        b1.setElement(i, j, d1.getElement(i, j));
+      }
+    }
+
+    Matrix[] serial = { b1.mul(b1), b1.mul(d1), b1.add(d1), b1.getTranspose() };
+    double det = new BufferLUDecomposition(b1, 1.0e-10).getDeterminant();
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Matrix.setParallelMode(pool, 0);
+      Matrix[] parallel = { b1.mul(b1), b1.mul(d1), b1.add(d1), b1.getTranspose() };
+      for (int k = 0; k < serial.length; ++k) {
+        MatrixChecker.checkEquals(serial[k], parallel[k], 0.0);
+      }
+      assertEquals(det, new BufferLUDecomposition(b1, 1.0e-10).getDeterminant(), 0.0);
+    } finally {
+      Matrix.setSerialMode();
+      pool.shutdown();
+    }
+
+  }
+
+  public static Test suite() {
+    return new TestSuite(BufferMatrixTest.class);
+  }
+
+  private Matrix buildDense(int rows, int columns, double seed) {
+    GeneralMatrix m = new GeneralMatrix(rows, columns);
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < columns; ++j) {
+        m.setElement(i, j, Math.sin(seed + 3 * i + j) + ((i == j) ? 4.0 : 0.0));
+      }
+    }
+    return m;
+  }
+
+}
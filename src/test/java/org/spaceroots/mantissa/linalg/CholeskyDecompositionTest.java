@@ -0,0 +1,253 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class CholeskyDecompositionTest
+  extends TestCase {
+
+  public CholeskyDecompositionTest(String name) {
+    super(name);
+  }
+
+  public void testFactor()
+    throws NotPositiveDefiniteMatrixException {
+
+    SymetricalMatrix a = buildPositiveDefinite(8);
+    CholeskyDecomposition cholesky = new CholeskyDecomposition(a, 1.0e-10);
+    assertEquals(8, cholesky.getOrder());
+
+    LowerTriangularMatrix l = cholesky.getL();
+    Matrix product = l.mul(l.getTranspose());
+    for (int i = 0; i < a.getRows(); ++i) {
+      assertTrue(l.getElement(i, i) > 0);
+      for (int j = 0; j < a.getColumns(); ++j) {
+        assertEquals(a.getElement(i, j), product.getElement(i, j), 1.0e-12);
+      }
+    }
+
+  }
+
+  public void testPackedStorage()
+    throws NotPositiveDefiniteMatrixException {
+
+    SymetricalMatrix a = buildPositiveDefinite(6);
+    double[] packed = new double[6 * 7 / 2];
+    for (int i = 0, index = 0; i < 6; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        packed[index++] = a.getElement(i, j);
+      }
+    }
+
+    double[] l1 = new CholeskyDecomposition(6, packed, 1.0e-10).getPackedL();
+    double[] l2 = new CholeskyDecomposition(a, 1.0e-10).getPackedL();
+    assertEquals(packed.length, l1.length);
+    for (int i = 0; i < l1.length; ++i) {
+      assertEquals(l2[i], l1[i], 0.0);
+    }
+
+    try {
+      new CholeskyDecomposition(5, packed, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+  }
+
+  public void testNotPositiveDefinite() {
+    SymetricalMatrix a = new SymetricalMatrix(2, new double[] {
+      1.0, 2.0,
+      2.0, 1.0
+    });
+    try {
+      new CholeskyDecomposition(a, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (NotPositiveDefiniteMatrixException e) {
+      // expected
+    }
+  }
+
+  public void testNearSingular()
+    throws NotPositiveDefiniteMatrixException {
+
+    // the threshold applies to the pivots, as in LU decomposition
+    SymetricalMatrix a = new SymetricalMatrix(2, new double[] {
+      1.0, 0.0,
+      0.0, 1.0e-8
+    });
+    try {
+      new CholeskyDecomposition(a, 1.0e-6);
+      fail("an exception should have been thrown");
+    } catch (NotPositiveDefiniteMatrixException e) {
+      // expected
+    }
+    CholeskyDecomposition cholesky = new CholeskyDecomposition(a, 1.0e-10);
+    assertEquals(1.0e-4, cholesky.getL().getElement(1, 1), 1.0e-18);
+
+  }
+
+  public void testNearSingularDowndate()
+    throws NotPositiveDefiniteMatrixException {
+
+    // a downdate leaving a pivot of 1.0e-8
+    double[] e = new double[] { 1.0, 0.0 };
+    CholeskyDecomposition identity =
+      new CholeskyDecomposition(new SymetricalMatrix(2, new double[] {
+                                  1.0, 0.0,
+                                  0.0, 1.0
+                                }), 1.0e-10);
+    try {
+      identity.update(-(1.0 - 1.0e-8), e, 1.0e-6);
+      fail("an exception should have been thrown");
+    } catch (NotPositiveDefiniteMatrixException ex) {
+      // expected
+    }
+    identity.update(-(1.0 - 1.0e-8), e, 1.0e-10);
+
+  }
+
+  public void testSolveAndInverse()
+    throws NotPositiveDefiniteMatrixException, SingularMatrixException {
+
+    SymetricalMatrix a = buildPositiveDefinite(11);
+    CholeskyDecomposition cholesky = new CholeskyDecomposition(a, 1.0e-10);
+    LUDecomposition lu = new LUDecomposition(a, 1.0e-10);
+
+    assertEquals(lu.getDeterminant(), cholesky.getDeterminant(),
+                 1.0e-10 * Math.abs(lu.getDeterminant()));
+
+    int nRhs = 3;
+    double[] b = new double[a.getRows() * nRhs];
+    for (int i = 0; i < b.length; ++i) {
+      b[i] = i - 0.5 * b.length;
+    }
+    double[] xCholesky = new double[b.length];
+    double[] xLU       = new double[b.length];
+    cholesky.solve(b, nRhs, xCholesky);
+    lu.solve(b, nRhs, xLU);
+    for (int i = 0; i < b.length; ++i) {
+      assertEquals(xLU[i], xCholesky[i], 1.0e-10);
+    }
+
+    SymetricalMatrix inverse = cholesky.getInverse();
+    Matrix identity = a.mul(inverse);
+    for (int i = 0; i < a.getRows(); ++i) {
+      for (int j = 0; j < a.getColumns(); ++j) {
+        assertEquals((i == j) ? 1.0 : 0.0, identity.getElement(i, j), 1.0e-10);
+        assertEquals(inverse.getElement(i, j), inverse.getElement(j, i), 0.0);
+      }
+    }
+
+  }
+
+  public void testSymetricalMatrixFallback()
+    throws SingularMatrixException {
+
+    // symetrical but not positive definite matrix
+    SymetricalMatrix a = new SymetricalMatrix(3, new double[] {
+      1.0, 2.0, 0.0,
+      2.0, 1.0, 1.0,
+      0.0, 1.0, 3.0
+    });
+
+    try {
+      a.getCholeskyDecomposition(1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (NotPositiveDefiniteMatrixException e) {
+      // expected
+    }
+
+    assertEquals(-10.0, a.getDeterminant(1.0e-10), 1.0e-10);
+    Matrix identity = a.mul(a.getInverse(1.0e-10));
+    for (int i = 0; i < a.getRows(); ++i) {
+      for (int j = 0; j < a.getColumns(); ++j) {
+        assertEquals((i == j) ? 1.0 : 0.0, identity.getElement(i, j), 1.0e-10);
+      }
+    }
+
+    // once modified, the matrix becomes positive definite
+    a.setElementAndSymetricalElement(0, 0, 10.0);
+    assertTrue(a.getInverse(1.0e-10) instanceof SymetricalMatrix);
+
+  }
+
+  public void testUpdateDowndate()
+    throws NotPositiveDefiniteMatrixException {
+
+    SymetricalMatrix a = buildPositiveDefinite(7);
+    CholeskyDecomposition cholesky = new CholeskyDecomposition(a, 1.0e-10);
+    double[][] measurements = new double[4][7];
+    for (int k = 0; k < measurements.length; ++k) {
+      for (int i = 0; i < 7; ++i) {
+        measurements[k][i] = Math.cos(0.4 * k - 1.1 * i);
+      }
+    }
+
+    // add the measurements one at a time
+    SymetricalMatrix reference = new SymetricalMatrix(a);
+    CholeskyDecomposition updated = cholesky;
+    for (int k = 0; k < measurements.length; ++k) {
+      reference.selfAddWAAt(0.5 + k, measurements[k]);
+      updated = updated.update(0.5 + k, measurements[k], 1.0e-10);
+      checkFactor(reference, updated, 1.0e-12);
+    }
+    checkFactor(a, cholesky, 1.0e-12);
+
+    // remove them in a different order
+    for (int k = measurements.length - 1; k >= 0; --k) {
+      int index = (k + 2) % measurements.length;
+      reference.selfAddWAAt(-0.5 - index, measurements[index]);
+      updated = updated.update(-0.5 - index, measurements[index], 1.0e-10);
+      checkFactor(reference, updated, 1.0e-11);
+    }
+    checkFactor(a, updated, 1.0e-11);
+
+    // a downdate that removes positive definiteness
+    double[] e = new double[7];
+    e[3] = 1.0;
+    try {
+      cholesky.update(-2 * a.getElement(3, 3), e, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (NotPositiveDefiniteMatrixException ex) {
+      // expected
+    }
+
+    try {
+      cholesky.update(1.0, new double[3], 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+
+  }
+
+  public static Test suite() {
+    return new TestSuite(CholeskyDecompositionTest.class);
+  }
+
+  private void checkFactor(SymetricalMatrix a, CholeskyDecomposition cholesky,
+                           double tolerance) {
+    LowerTriangularMatrix l = cholesky.getL();
+    Matrix product = l.mul(l.getTranspose());
+    for (int i = 0; i < a.getRows(); ++i) {
+      assertTrue(l.getElement(i, i) > 0);
+      for (int j = 0; j < a.getColumns(); ++j) {
+        assertEquals(a.getElement(i, j), product.getElement(i, j),
+                     tolerance * Math.max(1.0, Math.abs(a.getElement(i, j))));
+      }
+    }
+  }
+
+  private SymetricalMatrix buildPositiveDefinite(int order) {
+    SymetricalMatrix s = new SymetricalMatrix(order);
+    double[] a = new double[order];
+    for (int k = 0; k < order; ++k) {
+      for (int i = 0; i < order; ++i) {
+        a[i] = Math.sin(k + 2.0 * i) + ((i == k) ? 2.0 : 0.0);
+      }
+      s.selfAddWAAt(1.0, a);
+    }
+    return s;
+  }
+
+}
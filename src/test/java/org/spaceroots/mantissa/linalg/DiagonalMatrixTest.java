@@ -80,6 +80,24 @@ public class DiagonalMatrixTest
 
   }
 
+  public void testAddSub() {
+    DiagonalMatrix d1 = new DiagonalMatrix(4, 2.5);
+    DiagonalMatrix d2 = new DiagonalMatrix(4, 1.5);
+
+    Matrix sum = d1.add(d2);
+    assertTrue(sum instanceof DiagonalMatrix);
+    Matrix difference = d1.sub(d2);
+    assertTrue(difference instanceof DiagonalMatrix);
+
+    for (int i = 0; i < 4; ++i) {
+      for (int j = 0; j < 4; ++j) {
+        assertEquals((i == j) ? 4.0 : 0.0, sum.getElement(i, j), 1.0e-10);
+        assertEquals((i == j) ? 1.0 : 0.0, difference.getElement(i, j), 1.0e-10);
+      }
+    }
+
+  }
+
   public void testDeterminant() {
 
     double expected;
@@ -157,6 +175,30 @@ public class DiagonalMatrixTest
 
   }
 
+  public void testSolveSparseRightHandSide()
+    throws SingularMatrixException {
+
+    DiagonalMatrix d = new DiagonalMatrix(4);
+    for (int i = 0; i < d.getRows(); ++i) {
+      d.setElement(i, i, i + 1.0);
+    }
+
+    SparseMatrix b = MatrixFactory.buildSparseMatrix(4, 2,
+                                                     new int[]    { 0, 1, 3, 3 },
+                                                     new int[]    { 1, 0, 0, 1 },
+                                                     new double[] { 2.0, 4.0, 8.0, 12.0 });
+    Matrix result = d.solve(b, 1.0e-10);
+
+    assertEquals(4, result.getRows());
+    assertEquals(2, result.getColumns());
+    for (int i = 0; i < result.getRows(); ++i) {
+      for (int j = 0; j < result.getColumns(); ++j) {
+        assertEquals(b.getElement(i, j) / (i + 1.0), result.getElement(i, j), 1.0e-15);
+      }
+    }
+
+  }
+
   public static Test suite() {
     return new TestSuite(DiagonalMatrixTest.class);
   }
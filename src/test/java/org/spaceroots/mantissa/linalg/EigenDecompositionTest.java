@@ -0,0 +1,143 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.*;
+
+public class EigenDecompositionTest
+  extends TestCase {
+
+  public EigenDecompositionTest(String name) {
+    super(name);
+  }
+
+  public void testKnownValues()
+    throws ConvergenceException {
+    SymetricalMatrix a = new SymetricalMatrix(3, new double[] {
+      2.0, 1.0, 0.0,
+      1.0, 2.0, 0.0,
+      0.0, 0.0, 5.0
+    });
+    double[] expected = { 1.0, 3.0, 5.0 };
+    checkValues(expected, new EigenDecomposition(a, true).getEigenvalues());
+    checkValues(expected, new EigenDecomposition(a, false).getEigenvalues());
+    checkValues(expected, new JacobiEigenDecomposition(a, true).getEigenvalues());
+    checkValues(expected, new JacobiEigenDecomposition(a, false).getEigenvalues());
+  }
+
+  public void testQL() {
+    for (int order = 1; order < 40; order += 7) {
+      checkDecomposition(buildMatrix(order), new EigenDecomposition(buildMatrix(order), true));
+    }
+  }
+
+  public void testJacobi()
+    throws ConvergenceException {
+    for (int order = 1; order < 40; order += 7) {
+      checkDecomposition(buildMatrix(order), new JacobiEigenDecomposition(buildMatrix(order), true));
+    }
+  }
+
+  public void testJacobiParallel()
+    throws ConvergenceException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Matrix.setParallelMode(pool, 0);
+      SymetricalMatrix a = buildMatrix(60);
+      checkDecomposition(a, new JacobiEigenDecomposition(a, true));
+    } finally {
+      Matrix.setSerialMode();
+      pool.shutdown();
+    }
+  }
+
+  public void testValuesOnly()
+    throws ConvergenceException {
+    SymetricalMatrix a = buildMatrix(25);
+    EigenDecomposition full = new EigenDecomposition(a, true);
+    EigenDecomposition ql   = new EigenDecomposition(a, false);
+    EigenDecomposition jac  = new JacobiEigenDecomposition(a, false);
+    assertFalse(ql.hasEigenvectors());
+    checkValues(full.getEigenvalues(), ql.getEigenvalues());
+    checkValues(full.getEigenvalues(), jac.getEigenvalues());
+    try {
+      ql.getV();
+      fail("an exception should have been thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testJacobiConvergenceFailure() {
+    SymetricalMatrix a = buildMatrix(5);
+    a.setElementAndSymetricalElement(3, 1, Double.NaN);
+    try {
+      new JacobiEigenDecomposition(a, false);
+      fail("an exception should have been thrown");
+    } catch (ConvergenceException ce) {
+      // expected
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(EigenDecompositionTest.class);
+  }
+
+  private void checkValues(double[] expected, double[] values) {
+    assertEquals(expected.length, values.length);
+    for (int i = 0; i < values.length; ++i) {
+      assertEquals(expected[i], values[i], 1.0e-10 * Math.max(1.0, Math.abs(expected[i])));
+    }
+  }
+
+  private void checkDecomposition(SymetricalMatrix a, EigenDecomposition ed) {
+
+    int n = a.getRows();
+    assertEquals(n, ed.getOrder());
+    double[] values = ed.getEigenvalues();
+    for (int i = 1; i < n; ++i) {
+      assertTrue(values[i - 1] <= values[i]);
+    }
+
+    // V is orthogonal
+    Matrix v   = ed.getV();
+    Matrix vtv = v.getTranspose().mul(v);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        assertEquals((i == j) ? 1.0 : 0.0, vtv.getElement(i, j), 1.0e-12);
+      }
+    }
+
+    // V.D.Vt = A
+    Matrix vdvt = v.mul(ed.getD()).mul(v.getTranspose());
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        assertEquals(a.getElement(i, j), vdvt.getElement(i, j), 1.0e-10);
+      }
+    }
+
+    // A.v = lambda.v
+    for (int k = 0; k < n; ++k) {
+      double[] x = ed.getEigenvector(k);
+      for (int i = 0; i < n; ++i) {
+        double ax = 0;
+        for (int j = 0; j < n; ++j) {
+          ax += a.getElement(i, j) * x[j];
+        }
+        assertEquals(ed.getEigenvalue(k) * x[i], ax, 1.0e-10);
+      }
+    }
+
+  }
+
+  private SymetricalMatrix buildMatrix(int order) {
+    SymetricalMatrix s = new SymetricalMatrix(order);
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        s.setElementAndSymetricalElement(i, j, Math.sin(1.3 * i + 0.7 * j) + Math.cos(0.7 * i + 1.3 * j));
+      }
+    }
+    return s;
+  }
+
+}
@@ -0,0 +1,167 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.*;
+
+public class FactorizationTest
+  extends TestCase {
+
+  public FactorizationTest(String name) {
+    super(name);
+  }
+
+  public void testSelectedAlgorithm()
+    throws SingularMatrixException {
+
+    GeneralSquareMatrix g = buildGeneral(5);
+    assertTrue(g.factorize(1.0e-10) instanceof LUDecomposition);
+    assertSame(g.getLUDecomposition(1.0e-10), g.factorize(1.0e-10));
+
+    SymetricalMatrix s = buildSPD(5);
+    assertTrue(s.factorize(1.0e-10) instanceof CholeskyDecomposition);
+    s.setElement(2, 2, -10.0);
+    assertTrue(s.factorize(1.0e-10) instanceof LUDecomposition);
+
+    BandMatrix b = new BandMatrix(6, 1, 2);
+    for (int i = 0; i < 6; ++i) {
+      for (int j = Math.max(0, i - 1); j < Math.min(6, i + 3); ++j) {
+        b.setElement(i, j, (i == j) ? 4.0 : Math.sin(i + 2.0 * j));
+      }
+    }
+    assertTrue(b.factorize(1.0e-10) instanceof BandLUDecomposition);
+
+    LowerTriangularMatrix l = new LowerTriangularMatrix(4);
+    for (int i = 0; i < 4; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        l.setElement(i, j, i + j + 1.0);
+      }
+    }
+    assertTrue(l.factorize(1.0e-10) instanceof LUDecomposition);
+
+    SquareMatrix[] matrices = { g, s, b, l, new DiagonalMatrix(3, 2.0) };
+    for (int k = 0; k < matrices.length; ++k) {
+      SquareMatrix  m = matrices[k];
+      Factorization f = m.factorize(1.0e-10);
+      assertEquals(m.getRows(), f.getOrder());
+      assertEquals(m.getDeterminant(1.0e-10), f.getDeterminant(),
+                   1.0e-10 * Math.abs(f.getDeterminant()));
+      Matrix x = f.solve(buildRhs(m.getRows(), 2));
+      MatrixChecker.checkRelativeEquals(buildRhs(m.getRows(), 2), m.mul(x), 1.0e-10);
+    }
+
+  }
+
+  public void testSnapshot()
+    throws SingularMatrixException {
+    GeneralSquareMatrix m = buildGeneral(4);
+    double[] reference = buildRhs(4, 1).getDenseData();
+    Factorization f = m.factorize(1.0e-10);
+    double determinant = f.getDeterminant();
+    double[] x1 = new double[4];
+    f.solve(reference, x1);
+
+    // modifying the matrix does not change the snapshot
+    m.setElement(1, 2, 100.0);
+    assertNotSame(f, m.factorize(1.0e-10));
+    assertEquals(determinant, f.getDeterminant(), 0.0);
+    double[] x2 = new double[4];
+    f.solve(reference, x2);
+    for (int i = 0; i < 4; ++i) {
+      assertEquals(x1[i], x2[i], 0.0);
+    }
+
+    try {
+      new GeneralSquareMatrix(3).factorize(1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+  }
+
+  public void testConcurrentSolves()
+    throws Exception {
+
+    final int n = 60;
+    final GeneralSquareMatrix m = buildGeneral(n);
+    final Factorization f = m.factorize(1.0e-10);
+    final SquareMatrix s = buildSPD(n);
+    final Factorization c = s.factorize(1.0e-10);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List futures = new ArrayList();
+      for (int task = 0; task < 32; ++task) {
+        final int seed = task;
+        futures.add(executor.submit(new Callable() {
+            public Object call() {
+              double error = 0;
+              double[] b = new double[n];
+              double[] x = new double[n];
+              double[] y = new double[n];
+              for (int loop = 0; loop < 20; ++loop) {
+                for (int i = 0; i < n; ++i) {
+                  b[i] = Math.sin(seed + 0.1 * loop + i);
+                }
+                Factorization current = (loop % 2 == 0) ? f : c;
+                current.solve(b, x);
+                ((loop % 2 == 0) ? (Matrix) m : s).apply(x, y);
+                for (int i = 0; i < n; ++i) {
+                  error = Math.max(error, Math.abs(y[i] - b[i]));
+                }
+              }
+              return Double.valueOf(error);
+            }
+          }));
+      }
+      for (int i = 0; i < futures.size(); ++i) {
+        double error = ((Double) ((Future) futures.get(i)).get()).doubleValue();
+        assertTrue(error < 1.0e-12);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+  }
+
+  public static Test suite() {
+    return new TestSuite(FactorizationTest.class);
+  }
+
+  private GeneralSquareMatrix buildGeneral(int n) {
+    GeneralSquareMatrix m = new GeneralSquareMatrix(n);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        m.setElement(i, j, Math.cos(0.7 * i - 1.3 * j) + ((i == j) ? 0.5 * n : 0.0));
+      }
+    }
+    return m;
+  }
+
+  private SymetricalMatrix buildSPD(int n) {
+    SymetricalMatrix s = new SymetricalMatrix(n);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        s.setElementAndSymetricalElement(i, j,
+                                         (i == j) ? n : 1.0 / (1 + i + j));
+      }
+    }
+    return s;
+  }
+
+  private Matrix buildRhs(int n, int nRhs) {
+    GeneralMatrix b = new GeneralMatrix(n, nRhs);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < nRhs; ++j) {
+        b.setElement(i, j, i - 0.5 * j + 1.0);
+      }
+    }
+    return b;
+  }
+
+}
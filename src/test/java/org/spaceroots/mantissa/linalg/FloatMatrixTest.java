@@ -0,0 +1,144 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.*;
+
+import junit.framework.*;
+
+public class FloatMatrixTest
+  extends TestCase {
+
+  public FloatMatrixTest(String name) {
+    super(name);
+  }
+
+  public void testElements() {
+    FloatMatrix m = new FloatMatrix(2, 3);
+    m.setElement(1, 2, 0.1);
+    assertEquals((float) 0.1, m.getElement(1, 2), 0.0);
+    assertTrue(m.getElement(1, 2) != 0.1);
+    assertEquals(0.0, m.getElement(0, 0), 0.0);
+    try {
+      m.getElement(2, 0);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new FloatMatrix(2, 2, new float[3]);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testOperations() {
+    Matrix reference = build(5, 4, 0.3);
+    FloatMatrix m = new FloatMatrix(reference);
+    MatrixChecker.checkRelativeEquals(reference, m, 1.0e-7);
+    MatrixChecker.checkRelativeEquals(reference.add(reference), m.add(reference), 1.0e-7);
+    MatrixChecker.checkRelativeEquals(new GeneralMatrix(5, 4), m.sub(m), 0.0);
+    assertTrue(m.add(reference) instanceof GeneralMatrix);
+    // the operations do not modify the instance
+    MatrixChecker.checkRelativeEquals(reference, m, 1.0e-7);
+    try {
+      m.sub(build(4, 5, 0.3));
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException iae) {
+    }
+    MatrixChecker.checkRelativeEquals(reference.getTranspose(), m.getTranspose(), 1.0e-7);
+    assertTrue(m.getTranspose() instanceof FloatMatrix);
+    Matrix b = build(4, 3, 1.2);
+    MatrixChecker.checkRelativeEquals(reference.mul(b), m.mul(b), 1.0e-6);
+    MatrixChecker.checkRelativeEquals(reference.mul(b), b.getTranspose().mul(m.getTranspose()).getTranspose(), 1.0e-6);
+
+    double[] x = { 1.0, -2.0, 0.5, 3.0 };
+    double[] y = new double[5];
+    m.apply(x, y);
+    for (int i = 0; i < y.length; ++i) {
+      double sum = 0;
+      for (int j = 0; j < x.length; ++j) {
+        sum += m.getElement(i, j) * x[j];
+      }
+      assertEquals(sum, y[i], 1.0e-14);
+    }
+
+    Matrix copy = m.duplicate();
+    m.selfMul(2.0);
+    MatrixChecker.checkRelativeEquals(copy.add(copy), m, 0.0);
+  }
+
+  public void testLU()
+    throws SingularMatrixException {
+    int n = 8;
+    Matrix a = build(n, n, 0.7);
+    FloatLUDecomposition flu = new FloatLUDecomposition(a, 1.0e-10);
+    LUDecomposition      dlu = new LUDecomposition(new GeneralSquareMatrix(n, a.getDenseData()),
+                                                   1.0e-10);
+    assertEquals(n, flu.getOrder());
+    assertEquals(dlu.getDeterminant(), flu.getDeterminant(),
+                 1.0e-5 * Math.abs(dlu.getDeterminant()));
+
+    double[] b = new double[n];
+    for (int i = 0; i < n; ++i) {
+      b[i] = i - 2.5;
+    }
+    double[] xf = new double[n];
+    double[] xd = new double[n];
+    flu.solve(b, xf);
+    dlu.solve(b, xd);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(xd[i], xf[i], 1.0e-5 * Math.max(1.0, Math.abs(xd[i])));
+      assertTrue(xd[i] != xf[i]);
+    }
+
+    // in place solve
+    flu.solve(b, b);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(xf[i], b[i], 0.0);
+    }
+
+    Matrix singular = build(3, 3, 0.2);
+    for (int j = 0; j < 3; ++j) {
+      singular.setElement(2, j, 3 * singular.getElement(0, j));
+    }
+    try {
+      new FloatLUDecomposition(singular, 1.0e-5);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+    try {
+      new FloatLUDecomposition(build(2, 3, 0.0), 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testSerial()
+    throws IOException, ClassNotFoundException {
+    FloatMatrix m = new FloatMatrix(build(3, 4, 0.9));
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream    oos = new ObjectOutputStream(bos);
+    oos.writeObject(m);
+    ObjectInputStream ois =
+      new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    MatrixChecker.checkRelativeEquals(m, (Matrix) ois.readObject(), 0.0);
+  }
+
+  public static Test suite() {
+    return new TestSuite(FloatMatrixTest.class);
+  }
+
+  private Matrix build(int rows, int columns, double seed) {
+    Matrix m = new GeneralMatrix(rows, columns);
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < columns; ++j) {
+        m.setElement(i, j,
+                     Math.sin(seed + 1.3 * i + 0.7 * j) + ((i == j) ? 3.0 : 0.0));
+      }
+    }
+    return m;
+  }
+
+}
@@ -1,5 +1,7 @@
 package org.spaceroots.mantissa.linalg;
 
+import java.util.concurrent.ForkJoinPool;
+
 import junit.framework.*;
 
 public class GeneralMatrixTest
@@ -178,6 +180,192 @@ public class GeneralMatrixTest
 
   }
 
+  public void testMulBlocked() {
+
+    // dimensions chosen to cross the tiles boundaries
+    // and to leave some rows out of the four rows blocks
+    Matrix m1 = buildMatrix(151, 300, new BilinearPattern(0.3, -0.07));
+    Matrix m2 = buildMatrix(300, 270, new BilinearPattern(-1.1, 0.02));
+
+    Matrix m3 = m1.mul(m2);
+    assertTrue(m3 instanceof GeneralMatrix);
+
+    for (int i = 0; i < m3.getRows(); ++i) {
+      for (int j = 0; j < m3.getColumns(); ++j) {
+        double value = 0.0;
+        for (int k = 0; k < m1.getColumns(); ++k) {
+          value += m1.getElement(i, k) * m2.getElement(k, j);
+        }
+        assertEquals(value, m3.getElement(i, j), 0.0);
+      }
+    }
+
+  }
+
+  public void testParallelMode() {
+
+    Matrix m1 = buildMatrix(203, 97, new BilinearPattern(0.3, -0.07));
+    Matrix m2 = buildMatrix(97, 61, new BilinearPattern(-1.1, 0.02));
+    Matrix m3 = buildMatrix(203, 97, new BilinearPattern(1.0e-3, 7.0));
+    LowerTriangularMatrix l = new LowerTriangularMatrix(97);
+    for (int i = 0; i < l.getRows(); ++i) {
+      for (int j = 0; j <= i; ++j) {
+        l.setElement(i, j, Math.sin(i + 2 * j));
+      }
+    }
+
+    Matrix[] serial = {
+      m1.mul(m2), m1.mul(l), m1.add(m3), m1.sub(m3), m1.getTranspose(),
+      l.mul(l), l.getTranspose()
+    };
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Matrix.setParallelMode(pool, 0);
+      Matrix[] parallel = {
+        m1.mul(m2), m1.mul(l), m1.add(m3), m1.sub(m3), m1.getTranspose(),
+        l.mul(l), l.getTranspose()
+      };
+      Matrix dest = new GeneralMatrix(203, 61);
+      m1.mulInto(m2, dest);
+      checkSame(serial[0], dest);
+      dest = new GeneralMatrix(97, 203);
+      m1.transposeInto(dest);
+      checkSame(serial[4], dest);
+      for (int k = 0; k < serial.length; ++k) {
+        assertTrue(serial[k].getClass() == parallel[k].getClass());
+        for (int i = 0; i < serial[k].getRows(); ++i) {
+          for (int j = 0; j < serial[k].getColumns(); ++j) {
+            assertEquals(serial[k].getElement(i, j),
+                         parallel[k].getElement(i, j), 0.0);
+          }
+        }
+      }
+    } finally {
+      Matrix.setSerialMode();
+      pool.shutdown();
+    }
+
+  }
+
+  public void testIntoDestination() {
+
+    Matrix m1 = buildMatrix(151, 300, new BilinearPattern(0.3, -0.07));
+    Matrix m2 = buildMatrix(300, 70, new BilinearPattern(-1.1, 0.02));
+    Matrix m3 = buildMatrix(151, 300, new BilinearPattern(1.0e-3, 7.0));
+    LowerTriangularMatrix l = new LowerTriangularMatrix(300);
+    for (int i = 0; i < l.getRows(); ++i) {
+      for (int j = 0; j <= i; ++j) {
+        l.setElement(i, j, Math.sin(i + 2 * j));
+      }
+    }
+
+    // the destinations contain garbage before each operation
+    Matrix dest1 = buildMatrix(151, 300, new BilinearPattern(5.0, 5.0));
+    Matrix dest2 = buildMatrix(151, 70, new BilinearPattern(5.0, 5.0));
+    Matrix dest3 = buildMatrix(300, 151, new BilinearPattern(5.0, 5.0));
+
+    m1.addInto(m3, dest1);
+    checkSame(m1.add(m3), dest1);
+    m1.subInto(m3, dest1);
+    checkSame(m1.sub(m3), dest1);
+    m1.mulInto(m2, dest2);
+    checkSame(m1.mul(m2), dest2);
+    m1.mulInto(l, dest1);
+    checkSame(m1.mul(l), dest1);
+    m1.transposeInto(dest3);
+    checkSame(m1.getTranspose(), dest3);
+
+    // structured destinations
+    LowerTriangularMatrix dest4 = new LowerTriangularMatrix(300);
+    l.mulInto(l, dest4);
+    checkSame(l.mul(l), dest4);
+    l.addInto(l, dest4);
+    checkSame(l.add(l), dest4);
+    UpperTriangularMatrix dest5 = new UpperTriangularMatrix(300);
+    l.transposeInto(dest5);
+    checkSame(l.getTranspose(), dest5);
+
+    // the destination may be an operand of an addition
+    Matrix sum = m1.add(m3);
+    m1.addInto(m3, m1);
+    checkSame(sum, m1);
+
+  }
+
+  public void testMulAddInto() {
+
+    Matrix a = buildMatrix(6, 6, new BilinearPattern(0.3, -0.07));
+    Matrix p = buildMatrix(6, 6, new BilinearPattern(-1.1, 0.02));
+    Matrix q = buildMatrix(6, 6, new BilinearPattern(1.0e-3, 7.0));
+
+    Matrix expected = a.mul(p).mul(2.5).add(q.mul(-0.5));
+    GeneralSquareMatrix dest = new GeneralSquareMatrix(6);
+    a.mulAddInto(2.5, p, -0.5, q, dest);
+    for (int i = 0; i < 6; ++i) {
+      for (int j = 0; j < 6; ++j) {
+        assertEquals(expected.getElement(i, j), dest.getElement(i, j),
+                     1.0e-12 * Math.abs(expected.getElement(i, j)));
+      }
+    }
+
+    // accumulation into the destination itself
+    expected = dest.add(a.mul(p));
+    a.mulAddInto(1.0, p, 1.0, dest, dest);
+    for (int i = 0; i < 6; ++i) {
+      for (int j = 0; j < 6; ++j) {
+        assertEquals(expected.getElement(i, j), dest.getElement(i, j),
+                     1.0e-12 * Math.abs(expected.getElement(i, j)));
+      }
+    }
+
+    // the cached factorization must be reset
+    GeneralSquareMatrix s = new GeneralSquareMatrix(2, new double[] { 2, 1, 1, 3 });
+    assertEquals(5.0, s.getDeterminant(1.0e-10), 1.0e-12);
+    GeneralSquareMatrix id = new GeneralSquareMatrix(2, new double[] { 1, 0, 0, 1 });
+    id.mulInto(new GeneralSquareMatrix(2, new double[] { 1, 2, 3, 4 }), s);
+    assertEquals(-2.0, s.getDeterminant(1.0e-10), 1.0e-12);
+
+  }
+
+  public void testIntoKO() {
+
+    Matrix m = buildMatrix(4, 4, new BilinearPattern(1.0, 0.01));
+    Matrix[] invalid = {
+      new GeneralMatrix(4, 5), new LowerTriangularMatrix(4),
+      new SparseMatrix(4, 4), new BandMatrix(4, 1, 1)
+    };
+    for (int k = 0; k < invalid.length; ++k) {
+      try {
+        m.mulInto(m, invalid[k]);
+        fail("an exception should have been thrown");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+      try {
+        m.addInto(m, invalid[k]);
+        fail("an exception should have been thrown");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+
+    try {
+      m.mulInto(m, m);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    try {
+      m.transposeInto(m);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+  }
+
   public void testMulD() {
 
     Matrix m1 = buildMatrix(5, 10, new BilinearPattern(1.0, 0.01));
@@ -211,6 +399,30 @@ public class GeneralMatrixTest
 
   }
 
+  public void testApply() {
+
+    Matrix m = buildMatrix(5, 10, new BilinearPattern(1.0, 0.01));
+    double[] x = new double[10];
+    for (int j = 0; j < x.length; ++j) {
+      x[j] = j - 4.5;
+    }
+    double[] y = new double[5];
+    m.apply(x, y);
+
+    Matrix product = m.mul(new GeneralMatrix(10, 1, x));
+    for (int i = 0; i < y.length; ++i) {
+      assertEquals(product.getElement(i, 0), y[i], 1.0e-12);
+    }
+
+    try {
+      m.apply(y, x);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+  }
+
   public static Test suite() {
     return new TestSuite(GeneralMatrixTest.class);
   }
@@ -257,6 +469,16 @@ public class GeneralMatrixTest
 
   }
 
+  private void checkSame(Matrix expected, Matrix m) {
+    assertEquals(expected.getRows(),    m.getRows());
+    assertEquals(expected.getColumns(), m.getColumns());
+    for (int i = 0; i < m.getRows(); ++i) {
+      for (int j = 0; j < m.getColumns(); ++j) {
+        assertEquals(expected.getElement(i, j), m.getElement(i, j), 0.0);
+      }
+    }
+  }
+
   public void checkMatrix(Matrix m, ElementPattern pattern) {
     for (int i = 0; i < m.getRows(); ++i) {
       for (int j = 0; j < m.getColumns(); ++j) {
@@ -0,0 +1,235 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class IterativeSolverTest
+  extends TestCase {
+
+  public IterativeSolverTest(String name) {
+    super(name);
+  }
+
+  public void testConjugateGradient()
+    throws SingularMatrixException, ConvergenceException {
+
+    SparseMatrix a = buildLaplacian(20, 0.0);
+    double[]     b = buildRightHandSide(a.getRows());
+    ConjugateGradientSolver solver = new ConjugateGradientSolver(1000, 1.0e-10, 0.0);
+
+    double[] x = solver.solve(a, b, null);
+    checkSolution(a, b, x, 1.0e-9);
+    int plain = solver.getIterations();
+    assertTrue(solver.getResidualNorm() <= 1.0e-10 * norm(b));
+
+    // incomplete Cholesky-like preconditioning reduces the iterations
+    x = solver.solve(a, new ILUPreconditioner(a), b, null);
+    checkSolution(a, b, x, 1.0e-9);
+    assertTrue(solver.getIterations() < plain / 2);
+
+  }
+
+  public void testBiCGSTAB()
+    throws SingularMatrixException, ConvergenceException {
+
+    SparseMatrix a = buildLaplacian(20, 0.3);
+    double[]     b = buildRightHandSide(a.getRows());
+    BiCGSTABSolver solver = new BiCGSTABSolver(1000, 1.0e-10, 0.0);
+
+    checkSolution(a, b, solver.solve(a, b, null), 1.0e-9);
+    int plain = solver.getIterations();
+    checkSolution(a, b, solver.solve(a, new JacobiPreconditioner(a), b, null), 1.0e-9);
+    checkSolution(a, b, solver.solve(a, new ILUPreconditioner(a), b, null), 1.0e-9);
+    assertTrue(solver.getIterations() < plain);
+
+  }
+
+  public void testGMRES()
+    throws SingularMatrixException, ConvergenceException {
+
+    SparseMatrix a = buildLaplacian(20, 0.3);
+    double[]     b = buildRightHandSide(a.getRows());
+
+    // restarted and full versions
+    GMRESSolver restarted = new GMRESSolver(2000, 1.0e-10, 0.0, 30);
+    checkSolution(a, b, restarted.solve(a, b, null), 1.0e-9);
+    GMRESSolver full = new GMRESSolver(2000, 1.0e-10, 0.0, 400);
+    checkSolution(a, b, full.solve(a, b, null), 1.0e-9);
+    assertTrue(full.getIterations() <= restarted.getIterations());
+
+    checkSolution(a, b, restarted.solve(a, new ILUPreconditioner(a), b, null), 1.0e-9);
+
+  }
+
+  public void testDenseMatrix()
+    throws SingularMatrixException, ConvergenceException {
+
+    // dense matrices are linear operators too
+    Matrix a = buildLaplacian(6, 0.1).getDenseMatrix();
+    double[] b = buildRightHandSide(a.getRows());
+    double[] x = new GMRESSolver(100, 1.0e-12, 0.0, 36).solve(a, new ILUPreconditioner(a), b, null);
+    checkSolution(a, b, x, 1.0e-10);
+
+  }
+
+  public void testMatrixFreeOperator()
+    throws SingularMatrixException, ConvergenceException {
+
+    // one dimensional laplacian defined by a lambda expression
+    LinearOperator laplacian = (x, y) -> {
+      for (int i = 0; i < x.length; ++i) {
+        y[i] = 2 * x[i]
+             - ((i > 0) ? x[i - 1] : 0)
+             - ((i < x.length - 1) ? x[i + 1] : 0);
+      }
+    };
+    double[] b = buildRightHandSide(50);
+    double[] x = new ConjugateGradientSolver(100, 1.0e-12, 0.0).solve(laplacian, b, null);
+    checkSolution(laplacian, b, x, 1.0e-10);
+
+  }
+
+  public void testStartPoint()
+    throws SingularMatrixException, ConvergenceException {
+
+    SparseMatrix a = buildLaplacian(10, 0.0);
+    double[]     b = buildRightHandSide(a.getRows());
+    ConjugateGradientSolver solver = new ConjugateGradientSolver(1000, 1.0e-10, 0.0);
+    double[] x = solver.solve(a, b, null);
+
+    // starting from the solution requires no iterations at all
+    double[] x2 = solver.solve(a, b, x);
+    assertEquals(0, solver.getIterations());
+    for (int i = 0; i < x.length; ++i) {
+      assertEquals(x[i], x2[i], 0.0);
+    }
+
+  }
+
+  public void testNoConvergence()
+    throws SingularMatrixException {
+    SparseMatrix a = buildLaplacian(20, 0.0);
+    ConjugateGradientSolver solver = new ConjugateGradientSolver(5, 1.0e-10, 0.0);
+    try {
+      solver.solve(a, buildRightHandSide(a.getRows()), null);
+      fail("an exception should have been thrown");
+    } catch (ConvergenceException e) {
+      assertEquals(5, solver.getIterations());
+    }
+  }
+
+  public void testBreakdown()
+    throws ConvergenceException {
+
+    // singular matrix
+    SparseMatrix a = MatrixFactory.buildSparseMatrix(2, 2,
+                                                     new int[]    { 0, 0, 1, 1 },
+                                                     new int[]    { 0, 1, 0, 1 },
+                                                     new double[] { 1.0, 1.0, 1.0, 1.0 });
+    double[] b = { 1.0, -1.0 };
+    try {
+      new ConjugateGradientSolver(10, 1.0e-10, 0.0).solve(a, b, null);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+    try {
+      new BiCGSTABSolver(10, 1.0e-10, 0.0).solve(a, b, null);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+    try {
+      new GMRESSolver(10, 1.0e-10, 0.0, 5).solve(a, b, null);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+
+    // missing diagonal element
+    SparseMatrix c = MatrixFactory.buildSparseMatrix(2, 2,
+                                                     new int[]    { 0, 1 },
+                                                     new int[]    { 1, 0 },
+                                                     new double[] { 1.0, 1.0 });
+    try {
+      new ILUPreconditioner(c);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+    try {
+      new JacobiPreconditioner(c);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+
+  }
+
+  public static Test suite() {
+    return new TestSuite(IterativeSolverTest.class);
+  }
+
+  private void checkSolution(LinearOperator a, double[] b, double[] x,
+                             double tolerance) {
+    double[] ax = new double[b.length];
+    a.apply(x, ax);
+    for (int i = 0; i < b.length; ++i) {
+      assertEquals(b[i], ax[i], tolerance);
+    }
+  }
+
+  private double norm(double[] u) {
+    double sum = 0;
+    for (int i = 0; i < u.length; ++i) {
+      sum += u[i] * u[i];
+    }
+    return Math.sqrt(sum);
+  }
+
+  private double[] buildRightHandSide(int n) {
+    double[] b = new double[n];
+    for (int i = 0; i < n; ++i) {
+      b[i] = Math.sin(0.1 * i) + 0.5;
+    }
+    return b;
+  }
+
+  /** Build a two dimensional convection-diffusion operator.
+   * @param m number of grid points in each direction
+   * @param convection convection coefficient (0 gives a symetrical
+   * positive definite matrix)
+   */
+  private SparseMatrix buildLaplacian(int m, double convection) {
+    int n = m * m;
+    int[]    rowIndices    = new int[5 * n];
+    int[]    columnIndices = new int[5 * n];
+    double[] values        = new double[5 * n];
+    int count = 0;
+    for (int i = 0; i < m; ++i) {
+      for (int j = 0; j < m; ++j) {
+        int k = i * m + j;
+        rowIndices[count] = k; columnIndices[count] = k; values[count++] = 4.0;
+        if (i > 0) {
+          rowIndices[count] = k; columnIndices[count] = k - m; values[count++] = -1.0 - convection;
+        }
+        if (i < m - 1) {
+          rowIndices[count] = k; columnIndices[count] = k + m; values[count++] = -1.0 + convection;
+        }
+        if (j > 0) {
+          rowIndices[count] = k; columnIndices[count] = k - 1; values[count++] = -1.0 - convection;
+        }
+        if (j < m - 1) {
+          rowIndices[count] = k; columnIndices[count] = k + 1; values[count++] = -1.0 + convection;
+        }
+      }
+    }
+    int[]    ri = new int[count];
+    int[]    ci = new int[count];
+    double[] v  = new double[count];
+    System.arraycopy(rowIndices,    0, ri, 0, count);
+    System.arraycopy(columnIndices, 0, ci, 0, count);
+    System.arraycopy(values,        0, v,  0, count);
+    return MatrixFactory.buildSparseMatrix(n, n, ri, ci, v);
+  }
+
+}
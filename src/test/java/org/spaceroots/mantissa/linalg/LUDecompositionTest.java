@@ -0,0 +1,185 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class LUDecompositionTest
+  extends TestCase {
+
+  public LUDecompositionTest(String name) {
+    super(name);
+  }
+
+  public void testFactors()
+    throws SingularMatrixException {
+
+    GeneralSquareMatrix a = buildMatrix(7);
+    LUDecomposition lu = new LUDecomposition(a, 1.0e-10);
+    assertEquals(7, lu.getOrder());
+
+    Matrix product = lu.getL().mul(lu.getU());
+    int[] p = lu.getPermutation();
+    for (int i = 0; i < a.getRows(); ++i) {
+      for (int j = 0; j < a.getColumns(); ++j) {
+        assertEquals(a.getElement(p[i], j), product.getElement(i, j), 1.0e-12);
+      }
+    }
+
+  }
+
+  public void testDeterminant()
+    throws SingularMatrixException {
+    GeneralSquareMatrix a = new GeneralSquareMatrix(3, new double[] {
+      0.0, 2.0, 1.0,
+      1.0, 1.0, 0.0,
+      3.0, 0.0, 1.0
+    });
+    assertEquals(-5.0, new LUDecomposition(a, 1.0e-10).getDeterminant(), 1.0e-12);
+  }
+
+  public void testSingular() {
+    GeneralSquareMatrix a = new GeneralSquareMatrix(3, new double[] {
+      1.0, 2.0, 3.0,
+      2.0, 4.0, 6.0,
+      0.0, 1.0, 1.0
+    });
+    try {
+      new LUDecomposition(a, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+  }
+
+  public void testMultipleRightHandSides()
+    throws SingularMatrixException {
+
+    GeneralSquareMatrix a = buildMatrix(9);
+    LUDecomposition lu = new LUDecomposition(a, 1.0e-10);
+
+    // solve all right hand sides at once
+    int nRhs = 300;
+    double[] b = new double[a.getRows() * nRhs];
+    for (int i = 0; i < b.length; ++i) {
+      b[i] = Math.cos(0.1 * i);
+    }
+    double[] bCopy = (double[]) b.clone();
+    double[] x = new double[b.length];
+    lu.solve(b, nRhs, x);
+    for (int i = 0; i < b.length; ++i) {
+      assertEquals(bCopy[i], b[i], 0.0);
+    }
+
+    // check against one by one solutions
+    double[] bj = new double[a.getRows()];
+    double[] xj = new double[a.getRows()];
+    for (int j = 0; j < nRhs; ++j) {
+      for (int i = 0; i < a.getRows(); ++i) {
+        bj[i] = b[i * nRhs + j];
+      }
+      lu.solve(bj, xj);
+      for (int i = 0; i < a.getRows(); ++i) {
+        assertEquals(xj[i], x[i * nRhs + j], 1.0e-12);
+        double residual = -bj[i];
+        for (int k = 0; k < a.getColumns(); ++k) {
+          residual += a.getElement(i, k) * xj[k];
+        }
+        assertEquals(0.0, residual, 1.0e-10);
+      }
+    }
+
+    // solve in place
+    lu.solve(b, nRhs, b);
+    for (int i = 0; i < b.length; ++i) {
+      assertEquals(x[i], b[i], 0.0);
+    }
+
+  }
+
+  public void testDimensionMismatch()
+    throws SingularMatrixException {
+    LUDecomposition lu = new LUDecomposition(buildMatrix(4), 1.0e-10);
+    try {
+      lu.solve(new double[4], 2, new double[8]);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testCachedDecomposition()
+    throws SingularMatrixException {
+
+    GeneralSquareMatrix a = buildMatrix(5);
+    LUDecomposition lu = a.getLUDecomposition(1.0e-10);
+    assertTrue(lu == a.getLUDecomposition(1.0e-10));
+
+    a.setElement(2, 3, 10.0);
+    assertTrue(lu != a.getLUDecomposition(1.0e-10));
+
+    lu = a.getLUDecomposition(1.0e-10);
+    a.selfMul(2.0);
+    assertTrue(lu != a.getLUDecomposition(1.0e-10));
+
+  }
+
+  public void testRankOneUpdate()
+    throws SingularMatrixException {
+
+    GeneralSquareMatrix a = buildMatrix(6);
+    LUDecomposition lu = a.getLUDecomposition(1.0e-10);
+    double[] u = { 1.0, -0.5, 0.25, 2.0, 0.0, 1.5 };
+    double[] v = { 0.3, 0.1, -0.7, 0.0, 1.2, 0.4 };
+
+    GeneralSquareMatrix modified = new GeneralSquareMatrix(6);
+    for (int i = 0; i < 6; ++i) {
+      for (int j = 0; j < 6; ++j) {
+        modified.setElement(i, j, a.getElement(i, j) + u[i] * v[j]);
+      }
+    }
+
+    Factorization updated = lu.update(u, v, 1.0e-10);
+    assertEquals(6, updated.getOrder());
+    assertEquals(modified.getDeterminant(1.0e-10), updated.getDeterminant(),
+                 1.0e-12 * Math.abs(updated.getDeterminant()));
+
+    double[] b = { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0 };
+    double[] x = new double[6];
+    updated.solve(b, x);
+    double[] y = new double[6];
+    modified.apply(x, y);
+    for (int i = 0; i < 6; ++i) {
+      assertEquals(b[i], y[i], 1.0e-12);
+    }
+
+    // downdate back to the original matrix
+    double[] minusU = new double[6];
+    for (int i = 0; i < 6; ++i) {
+      minusU[i] = -u[i];
+    }
+    Factorization restored =
+      ShermanMorrisonWoodbury.update(updated, minusU, v, 1.0e-10);
+    assertEquals(lu.getDeterminant(), restored.getDeterminant(),
+                 1.0e-12 * Math.abs(lu.getDeterminant()));
+    restored.solve(b, 1, x);
+    a.apply(x, y);
+    for (int i = 0; i < 6; ++i) {
+      assertEquals(b[i], y[i], 1.0e-12);
+    }
+
+  }
+
+  public static Test suite() {
+    return new TestSuite(LUDecompositionTest.class);
+  }
+
+  private GeneralSquareMatrix buildMatrix(int order) {
+    GeneralSquareMatrix m = new GeneralSquareMatrix(order);
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j < order; ++j) {
+        m.setElement(i, j, (i == j) ? 1.0 : Math.sin(3 * i + j));
+      }
+    }
+    return m;
+  }
+
+}
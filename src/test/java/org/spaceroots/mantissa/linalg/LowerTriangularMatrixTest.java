@@ -71,6 +71,60 @@ public class LowerTriangularMatrixTest
 
   }
 
+  public void testMulStructured() {
+
+    LowerTriangularMatrix l = buildMatrix(130, new BilinearPattern(1.0, 0.1));
+    UpperTriangularMatrix u = new UpperTriangularMatrix(130);
+    for (int i = 0; i < u.getRows(); ++i) {
+      for (int j = i; j < u.getColumns(); ++j) {
+        u.setElement(i, j, 0.5 * i - j);
+      }
+    }
+
+    Matrix lu = l.mul(u);
+    assertTrue(lu instanceof GeneralSquareMatrix);
+    Matrix ll = l.mul(l);
+    assertTrue(ll instanceof LowerTriangularMatrix);
+
+    for (int i = 0; i < l.getRows(); ++i) {
+      for (int j = 0; j < l.getColumns(); ++j) {
+        double luValue = 0.0;
+        double llValue = 0.0;
+        for (int k = 0; k < l.getColumns(); ++k) {
+          luValue += l.getElement(i, k) * u.getElement(k, j);
+          llValue += l.getElement(i, k) * l.getElement(k, j);
+        }
+        assertEquals(luValue, lu.getElement(i, j), 1.0e-10 * Math.abs(luValue));
+        assertEquals(llValue, ll.getElement(i, j), 1.0e-10 * Math.abs(llValue));
+      }
+    }
+
+  }
+
+  public void testApply() {
+
+    LowerTriangularMatrix l = buildMatrix(7, new ElementPattern() {
+        public double value(int i, int j) {
+          return i + 0.5 * j + 1.0;
+        }
+      });
+
+    double[] x = new double[l.getColumns()];
+    GeneralMatrix column = new GeneralMatrix(x.length, 1);
+    for (int j = 0; j < x.length; ++j) {
+      x[j] = 2.0 - 0.25 * j;
+      column.setElement(j, 0, x[j]);
+    }
+
+    double[] y = new double[l.getRows()];
+    l.apply(x, y);
+    Matrix reference = l.mul(column);
+    for (int i = 0; i < y.length; ++i) {
+      assertEquals(reference.getElement(i, 0), y[i], 1.0e-14);
+    }
+
+  }
+
   public void testSelfAdd() {
     LowerTriangularMatrix l1 = buildMatrix(7, new BilinearPattern(3, -0.2));
 
@@ -0,0 +1,63 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.Assert;
+
+/**
+ * This class is used in the junit tests for the matrices to compare
+ * matrices element by element.
+ */
+class MatrixChecker {
+
+  /**
+   * Private constructor.
+   * This is a utility class, so there are no instance at all.
+   */
+  private MatrixChecker() {
+  }
+
+  /**
+   * Check that two matrices have the same dimensions and elements.
+   * @param reference reference matrix
+   * @param m matrix to check
+   * @param tolerance absolute tolerance on the elements
+   */
+  public static void checkEquals(Matrix reference, Matrix m, double tolerance) {
+    checkDimensions(reference, m);
+    for (int i = 0; i < m.getRows(); ++i) {
+      for (int j = 0; j < m.getColumns(); ++j) {
+        Assert.assertEquals(reference.getElement(i, j), m.getElement(i, j),
+                            tolerance);
+      }
+    }
+  }
+
+  /**
+   * Check that two matrices have the same dimensions and elements.
+   * @param reference reference matrix
+   * @param m matrix to check
+   * @param tolerance relative tolerance on the elements (it is used as
+   * an absolute tolerance for elements smaller than 1 in absolute value)
+   */
+  public static void checkRelativeEquals(Matrix reference, Matrix m,
+                                         double tolerance) {
+    checkDimensions(reference, m);
+    for (int i = 0; i < m.getRows(); ++i) {
+      for (int j = 0; j < m.getColumns(); ++j) {
+        double r = reference.getElement(i, j);
+        Assert.assertEquals(r, m.getElement(i, j),
+                            tolerance * Math.max(1.0, Math.abs(r)));
+      }
+    }
+  }
+
+  /**
+   * Check that two matrices have the same dimensions.
+   * @param reference reference matrix
+   * @param m matrix to check
+   */
+  private static void checkDimensions(Matrix reference, Matrix m) {
+    Assert.assertEquals(reference.getRows(),    m.getRows());
+    Assert.assertEquals(reference.getColumns(), m.getColumns());
+  }
+
+}
@@ -0,0 +1,208 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import junit.framework.*;
+
+public class MatrixCodecTest
+  extends TestCase {
+
+  public MatrixCodecTest(String name) {
+    super(name);
+  }
+
+  public void testEncodedSize() {
+    assertEquals(24 + 8 * 50,       MatrixCodec.getEncodedSize(new DiagonalMatrix(50)));
+    assertEquals(24 + 8 * 1275,     MatrixCodec.getEncodedSize(new LowerTriangularMatrix(50)));
+    assertEquals(24 + 8 * 1275,     MatrixCodec.getEncodedSize(new UpperTriangularMatrix(50)));
+    assertEquals(24 + 8 * 1275,     MatrixCodec.getEncodedSize(new SymetricalMatrix(50)));
+    assertEquals(24 + 8 * 2500,     MatrixCodec.getEncodedSize(new GeneralSquareMatrix(50)));
+    assertEquals(24 + 8 * 600,      MatrixCodec.getEncodedSize(new GeneralMatrix(20, 30)));
+    assertEquals(24 + 8 * (4 * 50 - 1 - 1 - 2),
+                 MatrixCodec.getEncodedSize(new BandMatrix(50, 1, 2)));
+    assertFalse(MatrixCodec.isSupported(new SparseMatrix(3, 3)));
+    try {
+      MatrixCodec.getEncodedSize(new FloatMatrix(3, 3));
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testStreams()
+    throws IOException {
+    Matrix[] matrices = buildMatrices();
+    for (int k = 0; k < matrices.length; ++k) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      MatrixCodec.write(matrices[k], new DataOutputStream(bos));
+      assertEquals(MatrixCodec.getEncodedSize(matrices[k]), bos.size());
+      Matrix read =
+        MatrixCodec.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+      checkSame(matrices[k], read);
+    }
+  }
+
+  public void testRaw()
+    throws IOException {
+    Matrix[] matrices = buildMatrices();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    for (int k = 0; k < matrices.length; ++k) {
+      MatrixCodec.writeRaw(matrices[k], Channels.newChannel(bos));
+    }
+
+    // the format is little endian
+    ByteBuffer bb = ByteBuffer.wrap(bos.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals(0x4D545831, bb.getInt(0));
+    assertEquals(matrices[0].getElement(0, 0), bb.getDouble(24), 0.0);
+
+    // several matrices can be read back in sequence from the same channel
+    ReadableByteChannel channel =
+      Channels.newChannel(new ByteArrayInputStream(bos.toByteArray()));
+    for (int k = 0; k < matrices.length; ++k) {
+      checkSame(matrices[k], MatrixCodec.readRaw(channel));
+    }
+    try {
+      MatrixCodec.readRaw(channel);
+      fail("an exception should have been thrown");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+  public void testLargeRawFile()
+    throws IOException {
+    // larger than the transfer buffers
+    GeneralMatrix m = new GeneralMatrix(300, 170);
+    for (int i = 0; i < m.getRows(); ++i) {
+      for (int j = 0; j < m.getColumns(); ++j) {
+        m.setElement(i, j, Math.sin(i - 0.3 * j));
+      }
+    }
+    SymetricalMatrix s = new SymetricalMatrix(200);
+    for (int i = 0; i < 200; ++i) {
+      for (int j = 0; j <= i; ++j) {
+        s.setElementAndSymetricalElement(i, j, Math.cos(i + 0.1 * j));
+      }
+    }
+    File file = File.createTempFile("matrix", ".bin");
+    try {
+      FileOutputStream fos = new FileOutputStream(file);
+      try {
+        MatrixCodec.writeRaw(m, fos.getChannel());
+        MatrixCodec.writeRaw(s, fos.getChannel());
+      } finally {
+        fos.close();
+      }
+      assertEquals(MatrixCodec.getEncodedSize(m) + MatrixCodec.getEncodedSize(s),
+                   file.length());
+      FileInputStream fis = new FileInputStream(file);
+      try {
+        FileChannel channel = fis.getChannel();
+        checkSame(m, MatrixCodec.readRaw(channel));
+        checkSame(s, MatrixCodec.readRaw(channel));
+      } finally {
+        fis.close();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testInvalidHeader() {
+    byte[] bytes = new byte[24];
+    try {
+      MatrixCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+      fail("an exception should have been thrown");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testSerialization()
+    throws IOException, ClassNotFoundException, SingularMatrixException {
+
+    Matrix[] matrices = buildMatrices();
+    for (int k = 0; k < matrices.length; ++k) {
+      Matrix m = matrices[k];
+      if (m instanceof SquareMatrix) {
+        // cached factorizations are not serialized
+        ((SquareMatrix) m).getDeterminant(1.0e-10);
+      }
+      byte[] bytes = serialize(new Object[] { m, m });
+      assertTrue(bytes.length < MatrixCodec.getEncodedSize(m) + 200);
+      Object[] read = (Object[]) deserialize(bytes);
+      assertSame(read[0], read[1]);
+      checkSame(m, (Matrix) read[0]);
+    }
+
+    // a diagonal matrix only needs its diagonal
+    assertTrue(serialize(new DiagonalMatrix(100)).length < 1000);
+
+    // unsupported matrices keep their own serialization
+    SparseMatrix sparse = new SparseMatrix(new DiagonalMatrix(5, 2.0));
+    checkSame(sparse, (Matrix) deserialize(serialize(sparse)));
+
+  }
+
+  public static Test suite() {
+    return new TestSuite(MatrixCodecTest.class);
+  }
+
+  private byte[] serialize(Object o)
+    throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bos);
+    oos.writeObject(o);
+    oos.close();
+    return bos.toByteArray();
+  }
+
+  private Object deserialize(byte[] bytes)
+    throws IOException, ClassNotFoundException {
+    return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+  }
+
+  private Matrix[] buildMatrices() {
+    Matrix[] matrices = {
+      new GeneralMatrix(3, 5),
+      new GeneralSquareMatrix(4),
+      new SymetricalMatrix(5),
+      new DiagonalMatrix(4),
+      new LowerTriangularMatrix(6),
+      new UpperTriangularMatrix(3),
+      new BandMatrix(7, 2, 1)
+    };
+    for (int k = 0; k < matrices.length; ++k) {
+      Matrix m = matrices[k];
+      for (int i = 0; i < m.getRows(); ++i) {
+        NonNullRange range = m.getRangeForRow(i);
+        for (int j = range.begin; j < range.end; ++j) {
+          double value = Math.sin(k + 0.7 * i + 1.3 * Math.min(i, j)) + Math.max(i, j);
+          if (m instanceof SymetricalMatrix) {
+            ((SymetricalMatrix) m).setElementAndSymetricalElement(i, j, value);
+          } else {
+            m.setElement(i, j, value);
+          }
+        }
+      }
+    }
+    return matrices;
+  }
+
+  private void checkSame(Matrix reference, Matrix m) {
+    assertEquals(reference.getClass(), m.getClass());
+    assertEquals(reference.getRows(), m.getRows());
+    assertEquals(reference.getColumns(), m.getColumns());
+    for (int i = 0; i < m.getRows(); ++i) {
+      for (int j = 0; j < m.getColumns(); ++j) {
+        assertEquals(reference.getElement(i, j), m.getElement(i, j), 0.0);
+      }
+    }
+  }
+
+}
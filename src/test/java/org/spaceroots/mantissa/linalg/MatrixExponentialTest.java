@@ -0,0 +1,215 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class MatrixExponentialTest
+  extends TestCase {
+
+  public MatrixExponentialTest(String name) {
+    super(name);
+  }
+
+  public void testNilpotent() {
+    GeneralSquareMatrix a = new GeneralSquareMatrix(3);
+    a.setElement(0, 1, 1.0);
+    a.setElement(1, 2, 1.0);
+    double t = 2.5;
+    SquareMatrix e = a.getExponential(t);
+    double[] expected = { 1.0, t, 0.5 * t * t, 0.0, 1.0, t, 0.0, 0.0, 1.0 };
+    MatrixChecker.checkRelativeEquals(new GeneralSquareMatrix(3, expected), e, 1.0e-15);
+  }
+
+  public void testRotation() {
+    // all degrees of the Pade approximants and the scaling path
+    double[] times = { 1.0e-3, 0.1, 0.4, 1.0, 2.5, 10.0, 1000.0 };
+    for (int k = 0; k < times.length; ++k) {
+      double w = 0.7;
+      GeneralSquareMatrix a = new GeneralSquareMatrix(2, new double[] { 0.0, -w, w, 0.0 });
+      SquareMatrix e = a.getExponential(times[k]);
+      double c = Math.cos(w * times[k]);
+      double s = Math.sin(w * times[k]);
+      double tolerance = 1.0e-15 * Math.max(1.0, w * times[k]);
+      MatrixChecker.checkRelativeEquals(new GeneralSquareMatrix(2, new double[] { c, -s, s, c }), e, tolerance);
+    }
+  }
+
+  public void testDiagonalizable() {
+    // A = V.D.V^-1
+    GeneralSquareMatrix v = new GeneralSquareMatrix(3, new double[] {
+      1.0, 2.0, 0.0, 0.0, 1.0, -1.0, 1.0, 0.0, 3.0
+    });
+    double[] lambda = { -2.0, 0.5, 1.5 };
+    SquareMatrix vInv = inverse(v);
+    Matrix a = v.mul(diagonal(lambda)).mul(vInv);
+    double t = 3.0;
+    double[] expLambda = new double[3];
+    for (int i = 0; i < 3; ++i) {
+      expLambda[i] = Math.exp(lambda[i] * t);
+    }
+    Matrix expected = v.mul(diagonal(expLambda)).mul(vInv);
+    SquareMatrix e = new GeneralSquareMatrix(3, a.getDenseData()).getExponential(t);
+    MatrixChecker.checkRelativeEquals(expected, e, 1.0e-13);
+
+    // negative time (the accuracy is normwise, some elements are
+    // much smaller than the largest ones which are close to e^6)
+    for (int i = 0; i < 3; ++i) {
+      expLambda[i] = Math.exp(-lambda[i] * t);
+    }
+    expected = v.mul(diagonal(expLambda)).mul(vInv);
+    SquareMatrix minus = new GeneralSquareMatrix(3, a.getDenseData()).getExponential(-t);
+    MatrixChecker.checkRelativeEquals(expected, minus, 1.0e-11);
+  }
+
+  public void testDiagonal() {
+    DiagonalMatrix d = diagonal(new double[] { 1.0, -1.0, 0.0 });
+    SquareMatrix e = d.getExponential(2.0);
+    assertTrue(e instanceof DiagonalMatrix);
+    assertEquals(Math.exp(2.0), e.getElement(0, 0), 1.0e-15);
+    assertEquals(Math.exp(-2.0), e.getElement(1, 1), 1.0e-15);
+    assertEquals(1.0, e.getElement(2, 2), 0.0);
+    MatrixChecker.checkRelativeEquals(new GeneralSquareMatrix(3, d.getDenseData()).getExponential(2.0), e, 1.0e-14);
+  }
+
+  public void testNonFinite() {
+    GeneralSquareMatrix a = new GeneralSquareMatrix(2);
+    a.setElement(0, 1, Double.NaN);
+    try {
+      a.getExponential(1.0);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testCache() {
+    SquareMatrix a = buildDynamics();
+    MatrixExponential exp = new MatrixExponential(a, 2);
+    assertEquals(4, exp.getOrder());
+    assertFalse(exp.isCached(1.0));
+    SquareMatrix phi1 = exp.getTransition(1.0);
+    MatrixChecker.checkRelativeEquals(a.getExponential(1.0), phi1, 0.0);
+    assertTrue(exp.isCached(1.0));
+    SquareMatrix phi2 = exp.getTransition(2.0);
+    exp.getTransition(1.0);
+    exp.getTransition(3.0);
+
+    // 2.0 was the least recently used entry, it has been dropped
+    assertTrue(exp.isCached(1.0));
+    assertFalse(exp.isCached(2.0));
+    assertTrue(exp.isCached(3.0));
+    MatrixChecker.checkRelativeEquals(phi2, exp.getTransition(2.0), 0.0);
+
+    // modifying the original matrix does not change the instance
+    a.setElement(0, 0, 100.0);
+    MatrixChecker.checkRelativeEquals(phi1, exp.getTransition(1.0), 0.0);
+
+    MatrixExponential noCache = new MatrixExponential(buildDynamics(), 0);
+    noCache.getTransition(1.0);
+    assertFalse(noCache.isCached(1.0));
+  }
+
+  public void testCacheCopies() {
+    MatrixExponential exp = new MatrixExponential(buildDynamics(), 2);
+    SquareMatrix phi = exp.getTransition(1.0);
+    SquareMatrix reference = exp.getTransition(1.0);
+    assertNotSame(phi, reference);
+
+    // modifying a returned matrix does not change the cached one
+    phi.setElement(0, 0, 100.0);
+    MatrixChecker.checkRelativeEquals(reference, exp.getTransition(1.0), 0.0);
+    assertTrue(100.0 != exp.getTransition(1.0).getElement(0, 0));
+  }
+
+  public void testVanLoanScalar() {
+    double a  = -0.3;
+    double q  = 2.0;
+    double dt = 1.7;
+    MatrixExponential exp =
+      new MatrixExponential(new GeneralSquareMatrix(1, new double[] { a }), 4);
+    GeneralSquareMatrix phi = new GeneralSquareMatrix(1);
+    SymetricalMatrix    qd  = new SymetricalMatrix(1);
+    exp.getTransitionAndNoise(new SymetricalMatrix(1, new double[] { q }), dt, phi, qd);
+    assertEquals(Math.exp(a * dt), phi.getElement(0, 0), 1.0e-15);
+    assertEquals(q * (Math.exp(2 * a * dt) - 1) / (2 * a), qd.getElement(0, 0), 1.0e-14);
+  }
+
+  public void testVanLoan() {
+
+    SquareMatrix a = buildDynamics();
+    SymetricalMatrix q = new SymetricalMatrix(4);
+    q.setElementAndSymetricalElement(2, 2, 0.04);
+    q.setElementAndSymetricalElement(3, 3, 0.09);
+    q.setElementAndSymetricalElement(3, 2, 0.01);
+
+    double dt = 2.0;
+    MatrixExponential exp = new MatrixExponential(a, 4);
+    GeneralSquareMatrix phi = new GeneralSquareMatrix(4);
+    SymetricalMatrix    qd  = new SymetricalMatrix(4);
+    exp.getTransitionAndNoise(q, dt, phi, qd);
+    MatrixChecker.checkRelativeEquals(a.getExponential(dt), phi, 1.0e-13);
+    MatrixChecker.checkRelativeEquals(phi, exp.getTransition(dt), 0.0);
+
+    // reference integral using Simpson rule
+    int n = 400;
+    Matrix reference = new GeneralSquareMatrix(4);
+    for (int k = 0; k <= n; ++k) {
+      double w = ((k == 0) || (k == n)) ? 1.0 : ((k % 2 == 0) ? 2.0 : 4.0);
+      SquareMatrix phiS = a.getExponential(k * dt / n);
+      Matrix term = phiS.mul(q).mul(phiS.getTranspose());
+      term.selfMul(w * dt / (3 * n));
+      reference = reference.add(term);
+    }
+    MatrixChecker.checkRelativeEquals(reference, qd, 1.0e-10);
+    for (int i = 0; i < 4; ++i) {
+      for (int j = 0; j < 4; ++j) {
+        assertEquals(qd.getElement(i, j), qd.getElement(j, i), 0.0);
+      }
+    }
+
+    try {
+      exp.getTransitionAndNoise(q, dt, new SymetricalMatrix(4), qd);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      exp.getTransitionAndNoise(new SymetricalMatrix(3), dt, phi, qd);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+  }
+
+  public static Test suite() {
+    return new TestSuite(MatrixExponentialTest.class);
+  }
+
+  private SquareMatrix buildDynamics() {
+    // damped coupled oscillators
+    return new GeneralSquareMatrix(4, new double[] {
+       0.0,  0.0,  1.0,  0.0,
+       0.0,  0.0,  0.0,  1.0,
+      -2.0,  1.0, -0.1,  0.0,
+       1.0, -2.0,  0.0, -0.1
+    });
+  }
+
+  private DiagonalMatrix diagonal(double[] values) {
+    DiagonalMatrix d = new DiagonalMatrix(values.length);
+    for (int i = 0; i < values.length; ++i) {
+      d.setElement(i, i, values[i]);
+    }
+    return d;
+  }
+
+  private SquareMatrix inverse(SquareMatrix m) {
+    try {
+      return m.getInverse(1.0e-10);
+    } catch (SingularMatrixException e) {
+      fail(e.getMessage());
+      return null;
+    }
+  }
+
+}
@@ -47,6 +47,31 @@ public class MatrixFactoryTest
     assertTrue(m instanceof GeneralMatrix);
   }
 
+  public void testSparseTriplets() {
+    SparseMatrix m = MatrixFactory.buildSparseMatrix(3, 4,
+                                                     new int[]    { 2, 0, 2, 1, 0 },
+                                                     new int[]    { 3, 1, 0, 2, 1 },
+                                                     new double[] { 1.0, 2.0, 3.0, 4.0, 5.0 });
+    assertEquals(4, m.getNonZeros());
+    assertEquals(7.0, m.getElement(0, 1), 0.0);
+    assertEquals(4.0, m.getElement(1, 2), 0.0);
+    assertEquals(3.0, m.getElement(2, 0), 0.0);
+    assertEquals(1.0, m.getElement(2, 3), 0.0);
+    assertEquals(0.0, m.getElement(0, 0), 0.0);
+  }
+
+  public void testSparseColumns() {
+    // column storage of the matrix [ 1 0 2 ; 0 3 0 ]
+    SparseMatrix m = MatrixFactory.buildSparseMatrixFromColumns(2, 3,
+                                                                new int[]    { 0, 1, 2, 3 },
+                                                                new int[]    { 0, 1, 0 },
+                                                                new double[] { 1.0, 3.0, 2.0 });
+    assertEquals(1.0, m.getElement(0, 0), 0.0);
+    assertEquals(2.0, m.getElement(0, 2), 0.0);
+    assertEquals(3.0, m.getElement(1, 1), 0.0);
+    assertEquals(0.0, m.getElement(1, 2), 0.0);
+  }
+
   public static Test suite() {
     return new TestSuite(MatrixFactoryTest.class);
   }
@@ -0,0 +1,144 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class MixedPrecisionSolverTest
+  extends TestCase {
+
+  public MixedPrecisionSolverTest(String name) {
+    super(name);
+  }
+
+  public void testWellConditioned()
+    throws SingularMatrixException {
+    int n = 50;
+    GeneralSquareMatrix a = build(n);
+    double[] b = rhs(n);
+    MixedPrecisionSolver solver = new MixedPrecisionSolver(a, 1.0e-10, 10);
+    double[] x = new double[n];
+    solver.solve(b, x);
+    assertFalse(solver.hasFallenBack());
+    assertTrue(solver.getIterations() > 0);
+    assertTrue(solver.getIterations() <= 4);
+
+    Matrix reference = a.solve(new GeneralMatrix(n, 1, b), 1.0e-10);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(reference.getElement(i, 0), x[i],
+                   1.0e-12 * Math.max(1.0, Math.abs(reference.getElement(i, 0))));
+    }
+
+    // in place solve
+    solver.solve(b, b);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(x[i], b[i], 0.0);
+    }
+  }
+
+  public void testFloatStorage()
+    throws SingularMatrixException {
+    int n = 30;
+    FloatMatrix a = new FloatMatrix(build(n));
+    double[] b = rhs(n);
+    MixedPrecisionSolver solver = new MixedPrecisionSolver(a, 1.0e-10, 10);
+    double[] x = new double[n];
+    solver.solve(b, x);
+    assertFalse(solver.hasFallenBack());
+
+    // the single precision matrix is the exact matrix of the system
+    GeneralSquareMatrix exact = new GeneralSquareMatrix(n, a.getDenseData());
+    Matrix reference = exact.solve(new GeneralMatrix(n, 1, b), 1.0e-10);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(reference.getElement(i, 0), x[i],
+                   1.0e-12 * Math.max(1.0, Math.abs(reference.getElement(i, 0))));
+    }
+  }
+
+  public void testSeveralRightHandSides()
+    throws SingularMatrixException {
+    int n = 20;
+    GeneralSquareMatrix a = build(n);
+    GeneralMatrix b = new GeneralMatrix(n, 3);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < 3; ++j) {
+        b.setElement(i, j, Math.cos(i + 2.0 * j));
+      }
+    }
+    MixedPrecisionSolver solver = new MixedPrecisionSolver(a, 1.0e-10, 10);
+    Matrix x = solver.solve(b);
+    assertFalse(solver.hasFallenBack());
+    Matrix reference = a.solve(b, 1.0e-10);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < 3; ++j) {
+        assertEquals(reference.getElement(i, j), x.getElement(i, j),
+                     1.0e-12 * Math.max(1.0, Math.abs(reference.getElement(i, j))));
+      }
+    }
+  }
+
+  public void testIllConditioned()
+    throws SingularMatrixException {
+    // Hilbert matrix, with a condition number far beyond
+    // what single precision refinement can handle
+    int n = 9;
+    GeneralSquareMatrix a = new GeneralSquareMatrix(n);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        a.setElement(i, j, 1.0 / (i + j + 1));
+      }
+    }
+    double[] b = rhs(n);
+    MixedPrecisionSolver solver = new MixedPrecisionSolver(a, 1.0e-20, 10);
+    double[] x = new double[n];
+    solver.solve(b, x);
+    assertTrue(solver.hasFallenBack());
+
+    Matrix reference = a.solve(new GeneralMatrix(n, 1, b), 1.0e-20);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(reference.getElement(i, 0), x[i], 0.0);
+    }
+  }
+
+  public void testSingular() {
+    GeneralSquareMatrix a = build(4);
+    for (int j = 0; j < 4; ++j) {
+      a.setElement(3, j, a.getElement(1, j));
+    }
+    try {
+      new MixedPrecisionSolver(a, 1.0e-10, 10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+    try {
+      new MixedPrecisionSolver(new GeneralMatrix(2, 3), 1.0e-10, 10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      fail("wrong exception caught");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(MixedPrecisionSolverTest.class);
+  }
+
+  private GeneralSquareMatrix build(int n) {
+    GeneralSquareMatrix a = new GeneralSquareMatrix(n);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        a.setElement(i, j, Math.sin(0.37 * i + 1.9 * j) + ((i == j) ? 0.5 * n : 0.0));
+      }
+    }
+    return a;
+  }
+
+  private double[] rhs(int n) {
+    double[] b = new double[n];
+    for (int i = 0; i < n; ++i) {
+      b[i] = Math.cos(0.3 * i) - 0.2;
+    }
+    return b;
+  }
+
+}
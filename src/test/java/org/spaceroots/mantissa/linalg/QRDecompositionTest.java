@@ -0,0 +1,149 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class QRDecompositionTest
+  extends TestCase {
+
+  public QRDecompositionTest(String name) {
+    super(name);
+  }
+
+  public void testFactorsTall() {
+    // the number of columns spans several panels
+    checkFactors(buildMatrix(300, 70), false);
+    checkFactors(buildMatrix(300, 70), true);
+  }
+
+  public void testFactorsWide() {
+    checkFactors(buildMatrix(7, 12), false);
+    checkFactors(buildMatrix(7, 12), true);
+  }
+
+  public void testPivotingOrder() {
+    QRDecomposition qr = new QRDecomposition(buildMatrix(40, 15), true);
+    Matrix r = qr.getR();
+    for (int j = 1; j < r.getColumns(); ++j) {
+      assertTrue(Math.abs(r.getElement(j, j)) <= Math.abs(r.getElement(j - 1, j - 1)));
+    }
+  }
+
+  public void testApplyQ() {
+    QRDecomposition qr = new QRDecomposition(buildMatrix(50, 9), false);
+    double[] b = new double[50 * 2];
+    for (int i = 0; i < b.length; ++i) {
+      b[i] = Math.cos(i);
+    }
+    double[] c = (double[]) b.clone();
+    qr.applyQt(c, 2);
+    qr.applyQ(c, 2);
+    for (int i = 0; i < b.length; ++i) {
+      assertEquals(b[i], c[i], 1.0e-12);
+    }
+  }
+
+  public void testLeastSquares()
+    throws SingularMatrixException {
+
+    GeneralMatrix a = buildMatrix(200, 40);
+    GeneralMatrix b = new GeneralMatrix(200, 2);
+    for (int i = 0; i < b.getRows(); ++i) {
+      b.setElement(i, 0, Math.sin(0.1 * i));
+      b.setElement(i, 1, i % 7 - 3.0);
+    }
+
+    // reference solution from the normal equations
+    Matrix at = a.getTranspose();
+    Matrix reference = ((GeneralSquareMatrix) at.mul(a)).solve(at.mul(b), 1.0e-10);
+
+    Matrix x1 = new QRDecomposition(a, false).solveLeastSquares(b, 1.0e-10);
+    Matrix x2 = a.solveLeastSquares(b, 1.0e-10);
+    for (int i = 0; i < reference.getRows(); ++i) {
+      for (int j = 0; j < reference.getColumns(); ++j) {
+        assertEquals(reference.getElement(i, j), x1.getElement(i, j), 1.0e-8);
+        assertEquals(reference.getElement(i, j), x2.getElement(i, j), 1.0e-8);
+      }
+    }
+
+  }
+
+  public void testRankDeficient() {
+
+    // the third column is a combination of the first two ones
+    GeneralMatrix a = new GeneralMatrix(5, 3);
+    for (int i = 0; i < a.getRows(); ++i) {
+      a.setElement(i, 0, 1.0);
+      a.setElement(i, 1, i);
+      a.setElement(i, 2, 2.0 - 3.0 * i);
+    }
+    GeneralMatrix b = new GeneralMatrix(5, 1);
+    for (int i = 0; i < b.getRows(); ++i) {
+      b.setElement(i, 0, 4.0 + 0.5 * i);
+    }
+
+    QRDecomposition qr = new QRDecomposition(a, true);
+    assertEquals(2, qr.getRank(1.0e-10));
+
+    // the basic solution fits the data exactly
+    Matrix residual = a.mul(a.solveLeastSquares(b, 1.0e-10)).sub(b);
+    for (int i = 0; i < residual.getRows(); ++i) {
+      assertEquals(0.0, residual.getElement(i, 0), 1.0e-10);
+    }
+
+    try {
+      new QRDecomposition(a, false).solveLeastSquares(b, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+
+  }
+
+  public static Test suite() {
+    return new TestSuite(QRDecompositionTest.class);
+  }
+
+  private void checkFactors(GeneralMatrix a, boolean pivoting) {
+
+    QRDecomposition qr = a.getQRDecomposition(pivoting);
+    assertEquals(pivoting, qr.isPivoting());
+    Matrix q = qr.getQ();
+    Matrix r = qr.getR();
+    int[]  p = qr.getPermutation();
+
+    // Q has orthonormal columns
+    Matrix qtq = q.getTranspose().mul(q);
+    for (int i = 0; i < qtq.getRows(); ++i) {
+      for (int j = 0; j < qtq.getColumns(); ++j) {
+        assertEquals((i == j) ? 1.0 : 0.0, qtq.getElement(i, j), 1.0e-12);
+      }
+    }
+
+    // R is upper triangular
+    for (int i = 0; i < r.getRows(); ++i) {
+      for (int j = 0; j < i; ++j) {
+        assertEquals(0.0, r.getElement(i, j), 0.0);
+      }
+    }
+
+    // Q.R = A.P
+    Matrix qr2 = q.mul(r);
+    for (int i = 0; i < a.getRows(); ++i) {
+      for (int j = 0; j < a.getColumns(); ++j) {
+        assertEquals(a.getElement(i, p[j]), qr2.getElement(i, j), 1.0e-12);
+      }
+    }
+
+  }
+
+  private GeneralMatrix buildMatrix(int rows, int columns) {
+    GeneralMatrix m = new GeneralMatrix(rows, columns);
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < columns; ++j) {
+        m.setElement(i, j, Math.sin(0.7 * i * (j + 1) + j) + ((i == j) ? 1.0 : 0.0));
+      }
+    }
+    return m;
+  }
+
+}
@@ -0,0 +1,154 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class ShermanMorrisonWoodburyTest
+  extends TestCase {
+
+  public ShermanMorrisonWoodburyTest(String name) {
+    super(name);
+  }
+
+  public void testRankOne()
+    throws SingularMatrixException {
+    GeneralSquareMatrix a = buildMatrix(5);
+    double[] u = { 0.5, 1.0, -1.0, 0.0, 2.0 };
+    double[] v = { 1.0, 0.0, 0.3, -0.2, 0.7 };
+    SquareMatrix inverse = ShermanMorrisonWoodbury.updateInverse(a.getInverse(1.0e-10),
+                                                                 u, v, 1.0e-10);
+    checkIdentity(add(a, u, v, 1.0).mul(inverse), 1.0e-12);
+  }
+
+  public void testSymetrical()
+    throws SingularMatrixException {
+    SymetricalMatrix a = new SymetricalMatrix(4);
+    a.selfAddWAAt(1.0, new double[] { 2.0, 0.0, 1.0, 0.0 });
+    a.selfAddWAAt(1.0, new double[] { 0.0, 2.0, 0.0, 1.0 });
+    a.selfAddWAAt(1.0, new double[] { 1.0, 1.0, 3.0, 0.0 });
+    a.selfAddWAAt(1.0, new double[] { 0.0, 1.0, 0.0, 3.0 });
+    double[] m = { 0.4, -1.0, 0.5, 0.2 };
+
+    SymetricalMatrix inverse = (SymetricalMatrix) a.getInverse(1.0e-10);
+    SymetricalMatrix updated = ShermanMorrisonWoodbury.updateInverse(inverse, 2.0, m, 1.0e-10);
+    SymetricalMatrix modified = new SymetricalMatrix(a);
+    modified.selfAddWAAt(2.0, m);
+    checkIdentity(modified.mul(updated), 1.0e-12);
+
+    // removing the measurement gives back the original inverse
+    SymetricalMatrix restored = ShermanMorrisonWoodbury.updateInverse(updated, -2.0, m, 1.0e-10);
+    for (int i = 0; i < 4; ++i) {
+      for (int j = 0; j < 4; ++j) {
+        assertEquals(inverse.getElement(i, j), restored.getElement(i, j), 1.0e-12);
+      }
+    }
+  }
+
+  public void testWoodbury()
+    throws SingularMatrixException {
+    GeneralSquareMatrix a = buildMatrix(6);
+    GeneralMatrix u = new GeneralMatrix(6, 2);
+    GeneralMatrix v = new GeneralMatrix(6, 2);
+    for (int i = 0; i < 6; ++i) {
+      for (int j = 0; j < 2; ++j) {
+        u.setElement(i, j, Math.sin(i + 3.0 * j));
+        v.setElement(i, j, Math.cos(2.0 * i - j));
+      }
+    }
+    GeneralSquareMatrix c = new GeneralSquareMatrix(2, new double[] { 2.0, 0.5, -0.3, 1.0 });
+    SquareMatrix inverse =
+      ShermanMorrisonWoodbury.updateInverse(a.getInverse(1.0e-10), u, c, v, 1.0e-10);
+    Matrix modified = a.add(u.mul(c).mul(v.getTranspose()));
+    checkIdentity(modified.mul(inverse), 1.0e-12);
+  }
+
+  public void testSingular()
+    throws SingularMatrixException {
+    // A + u.v^T with v^T.A^-1.u = -1 is singular
+    GeneralSquareMatrix a = buildMatrix(3);
+    double[] u = { 1.0, 0.0, 0.0 };
+    double[] v = new double[3];
+    SquareMatrix inverse = a.getInverse(1.0e-10);
+    v[0] = -1.0 / inverse.getElement(0, 0);
+    try {
+      ShermanMorrisonWoodbury.updateInverse(inverse, u, v, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+    try {
+      a.getLUDecomposition(1.0e-10).update(u, v, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+    try {
+      ShermanMorrisonWoodbury.updateInverse(inverse, u, new double[2], 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testChainedFactorization()
+    throws SingularMatrixException {
+    GeneralSquareMatrix a = buildMatrix(5);
+    Factorization f = a.factorize(1.0e-10);
+    GeneralSquareMatrix modified = new GeneralSquareMatrix(a);
+    for (int k = 0; k < 3; ++k) {
+      double[] u = new double[5];
+      double[] v = new double[5];
+      for (int i = 0; i < 5; ++i) {
+        u[i] = Math.sin(k + i);
+        v[i] = 0.3 * Math.cos(k - 2.0 * i);
+      }
+      f = ShermanMorrisonWoodbury.update(f, u, v, 1.0e-10);
+      modified = add(modified, u, v, 1.0);
+    }
+    Matrix b = new GeneralMatrix(5, 2, new double[] {
+      1.0, 0.0, 2.0, 1.0, 3.0, 0.0, 4.0, 1.0, 5.0, 0.0
+    });
+    Matrix x = f.solve(b);
+    Matrix check = modified.mul(x);
+    for (int i = 0; i < 5; ++i) {
+      for (int j = 0; j < 2; ++j) {
+        assertEquals(b.getElement(i, j), check.getElement(i, j), 1.0e-12);
+      }
+    }
+    assertEquals(modified.getDeterminant(1.0e-10), f.getDeterminant(),
+                 1.0e-12 * Math.abs(f.getDeterminant()));
+  }
+
+  public static Test suite() {
+    return new TestSuite(ShermanMorrisonWoodburyTest.class);
+  }
+
+  private GeneralSquareMatrix buildMatrix(int order) {
+    GeneralSquareMatrix m = new GeneralSquareMatrix(order);
+    for (int i = 0; i < order; ++i) {
+      for (int j = 0; j < order; ++j) {
+        m.setElement(i, j, (i == j) ? 3.0 : Math.sin(2 * i - j));
+      }
+    }
+    return m;
+  }
+
+  private GeneralSquareMatrix add(SquareMatrix a, double[] u, double[] v, double w) {
+    int n = a.getRows();
+    GeneralSquareMatrix m = new GeneralSquareMatrix(n);
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < n; ++j) {
+        m.setElement(i, j, a.getElement(i, j) + w * u[i] * v[j]);
+      }
+    }
+    return m;
+  }
+
+  private void checkIdentity(Matrix m, double tolerance) {
+    for (int i = 0; i < m.getRows(); ++i) {
+      for (int j = 0; j < m.getColumns(); ++j) {
+        assertEquals((i == j) ? 1.0 : 0.0, m.getElement(i, j), tolerance);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,172 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class SingularValueDecompositionTest
+  extends TestCase {
+
+  public SingularValueDecompositionTest(String name) {
+    super(name);
+  }
+
+  public void testKnownValues()
+    throws ConvergenceException {
+    GeneralMatrix a = new GeneralMatrix(3, 2, new double[] {
+      3.0, 0.0,
+      0.0, 4.0,
+      0.0, 0.0
+    });
+    SingularValueDecomposition svd = new SingularValueDecomposition(a, true);
+    double[] s = svd.getSingularValues();
+    assertEquals(2, s.length);
+    assertEquals(4.0, s[0], 1.0e-14);
+    assertEquals(3.0, s[1], 1.0e-14);
+    assertEquals(4.0, svd.getNorm(), 1.0e-14);
+    assertEquals(4.0 / 3.0, svd.getConditionNumber(), 1.0e-14);
+  }
+
+  public void testTall()
+    throws ConvergenceException {
+    checkDecomposition(buildMatrix(30, 8));
+  }
+
+  public void testWide()
+    throws ConvergenceException {
+    checkDecomposition(buildMatrix(6, 17));
+  }
+
+  public void testSquare()
+    throws ConvergenceException {
+    checkDecomposition(buildMatrix(12, 12));
+  }
+
+  public void testValuesOnly()
+    throws ConvergenceException {
+    GeneralMatrix a = buildMatrix(20, 11);
+    SingularValueDecomposition full = new SingularValueDecomposition(a, true);
+    SingularValueDecomposition only = new SingularValueDecomposition(a, false);
+    assertFalse(only.hasSingularVectors());
+    double[] s1 = full.getSingularValues();
+    double[] s2 = only.getSingularValues();
+    for (int i = 0; i < s1.length; ++i) {
+      assertEquals(s1[i], s2[i], 1.0e-12);
+    }
+    try {
+      only.getU();
+      fail("an exception should have been thrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testRankDeficient()
+    throws ConvergenceException {
+
+    // the third column is a combination of the first two ones
+    GeneralMatrix a = new GeneralMatrix(5, 3);
+    for (int i = 0; i < a.getRows(); ++i) {
+      a.setElement(i, 0, 1.0);
+      a.setElement(i, 1, i);
+      a.setElement(i, 2, 2.0 - 3.0 * i);
+    }
+    GeneralMatrix b = new GeneralMatrix(5, 1);
+    for (int i = 0; i < b.getRows(); ++i) {
+      b.setElement(i, 0, 4.0 + 0.5 * i);
+    }
+
+    SingularValueDecomposition svd = new SingularValueDecomposition(a, true);
+    assertEquals(2, svd.getRank(1.0e-10));
+
+    // the minimum norm solution fits the data exactly
+    Matrix x = svd.solve(b, 1.0e-10);
+    Matrix residual = a.mul(x).sub(b);
+    for (int i = 0; i < residual.getRows(); ++i) {
+      assertEquals(0.0, residual.getElement(i, 0), 1.0e-10);
+    }
+
+    // and it is orthogonal to the null space of a
+    double[] nullSpace = { 2.0, -3.0, -1.0 };
+    double dot = 0;
+    for (int i = 0; i < 3; ++i) {
+      dot += nullSpace[i] * x.getElement(i, 0);
+    }
+    assertEquals(0.0, dot, 1.0e-10);
+
+  }
+
+  public void testSolveFullRank()
+    throws SingularMatrixException, ConvergenceException {
+    GeneralMatrix a = buildMatrix(40, 10);
+    GeneralMatrix b = buildMatrix(40, 3);
+    Matrix reference = a.solveLeastSquares(b, 1.0e-12);
+    Matrix x = new SingularValueDecomposition(a, true).solve(b, 1.0e-12);
+    for (int i = 0; i < x.getRows(); ++i) {
+      for (int j = 0; j < x.getColumns(); ++j) {
+        assertEquals(reference.getElement(i, j), x.getElement(i, j), 1.0e-10);
+      }
+    }
+  }
+
+  public void testConvergenceFailure() {
+    GeneralMatrix a = buildMatrix(5, 4);
+    a.setElement(2, 1, Double.NaN);
+    try {
+      new SingularValueDecomposition(a, true);
+      fail("an exception should have been thrown");
+    } catch (ConvergenceException ce) {
+      // expected
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(SingularValueDecompositionTest.class);
+  }
+
+  private void checkDecomposition(GeneralMatrix a)
+    throws ConvergenceException {
+
+    SingularValueDecomposition svd = new SingularValueDecomposition(a, true);
+    int p = Math.min(a.getRows(), a.getColumns());
+    double[] s = svd.getSingularValues();
+    assertEquals(p, s.length);
+    for (int i = 0; i < p; ++i) {
+      assertTrue(s[i] >= 0);
+      if (i > 0) {
+        assertTrue(s[i] <= s[i - 1]);
+      }
+    }
+
+    Matrix u = svd.getU();
+    Matrix v = svd.getV();
+    checkOrthonormalColumns(u);
+    checkOrthonormalColumns(v);
+
+    Matrix usvt = u.mul(svd.getS()).mul(v.getTranspose());
+    for (int i = 0; i < a.getRows(); ++i) {
+      for (int j = 0; j < a.getColumns(); ++j) {
+        assertEquals(a.getElement(i, j), usvt.getElement(i, j), 1.0e-12);
+      }
+    }
+
+  }
+
+  private void checkOrthonormalColumns(Matrix m) {
+    Matrix mtm = m.getTranspose().mul(m);
+    for (int i = 0; i < mtm.getRows(); ++i) {
+      for (int j = 0; j < mtm.getColumns(); ++j) {
+        assertEquals((i == j) ? 1.0 : 0.0, mtm.getElement(i, j), 1.0e-12);
+      }
+    }
+  }
+
+  private GeneralMatrix buildMatrix(int rows, int columns) {
+    GeneralMatrix m = new GeneralMatrix(rows, columns);
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < columns; ++j) {
+        m.setElement(i, j, Math.sin(0.7 * i * (j + 1) + j) + ((i == j) ? 1.0 : 0.0));
+      }
+    }
+    return m;
+  }
+
+}
@@ -0,0 +1,183 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.*;
+
+public class SparseMatrixTest
+  extends TestCase {
+
+  public SparseMatrixTest(String name) {
+    super(name);
+  }
+
+  public void testConstructors() {
+    SparseMatrix m = new SparseMatrix(3, 4,
+                                      new int[]    { 0, 2, 2, 3 },
+                                      new int[]    { 1, 3, 0 },
+                                      new double[] { 1.0, 2.0, 3.0 });
+    assertEquals(3, m.getRows());
+    assertEquals(4, m.getColumns());
+    assertEquals(3, m.getNonZeros());
+    assertEquals(2.0, m.getElement(0, 3), 0.0);
+    assertEquals(0.0, m.getElement(1, 1), 0.0);
+
+    // copy from a dense matrix drops the null elements
+    SparseMatrix copy = new SparseMatrix(m.getDenseMatrix());
+    assertEquals(3, copy.getNonZeros());
+    MatrixChecker.checkEquals(m, copy, 0.0);
+
+    try {
+      new SparseMatrix(2, 2,
+                       new int[]    { 0, 2, 2 },
+                       new int[]    { 1, 0 },
+                       new double[] { 1.0, 2.0 });
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+  }
+
+  public void testSetElement() {
+    SparseMatrix m = new SparseMatrix(4, 5);
+    GeneralMatrix reference = new GeneralMatrix(4, 5);
+    for (int k = 0; k < 40; ++k) {
+      int i = (7 * k) % 4;
+      int j = (3 * k) % 5;
+      m.setElement(i, j, k);
+      reference.setElement(i, j, k);
+    }
+    m.setElement(3, 3, 0.0);
+    reference.setElement(3, 3, 0.0);
+    MatrixChecker.checkEquals(reference, m, 0.0);
+    assertEquals(reference.toString(), m.toString());
+  }
+
+  public void testAddSub() {
+    SparseMatrix a = buildSparse(30, 20, 1);
+    SparseMatrix b = buildSparse(30, 20, 2);
+    Matrix da = a.getDenseMatrix();
+    Matrix db = b.getDenseMatrix();
+
+    Matrix sum = a.add(b);
+    assertTrue(sum instanceof SparseMatrix);
+    MatrixChecker.checkEquals(da.add(db), sum, 1.0e-15);
+
+    Matrix difference = a.sub(b);
+    assertTrue(difference instanceof SparseMatrix);
+    MatrixChecker.checkEquals(da.sub(db), difference, 1.0e-15);
+
+    // mixed sparse and dense operands give dense matrices
+    MatrixChecker.checkEquals(da.add(db), a.add(db), 1.0e-15);
+    MatrixChecker.checkEquals(da.sub(db), a.sub(db), 1.0e-15);
+    MatrixChecker.checkEquals(da.add(db), da.add(b), 1.0e-15);
+    MatrixChecker.checkEquals(da.sub(db), da.sub(b), 1.0e-15);
+  }
+
+  public void testProducts() {
+    SparseMatrix a = buildSparse(25, 40, 1);
+    SparseMatrix b = buildSparse(40, 15, 2);
+    Matrix da = a.getDenseMatrix();
+    Matrix db = b.getDenseMatrix();
+    Matrix reference = da.mul(db);
+
+    Matrix ss = a.mul(b);
+    assertTrue(ss instanceof SparseMatrix);
+    MatrixChecker.checkEquals(reference, ss, 1.0e-14);
+    MatrixChecker.checkEquals(reference, a.mul(db), 1.0e-14);
+    MatrixChecker.checkEquals(reference, da.mul(b), 1.0e-14);
+  }
+
+  public void testParallelProducts() {
+    SparseMatrix a = buildSparse(120, 80, 3);
+    Matrix d = buildSparse(80, 90, 4).getDenseMatrix();
+    Matrix serialRight = a.mul(d);
+    Matrix serialLeft  = d.getTranspose().mul(a.getTranspose());
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Matrix.setParallelMode(pool, 0);
+      MatrixChecker.checkEquals(serialRight, a.mul(d), 0.0);
+      MatrixChecker.checkEquals(serialLeft, d.getTranspose().mul(a.getTranspose()), 0.0);
+    } finally {
+      Matrix.setSerialMode();
+      pool.shutdown();
+    }
+  }
+
+  public void testTranspose() {
+    SparseMatrix a = buildSparse(17, 9, 5);
+    Matrix t = a.getTranspose();
+    assertTrue(t instanceof SparseMatrix);
+    assertEquals(a.getNonZeros(), ((SparseMatrix) t).getNonZeros());
+    MatrixChecker.checkEquals(a.getDenseMatrix().getTranspose(), t, 0.0);
+  }
+
+  public void testMulScalar() {
+    SparseMatrix a = buildSparse(6, 8, 6);
+    MatrixChecker.checkEquals(a.getDenseMatrix().mul(-2.5), a.mul(-2.5), 0.0);
+  }
+
+  public void testSolveDenseWithSparseRightHandSide()
+    throws SingularMatrixException {
+    GeneralSquareMatrix a = new GeneralSquareMatrix(3, new double[] {
+      4.0, 1.0, 0.0,
+      1.0, 5.0, 2.0,
+      0.0, 2.0, 6.0
+    });
+    SparseMatrix b = buildSparse(3, 2, 7);
+    MatrixChecker.checkEquals(a.solve(b.getDenseMatrix(), 1.0e-10), a.solve(b, 1.0e-10), 0.0);
+  }
+
+  public void testStructure() {
+    // a sparse matrix with lower triangular pattern gives a lower
+    // triangular dense matrix
+    SparseMatrix m = MatrixFactory.buildSparseMatrix(3, 3,
+                                                     new int[]    { 0, 1, 2, 2 },
+                                                     new int[]    { 0, 0, 1, 2 },
+                                                     new double[] { 1.0, 2.0, 3.0, 4.0 });
+    assertTrue(m.getDenseMatrix() instanceof LowerTriangularMatrix);
+    assertTrue(((SparseMatrix) m.getTranspose()).getDenseMatrix() instanceof UpperTriangularMatrix);
+  }
+
+  public void testColumnRanges() {
+    SparseMatrix m = buildSparse(30, 20, 3);
+    m.setElement(0, 4, 2.0);
+    m.setElement(29, 4, 3.0);
+    int[] bounds = m.getColumnBounds();
+    for (int j = 0; j < m.getColumns(); ++j) {
+      NonNullRange r = m.getRangeForColumn(j);
+      assertEquals(bounds[2 * j],     r.begin);
+      assertEquals(bounds[2 * j + 1], r.end);
+    }
+    assertEquals(0,  m.getRangeForColumn(4).begin);
+    assertEquals(30, m.getRangeForColumn(4).end);
+
+    // empty column
+    m = new SparseMatrix(4, 3);
+    m.setElement(2, 0, 1.0);
+    m.setElement(1, 2, 1.0);
+    assertEquals(0, m.getRangeForColumn(1).begin);
+    assertEquals(0, m.getRangeForColumn(1).end);
+    assertEquals(2, m.getRangeForColumn(0).begin);
+    assertEquals(3, m.getRangeForColumn(0).end);
+  }
+
+  public static Test suite() {
+    return new TestSuite(SparseMatrixTest.class);
+  }
+
+  private SparseMatrix buildSparse(int rows, int columns, int seed) {
+    // roughly one element out of seven is non null
+    SparseMatrix m = new SparseMatrix(rows, columns);
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < columns; ++j) {
+        if ((i * 3 + j * 5 + seed) % 7 == 0) {
+          m.setElement(i, j, Math.sin(i + 0.5 * j + seed));
+        }
+      }
+    }
+    return m;
+  }
+
+}
@@ -0,0 +1,252 @@
+package org.spaceroots.mantissa.linalg;
+
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.*;
+
+public class SquareMatrixBatchTest
+  extends TestCase {
+
+  public SquareMatrixBatchTest(String name) {
+    super(name);
+  }
+
+  public void testElements() {
+    SquareMatrixBatch batch = new SquareMatrixBatch(3, 5);
+    assertEquals(3, batch.getOrder());
+    assertEquals(5, batch.getSize());
+    double[] elements = new double[11];
+    for (int i = 0; i < elements.length; ++i) {
+      elements[i] = i;
+    }
+    batch.setMatrix(2, elements, 2);
+    assertEquals(5.0, batch.getElement(2, 1, 0), 0.0);
+    assertEquals(0.0, batch.getElement(1, 1, 0), 0.0);
+    batch.setElement(4, 2, 1, -1.0);
+    double[] read = new double[9];
+    batch.getMatrix(4, read, 0);
+    assertEquals(-1.0, read[7], 0.0);
+    try {
+      new SquareMatrixBatch(0, 3);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testMulTranspose() {
+    for (int n = 1; n <= 6; ++n) {
+      int size = 17;
+      SquareMatrixBatch a = build(n, size, 0.1);
+      SquareMatrixBatch b = build(n, size, 0.7);
+      SquareMatrixBatch c = new SquareMatrixBatch(n, size);
+      a.mulInto(b, c);
+      for (int k = 0; k < size; ++k) {
+        checkEquals(extract(a, k).mul(extract(b, k)), c, k, 1.0e-14);
+      }
+      a.transposeInto(c);
+      for (int k = 0; k < size; ++k) {
+        checkEquals(extract(a, k).getTranspose(), c, k, 0.0);
+      }
+      a.transposeInto(a);
+      checkEquals(extract(c, 3), a, 3, 0.0);
+    }
+  }
+
+  public void testCongruence() {
+    int size = 40;
+    SquareMatrixBatch a = build(6, size, 0.2);
+    SquareMatrixBatch p = buildSPD(6, size);
+    SquareMatrixBatch c = new SquareMatrixBatch(6, size);
+    for (int loop = 0; loop < 2; ++loop) {
+      a.congruenceInto(p, c);
+      for (int k = 0; k < size; ++k) {
+        Matrix ak = extract(a, k);
+        checkEquals(ak.mul(extract(p, k)).mul(ak.getTranspose()), c, k, 1.0e-12);
+      }
+    }
+    try {
+      a.congruenceInto(p, p);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testInvert()
+    throws SingularMatrixException {
+    for (int n = 1; n <= 6; ++n) {
+      int size = 9;
+      SquareMatrixBatch a   = build(n, size, 0.4);
+      SquareMatrixBatch inv = new SquareMatrixBatch(n, size);
+      a.invertInto(inv, 1.0e-10);
+      for (int k = 0; k < size; ++k) {
+        MatrixChecker.checkRelativeEquals(new GeneralSquareMatrix(n),
+                                          extract(a, k).mul(extract(inv, k)).sub(identity(n)),
+                                          1.0e-12);
+      }
+      // in place inversion
+      a.invertInto(a, 1.0e-10);
+      for (int k = 0; k < size; ++k) {
+        checkEquals(extract(inv, k), a, k, 0.0);
+      }
+    }
+
+    SquareMatrixBatch singular = build(3, 4, 0.4);
+    for (int j = 0; j < 3; ++j) {
+      singular.setElement(2, 1, j, 2 * singular.getElement(2, 0, j));
+    }
+    try {
+      singular.invertInto(singular, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+
+    // one singular matrix among regular ones for Gauss-Jordan elimination
+    singular = build(6, 5, 0.4);
+    for (int j = 0; j < 6; ++j) {
+      singular.setElement(3, 4, j, 2 * singular.getElement(3, 1, j));
+    }
+    try {
+      singular.invertInto(new SquareMatrixBatch(6, 5), 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (SingularMatrixException e) {
+      // expected
+    }
+  }
+
+  public void testInvertDeterminantThreshold()
+    throws SingularMatrixException {
+    // epsilon is a threshold on the determinants for all orders,
+    // here all pivots are 1.0e-3 but the determinants are 1.0e-3^n
+    for (int n = 1; n <= 6; ++n) {
+      SquareMatrixBatch d = new SquareMatrixBatch(n, 2);
+      for (int i = 0; i < n; ++i) {
+        for (int k = 0; k < 2; ++k) {
+          d.setElement(k, i, i, 1.0e-3);
+        }
+      }
+      d.invertInto(new SquareMatrixBatch(n, 2), 0.5 * Math.pow(1.0e-3, n));
+      try {
+        d.invertInto(new SquareMatrixBatch(n, 2), 2.0 * Math.pow(1.0e-3, n));
+        fail("an exception should have been thrown");
+      } catch (SingularMatrixException e) {
+        // expected
+      }
+    }
+  }
+
+  public void testCholesky()
+    throws NotPositiveDefiniteMatrixException {
+    int size = 12;
+    SquareMatrixBatch p = buildSPD(6, size);
+    SquareMatrixBatch l = new SquareMatrixBatch(6, size);
+    p.choleskyInto(l, 1.0e-10);
+    for (int k = 0; k < size; ++k) {
+      Matrix lk = extract(l, k);
+      assertTrue(lk.getElement(1, 4) == 0.0);
+      checkEquals(lk.mul(lk.getTranspose()), p, k, 1.0e-12);
+    }
+    p.choleskyInto(p, 1.0e-10);
+    for (int k = 0; k < size; ++k) {
+      checkEquals(extract(l, k), p, k, 0.0);
+    }
+    p.setElement(5, 2, 2, -1.0);
+    try {
+      p.choleskyInto(l, 1.0e-10);
+      fail("an exception should have been thrown");
+    } catch (NotPositiveDefiniteMatrixException e) {
+      // expected
+    }
+    // the threshold applies to the pivots, as in LU decomposition
+    SquareMatrixBatch d = new SquareMatrixBatch(2, 3);
+    for (int k = 0; k < 3; ++k) {
+      d.setElement(k, 0, 0, 1.0);
+      d.setElement(k, 1, 1, 1.0);
+    }
+    d.setElement(1, 1, 1, 1.0e-8);
+    try {
+      d.choleskyInto(d, 1.0e-6);
+      fail("an exception should have been thrown");
+    } catch (NotPositiveDefiniteMatrixException e) {
+      // expected
+    }
+  }
+
+  public void testParallelMode() {
+    int size = 1000;
+    SquareMatrixBatch a = build(6, size, 0.3);
+    SquareMatrixBatch p = buildSPD(6, size);
+    SquareMatrixBatch serial   = new SquareMatrixBatch(6, size);
+    SquareMatrixBatch parallel = new SquareMatrixBatch(6, size);
+    a.congruenceInto(p, serial);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Matrix.setParallelMode(pool, 0);
+      a.congruenceInto(p, parallel);
+      for (int k = 0; k < size; ++k) {
+        checkEquals(extract(serial, k), parallel, k, 0.0);
+      }
+    } finally {
+      Matrix.setSerialMode();
+      pool.shutdown();
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(SquareMatrixBatchTest.class);
+  }
+
+  private SquareMatrixBatch build(int n, int size, double seed) {
+    SquareMatrixBatch batch = new SquareMatrixBatch(n, size);
+    for (int k = 0; k < size; ++k) {
+      for (int i = 0; i < n; ++i) {
+        for (int j = 0; j < n; ++j) {
+          batch.setElement(k, i, j,
+                           Math.sin(seed + 0.3 * k + 1.7 * i + j)
+                           + ((i == j) ? 2.0 : 0.0));
+        }
+      }
+    }
+    return batch;
+  }
+
+  private SquareMatrixBatch buildSPD(int n, int size) {
+    SquareMatrixBatch batch = build(n, size, 1.1);
+    SquareMatrixBatch spd   = new SquareMatrixBatch(n, size);
+    batch.congruenceInto(identityBatch(n, size), spd);
+    return spd;
+  }
+
+  private SquareMatrixBatch identityBatch(int n, int size) {
+    SquareMatrixBatch batch = new SquareMatrixBatch(n, size);
+    for (int k = 0; k < size; ++k) {
+      for (int i = 0; i < n; ++i) {
+        batch.setElement(k, i, i, 1.0);
+      }
+    }
+    return batch;
+  }
+
+  private Matrix identity(int n) {
+    GeneralSquareMatrix m = new GeneralSquareMatrix(n);
+    for (int i = 0; i < n; ++i) {
+      m.setElement(i, i, 1.0);
+    }
+    return m;
+  }
+
+  private Matrix extract(SquareMatrixBatch batch, int k) {
+    int n = batch.getOrder();
+    double[] elements = new double[n * n];
+    batch.getMatrix(k, elements, 0);
+    return new GeneralSquareMatrix(n, elements);
+  }
+
+  private void checkEquals(Matrix reference, SquareMatrixBatch batch, int k,
+                           double tolerance) {
+    MatrixChecker.checkRelativeEquals(reference, extract(batch, k), tolerance);
+  }
+
+}
@@ -0,0 +1,100 @@
+package org.spaceroots.mantissa.linalg;
+
+import junit.framework.*;
+
+public class VectorKernelsTest
+  extends TestCase {
+
+  public VectorKernelsTest(String name) {
+    super(name);
+  }
+
+  public void testDot() {
+    for (int n = 0; n < 13; ++n) {
+      double[] x = build(n + 3, 0.1);
+      double[] y = build(n + 5, 0.7);
+      double reference = 0;
+      for (int i = 0; i < n; ++i) {
+        reference += x[i + 3] * y[i + 5];
+      }
+      assertEquals(reference, VectorKernels.dot(x, 3, y, 5, n), 1.0e-14);
+    }
+  }
+
+  public void testAxpyScale() {
+    double[] x = build(20, 0.3);
+    double[] y = build(20, 1.2);
+    double[] reference = (double[]) y.clone();
+    for (int i = 0; i < 11; ++i) {
+      reference[i + 4] += 2.5 * x[i + 2];
+    }
+    VectorKernels.axpy(2.5, x, 2, y, 4, 11);
+    for (int i = 0; i < y.length; ++i) {
+      assertEquals(reference[i], y[i], 0.0);
+    }
+    VectorKernels.scale(-0.5, y, 0, y, 0, y.length);
+    for (int i = 0; i < y.length; ++i) {
+      assertEquals(-0.5 * reference[i], y[i], 0.0);
+    }
+  }
+
+  public void testCombine() {
+    double[][] v = { build(7, 0.1), build(7, 0.2), build(7, 0.3) };
+    double[] c = { 0.25, -1.5, 3.0 };
+    double[] y = build(7, 0.4);
+    double[] r = new double[7];
+    VectorKernels.combine(y, 0.01, c, v, 3, r);
+    for (int j = 0; j < r.length; ++j) {
+      // same operations as the former Runge-Kutta loop
+      double sum = c[0] * v[0][j];
+      for (int l = 1; l < 3; ++l) {
+        sum += c[l] * v[l][j];
+      }
+      assertEquals(y[j] + 0.01 * sum, r[j], 0.0);
+    }
+  }
+
+  public void testGemvGemm() {
+    GeneralMatrix a = new GeneralMatrix(9, 7, build(63, 0.5));
+    GeneralMatrix b = new GeneralMatrix(7, 5, build(35, 0.9));
+    GeneralMatrix c = new GeneralMatrix(9, 5, build(45, 1.3));
+
+    double[] x = build(7, 2.0);
+    double[] y = new double[9];
+    VectorKernels.gemv(a.getDenseData(), 9, 7, x, y);
+    Matrix reference = a.mul(new GeneralMatrix(7, 1, x));
+    for (int i = 0; i < y.length; ++i) {
+      assertEquals(reference.getElement(i, 0), y[i], 1.0e-14);
+    }
+
+    double[] result = (double[]) c.getDenseData().clone();
+    VectorKernels.gemm(2.0, a.getDenseData(), b.getDenseData(), -1.0, result, 9, 7, 5);
+    reference = a.mul(b).mul(2.0).sub(c);
+    for (int i = 0; i < 9; ++i) {
+      for (int j = 0; j < 5; ++j) {
+        assertEquals(reference.getElement(i, j), result[i * 5 + j], 1.0e-14);
+      }
+    }
+
+    VectorKernels.gemm(1.0, a.getDenseData(), b.getDenseData(), 0.0, result, 9, 7, 5);
+    reference = a.mul(b);
+    for (int i = 0; i < 9; ++i) {
+      for (int j = 0; j < 5; ++j) {
+        assertEquals(reference.getElement(i, j), result[i * 5 + j], 0.0);
+      }
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(VectorKernelsTest.class);
+  }
+
+  private double[] build(int n, double seed) {
+    double[] x = new double[n];
+    for (int i = 0; i < n; ++i) {
+      x[i] = Math.sin(seed + 1.7 * i);
+    }
+    return x;
+  }
+
+}
@@ -19,6 +19,8 @@ public class AllTests {
     suite.addTest(DormandPrince54IntegratorTest.suite());
     suite.addTest(DormandPrince853IntegratorTest.suite());
     suite.addTest(GraggBulirschStoerIntegratorTest.suite());
+    suite.addTest(EnsembleRungeKuttaIntegratorTest.suite());
+    suite.addTest(PropagationExecutorTest.suite());
     suite.addTest(FirstOrderConverterTest.suite());
     suite.addTest(StepNormalizerTest.suite());
     suite.addTest(ContinuousOutputModelTest.suite());
@@ -149,6 +149,15 @@ public class ClassicalRungeKuttaIntegratorTest
 
   }
 
+  public void testWorkspaceReuse()
+    throws DerivativeException, IntegratorException {
+    WorkspaceReuseChecker.check(new IntegratorFactory() {
+        public FirstOrderIntegrator buildIntegrator() {
+          return new ClassicalRungeKuttaIntegrator(1.0e-3);
+        }
+      });
+  }
+
   public void testKepler()
     throws DerivativeException, IntegratorException {
 
@@ -31,8 +31,8 @@ public class ClassicalRungeKuttaStepInterpolatorTest
     ObjectOutputStream    oos = new ObjectOutputStream(bos);
     oos.writeObject(integ.getStepHandler());
 
-    assertTrue(bos.size () > 700000);
-    assertTrue(bos.size () < 701000);
+    assertTrue(bos.size () > 495500);
+    assertTrue(bos.size () < 496500);
 
     ByteArrayInputStream  bis = new ByteArrayInputStream(bos.toByteArray());
     ObjectInputStream     ois = new ObjectInputStream(bis);
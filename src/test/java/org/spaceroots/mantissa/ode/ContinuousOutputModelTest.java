@@ -1,7 +1,22 @@
 package org.spaceroots.mantissa.ode;
 
 import junit.framework.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class ContinuousOutputModelTest
   extends TestCase {
@@ -53,10 +68,597 @@ public class ContinuousOutputModelTest
 
   }
 
+  public void testSamplesMatchInterpolators()
+    throws DerivativeException, IntegratorException {
+    double maxStep = pb.getFinalTime() - pb.getInitialTime();
+    checkSamples(new DormandPrince54Integrator(0, maxStep, 1.0e-8, 1.0e-8));
+    checkSamples(new DormandPrince853Integrator(0, maxStep, 1.0e-8, 1.0e-8));
+    checkSamples(new HighamHall54Integrator(0, maxStep, 1.0e-8, 1.0e-8));
+    checkSamples(new GraggBulirschStoerIntegrator(0, maxStep, 1.0e-8, 1.0e-8));
+    checkSamples(new ClassicalRungeKuttaIntegrator(0.3));
+    checkSamples(new MidpointIntegrator(0.1));
+  }
+
+  public void testBackward()
+    throws DerivativeException, IntegratorException {
+
+    double[] y = new double[pb.getDimension()];
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                    pb.getFinalTime(), y);
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getFinalTime(), y, pb.getInitialTime(), new double[y.length]);
+    assertEquals(pb.getFinalTime(), cm.getInitialTime(), 1.0e-15);
+    assertEquals(pb.getInitialTime(), cm.getFinalTime(), 1.0e-15);
+
+    Random random = new Random(2503964753412l);
+    for (int i = 0; i < 1000; ++i) {
+      double r = random.nextDouble();
+      double time = r * pb.getInitialTime() + (1.0 - r) * pb.getFinalTime();
+      cm.setInterpolatedTime(time);
+      assertEquals(time, cm.getInterpolatedTime(), 0.0);
+      double[] interpolatedY = cm.getInterpolatedState();
+      double[] theoreticalY  = pb.computeTheoreticalState(time);
+      assertEquals(theoreticalY[0], interpolatedY[0], 1.0e-4);
+      assertEquals(theoreticalY[1], interpolatedY[1], 1.0e-4);
+    }
+
+  }
+
+  public void testAppend()
+    throws DerivativeException, IntegratorException {
+
+    double tMid = 0.5 * (pb.getInitialTime() + pb.getFinalTime());
+    double[] yMid = new double[pb.getDimension()];
+
+    ContinuousOutputModel cm1 = new ContinuousOutputModel();
+    integ.setStepHandler(cm1);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(), tMid, yMid);
+
+    ContinuousOutputModel cm2 = new ContinuousOutputModel();
+    integ.setStepHandler(cm2);
+    integ.integrate(pb, tMid, yMid, pb.getFinalTime(), new double[yMid.length]);
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    cm.append(cm1);
+    cm.append(cm2);
+    assertEquals(cm1.getStepsCount() + cm2.getStepsCount(), cm.getStepsCount());
+    assertEquals(pb.getInitialTime(), cm.getInitialTime(), 1.0e-15);
+    assertEquals(pb.getFinalTime(), cm.getFinalTime(), 1.0e-15);
+    assertEquals(pb.getFinalTime(), cm.getInterpolatedTime(), 1.0e-15);
+
+    for (double t = pb.getInitialTime(); t < pb.getFinalTime(); t += 0.01) {
+      ContinuousOutputModel part = (t <= tMid) ? cm1 : cm2;
+      part.setInterpolatedTime(t);
+      cm.setInterpolatedTime(t);
+      double[] expected = part.getInterpolatedState();
+      double[] y        = cm.getInterpolatedState();
+      for (int i = 0; i < y.length; ++i) {
+        assertEquals(expected[i], y[i], 1.0e-15);
+      }
+    }
+
+    ContinuousOutputModel backward = new ContinuousOutputModel();
+    integ.setStepHandler(backward);
+    integ.integrate(pb, pb.getFinalTime(), yMid, tMid, new double[yMid.length]);
+    try {
+      cm.append(backward);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException iae) {
+    }
+
+  }
+
+  public void testSteps()
+    throws DerivativeException, IntegratorException {
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                    pb.getFinalTime(), new double[pb.getDimension()]);
+    assertTrue(cm.getStepsCount() > 10);
+
+    double previous = pb.getInitialTime();
+    for (int i = 0; i < cm.getStepsCount(); ++i) {
+      StepInterpolator step = cm.getStep(i);
+      assertEquals(previous, step.getPreviousTime(), 1.0e-15);
+      previous = step.getCurrentTime();
+      double t = 0.3 * step.getPreviousTime() + 0.7 * step.getCurrentTime();
+      step.setInterpolatedTime(t);
+      cm.setInterpolatedTime(t);
+      double[] y = step.getInterpolatedState();
+      double[] expected = cm.getInterpolatedState();
+      for (int k = 0; k < y.length; ++k) {
+        assertEquals(expected[k], y[k], 1.0e-15);
+      }
+    }
+    assertEquals(pb.getFinalTime(), previous, 1.0e-15);
+
+    try {
+      cm.getStep(cm.getStepsCount());
+      fail("an exception should have been thrown");
+    } catch (IndexOutOfBoundsException ioobe) {
+    }
+
+  }
+
+  public void testGetStateAt()
+    throws DerivativeException, IntegratorException {
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                    pb.getFinalTime(), new double[pb.getDimension()]);
+
+    double[] y = new double[pb.getDimension()];
+    Random random = new Random(7460341238765l);
+    for (int i = 0; i < 1000; ++i) {
+      double r = random.nextDouble();
+      double time = r * pb.getInitialTime() + (1.0 - r) * pb.getFinalTime();
+      cm.getStateAt(time, y);
+      assertEquals(pb.getFinalTime(), cm.getInterpolatedTime(), 0.0);
+      cm.setInterpolatedTime(time);
+      double[] expected = cm.getInterpolatedState();
+      for (int k = 0; k < y.length; ++k) {
+        assertEquals(expected[k], y[k], 0.0);
+      }
+      cm.setInterpolatedTime(pb.getFinalTime());
+    }
+
+    try {
+      cm.getStateAt(0.0, new double[y.length + 1]);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException iae) {
+    }
+
+    try {
+      new ContinuousOutputModel().getStateAt(0.0, y);
+      fail("an exception should have been thrown");
+    } catch (IllegalStateException ise) {
+    }
+
+  }
+
+  public void testSnapshotIsolation()
+    throws DerivativeException, IntegratorException {
+
+    double tMid = 0.5 * (pb.getInitialTime() + pb.getFinalTime());
+    double[] yMid = new double[pb.getDimension()];
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(), tMid, yMid);
+
+    ContinuousOutputSnapshot snapshot = cm.getSnapshot();
+    int steps = cm.getStepsCount();
+    assertEquals(steps, snapshot.getStepsCount());
+    assertEquals(pb.getDimension(), snapshot.getDimension());
+    assertEquals(tMid, snapshot.getFinalTime(), 1.0e-15);
+    assertTrue(snapshot.isForward());
+
+    double[] reference = new double[101 * yMid.length];
+    double[] y = new double[yMid.length];
+    for (int i = 0; i <= 100; ++i) {
+      snapshot.getStateAt(pb.getInitialTime() + 0.01 * i * (tMid - pb.getInitialTime()), y);
+      System.arraycopy(y, 0, reference, i * y.length, y.length);
+    }
+
+    // extend the model, then reuse it for another problem
+    ContinuousOutputModel end = new ContinuousOutputModel();
+    integ.setStepHandler(end);
+    integ.integrate(pb, tMid, yMid, pb.getFinalTime(), new double[yMid.length]);
+    cm.append(end);
+    assertTrue(cm.getStepsCount() > steps);
+    TestProblem3 other = new TestProblem3(0.1);
+    integ.setStepHandler(cm);
+    integ.integrate(other, other.getInitialTime(), other.getInitialState(),
+                    other.getFinalTime(), new double[other.getDimension()]);
+
+    assertEquals(steps, snapshot.getStepsCount());
+    assertEquals(tMid, snapshot.getFinalTime(), 1.0e-15);
+    for (int i = 0; i <= 100; ++i) {
+      snapshot.getStateAt(pb.getInitialTime() + 0.01 * i * (tMid - pb.getInitialTime()), y);
+      for (int k = 0; k < y.length; ++k) {
+        assertEquals(reference[i * y.length + k], y[k], 0.0);
+      }
+    }
+
+  }
+
+  public void testConcurrentQueries()
+    throws DerivativeException, IntegratorException, InterruptedException {
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                    pb.getFinalTime(), new double[pb.getDimension()]);
+    final ContinuousOutputSnapshot snapshot = cm.getSnapshot();
+
+    final double[] times = new double[2000];
+    Random random = new Random(9563421547832l);
+    for (int i = 0; i < times.length; ++i) {
+      double r = random.nextDouble();
+      times[i] = r * pb.getInitialTime() + (1.0 - r) * pb.getFinalTime();
+    }
+    final double[][] reference = new double[times.length][pb.getDimension()];
+    for (int i = 0; i < times.length; ++i) {
+      snapshot.getStateAt(times[i], reference[i]);
+    }
+
+    final int[] mismatches = new int[8];
+    Thread[] threads = new Thread[mismatches.length];
+    for (int j = 0; j < threads.length; ++j) {
+      final int id = j;
+      threads[j] = new Thread() {
+          public void run() {
+            double[] y = new double[reference[0].length];
+            for (int pass = 0; pass < 20; ++pass) {
+              // each thread walks the times in a different order
+              for (int i = 0; i < times.length; ++i) {
+                int k = (i * (2 * id + 1)) % times.length;
+                snapshot.getStateAt(times[k], y);
+                for (int l = 0; l < y.length; ++l) {
+                  if (y[l] != reference[k][l]) {
+                    ++mismatches[id];
+                  }
+                }
+              }
+            }
+          }
+        };
+      threads[j].start();
+    }
+    for (int j = 0; j < threads.length; ++j) {
+      threads[j].join();
+      assertEquals(0, mismatches[j]);
+    }
+
+  }
+
+  public void testNonPolynomialInterpolator()
+    throws DerivativeException, IOException, ClassNotFoundException {
+
+    // the interpolator does not override getInterpolationDegree,
+    // so the model must store copies of it
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    double[] y = new double[] { 1.0 };
+    ExponentialStepInterpolator interpolator = new ExponentialStepInterpolator(y);
+    interpolator.storeTime(0.0);
+    for (int i = 1; i <= 10; ++i) {
+      interpolator.shift();
+      y[0] = Math.exp(ExponentialStepInterpolator.RATE * 0.1 * i);
+      interpolator.storeTime(0.1 * i);
+      cm.handleStep(interpolator, i == 10);
+    }
+    assertEquals(10, cm.getStepsCount());
+    assertEquals(1.0, cm.getFinalTime(), 1.0e-15);
+    assertEquals(y[0], cm.getInterpolatedState()[0], 0.0);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream    oos = new ObjectOutputStream(bos);
+    oos.writeObject(cm);
+    ObjectInputStream ois =
+      new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    ContinuousOutputModel read = (ContinuousOutputModel) ois.readObject();
+
+    double[] times = new double[100];
+    for (int k = 0; k < times.length; ++k) {
+      times[k] = k / (times.length - 1.0);
+    }
+    double[] batch = new double[times.length];
+    read.getStatesAt(times, null, batch);
+
+    double[] state = new double[1];
+    for (int k = 0; k < times.length; ++k) {
+      double expected = Math.exp(ExponentialStepInterpolator.RATE * times[k]);
+      cm.setInterpolatedTime(times[k]);
+      assertEquals(expected, cm.getInterpolatedState()[0], 1.0e-14 * expected);
+      read.getStateAt(times[k], state);
+      assertEquals(expected, state[0], 1.0e-14 * expected);
+      assertEquals(expected, batch[k], 1.0e-14 * expected);
+    }
+
+    StepInterpolator step = read.getStep(4);
+    step.setInterpolatedTime(0.45);
+    assertEquals(Math.exp(ExponentialStepInterpolator.RATE * 0.45),
+                 step.getInterpolatedState()[0],
+                 1.0e-14 * Math.exp(ExponentialStepInterpolator.RATE * 0.45));
+
+  }
+
+  public void testBatchMatchesPointQueries()
+    throws DerivativeException, IntegratorException {
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                    pb.getFinalTime(), new double[pb.getDimension()]);
+    checkBatch(cm, pb.getInitialTime(), pb.getFinalTime(), 101);
+    checkBatch(cm, pb.getInitialTime(), pb.getFinalTime(), 20001);
+
+    // backward model
+    double[] y = new double[pb.getDimension()];
+    cm.getStateAt(pb.getFinalTime(), y);
+    ContinuousOutputModel backward = new ContinuousOutputModel();
+    integ.setStepHandler(backward);
+    integ.integrate(pb, pb.getFinalTime(), y, pb.getInitialTime(), new double[y.length]);
+    checkBatch(backward, pb.getInitialTime(), pb.getFinalTime(), 101);
+    checkBatch(backward, pb.getInitialTime(), pb.getFinalTime(), 20001);
+
+  }
+
+  public void testBatchMultiThreaded()
+    throws DerivativeException, IntegratorException {
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                    pb.getFinalTime(), new double[pb.getDimension()]);
+
+    double[] times = new double[100000];
+    for (int k = 0; k < times.length; ++k) {
+      times[k] = pb.getInitialTime()
+               + k * (pb.getFinalTime() - pb.getInitialTime()) / (times.length - 1);
+    }
+    int[] components = new int[] { 3, 0 };
+    double[] sequential = new double[times.length * components.length];
+    cm.getStatesAt(times, components, sequential);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      double[] parallel = new double[sequential.length];
+      cm.getStatesAt(times, components, parallel, executor);
+      for (int i = 0; i < sequential.length; ++i) {
+        assertEquals(sequential[i], parallel[i],
+                     1.0e-14 * Math.max(1.0, Math.abs(sequential[i])));
+      }
+
+      // force splitting regardless of the number of processors
+      parallel = new double[sequential.length];
+      cm.getSnapshot().getStatesAt(times, components, parallel, executor, 7);
+      for (int i = 0; i < sequential.length; ++i) {
+        assertEquals(sequential[i], parallel[i],
+                     1.0e-14 * Math.max(1.0, Math.abs(sequential[i])));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+  }
+
+  public void testBatchSlicesCompletedOnFailure()
+    throws DerivativeException, IntegratorException, InterruptedException {
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                    pb.getFinalTime(), new double[pb.getDimension()]);
+
+    double[] times = new double[100000];
+    for (int k = 0; k < times.length; ++k) {
+      times[k] = pb.getInitialTime()
+               + k * (pb.getFinalTime() - pb.getInitialTime()) / (times.length - 1);
+    }
+    double[] reference = new double[times.length * pb.getDimension()];
+    cm.getStatesAt(times, null, reference);
+
+    // the first slice fails once the other slices are running
+    double[] out = new double[reference.length];
+    FailingExecutor executor = new FailingExecutor();
+    try {
+      cm.getSnapshot().getStatesAt(times, null, out, executor, 4);
+      fail("an exception should have been thrown");
+    } catch (IllegalStateException ise) {
+      assertEquals("simulated failure", ise.getMessage());
+    }
+
+    // no slice is still writing into the output array
+    double[] copy = (double[]) out.clone();
+    Thread.sleep(50);
+    for (int i = 0; i < out.length; ++i) {
+      assertEquals(copy[i], out[i], 0.0);
+    }
+
+    // the last slice is interpolated by the calling thread
+    for (int i = (3 * reference.length) / 4; i < reference.length; ++i) {
+      assertEquals(reference[i], out[i], 0.0);
+    }
+
+  }
+
+  public void testBatchErrors()
+    throws DerivativeException, IntegratorException {
+
+    ContinuousOutputModel cm = new ContinuousOutputModel();
+    try {
+      cm.getStatesAt(new double[] { 0.0 }, null, new double[4]);
+      fail("an exception should have been thrown");
+    } catch (IllegalStateException ise) {
+    }
+
+    integ.setStepHandler(cm);
+    integ.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                    pb.getFinalTime(), new double[pb.getDimension()]);
+
+    try {
+      cm.getStatesAt(new double[] { 0.0, 2.0, 1.0 }, null, new double[12]);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException iae) {
+    }
+
+    try {
+      cm.getStatesAt(new double[] { 0.0, 1.0, 2.0 }, null, new double[11]);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException iae) {
+    }
+
+    try {
+      cm.getStatesAt(new double[] { 0.0, 1.0 }, new int[] { 4 }, new double[2]);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException iae) {
+    }
+
+  }
+
+  private void checkBatch(ContinuousOutputModel cm, double tMin, double tMax,
+                          int points) {
+
+    // sparse grids are interpolated with the barycentric formula,
+    // dense grids from Chebyshev coefficients,
+    // the grid extends slightly beyond the integration interval
+    double[] times = new double[points];
+    for (int k = 0; k < times.length; ++k) {
+      times[k] = tMin - 0.01 + k * (tMax - tMin + 0.02) / (times.length - 1);
+    }
+    double[] reversed = new double[times.length];
+    for (int k = 0; k < times.length; ++k) {
+      reversed[k] = times[times.length - 1 - k];
+    }
+
+    int n = pb.getDimension();
+    int[] components = new int[] { 2, 0 };
+    double[] all      = new double[times.length * n];
+    double[] selected = new double[times.length * components.length];
+    double[] y        = new double[n];
+
+    cm.getStatesAt(times, null, all);
+    cm.getStatesAt(reversed, components, selected);
+    for (int k = 0; k < times.length; ++k) {
+      // extrapolation amplifies rounding errors
+      boolean inside = (times[k] >= tMin) && (times[k] <= tMax);
+      double  tol    = inside ? 1.0e-14 : 1.0e-10;
+      cm.getStateAt(times[k], y);
+      for (int i = 0; i < n; ++i) {
+        assertEquals(y[i], all[k * n + i], tol * Math.max(1.0, Math.abs(y[i])));
+      }
+      int r = times.length - 1 - k;
+      for (int i = 0; i < components.length; ++i) {
+        double expected = y[components[i]];
+        assertEquals(expected, selected[r * components.length + i],
+                     tol * Math.max(1.0, Math.abs(expected)));
+      }
+    }
+
+  }
+
+  private void checkSamples(FirstOrderIntegrator integrator)
+    throws DerivativeException, IntegratorException {
+
+    final ContinuousOutputModel cm = new ContinuousOutputModel();
+    final ArrayList copies = new ArrayList();
+    integrator.setStepHandler(new StepHandler() {
+        public boolean requiresDenseOutput() {
+          return true;
+        }
+        public void reset() {
+          cm.reset();
+          copies.clear();
+        }
+        public void handleStep(StepInterpolator interpolator, boolean isLast)
+          throws DerivativeException {
+          cm.handleStep(interpolator, isLast);
+          copies.add(((AbstractStepInterpolator) interpolator).clone());
+        }
+      });
+    integrator.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                         pb.getFinalTime(), new double[pb.getDimension()]);
+    assertEquals(copies.size(), cm.getStepsCount());
+
+    for (int i = 0; i < copies.size(); ++i) {
+      StepInterpolator copy = (StepInterpolator) copies.get(i);
+      for (int j = 0; j <= 10; ++j) {
+        double t = copy.getPreviousTime()
+                 + 0.1 * j * (copy.getCurrentTime() - copy.getPreviousTime());
+        copy.setInterpolatedTime(t);
+        cm.setInterpolatedTime(t);
+        double[] expected = copy.getInterpolatedState();
+        double[] y        = cm.getInterpolatedState();
+        for (int k = 0; k < y.length; ++k) {
+          assertEquals(expected[k], y[k], 1.0e-12 * Math.max(1.0, Math.abs(expected[k])));
+        }
+      }
+    }
+
+  }
+
   public void checkValue(double value, double reference) {
     assertTrue(Math.abs(value - reference) < 1.0e-10);
   }
 
+  public static class ExponentialStepInterpolator
+    extends AbstractStepInterpolator {
+    public ExponentialStepInterpolator() {
+    }
+    public ExponentialStepInterpolator(double[] y) {
+      super(y, true);
+    }
+    public ExponentialStepInterpolator(ExponentialStepInterpolator interpolator) {
+      super(interpolator);
+    }
+    public Object clone() {
+      return new ExponentialStepInterpolator(this);
+    }
+    protected void computeInterpolatedState(double theta, double oneMinusThetaH) {
+      interpolatedState[0] = currentState[0] * Math.exp(-RATE * oneMinusThetaH);
+    }
+    public void writeExternal(ObjectOutput out)
+      throws IOException {
+      writeBaseExternal(out);
+    }
+    public void readExternal(ObjectInput in)
+      throws IOException {
+      double t = readBaseExternal(in);
+      try {
+        setInterpolatedTime(t);
+      } catch (DerivativeException e) {
+        IOException ioe = new IOException();
+        ioe.initCause(e);
+        throw ioe;
+      }
+    }
+    public static final double RATE = 20.0;
+    private static final long serialVersionUID = 6135421758124012497L;
+  }
+
+  private static class FailingExecutor extends AbstractExecutorService {
+    public FailingExecutor() {
+      submitted = 0;
+    }
+    protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, T value) {
+      if (submitted++ > 0) {
+        return new FutureTask<T>(runnable, value);
+      }
+      return new FutureTask<T>(new Runnable() {
+          public void run() {
+            try {
+              Thread.sleep(20);
+            } catch (InterruptedException ie) {
+              // ignored
+            }
+            throw new IllegalStateException("simulated failure");
+          }
+        }, value);
+    }
+    public void execute(Runnable command) {
+      new Thread(command).start();
+    }
+    public void shutdown() {
+    }
+    public List<Runnable> shutdownNow() {
+      return new ArrayList<Runnable>();
+    }
+    public boolean isShutdown() {
+      return false;
+    }
+    public boolean isTerminated() {
+      return false;
+    }
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return true;
+    }
+    private int submitted;
+  }
+
   public static Test suite() {
     return new TestSuite(ContinuousOutputModelTest.class);
   }
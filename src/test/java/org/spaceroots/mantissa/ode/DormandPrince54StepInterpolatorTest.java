@@ -36,8 +36,8 @@ public class DormandPrince54StepInterpolatorTest
     ObjectOutputStream    oos = new ObjectOutputStream(bos);
     oos.writeObject(integ.getStepHandler());
 
-    assertTrue(bos.size () > 119500);
-    assertTrue(bos.size () < 120500);
+    assertTrue(bos.size () > 69500);
+    assertTrue(bos.size () < 70500);
 
     ByteArrayInputStream  bis = new ByteArrayInputStream(bos.toByteArray());
     ObjectInputStream     ois = new ObjectInputStream(bis);
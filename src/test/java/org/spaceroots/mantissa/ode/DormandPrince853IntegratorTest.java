@@ -193,6 +193,16 @@ public class DormandPrince853IntegratorTest
 
   }
 
+  public void testWorkspaceReuse()
+    throws DerivativeException, IntegratorException {
+    WorkspaceReuseChecker.check(new IntegratorFactory() {
+        public FirstOrderIntegrator buildIntegrator() {
+          return new DormandPrince853Integrator(0.0, 1.0e3,
+                                                1.0e-10, 1.0e-10);
+        }
+      });
+  }
+
   public void testUnstableDerivative()
   throws DerivativeException, IntegratorException {
     final StepProblem stepProblem = new StepProblem(0.0, 1.0, 2.0);
@@ -36,8 +36,8 @@ public class DormandPrince853StepInterpolatorTest
     ObjectOutputStream    oos = new ObjectOutputStream(bos);
     oos.writeObject(integ.getStepHandler());
 
-    assertTrue(bos.size () > 86000);
-    assertTrue(bos.size () < 87000);
+    assertTrue(bos.size () > 39500);
+    assertTrue(bos.size () < 40500);
 
     ByteArrayInputStream  bis = new ByteArrayInputStream(bos.toByteArray());
     ObjectInputStream     ois = new ObjectInputStream(bis);
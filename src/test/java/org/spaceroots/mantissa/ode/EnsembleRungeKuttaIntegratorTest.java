@@ -0,0 +1,216 @@
+package org.spaceroots.mantissa.ode;
+
+import junit.framework.*;
+
+public class EnsembleRungeKuttaIntegratorTest
+  extends TestCase {
+
+  public EnsembleRungeKuttaIntegratorTest(String name) {
+    super(name);
+  }
+
+  public void testDimensionCheck() {
+    try  {
+      TestProblem1 pb = new TestProblem1();
+      EnsembleRungeKuttaIntegrator integ =
+        new EnsembleRungeKuttaIntegrator(new ClassicalRungeKuttaIntegrator(0.01));
+      integ.integrate(new EnsembleConverter(pb),
+                      0.0, new double[pb.getDimension() + 10][3],
+                      1.0, new double[pb.getDimension() + 10][3]);
+      fail("an exception should have been thrown");
+    } catch(DerivativeException de) {
+      fail("wrong exception caught");
+    } catch(IntegratorException ie) {
+    }
+  }
+
+  public void testEnsembleSizeCheck() {
+    try  {
+      TestProblem1 pb = new TestProblem1();
+      EnsembleRungeKuttaIntegrator integ =
+        new EnsembleRungeKuttaIntegrator(new ClassicalRungeKuttaIntegrator(0.01));
+      double[][] y0 = new double[pb.getDimension()][3];
+      y0[1] = new double[4];
+      integ.integrate(new EnsembleConverter(pb),
+                      0.0, y0, 1.0, new double[pb.getDimension()][3]);
+      fail("an exception should have been thrown");
+    } catch(DerivativeException de) {
+      fail("wrong exception caught");
+    } catch(IntegratorException ie) {
+    }
+  }
+
+  public void testFixedStepMatchesSingleIntegrations()
+    throws DerivativeException, IntegratorException {
+
+    TestProblem3 pb = new TestProblem3(0.5);
+    double[][] y0 = perturbedEnsemble(pb, 17);
+    double[][] y  = new double[y0.length][y0[0].length];
+
+    EnsembleRungeKuttaIntegrator ensemble =
+      new EnsembleRungeKuttaIntegrator(new ClassicalRungeKuttaIntegrator(0.01));
+    assertEquals("classical Runge-Kutta", ensemble.getName());
+    ensemble.integrate(new EnsembleConverter(pb),
+                       pb.getInitialTime(), y0, pb.getFinalTime(), y);
+    assertTrue(Double.isNaN(ensemble.getCurrentStepStart()));
+
+    FirstOrderIntegrator single = new ClassicalRungeKuttaIntegrator(0.01);
+    checkMembers(pb, single, y0, y, 0.0);
+
+  }
+
+  public void testSingleMember()
+    throws DerivativeException, IntegratorException {
+    TestProblem3 pb = new TestProblem3(0.5);
+    double[][] y0 = perturbedEnsemble(pb, 1);
+    double[][] y  = new double[y0.length][1];
+
+    EnsembleRungeKuttaIntegrator ensemble =
+      new EnsembleRungeKuttaIntegrator(new GillIntegrator(0.001));
+    ensemble.integrate(new EnsembleConverter(pb),
+                       pb.getInitialTime(), y0, pb.getFinalTime(), y);
+    checkMembers(pb, new GillIntegrator(0.001), y0, y, 0.0);
+
+  }
+
+  public void testAdaptiveStepAccuracy()
+    throws DerivativeException, IntegratorException {
+
+    TestProblem3 pb = new TestProblem3(0.9);
+    double[][] y0 = perturbedEnsemble(pb, 25);
+    double[][] y  = new double[y0.length][y0[0].length];
+
+    DormandPrince853Integrator dp853 =
+      new DormandPrince853Integrator(0.0, pb.getFinalTime() - pb.getInitialTime(),
+                                     1.0e-10, 1.0e-10);
+    EnsembleRungeKuttaIntegrator ensemble = new EnsembleRungeKuttaIntegrator(dp853);
+    ensemble.integrate(new EnsembleConverter(pb),
+                       pb.getInitialTime(), y0, pb.getFinalTime(), y);
+
+    // steps differ from single integrations,
+    // but all members must remain within tolerance
+    checkMembers(pb, dp853, y0, y, 1.0e-7);
+
+  }
+
+  public void testWorstMemberDrivesSteps()
+    throws DerivativeException, IntegratorException {
+
+    // a mildly eccentric orbit and a highly eccentric one
+    TestProblem3 mild   = new TestProblem3(0.1);
+    TestProblem3 strong = new TestProblem3(0.9);
+    double[][] y0 = new double[4][2];
+    for (int i = 0; i < 4; ++i) {
+      y0[i][0] = mild.getInitialState()[i];
+      y0[i][1] = strong.getInitialState()[i];
+    }
+
+    double maxStep = mild.getFinalTime() - mild.getInitialTime();
+    CountingConverter converter = new CountingConverter(new TestProblem3(0.1));
+    EnsembleRungeKuttaIntegrator ensemble =
+      new EnsembleRungeKuttaIntegrator(new DormandPrince54Integrator(0.0, maxStep,
+                                                                     1.0e-8, 1.0e-8));
+    ensemble.integrate(converter, mild.getInitialTime(), y0,
+                       mild.getFinalTime(), new double[4][2]);
+
+    TestProblem3 single = new TestProblem3(0.9);
+    new DormandPrince54Integrator(0.0, maxStep, 1.0e-8, 1.0e-8).integrate(single,
+                                                                           single.getInitialTime(),
+                                                                           single.getInitialState(),
+                                                                           single.getFinalTime(),
+                                                                           new double[4]);
+
+    // the ensemble needs at least as many evaluations
+    // as the most difficult member alone
+    assertTrue(converter.getCalls() >= single.getCalls());
+
+  }
+
+  public void testWorkspaceReuse()
+    throws DerivativeException, IntegratorException {
+
+    TestProblem3 pb = new TestProblem3(0.5);
+    EnsembleRungeKuttaIntegrator ensemble =
+      new EnsembleRungeKuttaIntegrator(new DormandPrince54Integrator(0.0, 10.0,
+                                                                     1.0e-8, 1.0e-8));
+    double[][] ref = null;
+    for (int size = 4; size < 10; size += 5) {
+      for (int pass = 0; pass < 2; ++pass) {
+        double[][] y0 = perturbedEnsemble(pb, size);
+        double[][] y  = new double[y0.length][y0[0].length];
+        ensemble.integrate(new EnsembleConverter(pb),
+                           pb.getInitialTime(), y0, pb.getFinalTime(), y);
+        if (pass == 0) {
+          ref = y;
+        } else {
+          for (int i = 0; i < y.length; ++i) {
+            for (int k = 0; k < y[i].length; ++k) {
+              assertEquals(ref[i][k], y[i][k], 0.0);
+            }
+          }
+        }
+      }
+    }
+
+  }
+
+  /** Build a perturbed ensemble around a problem initial state.
+   * @param pb reference problem
+   * @param members number of members
+   * @return initial states in structure of arrays layout
+   */
+  private double[][] perturbedEnsemble(TestProblemAbstract pb, int members) {
+    double[] ref = pb.getInitialState();
+    double[][] y0 = new double[ref.length][members];
+    for (int i = 0; i < ref.length; ++i) {
+      for (int k = 0; k < members; ++k) {
+        y0[i][k] = ref[i] * (1.0 + 1.0e-3 * k * (i + 1));
+      }
+    }
+    return y0;
+  }
+
+  /** Check ensemble results against single integrations.
+   * @param pb reference problem
+   * @param single single trajectory integrator
+   * @param y0 initial states of the members
+   * @param y final states of the members
+   * @param tolerance tolerance on the differences
+   */
+  private void checkMembers(TestProblemAbstract pb, FirstOrderIntegrator single,
+                            double[][] y0, double[][] y, double tolerance)
+    throws DerivativeException, IntegratorException {
+    double[] z0 = new double[y0.length];
+    double[] z  = new double[y0.length];
+    for (int k = 0; k < y0[0].length; ++k) {
+      for (int i = 0; i < y0.length; ++i) {
+        z0[i] = y0[i][k];
+      }
+      single.integrate(pb, pb.getInitialTime(), z0, pb.getFinalTime(), z);
+      for (int i = 0; i < z.length; ++i) {
+        assertEquals(z[i], y[i][k], tolerance);
+      }
+    }
+  }
+
+  private static class CountingConverter extends EnsembleConverter {
+    public CountingConverter(FirstOrderDifferentialEquations equations) {
+      super(equations);
+      calls = 0;
+    }
+    public void computeDerivatives(double t, double[][] y, double[][] yDot)
+      throws DerivativeException {
+      ++calls;
+      super.computeDerivatives(t, y, yDot);
+    }
+    public int getCalls() {
+      return calls;
+    }
+    private int calls;
+  }
+
+  public static Test suite() {
+    return new TestSuite(EnsembleRungeKuttaIntegratorTest.class);
+  }
+
+}
@@ -109,8 +109,8 @@ public class EulerStepInterpolatorTest
     ObjectOutputStream    oos = new ObjectOutputStream(bos);
     oos.writeObject(integ.getStepHandler());
 
-    assertTrue(bos.size () > 82000);
-    assertTrue(bos.size () < 83000);
+    assertTrue(bos.size () > 52000);
+    assertTrue(bos.size () < 53000);
 
     ByteArrayInputStream  bis = new ByteArrayInputStream(bos.toByteArray());
     ObjectInputStream     ois = new ObjectInputStream(bis);
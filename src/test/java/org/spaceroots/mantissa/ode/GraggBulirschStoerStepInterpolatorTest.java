@@ -37,8 +37,8 @@ public class GraggBulirschStoerStepInterpolatorTest
     ObjectOutputStream    oos = new ObjectOutputStream(bos);
     oos.writeObject(integ.getStepHandler());
 
-    assertTrue(bos.size () > 34000);
-    assertTrue(bos.size () < 35000);
+    assertTrue(bos.size () > 29000);
+    assertTrue(bos.size () < 30000);
 
     ByteArrayInputStream  bis = new ByteArrayInputStream(bos.toByteArray());
     ObjectInputStream     ois = new ObjectInputStream(bis);
@@ -36,8 +36,8 @@ public class HighamHall54StepInterpolatorTest
     ObjectOutputStream    oos = new ObjectOutputStream(bos);
     oos.writeObject(integ.getStepHandler());
 
-    assertTrue(bos.size () > 158000);
-    assertTrue(bos.size () < 159000);
+    assertTrue(bos.size () > 109000);
+    assertTrue(bos.size () < 110000);
 
     ByteArrayInputStream  bis = new ByteArrayInputStream(bos.toByteArray());
     ObjectInputStream     ois = new ObjectInputStream(bis);
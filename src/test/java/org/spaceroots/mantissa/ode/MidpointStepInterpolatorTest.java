@@ -31,8 +31,8 @@ public class MidpointStepInterpolatorTest
     ObjectOutputStream    oos = new ObjectOutputStream(bos);
     oos.writeObject(integ.getStepHandler());
 
-    assertTrue(bos.size () > 98000);
-    assertTrue(bos.size () < 99000);
+    assertTrue(bos.size () > 68000);
+    assertTrue(bos.size () < 69000);
 
     ByteArrayInputStream  bis = new ByteArrayInputStream(bos.toByteArray());
     ObjectInputStream     ois = new ObjectInputStream(bis);
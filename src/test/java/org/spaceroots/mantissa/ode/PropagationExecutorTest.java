@@ -0,0 +1,254 @@
+package org.spaceroots.mantissa.ode;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.*;
+
+public class PropagationExecutorTest
+  extends TestCase {
+
+  public PropagationExecutorTest(String name) {
+    super(name);
+  }
+
+  public void testInvalidThreads() {
+    try {
+      new PropagationExecutor(new DP853Factory(), 0);
+      fail("an exception should have been thrown");
+    } catch (IllegalArgumentException iae) {
+    }
+  }
+
+  public void testSameResultsAsSequential()
+    throws DerivativeException, IntegratorException {
+
+    PropagationJob[] jobs = new PropagationJob[40];
+    TestProblemHandler[] handlers = new TestProblemHandler[jobs.length];
+    for (int i = 0; i < jobs.length; ++i) {
+      TestProblem3 pb = new TestProblem3(0.05 + 0.02 * i);
+      handlers[i] = new TestProblemHandler(pb);
+      jobs[i] = new PropagationJob(pb, pb.getInitialTime(), pb.getInitialState(),
+                                   pb.getFinalTime(), handlers[i]);
+    }
+
+    PropagationExecutor executor = new PropagationExecutor(new DP853Factory(), 4);
+    double[][] results = executor.propagate(jobs);
+    executor.shutdown();
+
+    assertEquals(jobs.length, results.length);
+    for (int i = 0; i < jobs.length; ++i) {
+      TestProblem3 pb = new TestProblem3(0.05 + 0.02 * i);
+      double[] y = new double[pb.getDimension()];
+      new DP853Factory().buildIntegrator().integrate(pb, pb.getInitialTime(),
+                                                     pb.getInitialState(),
+                                                     pb.getFinalTime(), y);
+      for (int j = 0; j < y.length; ++j) {
+        assertEquals(y[j], results[i][j], 0.0);
+      }
+      // each job has its own handler
+      assertTrue(handlers[i].getMaximalError() < 1.0e-6);
+    }
+
+  }
+
+  public void testUserExecutor()
+    throws DerivativeException, IntegratorException {
+
+    ExecutorService service = Executors.newCachedThreadPool();
+    PropagationExecutor executor = new PropagationExecutor(new DP853Factory(),
+                                                           service);
+    PropagationJob[] jobs = new PropagationJob[5];
+    for (int i = 0; i < jobs.length; ++i) {
+      TestProblem1 pb = new TestProblem1();
+      jobs[i] = new PropagationJob(pb, pb.getInitialTime(), pb.getInitialState(),
+                                   pb.getFinalTime());
+    }
+    executor.propagate(jobs);
+    executor.shutdown();
+
+    // the user service is still usable
+    assertFalse(service.isShutdown());
+    assertEquals(5, executor.propagate(jobs).length);
+    service.shutdown();
+
+  }
+
+  public void testFailure()
+    throws IntegratorException {
+
+    PropagationJob[] jobs = new PropagationJob[10];
+    for (int i = 0; i < jobs.length; ++i) {
+      TestProblem1 pb = new TestProblem1();
+      FirstOrderDifferentialEquations equations = pb;
+      if (i == 3) {
+        equations = new FirstOrderDifferentialEquations() {
+            public int getDimension() {
+              return 2;
+            }
+            public void computeDerivatives(double t, double[] y, double[] yDot)
+              throws DerivativeException {
+              throw new DerivativeException("failure in job {0}",
+                                            new String[] { "3" });
+            }
+          };
+      }
+      jobs[i] = new PropagationJob(equations, pb.getInitialTime(),
+                                   pb.getInitialState(), pb.getFinalTime());
+    }
+
+    PropagationExecutor executor = new PropagationExecutor(new DP853Factory(), 3);
+    try {
+      executor.propagate(jobs);
+      fail("an exception should have been thrown");
+    } catch (DerivativeException de) {
+      assertTrue(de.getMessage().indexOf("job 3") >= 0);
+    } finally {
+      executor.shutdown();
+    }
+
+  }
+
+  public void testRunningJobsCompletedOnFailure()
+    throws IntegratorException, InterruptedException {
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final SlowHandler    slow    = new SlowHandler(started);
+
+    // job 0 fails once job 1 is running
+    FirstOrderDifferentialEquations failing = new FirstOrderDifferentialEquations() {
+        public int getDimension() {
+          return 2;
+        }
+        public void computeDerivatives(double t, double[] y, double[] yDot)
+          throws DerivativeException {
+          try {
+            started.await();
+          } catch (InterruptedException ie) {
+            throw new DerivativeException(ie);
+          }
+          throw new DerivativeException("failure in job {0}", new String[] { "0" });
+        }
+      };
+
+    TestProblem1 pb = new TestProblem1();
+    PropagationJob[] jobs = new PropagationJob[] {
+      new PropagationJob(failing, pb.getInitialTime(), pb.getInitialState(),
+                         pb.getFinalTime()),
+      new PropagationJob(pb, pb.getInitialTime(), pb.getInitialState(),
+                         pb.getFinalTime(), slow)
+    };
+
+    PropagationExecutor executor = new PropagationExecutor(new DP853Factory(), 2);
+    try {
+      executor.propagate(jobs);
+      fail("an exception should have been thrown");
+    } catch (DerivativeException de) {
+      assertTrue(de.getMessage().indexOf("job 0") >= 0);
+      // the running job has been completed before the exception was thrown
+      assertTrue(slow.isCompleted());
+      int steps = slow.getSteps();
+      Thread.sleep(50);
+      assertEquals(steps, slow.getSteps());
+    } finally {
+      executor.shutdown();
+    }
+
+  }
+
+  public void testRejectedJobs()
+    throws DerivativeException, IntegratorException, InterruptedException {
+
+    // service rejecting the third job
+    ThreadPoolExecutor service =
+      new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+                             new LinkedBlockingQueue<Runnable>()) {
+        public void execute(Runnable command) {
+          if (++submitted > 2) {
+            throw new RejectedExecutionException("job rejected");
+          }
+          super.execute(command);
+        }
+        private int submitted = 0;
+      };
+
+    SlowHandler[]    handlers = new SlowHandler[4];
+    PropagationJob[] jobs     = new PropagationJob[handlers.length];
+    for (int i = 0; i < jobs.length; ++i) {
+      TestProblem1 pb = new TestProblem1();
+      handlers[i] = new SlowHandler(new CountDownLatch(1));
+      jobs[i] = new PropagationJob(pb, pb.getInitialTime(), pb.getInitialState(),
+                                   pb.getFinalTime(), handlers[i]);
+    }
+
+    PropagationExecutor executor = new PropagationExecutor(new DP853Factory(),
+                                                           service);
+    try {
+      executor.propagate(jobs);
+      fail("an exception should have been thrown");
+    } catch (RejectedExecutionException ree) {
+      // the submitted jobs are not running anymore
+      int[] steps = new int[handlers.length];
+      for (int i = 0; i < handlers.length; ++i) {
+        steps[i] = handlers[i].getSteps();
+      }
+      Thread.sleep(50);
+      for (int i = 0; i < handlers.length; ++i) {
+        assertEquals(steps[i], handlers[i].getSteps());
+      }
+      assertEquals(0, handlers[2].getSteps());
+      assertEquals(0, handlers[3].getSteps());
+    } finally {
+      service.shutdown();
+    }
+
+  }
+
+  private static class SlowHandler implements StepHandler {
+    public SlowHandler(CountDownLatch started) {
+      this.started = started;
+      steps        = 0;
+      completed    = false;
+    }
+    public boolean requiresDenseOutput() {
+      return false;
+    }
+    public void reset() {
+    }
+    public synchronized void handleStep(StepInterpolator interpolator, boolean isLast) {
+      ++steps;
+      started.countDown();
+      try {
+        Thread.sleep(2);
+      } catch (InterruptedException ie) {
+        // ignored
+      }
+      completed = isLast;
+    }
+    public synchronized int getSteps() {
+      return steps;
+    }
+    public synchronized boolean isCompleted() {
+      return completed;
+    }
+    private final CountDownLatch started;
+    private int steps;
+    private boolean completed;
+  }
+
+  private static class DP853Factory implements IntegratorFactory {
+    public FirstOrderIntegrator buildIntegrator() {
+      return new DormandPrince853Integrator(0.0, 100.0, 1.0e-10, 1.0e-10);
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(PropagationExecutorTest.class);
+  }
+
+}
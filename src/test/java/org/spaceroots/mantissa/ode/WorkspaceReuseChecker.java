@@ -0,0 +1,74 @@
+package org.spaceroots.mantissa.ode;
+
+import junit.framework.Assert;
+
+/**
+ * This class is used in the junit tests for the ODE integrators to
+ * check that integrators reusing their internal workspace give the
+ * same results as fresh integrators.
+ */
+class WorkspaceReuseChecker {
+
+  /**
+   * Private constructor.
+   * This is a utility class, so there are no instance at all.
+   */
+  private WorkspaceReuseChecker() {
+  }
+
+  /**
+   * Check workspace reuse.
+   * <p>The same integrator is used for problems with different
+   * dimensions and with or without dense output, results must be
+   * identical to the ones of fresh integrators.</p>
+   * @param factory factory building identically configured integrators
+   * @exception DerivativeException if the equations trigger one
+   * @exception IntegratorException if the integrators fail
+   */
+  public static void check(IntegratorFactory factory)
+    throws DerivativeException, IntegratorException {
+
+    TestProblemAbstract[] problems = TestProblemFactory.getProblems();
+    FirstOrderIntegrator shared = factory.buildIntegrator();
+    for (int pass = 0; pass < 2; ++pass) {
+      for (int k = 0; k < problems.length; ++k) {
+
+        TestProblemAbstract pb = (TestProblemAbstract) problems[k].clone();
+        if (pb.getSwitchingFunctions().length > 0) {
+          continue;
+        }
+        double tMid = 0.5 * (pb.getInitialTime() + pb.getFinalTime());
+
+        FirstOrderIntegrator fresh = factory.buildIntegrator();
+        ContinuousOutputModel freshModel = new ContinuousOutputModel();
+        fresh.setStepHandler(freshModel);
+        double[] yFresh = new double[pb.getDimension()];
+        fresh.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                        pb.getFinalTime(), yFresh);
+        freshModel.setInterpolatedTime(tMid);
+
+        ContinuousOutputModel sharedModel = new ContinuousOutputModel();
+        shared.setStepHandler((pass == 0) ? (StepHandler) sharedModel
+                                          : DummyStepHandler.getInstance());
+        double[] yShared = new double[pb.getDimension()];
+        shared.integrate(pb, pb.getInitialTime(), pb.getInitialState(),
+                         pb.getFinalTime(), yShared);
+
+        for (int i = 0; i < yFresh.length; ++i) {
+          Assert.assertEquals(yFresh[i], yShared[i], 0.0);
+        }
+        if (pass == 0) {
+          sharedModel.setInterpolatedTime(tMid);
+          double[] mFresh  = freshModel.getInterpolatedState();
+          double[] mShared = sharedModel.getInterpolatedState();
+          for (int i = 0; i < mFresh.length; ++i) {
+            Assert.assertEquals(mFresh[i], mShared[i], 0.0);
+          }
+        }
+
+      }
+    }
+
+  }
+
+}